@@ -7,14 +7,39 @@ CREATE DATABASE IF NOT EXISTS grocery_prices;
 USE grocery_prices;
 
 CREATE TABLE IF NOT EXISTS fruits_and_vegetables (
+	id bigint NOT NULL AUTO_INCREMENT,
 	brand varchar(100),
-	date_collected date,
+	date_collected date NOT NULL,
 	price varchar(100),
-	product_title varchar(200),
-	product_size varchar(100),
-	store_chain_name varchar(100),
-	township_location varchar(200),
-	unit_price varchar(150)
+	product_title varchar(200) NOT NULL DEFAULT '',
+	product_size varchar(100) NOT NULL DEFAULT '',
+	store_chain_name varchar(100) NOT NULL DEFAULT '',
+	township_location varchar(200) NOT NULL DEFAULT '',
+	unit_price varchar(150),
+	-- typed values parsed from the raw text columns above at ingest (see iterators.util.PriceParser)
+	price_cents int,
+	unit_price_cents int,
+	unit_price_quantity decimal(14,3),
+	unit_price_unit varchar(8),
+	size_quantity decimal(14,3),
+	size_unit varchar(8),
+	-- cents per 100 g, per 100 ml or per item ('100g', '100ml' or 'ea')
+	comparison_cents decimal(16,4),
+	comparison_unit varchar(8),
+	-- the partitioning column has to be part of every unique key, including the primary key
+	PRIMARY KEY (id, date_collected),
+	-- one row per product, store and collection day, which keeps reloads idempotent (a repeated row is
+	-- upserted with upsert_ingest=true, and skipped otherwise)
+	UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected),
+	INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected),
+	INDEX price_cents_idx (price_cents),
+	INDEX comparison_idx (comparison_unit, comparison_cents)
+)
+-- monthly partitions (pYYYYMM) are split off p_future by iterators.PartitionRotator
+-- (partition_rotation=true in database.properties)
+PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
 );
 
 CREATE TABLE IF NOT EXISTS dairy_and_eggs LIKE fruits_and_vegetables;
@@ -35,4 +60,19 @@ CREATE TABLE IF NOT EXISTS deli LIKE fruits_and_vegetables;
 
 CREATE TABLE IF NOT EXISTS fish_and_seafood LIKE fruits_and_vegetables;
 
+CREATE TABLE IF NOT EXISTS last_seen_prices (
+	-- SHA-1 of the store chain, township, product title and package size (see iterators.LastSeenPriceCache)
+	product_key char(40) NOT NULL,
+	category_table varchar(64),
+	store_chain_name varchar(100),
+	township_location varchar(200),
+	product_title varchar(200),
+	product_size varchar(100),
+	price varchar(100),
+	-- the first day the product was seen at this price, and the last day it was seen at all
+	first_seen date,
+	last_seen date,
+	PRIMARY KEY (product_key)
+);
+
 COMMIT;
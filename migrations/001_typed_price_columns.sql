@@ -0,0 +1,162 @@
+BEGIN;
+
+-- use MySQL when running these commands
+-- adds the typed price and size columns next to the raw text columns of databases created before they were
+-- part of create_schema.sql (new rows are filled in at ingest by the loader)
+
+USE grocery_prices;
+
+ALTER TABLE fruits_and_vegetables
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE dairy_and_eggs
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE pantry
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE meat
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE snacks_and_chips_and_candy
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE frozen_food
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE bakery
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE drinks
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE deli
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+ALTER TABLE fish_and_seafood
+	ADD COLUMN price_cents int,
+	ADD COLUMN unit_price_cents int,
+	ADD COLUMN unit_price_quantity decimal(14,3),
+	ADD COLUMN unit_price_unit varchar(8),
+	ADD COLUMN size_quantity decimal(14,3),
+	ADD COLUMN size_unit varchar(8),
+	ADD COLUMN comparison_cents decimal(16,4),
+	ADD COLUMN comparison_unit varchar(8),
+	ADD INDEX price_cents_idx (price_cents),
+	ADD INDEX comparison_idx (comparison_unit, comparison_cents);
+
+-- back fill the shelf price of existing rows whose price is a plain dollar amount such as "$3.49"
+-- (the other typed columns of existing rows are left empty)
+
+UPDATE fruits_and_vegetables SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE dairy_and_eggs SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE pantry SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE meat SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE snacks_and_chips_and_candy SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE frozen_food SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE bakery SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE drinks SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE deli SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+UPDATE fish_and_seafood SET price_cents = ROUND(CAST(REPLACE(REPLACE(price, '$', ''), ',', '') AS DECIMAL(12,2)) * 100)
+	WHERE price_cents IS NULL AND price REGEXP '^\\$[0-9,]+(\\.[0-9]{1,2})?$';
+
+COMMIT;
@@ -0,0 +1,23 @@
+BEGIN;
+
+-- use MySQL when running these commands
+-- adds the table behind change-only ingestion (change_only_ingest=true in database.properties)
+
+USE grocery_prices;
+
+CREATE TABLE IF NOT EXISTS last_seen_prices (
+	-- SHA-1 of the store chain, township, product title and package size (see iterators.LastSeenPriceCache)
+	product_key char(40) NOT NULL,
+	category_table varchar(64),
+	store_chain_name varchar(100),
+	township_location varchar(200),
+	product_title varchar(200),
+	product_size varchar(100),
+	price varchar(100),
+	-- the first day the product was seen at this price, and the last day it was seen at all
+	first_seen date,
+	last_seen date,
+	PRIMARY KEY (product_key)
+);
+
+COMMIT;
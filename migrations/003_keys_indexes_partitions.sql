@@ -0,0 +1,148 @@
+-- use MySQL when running these commands
+-- adds a surrogate key, the price history index and monthly range partitioning on date_collected to the
+-- category tables of databases created before they were part of create_schema.sql
+-- (ALTER TABLE commits implicitly, so this is not wrapped in a transaction)
+-- after running it, run the loader once with partition_rotation=true in database.properties so the
+-- existing rows are split into monthly partitions
+
+USE grocery_prices;
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE fruits_and_vegetables SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE fruits_and_vegetables
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE fruits_and_vegetables PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE dairy_and_eggs SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE dairy_and_eggs
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE dairy_and_eggs PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE pantry SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE pantry
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE pantry PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE meat SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE meat
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE meat PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE snacks_and_chips_and_candy SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE snacks_and_chips_and_candy
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE snacks_and_chips_and_candy PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE frozen_food SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE frozen_food
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE frozen_food PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE bakery SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE bakery
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE bakery PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE drinks SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE drinks
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE drinks PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE deli SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE deli
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE deli PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- rows without a collection date cannot be placed in a partition, they are moved into p_history
+UPDATE fish_and_seafood SET date_collected = '1970-01-01' WHERE date_collected IS NULL;
+
+ALTER TABLE fish_and_seafood
+	MODIFY date_collected date NOT NULL,
+	ADD COLUMN id bigint NOT NULL AUTO_INCREMENT FIRST,
+	ADD PRIMARY KEY (id, date_collected),
+	ADD INDEX product_history_idx (store_chain_name, township_location, product_title, date_collected);
+
+ALTER TABLE fish_and_seafood PARTITION BY RANGE COLUMNS (date_collected) (
+	PARTITION p_history VALUES LESS THAN ('2000-01-01'),
+	PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
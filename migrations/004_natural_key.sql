@@ -0,0 +1,228 @@
+-- use MySQL when running these commands (after migrations/003_keys_indexes_partitions.sql)
+-- adds the natural key that keeps ingestion idempotent: one row per store chain, township, product title,
+-- package size and collection date (a repeated row is upserted with upsert_ingest=true in database.properties,
+-- and skipped otherwise)
+-- existing duplicate rows are removed first, keeping the row that was loaded first
+-- (ALTER TABLE commits implicitly, so this is not wrapped in a transaction)
+
+USE grocery_prices;
+
+UPDATE fruits_and_vegetables SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM fruits_and_vegetables newer JOIN fruits_and_vegetables older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE fruits_and_vegetables
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE dairy_and_eggs SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM dairy_and_eggs newer JOIN dairy_and_eggs older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE dairy_and_eggs
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE pantry SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM pantry newer JOIN pantry older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE pantry
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE meat SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM meat newer JOIN meat older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE meat
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE snacks_and_chips_and_candy SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM snacks_and_chips_and_candy newer JOIN snacks_and_chips_and_candy older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE snacks_and_chips_and_candy
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE frozen_food SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM frozen_food newer JOIN frozen_food older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE frozen_food
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE bakery SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM bakery newer JOIN bakery older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE bakery
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE drinks SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM drinks newer JOIN drinks older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE drinks
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE deli SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM deli newer JOIN deli older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE deli
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
+
+UPDATE fish_and_seafood SET
+	store_chain_name = COALESCE(store_chain_name, ''),
+	township_location = COALESCE(township_location, ''),
+	product_title = COALESCE(product_title, ''),
+	product_size = COALESCE(product_size, '')
+	WHERE store_chain_name IS NULL OR township_location IS NULL OR product_title IS NULL OR product_size IS NULL;
+
+DELETE newer FROM fish_and_seafood newer JOIN fish_and_seafood older
+	ON newer.store_chain_name = older.store_chain_name
+	AND newer.township_location = older.township_location
+	AND newer.product_title = older.product_title
+	AND newer.product_size = older.product_size
+	AND newer.date_collected = older.date_collected
+	AND newer.id > older.id;
+
+ALTER TABLE fish_and_seafood
+	MODIFY product_title varchar(200) NOT NULL DEFAULT '',
+	MODIFY product_size varchar(100) NOT NULL DEFAULT '',
+	MODIFY store_chain_name varchar(100) NOT NULL DEFAULT '',
+	MODIFY township_location varchar(200) NOT NULL DEFAULT '',
+	ADD UNIQUE INDEX natural_key_idx (store_chain_name, township_location, product_title, product_size, date_collected);
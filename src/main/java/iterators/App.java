@@ -29,11 +29,51 @@ import iterators.cities.*;
  */
 public class App
 {
+    /**
+     * categoryOf - a private helper method that returns the top level category of a scraped product record,
+     * which is the second entry of its breadcrumb path (for example "fruits & vegetables" for
+     * "Home>Fruits & Vegetables>Fresh Fruits"), or the category itself for iterators that only record the
+     * aisle they scraped (Metro)
+     * @param product_info - the scraped product information
+     * @return - the lower case category name, or null if the record has no usable category path
+     */
+    private static String categoryOf(ProductRecord product_info) {
+	String category_path = product_info.getCategoryPath();
+	if (category_path == null) {
+		return null;
+	}
+	String[] categories = category_path.toLowerCase().split(">");
+	if (categories.length == 1) {
+		return categories[0].strip();
+	}
+	return categories[1];
+    }
+
+
+    /**
+     * closePriceCache - a private helper method that writes back the last seen price cache (if change-only
+     * ingestion is turned on) and prints how many records were skipped as unchanged
+     * @param last_seen_prices - the LastSeenPriceCache instance, may be null
+     * @return - returns nothing (void)
+     */
+    private static void closePriceCache(LastSeenPriceCache last_seen_prices) {
+	if (last_seen_prices == null) {
+		return;
+	}
+	try {
+		last_seen_prices.close();
+	} catch (SQLException err) {
+		err.printStackTrace();
+	}
+	System.out.println(last_seen_prices.getMetrics());
+    }
+
+
     public static void main( String[] args ) throws InterruptedException, XMLStreamException
     {
         //System.out.println( "Hello World!" );
 	String table_name_to_use = null;
-	HashMap<String, String> product_info = null;
+	ProductRecord product_info = null;
 	String currentPath = System.getProperty("user.dir");
 	Path pwd = Paths.get(currentPath);
 	Path firefoxdriver_path = pwd.resolve("drivers");
@@ -85,7 +125,7 @@ public class App
 	String pass = database_config.getProperty("pass");
 	String tables = database_config.getProperty("tables");
 	String columns = database_config.getProperty("columns");
-	DatabaseClient db_instance = new DatabaseClient(dbms_name, host, port, database_name, user, pass);
+	DatabaseClient db_instance = new DatabaseClient(dbms_name, host, port, database_name, user, pass, database_config);
 	PopularCities cities_finder = new PopularCities(
 		cities_left_fname, root_cities_tag, individual_city_tag,
 		cities_properties_path.toString(), firefoxdriver_path.toString()
@@ -104,7 +144,6 @@ public class App
 	XMLParser drinks = new XMLParser(drinks_fname, root_xml_tag_name, mapping_tag_name);
 	XMLParser deli = new XMLParser(deli_fname, root_xml_tag_name, mapping_tag_name);
 	XMLParser fish_and_seafood = new XMLParser(fish_and_seafood_fname, root_xml_tag_name, mapping_tag_name);
-	XMLParser current_parser = null;
 	xml_parsers.put("fruits & vegetables", fruits_and_vegetables);
 	xml_parsers.put("dairy & eggs", dairy_and_eggs);
 	xml_parsers.put("pantry", pantry);
@@ -116,6 +155,28 @@ public class App
 	xml_parsers.put("deli", deli);
 	xml_parsers.put("fish & seafood", fish_and_seafood);
 	Set<String> xml_parsers_keys = xml_parsers.keySet();
+	boolean fast_xml_writer = Boolean.parseBoolean(database_xml_config.getProperty("fast_xml_writer", "false"));
+	DurabilityPolicy xml_durability_policy = DurabilityPolicy.fromProperties(database_xml_config);
+	for (XMLParser parser: xml_parsers.values()) {
+		parser.setFastWriter(fast_xml_writer);
+		parser.setDurabilityPolicy(xml_durability_policy);
+		parser.setCompression(database_xml_config.getProperty("xml_compression", "none"));
+		parser.setRecordIndex(Boolean.parseBoolean(database_xml_config.getProperty("xml_record_index", "false")));
+		parser.setSegmentManifest(Boolean.parseBoolean(database_xml_config.getProperty("xml_segment_manifest", "false")));
+		parser.setSegmentLimits(
+			Long.parseLong(database_xml_config.getProperty("xml_segment_max_records", "0")),
+			Long.parseLong(database_xml_config.getProperty("xml_segment_max_bytes", "0"))
+		);
+		if (Boolean.parseBoolean(database_xml_config.getProperty("xml_recover_torn_files", "false"))) {
+			try {
+				for (RecoveryReport report: parser.recoverTornFiles()) {
+					System.out.println(report);
+				}
+			} catch (Exception err) {
+				err.printStackTrace();
+			}
+		}
+	}
 	for (String table: database_tables) {
 		switch (table) {
 			case "fruits_and_vegetables":
@@ -141,57 +202,130 @@ public class App
 	cities_finder.loadXML();
 	LoblawsIterator loblaws_iter = new LoblawsIterator(store_properties_path.toString(), 0, 30);
 	loblaws_iter.clear();
+	StorageBackend storage_backend = db_instance;
+	boolean embedded_storage = database_config.getProperty("storage_backend", "mysql").equals("embedded");
+	if (embedded_storage) {
+		storage_backend = new EmbeddedFileBackend(
+			Paths.get(currentPath).resolve(database_config.getProperty("embedded_data_dir", "data")),
+			Arrays.asList(database_tables),
+			Integer.parseInt(database_config.getProperty("batch_size", "500")),
+			Runtime.getRuntime().availableProcessors()
+		);
+	}
+	if (embedded_storage) {
+		System.out.println("Embedded storage: partition rotation, change-only ingestion and bulk loads are MySQL only");
+	} else if (Boolean.parseBoolean(database_config.getProperty("partition_rotation", "false"))) {
+		db_instance.rotatePartitions();
+	}
+	LastSeenPriceCache price_cache = null;
+	if (!(embedded_storage) && Boolean.parseBoolean(database_config.getProperty("change_only_ingest", "false"))) {
+		try {
+			price_cache = db_instance.openLastSeenPriceCache();
+		} catch (SQLException err) {
+			err.printStackTrace();
+			System.exit(1);
+		}
+	}
+	final LastSeenPriceCache last_seen_prices = price_cache;
+	if (Boolean.parseBoolean(database_config.getProperty("write_behind", "false"))) {
+		WriteBehindQueue write_behind_queue = new WriteBehindQueue(
+			storage_backend,
+			last_seen_prices,
+			Integer.parseInt(database_config.getProperty("write_behind_capacity", "10000")),
+			Integer.parseInt(database_config.getProperty("write_behind_writers", "2")),
+			Integer.parseInt(database_config.getProperty("batch_size", "500")),
+			Long.parseLong(database_config.getProperty("write_behind_max_delay_millis", "2000"))
+		);
+		loblaws_iter.setRecordConsumer(scraped_info -> {
+			String table_name = table_name_for_parser.get(categoryOf(scraped_info));
+			if (table_name == null) {
+				return;
+			}
+			ProductRecord table_record = scraped_info.with(ProductRecord.Field.CATEGORY_PATH, null);
+			try {
+				if (last_seen_prices == null) {
+					write_behind_queue.put(table_name, table_record, null);
+					return;
+				}
+				LastSeenPriceCache.PriceChange price_change = last_seen_prices.priceChanged(table_name, table_record);
+				if (price_change != null) {
+					write_behind_queue.put(table_name, table_record, price_change);
+				}
+			} catch (SQLException err) {
+				err.printStackTrace();
+			} catch (InterruptedException err) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		loblaws_iter.loadXML();
+		write_behind_queue.close();
+		System.out.println(write_behind_queue.getMetrics());
+		closePriceCache(last_seen_prices);
+		System.out.println(db_instance.getPoolMetrics());
+		storage_backend.close();
+		db_instance.close();
+		return;
+	}
 	loblaws_iter.loadXML();
-	while (loblaws_iter.hasNext()) {
-		product_info = loblaws_iter.next();
-		String category = product_info.get("category_path");
-		category = category.toLowerCase().split(">")[1];
-		product_info.remove("category_path");
-		for (String key: xml_parsers_keys) {
-			if (category.equalsIgnoreCase(key)) {
-				try {
-					xml_parsers.get(key).hashmapToXML(product_info);
-				} catch (XMLStreamException err) {
-					err.printStackTrace();
+	ArrayList<ProductRecord> scraped_batch = loblaws_iter.nextBatch(1000);
+	while (!(scraped_batch.isEmpty())) {
+		for (ProductRecord scraped_info: scraped_batch) {
+			String category = categoryOf(scraped_info);
+			product_info = scraped_info.with(ProductRecord.Field.CATEGORY_PATH, null);
+			for (String key: xml_parsers_keys) {
+				if (key.equalsIgnoreCase(category)) {
+					try {
+						xml_parsers.get(key).recordToXML(product_info);
+					} catch (XMLStreamException err) {
+						err.printStackTrace();
+					}
 				}
 			}
 		}
+		scraped_batch = loblaws_iter.nextBatch(1000);
 	}
 	for (String key: xml_parsers_keys) {
 		xml_parsers.get(key).closeProductXmlOutputStream();
 	}
+	String load_mode = embedded_storage ? "batched" : database_config.getProperty("load_mode", "batched");
+	LoadReport load_report = new LoadReport(load_mode);
+	BulkLoader bulk_loader = new BulkLoader(
+		db_instance, db_instance.getSpoolDirectory(),
+		Boolean.parseBoolean(database_config.getProperty("keep_spool_files", "false"))
+	);
+	HashMap<String, XMLParser> parsers_by_table = new HashMap<>();
+	boolean resumable_loads = Boolean.parseBoolean(database_config.getProperty("resumable_loads", "false"));
 	for (String key: xml_parsers_keys) {
-		current_parser = xml_parsers.get(key);
 		table_name_to_use = table_name_for_parser.get(key);
-		while (current_parser.hasNext()) {
-			product_info = current_parser.next();
-			String brand = product_info.get("brand");
-			String price = product_info.get("price");
-			String product_title = product_info.get("product_title");
-			String size = product_info.get("size");
-			String store_chain_name = product_info.get("store_chain_name");
-			String township_location = product_info.get("township_location");
-			if (brand != null) brand = brand.replace("\"", "\\\"");
-			if (price != null) price = price.replace("\"", "\\\"");
-			if (product_title != null) product_title = product_title.replace("\"", "\\\"");
-			if (size != null) size = size.replace("\"", "\\\"");
-			if (store_chain_name != null) store_chain_name = store_chain_name.replace("\"", "\\\"");
-			if (township_location != null) township_location = township_location.replace("\"", "\\\"");
-			StringBuilder query_text = new StringBuilder()
-				.append("INSERT INTO " + table_name_to_use)
-				.append(
-				" (brand, date_collected, price, product_title, product_size, store_chain_name, township_location)"
-				)
-				.append(" VALUES( ")
-				.append("\"" + brand + "\", " )
-				.append("STR_TO_DATE(\"" + product_info.get("date") + "\", \"%b-%d-%Y-%H-%i\"), " )
-				.append("\"" + price + "\", " )
-				.append("\"" + product_title + "\", " )
-				.append("\"" + size + "\", " )
-				.append("\"" + store_chain_name + "\", " )
-				.append("\"" + township_location + "\" );" );
-			db_instance.query(query_text.toString());
+		if (table_name_to_use != null) {
+			if (resumable_loads && load_mode.equals("batched")) {
+				try {
+					xml_parsers.get(key).enableReadOffsets(
+						"loader", database_config.getProperty("loaded_xml_archive_dir")
+					);
+				} catch (IOException err) {
+					err.printStackTrace();
+				}
+			}
+			parsers_by_table.put(table_name_to_use, xml_parsers.get(key));
 		}
 	}
+	ParallelLoader table_loader = new ParallelLoader(
+		storage_backend, bulk_loader, last_seen_prices, load_mode,
+		// 4 tables at a time, the same as database.properties and the default pool_max_size
+		Integer.parseInt(database_config.getProperty("load_parallelism", "4")),
+		Integer.parseInt(database_config.getProperty("load_reader_threads", "1"))
+	);
+	table_loader.loadAll(parsers_by_table, load_report);
+	Path load_report_path = Paths.get(currentPath).resolve(
+		database_config.getProperty("load_report_fname", "load_report.tsv")
+	);
+	closePriceCache(last_seen_prices);
+	load_report.print(System.out);
+	load_report.printComparison(load_report_path, System.out);
+	load_report.appendTo(load_report_path);
+	System.out.println(db_instance.getPoolMetrics());
+	storage_backend.close();
+	db_instance.close();
     }
 }
@@ -6,6 +6,7 @@ import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.time.format.DateTimeFormatter;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import java.io.*;
@@ -47,10 +48,15 @@ public class BaseIterator implements GroceryStorePriceScraper {
 	private String fpath;
 	private Properties configurations;
 	protected XMLParser xml_parser;
+	// set when record_format=binary, in which case product records are written to and read from it instead
+	private BinaryRecordFile binary_records;
 	private int hours;
 	private int minutes;
 	private LocalTime ending_time;
 	private boolean timer_started;
+	private boolean write_product_xml;
+	private Consumer<ProductRecord> record_consumer;
+	private ArrayList<RecoveryReport> recovery_reports;
 
 
 	public BaseIterator(String config_file_path) {
@@ -85,6 +91,10 @@ public class BaseIterator implements GroceryStorePriceScraper {
 		this.fpath = config_file_path;
 		this.event_reader_opened = false;
 		this.timer_started = false;
+		this.record_consumer = null;
+		this.write_product_xml = true;
+		this.binary_records = null;
+		this.recovery_reports = new ArrayList<>();
 		File filename = new File(this.fpath);
                 this.configurations = new Properties();
 		try {
@@ -93,12 +103,59 @@ public class BaseIterator implements GroceryStorePriceScraper {
 			String root_tag = this.configurations.getProperty("root_xml_tag");
 			String mapping_tag = this.configurations.getProperty("mapping_tag");
 			this.xml_parser = new XMLParser(xml_filename, root_tag, mapping_tag, true);
+			this.xml_parser.setFastWriter(
+				Boolean.parseBoolean(this.configurations.getProperty("fast_xml_writer", "false"))
+			);
+			this.xml_parser.setDurabilityPolicy(DurabilityPolicy.fromProperties(this.configurations));
+			this.xml_parser.setCompression(this.configurations.getProperty("xml_compression", "none"));
+			this.xml_parser.setRecordIndex(
+				Boolean.parseBoolean(this.configurations.getProperty("xml_record_index", "false"))
+			);
+			this.xml_parser.setSegmentManifest(
+				Boolean.parseBoolean(this.configurations.getProperty("xml_segment_manifest", "false"))
+			);
+			this.xml_parser.setTailMode(
+				Boolean.parseBoolean(this.configurations.getProperty("xml_tail_mode", "false")),
+				Long.parseLong(this.configurations.getProperty("xml_tail_idle_timeout_millis", "600000"))
+			);
+			this.xml_parser.setSegmentLimits(
+				Long.parseLong(this.configurations.getProperty("xml_segment_max_records", "0")),
+				Long.parseLong(this.configurations.getProperty("xml_segment_max_bytes", "0"))
+			);
+			this.write_product_xml = Boolean.parseBoolean(
+				this.configurations.getProperty("write_product_xml", "true")
+			);
+			if (this.configurations.getProperty("record_format", "xml").strip().equals("binary")) {
+				String binary_filename = this.configurations.getProperty(
+					"data_binary_filename", xml_filename.split("\\.")[0] + ".bin"
+				);
+				this.binary_records = new BinaryRecordFile(binary_filename, true);
+			}
 		} catch (Throwable t) {
 			t.printStackTrace();
+			return;
+		}
+		// after the rest of the configuration, which a failed recovery must not cut short
+		if (Boolean.parseBoolean(this.configurations.getProperty("xml_recover_torn_files", "false"))) {
+			try {
+				this.recovery_reports = this.xml_parser.recoverTornFiles();
+			} catch (IOException | XMLStreamException err) {
+				err.printStackTrace();
+			}
 		}
 	}
 
 
+	/**
+	 * getRecoveryReports - a public method that returns what was salvaged from the torn files of a killed run
+	 * when the iterator was set up (see XMLParser.recoverTornFiles() and xml_recover_torn_files)
+	 * @return - an ArrayList<RecoveryReport> instance, empty if recovery is off or no file was torn
+	 */
+	public ArrayList<RecoveryReport> getRecoveryReports() {
+		return this.recovery_reports;
+	}
+
+
 	/**
 	 * timeLimitExists - a private helper method to determine if there is a time limit (if this.hours is 0 and
 	 * this.minutes is 0)
@@ -145,24 +202,108 @@ public class BaseIterator implements GroceryStorePriceScraper {
 	}
 
 
+	/**
+	 * setRecordConsumer - a public method that registers a callback that receives every product record as soon
+	 * as it has been scraped (for example to hand it to a write-behind queue while the scrape is still running)
+	 * @param record_consumer - the callback, or null to stop passing records on
+	 * @return - returns nothing (void)
+	 */
+	public void setRecordConsumer(Consumer<ProductRecord> record_consumer) {
+		this.record_consumer = record_consumer;
+	}
+
+
+	/**
+	 * writeRecord - a protected helper method that the iterators call for every scraped product record
+	 * - the record is added to the product XML file, or the binary record file if record_format=binary
+	 *   (unless write_product_xml=false in the .properties file), and a copy of it is passed to the record
+	 *   consumer, if one has been set
+	 * @param product_info - the scraped product information
+	 * @return - returns nothing (void)
+	 */
+	protected void writeRecord(ProductRecord product_info) throws XMLStreamException {
+		if (this.write_product_xml && (this.binary_records != null)) {
+			try {
+				this.binary_records.write(product_info);
+			} catch (IOException err) {
+				throw new XMLStreamException(err);
+			}
+		} else if (this.write_product_xml) {
+			this.xml_parser.recordToXML(product_info);
+		}
+		if (this.record_consumer != null) {
+			this.record_consumer.accept(product_info);
+		}
+	}
+
+
+	/**
+	 * closeRecordOutput - a protected helper method that the iterators call once scraping is done, which
+	 * closes the product XML file (or the binary record file)
+	 * @return - returns nothing (void)
+	 */
+	protected void closeRecordOutput() throws XMLStreamException {
+		this.xml_parser.closeProductXmlOutputStream();
+		if (this.binary_records != null) {
+			try {
+				this.binary_records.close();
+			} catch (IOException err) {
+				throw new XMLStreamException(err);
+			}
+		}
+	}
+
+
 	/**
 	 * hasNext - a public method that checks if there are any more entries in the XML file to be iterated over
 	 * (entries being any information sets of product data left to iterate over)
 	 * @return - returns true if there are entries in the XML file left to iterate over, returns false otherwise
 	 */
 	public boolean hasNext() throws XMLStreamException {
+		if (this.binary_records != null) {
+			try {
+				return this.binary_records.hasNext();
+			} catch (IOException err) {
+				throw new XMLStreamException(err);
+			}
+		}
 		return this.xml_parser.hasNext();
 	}
 
 
 	/**
 	 * next - a public method that parses the next information set of product data in the XML file, and returns
-	 * it has a HashMap<String, String> instance
-	 * @return - returns a HashMap<String, String> instance representing the current information set of product
+	 * it as a ProductRecord instance
+	 * @return - returns a ProductRecord instance representing the current information set of product
 	 * data in the XML file that has been iterated over
 	 */
-	public HashMap<String, String> next() throws XMLStreamException {
-		return this.xml_parser.next();
+	public ProductRecord next() throws XMLStreamException {
+		if (this.binary_records != null) {
+			try {
+				return this.binary_records.nextRecord();
+			} catch (IOException err) {
+				throw new XMLStreamException(err);
+			}
+		}
+		return this.xml_parser.nextRecord();
+	}
+
+
+	/**
+	 * nextBatch - a public method that parses up to max information sets of product data in one call
+	 * (from the binary record file if record_format=binary)
+	 * @param max - the largest number of records to return (must be larger than 0)
+	 * @return - an ArrayList<ProductRecord>, with fewer than max records only once there are none left
+	 */
+	public ArrayList<ProductRecord> nextBatch(int max) throws XMLStreamException {
+		if (this.binary_records != null) {
+			try {
+				return this.binary_records.nextBatch(max);
+			} catch (IOException err) {
+				throw new XMLStreamException(err);
+			}
+		}
+		return this.xml_parser.nextBatch(max);
 	}
 
 
@@ -172,6 +313,9 @@ public class BaseIterator implements GroceryStorePriceScraper {
 	 */
 	public void clear() {
 		this.xml_parser.clear();
+		if (this.binary_records != null) {
+			this.binary_records.clear();
+		}
 	}
 
 
@@ -0,0 +1,303 @@
+package iterators;
+import java.lang.*;
+import java.util.*;
+import java.sql.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import iterators.util.PriceParser;
+import iterators.util.ProductRecord;
+
+
+class BatchInserter implements RecordWriter {
+	// the fields of a product record that are stored as text, and the column each one is stored in
+	static final ProductRecord.Field[] RECORD_FIELDS = {
+		ProductRecord.Field.BRAND, ProductRecord.Field.DATE, ProductRecord.Field.PRICE, ProductRecord.Field.PRODUCT_TITLE,
+		ProductRecord.Field.SIZE, ProductRecord.Field.STORE_CHAIN_NAME, ProductRecord.Field.TOWNSHIP_LOCATION,
+		ProductRecord.Field.UNIT_PRICE
+	};
+	// the raw text columns (in the same order as RECORD_FIELDS) followed by the typed columns parsed from them
+	static final String[] COLUMNS = {
+		"brand", "date_collected", "price", "product_title", "product_size", "store_chain_name",
+		"township_location", "unit_price", "price_cents", "unit_price_cents", "unit_price_quantity",
+		"unit_price_unit", "size_quantity", "size_unit", "comparison_cents", "comparison_unit"
+	};
+	// the columns of the natural key (natural_key_idx) that identify a product's price on a given day
+	static final String[] NATURAL_KEY_COLUMNS = {
+		"store_chain_name", "township_location", "product_title", "product_size", "date_collected"
+	};
+	static final int[] COLUMN_TYPES = {
+		Types.VARCHAR, Types.DATE, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+		Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.BIGINT, Types.DECIMAL,
+		Types.VARCHAR, Types.DECIMAL, Types.VARCHAR, Types.DECIMAL, Types.VARCHAR
+	};
+	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMM-dd-yyyy-HH-mm");
+	private ConnectionPool connection_pool;
+	private Connection connection;
+	private PreparedStatement statement;
+	private String table_name;
+	private int batch_size;
+	private int commit_interval;
+	private int rows_in_batch;
+	private int rows_since_commit;
+	private long rows_written;
+
+
+	/**
+	 * BatchInserter - borrows one connection from connection_pool for its whole lifetime and prepares a
+	 * single INSERT statement for table_name, which is then executed in JDBC batches
+	 * @param connection_pool - the pool to borrow the connection from
+	 * @param table_name - the (already validated) name of the table to insert into
+	 * @param batch_size - the number of rows sent to the server in one batch (must be larger than 0)
+	 * @param commit_interval - the number of rows written between commits (must be larger than 0)
+	 * @param upsert - if true, rows that match an existing row on the natural key update it, otherwise they
+	 * are dropped and the existing row is kept
+	 * @throws SQLException - if a connection could not be borrowed or the statement could not be prepared
+	 */
+	BatchInserter(
+		ConnectionPool connection_pool, String table_name, int batch_size, int commit_interval, boolean upsert
+	) throws SQLException {
+		assert (batch_size > 0);
+		assert (commit_interval > 0);
+		this.connection_pool = connection_pool;
+		this.table_name = table_name;
+		this.batch_size = batch_size;
+		this.commit_interval = commit_interval;
+		this.rows_in_batch = 0;
+		this.rows_since_commit = 0;
+		this.rows_written = 0;
+		this.connection = connection_pool.borrow();
+		try {
+			this.connection.setAutoCommit(false);
+			String sql_text = upsert ? upsertStatement(table_name) : insertNewStatement(table_name);
+			this.statement = this.connection.prepareStatement(sql_text);
+		} catch (SQLException err) {
+			this.connection_pool.giveBack(this.connection);
+			this.connection = null;
+			throw err;
+		}
+	}
+
+
+	/**
+	 * insertStatement - a static helper method that builds the parameterized INSERT statement for a table
+	 * @param table_name - the name of the table
+	 * @return - a String with one placeholder per column in COLUMNS
+	 */
+	static String insertStatement(String table_name) {
+		StringBuilder sql_text = new StringBuilder("INSERT INTO ").append(table_name).append(" (");
+		StringBuilder placeholders = new StringBuilder();
+		for (int i = 0; i < COLUMNS.length; ++i) {
+			if (i > 0) {
+				sql_text.append(", ");
+				placeholders.append(", ");
+			}
+			sql_text.append(COLUMNS[i]);
+			placeholders.append("?");
+		}
+		return sql_text.append(") VALUES (").append(placeholders).append(")").toString();
+	}
+
+
+	/**
+	 * insertNewStatement - a static helper method that builds the parameterized statement that only inserts
+	 * rows whose natural key is not in the table yet
+	 * - a row that repeats a product on the same day (or a batch read again after a resumed load) keeps the row
+	 *   that was loaded first, instead of failing the whole batch with a duplicate key error
+	 * - unlike INSERT IGNORE, values the server cannot convert still fail the batch
+	 * @param table_name - the name of the table
+	 * @return - a String with the INSERT ... ON DUPLICATE KEY UPDATE statement that updates nothing
+	 */
+	static String insertNewStatement(String table_name) {
+		String key_column = NATURAL_KEY_COLUMNS[0];
+		return insertStatement(table_name) + " ON DUPLICATE KEY UPDATE " + key_column + " = " + key_column;
+	}
+
+
+	/**
+	 * upsertStatement - a static helper method that builds the parameterized upsert statement for a table
+	 * - a row whose natural key (chain, township, title, size and collection date) already exists only has
+	 *   its other columns overwritten, so loading the same records twice leaves the table unchanged
+	 * @param table_name - the name of the table
+	 * @return - a String with the INSERT ... ON DUPLICATE KEY UPDATE statement
+	 */
+	static String upsertStatement(String table_name) {
+		List<String> natural_key = Arrays.asList(NATURAL_KEY_COLUMNS);
+		StringBuilder sql_text = new StringBuilder(insertStatement(table_name)).append(" ON DUPLICATE KEY UPDATE ");
+		boolean first_column = true;
+		for (String column: COLUMNS) {
+			if (natural_key.contains(column)) {
+				continue;
+			}
+			if (!first_column) {
+				sql_text.append(", ");
+			}
+			sql_text.append(column).append(" = VALUES(").append(column).append(")");
+			first_column = false;
+		}
+		return sql_text.toString();
+	}
+
+
+	/**
+	 * parseCollectionDate - a static helper method that turns the "date" value written by the iterators
+	 * (for example "Oct-17-2026-10-30") into the date stored in the date_collected column
+	 * @param date_text - the date text from the product information, may be null
+	 * @return - a java.sql.Date instance, or null if the text is missing or could not be parsed
+	 */
+	static java.sql.Date parseCollectionDate(String date_text) {
+		if (date_text == null) {
+			return null;
+		}
+		String trimmed = date_text.strip();
+		// older product records were written with a leading dash in front of the date
+		if (trimmed.startsWith("-")) {
+			trimmed = trimmed.substring(1);
+		}
+		try {
+			return java.sql.Date.valueOf(LocalDateTime.parse(trimmed, DATE_FORMATTER).toLocalDate());
+		} catch (DateTimeParseException err) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * columnValues - a static helper method that works out the value of every column in COLUMNS for a product
+	 * record: the raw text as scraped, the collection date, and the prices and sizes parsed by PriceParser
+	 * into integer cents and quantities in canonical units
+	 * @param product_info - the product information
+	 * @return - an Object[] aligned with COLUMNS (String, java.sql.Date, Long or BigDecimal values, or null)
+	 */
+	static Object[] columnValues(ProductRecord product_info) {
+		Object[] values = new Object[COLUMNS.length];
+		List<String> natural_key = Arrays.asList(NATURAL_KEY_COLUMNS);
+		for (int i = 0; i < RECORD_FIELDS.length; ++i) {
+			values[i] = product_info.get(RECORD_FIELDS[i]);
+			// natural key columns are NOT NULL (a unique index treats every NULL as distinct)
+			if ((values[i] == null) && natural_key.contains(COLUMNS[i])) {
+				values[i] = "";
+			}
+		}
+		values[1] = parseCollectionDate(product_info.getDate());
+		// date_collected is the partitioning column and cannot be empty, so fall back to the day of the load
+		if (values[1] == null) {
+			values[1] = java.sql.Date.valueOf(LocalDate.now());
+		}
+		Long price_cents = product_info.getPriceCents();
+		PriceParser.UnitPrice unit_price = PriceParser.parseUnitPrice(product_info.getUnitPrice());
+		PriceParser.Quantity size = product_info.getSizeQuantity();
+		PriceParser.Comparison comparison = PriceParser.comparisonPrice(price_cents, size, unit_price);
+		values[8] = price_cents;
+		if (unit_price != null) {
+			values[9] = unit_price.getCents();
+			values[10] = unit_price.getQuantity().getAmount();
+			values[11] = unit_price.getQuantity().getUnit();
+		}
+		if (size != null) {
+			values[12] = size.getAmount();
+			values[13] = size.getUnit();
+		}
+		if (comparison != null) {
+			values[14] = comparison.getCents();
+			values[15] = comparison.getUnit();
+		}
+		return values;
+	}
+
+
+	/**
+	 * add - a public method that binds the product information to the prepared statement and adds it to the
+	 * current batch, sending the batch once it holds this.batch_size rows and committing every
+	 * this.commit_interval rows
+	 * @param product_info - the product information
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the batch could not be executed or committed
+	 */
+	public void add(ProductRecord product_info) throws SQLException {
+		Object[] values = columnValues(product_info);
+		for (int i = 0; i < values.length; ++i) {
+			if (values[i] == null) {
+				this.statement.setNull(i + 1, COLUMN_TYPES[i]);
+			} else {
+				this.statement.setObject(i + 1, values[i], COLUMN_TYPES[i]);
+			}
+		}
+		this.statement.addBatch();
+		this.rows_in_batch += 1;
+		this.rows_since_commit += 1;
+		if (this.rows_in_batch >= this.batch_size) {
+			this.executeBatch();
+		}
+		if (this.rows_since_commit >= this.commit_interval) {
+			this.commit();
+		}
+	}
+
+
+	private void executeBatch() throws SQLException {
+		if (this.rows_in_batch > 0) {
+			this.statement.executeBatch();
+			this.rows_in_batch = 0;
+		}
+	}
+
+
+	private void commit() throws SQLException {
+		this.executeBatch();
+		if (this.rows_since_commit > 0) {
+			this.connection.commit();
+			this.rows_written += this.rows_since_commit;
+			this.rows_since_commit = 0;
+		}
+	}
+
+
+	/**
+	 * flush - a public method that sends any rows still waiting in the batch and commits them
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the batch could not be executed or committed
+	 */
+	public void flush() throws SQLException {
+		this.commit();
+	}
+
+
+	/**
+	 * getRowsWritten - a public method that returns the number of rows committed so far
+	 * @return - the number of committed rows
+	 */
+	public long getRowsWritten() {
+		return this.rows_written;
+	}
+
+
+	public String getTableName() {
+		return this.table_name;
+	}
+
+
+	/**
+	 * close - a public method that flushes the remaining rows, closes the statement and hands the connection
+	 * back to the pool (rows that were not committed because of an error are rolled back by the pool)
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the last batch could not be executed or committed
+	 */
+	public void close() throws SQLException {
+		if (this.connection == null) {
+			return;
+		}
+		try {
+			this.flush();
+		} finally {
+			try {
+				this.statement.close();
+			} finally {
+				this.connection_pool.giveBack(this.connection);
+				this.connection = null;
+			}
+		}
+	}
+
+
+}
@@ -0,0 +1,168 @@
+package iterators;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import javax.xml.stream.XMLStreamException;
+import iterators.xml.XMLParser;
+import iterators.util.ProductRecord;
+
+
+class BulkLoader {
+	// the number of records read from a parser at a time while spooling
+	private static final int SPOOL_BATCH_SIZE = 1000;
+	private DatabaseClient db_instance;
+	private Path spool_directory;
+	private boolean keep_spool_files;
+
+
+	public BulkLoader(DatabaseClient db_instance, Path spool_directory, boolean keep_spool_files) {
+		this.db_instance = db_instance;
+		this.spool_directory = spool_directory;
+		this.keep_spool_files = keep_spool_files;
+	}
+
+
+	/**
+	 * escapeField - a static helper method that escapes a value for a tab separated spool file read with the
+	 * default LOAD DATA settings (fields terminated by tab, escaped by backslash, lines terminated by newline)
+	 * @param value - the value to escape, may be null
+	 * @return - the escaped value, or \N if value is null
+	 */
+	static String escapeField(String value) {
+		if (value == null) {
+			return "\\N";
+		}
+		StringBuilder escaped = new StringBuilder(value.length() + 8);
+		for (int i = 0; i < value.length(); ++i) {
+			char character = value.charAt(i);
+			switch (character) {
+				case '\\':
+					escaped.append("\\\\");
+					break;
+				case '\t':
+					escaped.append("\\t");
+					break;
+				case '\n':
+					escaped.append("\\n");
+					break;
+				case '\r':
+					escaped.append("\\r");
+					break;
+				case '\0':
+					escaped.append("\\0");
+					break;
+				default:
+					escaped.append(character);
+			}
+		}
+		return escaped.toString();
+	}
+
+
+	/**
+	 * formatRow - a static helper method that turns the column values of a record into one line of a spool
+	 * file (without the line terminator)
+	 * @param values - the column values, as returned by BatchInserter.columnValues()
+	 * @return - the escaped values, separated by tabs
+	 */
+	static String formatRow(Object[] values) {
+		StringBuilder line = new StringBuilder(256);
+		for (int i = 0; i < values.length; ++i) {
+			String value = null;
+			if (values[i] instanceof BigDecimal) {
+				value = ((BigDecimal) values[i]).toPlainString();
+			} else if (values[i] != null) {
+				value = values[i].toString();
+			}
+			if (i > 0) {
+				line.append('\t');
+			}
+			line.append(escapeField(value));
+		}
+		return line.toString();
+	}
+
+
+	/**
+	 * spool - a public method that streams every product record left in parser into a temporary tab separated
+	 * file in this.spool_directory, with the columns in the same order as BatchInserter.COLUMNS
+	 * @param table_name - the table the records are meant for (used to name the spool file)
+	 * @param parser - the XMLParser to read product records from
+	 * @return - a SpoolFile with the path of the spool file and the number of rows written to it
+	 * @throws IOException - if the spool file could not be written
+	 * @throws XMLStreamException - if the product records could not be read
+	 */
+	public SpoolFile spool(String table_name, XMLParser parser) throws IOException, XMLStreamException {
+		Files.createDirectories(this.spool_directory);
+		Path spool_path = Files.createTempFile(this.spool_directory, table_name + "-", ".tsv");
+		long rows = 0;
+		try (BufferedWriter writer = Files.newBufferedWriter(spool_path, StandardCharsets.UTF_8)) {
+			ArrayList<ProductRecord> batch = parser.nextBatch(SPOOL_BATCH_SIZE);
+			while (!(batch.isEmpty())) {
+				for (ProductRecord product_info: batch) {
+					writer.write(formatRow(BatchInserter.columnValues(product_info)));
+					writer.write('\n');
+				}
+				rows += batch.size();
+				batch = parser.nextBatch(SPOOL_BATCH_SIZE);
+			}
+		}
+		return new SpoolFile(spool_path, rows);
+	}
+
+
+	/**
+	 * load - a public method that spools the parser's records and loads them into table_name with a single
+	 * LOAD DATA LOCAL INFILE statement, adding the outcome to the load report
+	 * - the spool file is deleted afterwards unless keep_spool_files was set
+	 * @param table_name - the name of the table to load
+	 * @param parser - the XMLParser to read product records from
+	 * @param report - the LoadReport to record the rows loaded, rows rejected and wall-clock time in
+	 * @return - returns nothing (void)
+	 */
+	public void load(String table_name, XMLParser parser, LoadReport report) {
+		long start_millis = System.currentTimeMillis();
+		SpoolFile spool_file = null;
+		try {
+			spool_file = this.spool(table_name, parser);
+			long rows_loaded = 0;
+			if (spool_file.rows > 0) {
+				rows_loaded = this.db_instance.loadSpoolFile(table_name, spool_file.path);
+			}
+			report.addTable(
+				table_name, rows_loaded, spool_file.rows - rows_loaded, System.currentTimeMillis() - start_millis
+			);
+		} catch (IOException | XMLStreamException | SQLException err) {
+			err.printStackTrace();
+		} finally {
+			if ((spool_file != null) && !(this.keep_spool_files)) {
+				try {
+					Files.deleteIfExists(spool_file.path);
+				} catch (IOException err) {
+					err.printStackTrace();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * SpoolFile - the path of a spool file along with the number of rows written to it
+	 */
+	static class SpoolFile {
+		Path path;
+		long rows;
+
+		SpoolFile(Path path, long rows) {
+			this.path = path;
+			this.rows = rows;
+		}
+	}
+
+
+}
@@ -0,0 +1,281 @@
+package iterators;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.sql.*;
+
+
+class ConnectionPool {
+	private String database_address;
+	private String user;
+	private String pass;
+	private int max_size;
+	private long idle_timeout_millis;
+	private long borrow_timeout_millis;
+	private int validation_timeout_seconds;
+	private LinkedBlockingDeque<PooledConnection> idle_connections;
+	private Semaphore permits;
+	private AtomicInteger active_count;
+	private AtomicLong borrow_count;
+	private AtomicLong total_borrow_wait_nanos;
+	private AtomicLong max_borrow_wait_nanos;
+	private AtomicLong connections_created;
+	private AtomicLong connections_evicted;
+	private volatile boolean closed;
+
+
+	/**
+	 * PooledConnection - a small holder for an idle connection along with the time it was last returned to
+	 * the pool (used to evict connections that have been idle for too long)
+	 */
+	private static class PooledConnection {
+		private Connection connection;
+		private long last_used_millis;
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+			this.last_used_millis = System.currentTimeMillis();
+		}
+	}
+
+
+	public ConnectionPool(
+		String database_address, String user, String pass, int max_size, long idle_timeout_millis,
+		long borrow_timeout_millis, int validation_timeout_seconds
+	) {
+		assert (max_size > 0);
+		this.database_address = database_address;
+		this.user = user;
+		this.pass = pass;
+		this.max_size = max_size;
+		this.idle_timeout_millis = idle_timeout_millis;
+		this.borrow_timeout_millis = borrow_timeout_millis;
+		this.validation_timeout_seconds = validation_timeout_seconds;
+		this.idle_connections = new LinkedBlockingDeque<>();
+		this.permits = new Semaphore(max_size, true);
+		this.active_count = new AtomicInteger(0);
+		this.borrow_count = new AtomicLong(0);
+		this.total_borrow_wait_nanos = new AtomicLong(0);
+		this.max_borrow_wait_nanos = new AtomicLong(0);
+		this.connections_created = new AtomicLong(0);
+		this.connections_evicted = new AtomicLong(0);
+		this.closed = false;
+	}
+
+
+	/**
+	 * borrow - a public method that hands out a connection from the pool, blocking for at most
+	 * this.borrow_timeout_millis if all this.max_size connections are currently in use
+	 * - idle connections are handed out most recently used first, and any connection that has been idle for
+	 *   longer than this.idle_timeout_millis or fails validation is closed and replaced
+	 * - the connection must be handed back with giveBack(), even if the caller hit an error while using it
+	 * @return - returns a Connection instance that is ready to use
+	 * @throws SQLException - if the pool is closed, the wait timed out, or a new connection could not be opened
+	 */
+	public Connection borrow() throws SQLException {
+		if (this.closed) {
+			throw new SQLException("The connection pool has been closed");
+		}
+		long wait_start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = this.permits.tryAcquire(this.borrow_timeout_millis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException err) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a pooled connection", err);
+		}
+		this.recordBorrowWait(System.nanoTime() - wait_start);
+		if (!acquired) {
+			throw new SQLException(
+				"Timed out after " + this.borrow_timeout_millis + " ms waiting for one of " +
+				this.max_size + " pooled connections"
+			);
+		}
+		try {
+			Connection connection = this.takeIdleConnection();
+			if (connection == null) {
+				connection = DriverManager.getConnection(this.database_address, this.user, this.pass);
+				this.connections_created.incrementAndGet();
+			}
+			this.active_count.incrementAndGet();
+			return connection;
+		} catch (SQLException err) {
+			this.permits.release();
+			throw err;
+		}
+	}
+
+
+	/**
+	 * giveBack - a public method that returns a borrowed connection to the pool
+	 * - connections that are broken, or left in the middle of a transaction, are closed instead of being
+	 *   reused so the next borrower always starts from a clean auto-commit connection
+	 * @param connection - the Connection instance previously obtained from borrow()
+	 * @return - returns nothing (void)
+	 */
+	public void giveBack(Connection connection) {
+		if (connection == null) {
+			return;
+		}
+		this.active_count.decrementAndGet();
+		try {
+			boolean reusable = !this.closed && !connection.isClosed();
+			if (reusable && !connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			if (reusable) {
+				this.idle_connections.offerFirst(new PooledConnection(connection));
+			} else {
+				this.closeQuietly(connection);
+			}
+		} catch (SQLException err) {
+			this.closeQuietly(connection);
+		} finally {
+			this.permits.release();
+		}
+		this.evictIdleConnections();
+	}
+
+
+	/**
+	 * takeIdleConnection - a private helper method that pops idle connections (most recently used first)
+	 * until one is found that is both fresh and valid
+	 * @return - returns a usable idle Connection, or null if none is left in the pool
+	 */
+	private Connection takeIdleConnection() {
+		PooledConnection pooled = this.idle_connections.pollFirst();
+		long now = System.currentTimeMillis();
+		while (pooled != null) {
+			boolean expired = (now - pooled.last_used_millis) > this.idle_timeout_millis;
+			if (!expired && this.isValid(pooled.connection)) {
+				return pooled.connection;
+			}
+			this.connections_evicted.incrementAndGet();
+			this.closeQuietly(pooled.connection);
+			pooled = this.idle_connections.pollFirst();
+		}
+		return null;
+	}
+
+
+	/**
+	 * evictIdleConnections - a private helper method that closes connections at the cold end of the idle
+	 * deque which have not been used within this.idle_timeout_millis
+	 * @return - returns nothing (void)
+	 */
+	private void evictIdleConnections() {
+		long now = System.currentTimeMillis();
+		PooledConnection oldest = this.idle_connections.peekLast();
+		while ((oldest != null) && ((now - oldest.last_used_millis) > this.idle_timeout_millis)) {
+			if (this.idle_connections.removeLastOccurrence(oldest)) {
+				this.connections_evicted.incrementAndGet();
+				this.closeQuietly(oldest.connection);
+			}
+			oldest = this.idle_connections.peekLast();
+		}
+	}
+
+
+	/**
+	 * isValid - a private helper method that checks that a connection is still alive before handing it out
+	 * @param connection - the Connection instance to check
+	 * @return - returns true if the driver reports the connection as valid, returns false otherwise
+	 */
+	private boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(this.validation_timeout_seconds);
+		} catch (SQLException err) {
+			return false;
+		}
+	}
+
+
+	/**
+	 * recordBorrowWait - a private helper method that adds the time spent waiting for a connection to the
+	 * pool metrics
+	 * @param wait_nanos - the time spent waiting, in nanoseconds
+	 * @return - returns nothing (void)
+	 */
+	private void recordBorrowWait(long wait_nanos) {
+		this.borrow_count.incrementAndGet();
+		this.total_borrow_wait_nanos.addAndGet(wait_nanos);
+		this.max_borrow_wait_nanos.accumulateAndGet(wait_nanos, Math::max);
+	}
+
+
+	private void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException err) {
+			err.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * getMaxSize - a public method that returns the largest number of connections that can be borrowed at once
+	 * @return - the size of the pool
+	 */
+	public int getMaxSize() {
+		return this.max_size;
+	}
+
+
+	/**
+	 * getActiveCount - a public method that returns the number of connections currently borrowed
+	 * @return - the number of borrowed connections
+	 */
+	public int getActiveCount() {
+		return this.active_count.get();
+	}
+
+
+	/**
+	 * getIdleCount - a public method that returns the number of open connections waiting in the pool
+	 * @return - the number of idle connections
+	 */
+	public int getIdleCount() {
+		return this.idle_connections.size();
+	}
+
+
+	/**
+	 * getMetrics - a public method that summarizes the pool's usage so the pool size can be tuned under load
+	 * @return - a String with the borrow count, the average and maximum borrow wait times, the active and idle
+	 * counts, and the number of connections created and evicted
+	 */
+	public String getMetrics() {
+		long borrows = this.borrow_count.get();
+		double average_wait_millis = 0.0;
+		if (borrows > 0) {
+			average_wait_millis = (this.total_borrow_wait_nanos.get() / (double) borrows) / 1000000.0;
+		}
+		double max_wait_millis = this.max_borrow_wait_nanos.get() / 1000000.0;
+		return String.format(
+			"pool size=%d, borrows=%d, avg borrow wait=%.3f ms, max borrow wait=%.3f ms, active=%d, idle=%d, " +
+			"created=%d, evicted=%d",
+			this.max_size, borrows, average_wait_millis, max_wait_millis, this.getActiveCount(),
+			this.getIdleCount(), this.connections_created.get(), this.connections_evicted.get()
+		);
+	}
+
+
+	/**
+	 * close - a public method that closes every idle connection and stops the pool from handing out new ones
+	 * (borrowed connections are closed as they are given back)
+	 * @return - returns nothing (void)
+	 */
+	public void close() {
+		this.closed = true;
+		PooledConnection pooled = this.idle_connections.pollFirst();
+		while (pooled != null) {
+			this.closeQuietly(pooled.connection);
+			pooled = this.idle_connections.pollFirst();
+		}
+	}
+
+
+}
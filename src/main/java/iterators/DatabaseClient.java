@@ -1,46 +1,400 @@
 package iterators;
 import java.lang.*;
 import java.util.*;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
 import javax.sql.*;
 import java.sql.*;
 import com.mysql.cj.jdbc.Driver;
 
 
-class DatabaseClient {
+class DatabaseClient implements StorageBackend {
 	private String dbms_name;
 	private String host_name;
 	private String port_no;
 	private String database_name;
 	private String user;
 	private String pass;
+	private Properties tuning_config;
+	private ConnectionPool connection_pool;
+	private HashSet<String> known_tables;
+	private int batch_size;
+	private int commit_interval;
+	private boolean upsert_ingest;
 
 
 	public DatabaseClient(String dbms_name, String host_name, String port_no, String database_name, String user, String pass) {
+		this(dbms_name, host_name, port_no, database_name, user, pass, new Properties());
+	}
+
+
+	public DatabaseClient(
+		String dbms_name, String host_name, String port_no, String database_name, String user, String pass,
+		Properties tuning_config
+	) {
 		this.dbms_name = dbms_name;
 		this.host_name = host_name;
 		this.port_no = port_no;
 		this.database_name = database_name;
 		this.user = user;
 		this.pass = pass;
+		this.tuning_config = tuning_config;
+		this.connection_pool = new ConnectionPool(
+			this.getDatabaseAddress(), this.user, this.pass,
+			this.getNumFromConfig("pool_max_size", 4),
+			this.getNumFromConfig("pool_idle_timeout_seconds", 300) * 1000L,
+			this.getNumFromConfig("pool_borrow_timeout_seconds", 30) * 1000L,
+			this.getNumFromConfig("pool_validation_timeout_seconds", 5)
+		);
+		this.batch_size = this.getNumFromConfig("batch_size", 500);
+		this.commit_interval = this.getNumFromConfig("commit_interval", 5000);
+		this.upsert_ingest = Boolean.parseBoolean(this.tuning_config.getProperty("upsert_ingest", "false"));
+		this.known_tables = new HashSet<>();
+		String tables = this.tuning_config.getProperty("tables");
+		if (tables != null) {
+			for (String table: tables.split(";")) {
+				this.known_tables.add(table.strip());
+			}
+		}
+	}
+
+
+	/**
+	 * getNumFromConfig - a private helper method that reads an optional integer setting from the tuning
+	 * properties passed to the constructor (normally the contents of database.properties)
+	 * @param config_var_name - the name of the setting to look for
+	 * @param default_value - the value to use if the setting is missing
+	 * @return - returns the parsed integer, or default_value if the setting is not present
+	 */
+	private int getNumFromConfig(final String config_var_name, int default_value) {
+		String value = this.tuning_config.getProperty(config_var_name);
+		if (value == null) {
+			return default_value;
+		}
+		return Integer.parseInt(value.trim());
+	}
+
+
+	/**
+	 * getDatabaseAddress - a package-private helper method that builds the JDBC url from the connection settings
+	 * - server-side prepared statements are cached per connection, and batched inserts are rewritten by the
+	 *   driver into multi-row INSERT statements (the options can be overridden with jdbc_url_options)
+	 * - in bulk load mode, LOAD DATA LOCAL INFILE is allowed for files inside the spool directory only
+	 * - empty options (a blank jdbc_url_options, or stray '&'s in it) are left out of the query string
+	 * @return - a String representing the JDBC url of the database
+	 */
+	String getDatabaseAddress() {
+		String url_options = this.tuning_config.getProperty(
+			"jdbc_url_options", "useServerPrepStmts=true&cachePrepStmts=true&rewriteBatchedStatements=true"
+		);
+		String database_address = "jdbc:" + this.dbms_name + "://" + this.host_name + ":" + this.port_no + "/" +
+					this.database_name;
+		ArrayList<String> query_parts = new ArrayList<>();
+		for (String url_option: url_options.split("&")) {
+			if (!(url_option.isBlank())) {
+				query_parts.add(url_option.strip());
+			}
+		}
+		if (this.tuning_config.getProperty("load_mode", "batched").equals("bulk")) {
+			String spool_directory = this.getSpoolDirectory().toString();
+			query_parts.add("allowLoadLocalInfileInPath=" + URLEncoder.encode(spool_directory, StandardCharsets.UTF_8));
+		}
+		if (!(query_parts.isEmpty())) {
+			database_address += "?" + String.join("&", query_parts);
+		}
+		return database_address;
+	}
+
+
+	/**
+	 * checkTableName - a private helper method that makes sure a table name can safely be placed in sql text
+	 * (table names cannot be bound as statement parameters)
+	 * @param table_name - the name of the table
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the name is not one of the tables listed in database.properties
+	 */
+	private void checkTableName(String table_name) throws SQLException {
+		boolean listed = this.known_tables.isEmpty() || this.known_tables.contains(table_name);
+		if ((table_name == null) || !(table_name.matches("[A-Za-z0-9_]+")) || !listed) {
+			throw new SQLException("Unknown table: " + table_name);
+		}
+	}
+
+
+	/**
+	 * openBatchInserter - a public method that opens a batched insert pipeline into table_name on its own
+	 * pooled connection, using the batch_size and commit_interval settings from database.properties
+	 * - rows are never duplicated on the natural key, so re-running a load of the same product files is safe:
+	 *   with upsert_ingest=true a repeated row overwrites the stored one, otherwise the stored one is kept
+	 * - the caller must close the returned BatchInserter (ideally with try-with-resources)
+	 * @param table_name - the name of the table to insert into
+	 * @return - a BatchInserter instance
+	 * @throws SQLException - if the table is unknown or the statement could not be prepared
+	 */
+	public BatchInserter openBatchInserter(String table_name) throws SQLException {
+		this.checkTableName(table_name);
+		return new BatchInserter(
+			this.connection_pool, table_name, this.batch_size, this.commit_interval, this.upsert_ingest
+		);
+	}
+
+
+	/**
+	 * openWriter - a public method that opens a batched insert pipeline into table_name (see openBatchInserter)
+	 * @param table_name - the name of the table to insert into
+	 * @return - a RecordWriter instance, which the caller must close
+	 * @throws SQLException - if the table is unknown or the statement could not be prepared
+	 */
+	public RecordWriter openWriter(String table_name) throws SQLException {
+		return this.openBatchInserter(table_name);
+	}
+
+
+	/**
+	 * rowToRecord - a private helper method that copies the current row of a result set selecting
+	 * BatchInserter.COLUMNS into a HashMap keyed by column name
+	 * @param rows - the ResultSet, positioned on a row
+	 * @return - a HashMap<String, String> with the text of every column (null for NULL columns)
+	 * @throws SQLException - if the row could not be read
+	 */
+	private static HashMap<String, String> rowToRecord(ResultSet rows) throws SQLException {
+		HashMap<String, String> record = new HashMap<>();
+		for (int i = 0; i < BatchInserter.COLUMNS.length; ++i) {
+			record.put(BatchInserter.COLUMNS[i], rows.getString(i + 1));
+		}
+		return record;
+	}
+
+
+	/**
+	 * latestPrice - a public method that looks up the most recently collected row for a product in a given
+	 * store (a single range read on natural_key_idx)
+	 * @param table_name - the name of the table to search
+	 * @param store_chain_name - the store chain
+	 * @param township_location - the township of the store
+	 * @param product_title - the product title
+	 * @param product_size - the package size text as scraped
+	 * @return - the row keyed by column name, or null if the product was never seen in that store
+	 * @throws SQLException - if the table is unknown or the query failed
+	 */
+	public HashMap<String, String> latestPrice(
+		String table_name, String store_chain_name, String township_location, String product_title,
+		String product_size
+	) throws SQLException {
+		this.checkTableName(table_name);
+		String sql_text = "SELECT " + String.join(", ", BatchInserter.COLUMNS) + " FROM " + table_name +
+			" WHERE store_chain_name = ? AND township_location = ? AND product_title = ? AND product_size = ?" +
+			" ORDER BY date_collected DESC LIMIT 1";
+		Connection con = this.connection_pool.borrow();
+		try (PreparedStatement stmt = con.prepareStatement(sql_text)) {
+			stmt.setString(1, store_chain_name);
+			stmt.setString(2, township_location);
+			stmt.setString(3, product_title);
+			stmt.setString(4, product_size);
+			try (ResultSet rows = stmt.executeQuery()) {
+				return rows.next() ? rowToRecord(rows) : null;
+			}
+		} finally {
+			this.connection_pool.giveBack(con);
+		}
+	}
+
+
+	/**
+	 * scanHistory - a public method that streams every row collected for a product in a given store, oldest
+	 * first, in index order from product_history_idx
+	 * @param table_name - the name of the table to search
+	 * @param store_chain_name - the store chain
+	 * @param township_location - the township of the store
+	 * @param product_title - the product title
+	 * @param consumer - called once per row, with the row keyed by column name
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the table is unknown or the query failed
+	 */
+	public void scanHistory(
+		String table_name, String store_chain_name, String township_location, String product_title,
+		Consumer<HashMap<String, String>> consumer
+	) throws SQLException {
+		this.checkTableName(table_name);
+		String sql_text = "SELECT " + String.join(", ", BatchInserter.COLUMNS) + " FROM " + table_name +
+			" WHERE store_chain_name = ? AND township_location = ? AND product_title = ?" +
+			" ORDER BY date_collected, product_size";
+		Connection con = this.connection_pool.borrow();
+		try (PreparedStatement stmt = con.prepareStatement(
+			sql_text, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+		)) {
+			// Integer.MIN_VALUE makes Connector/J stream the rows instead of reading them all into memory
+			stmt.setFetchSize(Integer.MIN_VALUE);
+			stmt.setString(1, store_chain_name);
+			stmt.setString(2, township_location);
+			stmt.setString(3, product_title);
+			try (ResultSet rows = stmt.executeQuery()) {
+				while (rows.next()) {
+					consumer.accept(rowToRecord(rows));
+				}
+			}
+		} finally {
+			this.connection_pool.giveBack(con);
+		}
+	}
+
+
+	/**
+	 * rotatePartitions - a public method that runs the monthly partition rotation on every table listed in
+	 * database.properties, creating partitions partition_months_ahead months ahead and dropping partitions
+	 * older than partition_months_to_keep months (0 keeps everything)
+	 * @return - returns nothing (void)
+	 */
+	public void rotatePartitions() {
+		PartitionRotator rotator = new PartitionRotator(
+			this.connection_pool, this.getNumFromConfig("partition_months_ahead", 3),
+			this.getNumFromConfig("partition_months_to_keep", 0)
+		);
+		for (String table_name: this.known_tables) {
+			try {
+				this.checkTableName(table_name);
+				rotator.rotate(table_name);
+			} catch (SQLException err) {
+				err.printStackTrace();
+			}
+		}
+	}
+
+
+	/**
+	 * openLastSeenPriceCache - a public method that opens the last seen price cache used for change-only
+	 * ingestion, warmed with the last recorded price of every product
+	 * - the caller must close the returned cache so the remaining updates are written back
+	 * @return - a LastSeenPriceCache instance
+	 * @throws SQLException - if the cache could not be warmed
+	 */
+	public LastSeenPriceCache openLastSeenPriceCache() throws SQLException {
+		return new LastSeenPriceCache(this.connection_pool, this.batch_size);
+	}
+
+
+	/**
+	 * getSpoolDirectory - a public method that returns the directory where bulk load spool files are written
+	 * (bulk_spool_dir in database.properties, or the temporary directory of the JVM)
+	 * @return - an absolute Path instance
+	 */
+	public Path getSpoolDirectory() {
+		String spool_directory = this.tuning_config.getProperty(
+			"bulk_spool_dir", System.getProperty("java.io.tmpdir")
+		);
+		return Paths.get(spool_directory).toAbsolutePath();
 	}
 
 
 	/**
-	 * query - a public method that will connect to the database and execute the sql query passed in
+	 * loadSpoolFile - a public method that loads a tab separated spool file (as written by BulkLoader) into
+	 * table_name with one LOAD DATA LOCAL INFILE statement
+	 * - rows the server cannot convert, or that collide with a unique key, are skipped (IGNORE) rather than
+	 *   aborting the whole load, so the difference between the rows spooled and the rows loaded is the
+	 *   number of rejected rows
+	 * @param table_name - the name of the table to load
+	 * @param spool_path - the Path of the spool file (must be inside the spool directory)
+	 * @return - the number of rows loaded
+	 * @throws SQLException - if the table is unknown or the statement failed
+	 */
+	public long loadSpoolFile(String table_name, Path spool_path) throws SQLException {
+		this.checkTableName(table_name);
+		String escaped_path = spool_path.toAbsolutePath().toString().replace("\\", "\\\\").replace("'", "\\'");
+		String sql_text = "LOAD DATA LOCAL INFILE '" + escaped_path + "' IGNORE INTO TABLE " + table_name +
+			" CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (" +
+			String.join(", ", BatchInserter.COLUMNS) + ")";
+		Connection con = this.connection_pool.borrow();
+		try (Statement stmt = con.createStatement()) {
+			return stmt.executeLargeUpdate(sql_text);
+		} finally {
+			this.connection_pool.giveBack(con);
+		}
+	}
+
+
+	/**
+	 * query - a public method that will borrow a pooled connection and execute the sql query passed in
 	 * @param sql_text - the String representing the sql you intend to run
 	 * @return - returns nothing (void)
 	 */
 	public void query(String sql_text) {
-		String database_address = "jdbc:" + this.dbms_name + "://" + this.host_name + ":" +
-					this.port_no + "/" + this.database_name;
-		try (Connection con = DriverManager.getConnection(database_address, this.user, this.pass)) {
+		Connection con = null;
+		try {
+			con = this.connection_pool.borrow();
 			try (Statement stmt = con.createStatement()) {
 				stmt.execute(sql_text);
 			}
 		} catch (SQLException err) {
 			err.printStackTrace();
+		} finally {
+			this.connection_pool.giveBack(con);
 		}
 	}
 
 
+	/**
+	 * getMaxConnections - a public method that returns the number of connections that can be in use at once
+	 * (pool_max_size in database.properties)
+	 * @return - the size of the connection pool
+	 */
+	public int getMaxConnections() {
+		return this.connection_pool.getMaxSize();
+	}
+
+
+	/**
+	 * hasNaturalKey - a public method that checks whether a table has the unique natural_key_idx (added by
+	 * migrations/004_natural_key.sql), without which a row written twice is stored twice
+	 * @param table_name - the name of the table
+	 * @return - returns true if the table has the index
+	 * @throws SQLException - if the table is unknown or its indexes could not be read
+	 */
+	public boolean hasNaturalKey(String table_name) throws SQLException {
+		this.checkTableName(table_name);
+		Connection con = this.connection_pool.borrow();
+		try (ResultSet indexes = con.getMetaData().getIndexInfo(con.getCatalog(), null, table_name, true, false)) {
+			while (indexes.next()) {
+				if ("natural_key_idx".equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			this.connection_pool.giveBack(con);
+		}
+	}
+
+
+	/**
+	 * getMaxWriters - a public method that returns the number of writers that can be open at once, which is
+	 * one per pooled connection
+	 * @return - the size of the connection pool
+	 */
+	public int getMaxWriters() {
+		return this.getMaxConnections();
+	}
+
+
+	/**
+	 * getPoolMetrics - a public method that reports the borrow wait times and the active and idle counts of
+	 * the connection pool
+	 * @return - a String summarizing the connection pool metrics
+	 */
+	public String getPoolMetrics() {
+		return this.connection_pool.getMetrics();
+	}
+
+
+	/**
+	 * close - a public method that closes all pooled connections (to be called once loading is finished)
+	 * @return - returns nothing (void)
+	 */
+	public void close() {
+		this.connection_pool.close();
+	}
+
+
 }
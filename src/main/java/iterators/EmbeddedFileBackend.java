@@ -0,0 +1,363 @@
+package iterators;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import iterators.util.ProductRecord;
+
+
+class EmbeddedFileBackend implements StorageBackend {
+	private static final int DATE_COLUMN = Arrays.asList(BatchInserter.COLUMNS).indexOf("date_collected");
+	private static final int[] PRODUCT_KEY_COLUMNS = {
+		Arrays.asList(BatchInserter.COLUMNS).indexOf("store_chain_name"),
+		Arrays.asList(BatchInserter.COLUMNS).indexOf("township_location"),
+		Arrays.asList(BatchInserter.COLUMNS).indexOf("product_title"),
+		Arrays.asList(BatchInserter.COLUMNS).indexOf("product_size")
+	};
+	private Path data_directory;
+	private int batch_size;
+	private int max_writers;
+	// one lock per table file, held while appending to it or reading it
+	private HashMap<String, Object> table_locks;
+	// the latest row of every product, per table (only built once a table is first looked up)
+	private ConcurrentHashMap<String, HashMap<String, String[]>> latest_rows;
+
+
+	/**
+	 * EmbeddedFileBackend - an in-process storage backend that keeps every category table in a tab separated
+	 * file (data_directory/table_name.tsv, in the same format as the bulk load spool files) so the whole
+	 * pipeline can run without a database server
+	 * - rows are only ever appended; a row with the same natural key (store, product, size and collection
+	 *   date) as an earlier row replaces it when read back, the same as upsert_ingest=true on MySQL
+	 * @param data_directory - the directory holding the table files (created if it does not exist)
+	 * @param tables - the names of the tables that may be written to
+	 * @param batch_size - the number of rows a writer buffers before appending them to the table file
+	 * @param max_writers - the number of writers that can usefully append at the same time
+	 */
+	EmbeddedFileBackend(Path data_directory, Collection<String> tables, int batch_size, int max_writers) {
+		assert (batch_size > 0);
+		assert (max_writers > 0);
+		this.data_directory = data_directory.toAbsolutePath();
+		this.batch_size = batch_size;
+		this.max_writers = max_writers;
+		this.table_locks = new HashMap<>();
+		this.latest_rows = new ConcurrentHashMap<>();
+		for (String table: tables) {
+			this.table_locks.put(table.strip(), new Object());
+		}
+	}
+
+
+	/**
+	 * tableLock - a private helper method that makes sure a table name is one of the known tables (and is
+	 * safe to use as a file name) and returns the lock guarding its file
+	 * @param table_name - the name of the table
+	 * @return - the Object to synchronize on while using the table file
+	 * @throws SQLException - if the name is not one of the known tables
+	 */
+	private Object tableLock(String table_name) throws SQLException {
+		Object table_lock = (table_name == null) ? null : this.table_locks.get(table_name);
+		if ((table_lock == null) || !(table_name.matches("[A-Za-z0-9_]+"))) {
+			throw new SQLException("Unknown table: " + table_name);
+		}
+		return table_lock;
+	}
+
+
+	private Path tablePath(String table_name) {
+		return this.data_directory.resolve(table_name + ".tsv");
+	}
+
+
+	/**
+	 * unescapeField - a static helper method that reverses BulkLoader.escapeField()
+	 * @param field - the escaped field
+	 * @return - the original value, or null if field is \N
+	 */
+	static String unescapeField(String field) {
+		if (field.equals("\\N")) {
+			return null;
+		}
+		if (field.indexOf('\\') < 0) {
+			return field;
+		}
+		StringBuilder value = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); ++i) {
+			char character = field.charAt(i);
+			if ((character != '\\') || (i + 1 == field.length())) {
+				value.append(character);
+				continue;
+			}
+			i += 1;
+			switch (field.charAt(i)) {
+				case 't':
+					value.append('\t');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case '0':
+					value.append('\0');
+					break;
+				default:
+					value.append(field.charAt(i));
+			}
+		}
+		return value.toString();
+	}
+
+
+	/**
+	 * parseRow - a static helper method that splits one line of a table file back into its column values
+	 * @param line - the line, without the line terminator
+	 * @return - a String[] aligned with BatchInserter.COLUMNS
+	 */
+	static String[] parseRow(String line) {
+		String[] fields = line.split("\t", -1);
+		String[] values = new String[BatchInserter.COLUMNS.length];
+		for (int i = 0; (i < fields.length) && (i < values.length); ++i) {
+			values[i] = unescapeField(fields[i]);
+		}
+		return values;
+	}
+
+
+	private static String productKey(String[] values) {
+		StringBuilder product_key = new StringBuilder();
+		for (int column: PRODUCT_KEY_COLUMNS) {
+			product_key.append(values[column] == null ? "" : values[column]).append('\u001f');
+		}
+		return product_key.toString();
+	}
+
+
+	private static HashMap<String, String> rowToRecord(String[] values) {
+		HashMap<String, String> record = new HashMap<>();
+		for (int i = 0; i < BatchInserter.COLUMNS.length; ++i) {
+			record.put(BatchInserter.COLUMNS[i], values[i]);
+		}
+		return record;
+	}
+
+
+	/**
+	 * readRows - a private helper method that passes every row of a table file to consumer, in the order
+	 * the rows were written (the caller must hold the table lock)
+	 * @param table_name - the (already validated) name of the table
+	 * @param consumer - called once per row
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the table file could not be read
+	 */
+	private void readRows(String table_name, Consumer<String[]> consumer) throws SQLException {
+		Path table_path = this.tablePath(table_name);
+		if (!(Files.exists(table_path))) {
+			return;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(table_path, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			while (line != null) {
+				if (!(line.isEmpty())) {
+					consumer.accept(parseRow(line));
+				}
+				line = reader.readLine();
+			}
+		} catch (IOException err) {
+			throw new SQLException("Could not read " + table_path, err);
+		}
+	}
+
+
+	/**
+	 * rememberLatest - a private helper method that keeps a row in the latest row index if it is at least as
+	 * recent as the row already there for the same product (the caller must hold the table lock)
+	 * @param latest - the latest row index of the table
+	 * @param values - the row
+	 * @return - returns nothing (void)
+	 */
+	private static void rememberLatest(HashMap<String, String[]> latest, String[] values) {
+		String product_key = productKey(values);
+		String[] current = latest.get(product_key);
+		if ((current == null) || (current[DATE_COLUMN].compareTo(values[DATE_COLUMN]) <= 0)) {
+			latest.put(product_key, values);
+		}
+	}
+
+
+	/**
+	 * openWriter - a public method that opens a buffered appender for a table file
+	 * @param table_name - the name of the table to write to
+	 * @return - a RecordWriter instance, which the caller must close
+	 * @throws SQLException - if the table is unknown or the data directory could not be created
+	 */
+	public RecordWriter openWriter(String table_name) throws SQLException {
+		this.tableLock(table_name);
+		try {
+			Files.createDirectories(this.data_directory);
+		} catch (IOException err) {
+			throw new SQLException("Could not create " + this.data_directory, err);
+		}
+		return new TableFileWriter(table_name);
+	}
+
+
+	/**
+	 * latestPrice - a public method that looks up the most recently collected row for a product in a given
+	 * store, reading the whole table file into the latest row index on the first lookup
+	 * @param table_name - the name of the table to search
+	 * @param store_chain_name - the store chain
+	 * @param township_location - the township of the store
+	 * @param product_title - the product title
+	 * @param product_size - the package size text as scraped
+	 * @return - the row keyed by column name, or null if the product was never seen in that store
+	 * @throws SQLException - if the table is unknown or its file could not be read
+	 */
+	public HashMap<String, String> latestPrice(
+		String table_name, String store_chain_name, String township_location, String product_title,
+		String product_size
+	) throws SQLException {
+		String[] key_values = new String[BatchInserter.COLUMNS.length];
+		key_values[PRODUCT_KEY_COLUMNS[0]] = store_chain_name;
+		key_values[PRODUCT_KEY_COLUMNS[1]] = township_location;
+		key_values[PRODUCT_KEY_COLUMNS[2]] = product_title;
+		key_values[PRODUCT_KEY_COLUMNS[3]] = product_size;
+		synchronized (this.tableLock(table_name)) {
+			HashMap<String, String[]> latest = this.latest_rows.get(table_name);
+			if (latest == null) {
+				HashMap<String, String[]> table_latest = new HashMap<>();
+				this.readRows(table_name, values -> rememberLatest(table_latest, values));
+				this.latest_rows.put(table_name, table_latest);
+				latest = table_latest;
+			}
+			String[] values = latest.get(productKey(key_values));
+			return (values == null) ? null : rowToRecord(values);
+		}
+	}
+
+
+	/**
+	 * scanHistory - a public method that passes every row collected for a product in a given store to
+	 * consumer, oldest collection date first (one full pass over the table file)
+	 * @param table_name - the name of the table to search
+	 * @param store_chain_name - the store chain
+	 * @param township_location - the township of the store
+	 * @param product_title - the product title
+	 * @param consumer - called once per row, with the row keyed by column name
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the table is unknown or its file could not be read
+	 */
+	public void scanHistory(
+		String table_name, String store_chain_name, String township_location, String product_title,
+		Consumer<HashMap<String, String>> consumer
+	) throws SQLException {
+		// keyed by collection date then package size, so later rows replace earlier ones with the same key
+		TreeMap<String, String[]> history = new TreeMap<>();
+		synchronized (this.tableLock(table_name)) {
+			this.readRows(table_name, values -> {
+				if (Objects.equals(values[PRODUCT_KEY_COLUMNS[0]], store_chain_name) &&
+				    Objects.equals(values[PRODUCT_KEY_COLUMNS[1]], township_location) &&
+				    Objects.equals(values[PRODUCT_KEY_COLUMNS[2]], product_title)) {
+					String size = (values[PRODUCT_KEY_COLUMNS[3]] == null) ? "" : values[PRODUCT_KEY_COLUMNS[3]];
+					history.put(values[DATE_COLUMN] + '\u001f' + size, values);
+				}
+			});
+		}
+		for (String[] values: history.values()) {
+			consumer.accept(rowToRecord(values));
+		}
+	}
+
+
+	/**
+	 * hasNaturalKey - a public method that returns true, since a row replaces any earlier row with the same
+	 * natural key when the table is read back
+	 */
+	public boolean hasNaturalKey(String table_name) {
+		return true;
+	}
+
+
+	public int getMaxWriters() {
+		return this.max_writers;
+	}
+
+
+	public void close() {
+		this.latest_rows.clear();
+	}
+
+
+	/**
+	 * TableFileWriter - buffers formatted rows and appends them to the table file batch_size rows at a time
+	 */
+	private class TableFileWriter implements RecordWriter {
+		private String table_name;
+		private ArrayList<String[]> pending_rows;
+		private StringBuilder pending_lines;
+		private long rows_written;
+
+		TableFileWriter(String table_name) {
+			this.table_name = table_name;
+			this.pending_rows = new ArrayList<>();
+			this.pending_lines = new StringBuilder();
+			this.rows_written = 0;
+		}
+
+		public void add(ProductRecord product_info) throws SQLException {
+			String line = BulkLoader.formatRow(BatchInserter.columnValues(product_info));
+			this.pending_lines.append(line).append('\n');
+			this.pending_rows.add(parseRow(line));
+			if (this.pending_rows.size() >= EmbeddedFileBackend.this.batch_size) {
+				this.flush();
+			}
+		}
+
+		public void flush() throws SQLException {
+			if (this.pending_rows.isEmpty()) {
+				return;
+			}
+			Path table_path = EmbeddedFileBackend.this.tablePath(this.table_name);
+			synchronized (EmbeddedFileBackend.this.tableLock(this.table_name)) {
+				try {
+					Files.write(
+						table_path, this.pending_lines.toString().getBytes(StandardCharsets.UTF_8),
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND
+					);
+				} catch (IOException err) {
+					throw new SQLException("Could not append to " + table_path, err);
+				}
+				HashMap<String, String[]> latest = EmbeddedFileBackend.this.latest_rows.get(this.table_name);
+				if (latest != null) {
+					for (String[] values: this.pending_rows) {
+						rememberLatest(latest, values);
+					}
+				}
+			}
+			this.rows_written += this.pending_rows.size();
+			this.pending_rows.clear();
+			this.pending_lines.setLength(0);
+		}
+
+		public long getRowsWritten() {
+			return this.rows_written;
+		}
+
+		public String getTableName() {
+			return this.table_name;
+		}
+
+		public void close() throws SQLException {
+			this.flush();
+		}
+	}
+
+
+}
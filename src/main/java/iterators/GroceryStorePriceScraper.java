@@ -1,8 +1,20 @@
 package iterators;
-import java.util.HashMap;
+import java.util.ArrayList;
 import javax.xml.stream.XMLStreamException;
+import iterators.util.ProductRecord;
 
 public interface GroceryStorePriceScraper {
-	public HashMap<String, String> next() throws XMLStreamException;
+	public ProductRecord next() throws XMLStreamException;
 	public boolean hasNext() throws XMLStreamException;
+
+	/**
+	 * nextBatch - returns up to max records (fewer only once the records run out, an empty list after that)
+	 */
+	public default ArrayList<ProductRecord> nextBatch(int max) throws XMLStreamException {
+		ArrayList<ProductRecord> batch = new ArrayList<>(Math.min(max, 1024));
+		while ((batch.size() < max) && this.hasNext()) {
+			batch.add(this.next());
+		}
+		return batch;
+	}
 }
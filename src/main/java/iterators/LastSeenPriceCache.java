@@ -0,0 +1,305 @@
+package iterators;
+import java.lang.*;
+import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.time.LocalDate;
+import iterators.util.ProductRecord;
+
+
+class LastSeenPriceCache implements AutoCloseable {
+	private static final String WARM_UP_SQL = "SELECT product_key, price, last_seen FROM last_seen_prices";
+	private static final String PRICE_CHANGE_SQL =
+		"INSERT INTO last_seen_prices (product_key, category_table, store_chain_name, township_location, " +
+		"product_title, product_size, price, first_seen, last_seen) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+		"ON DUPLICATE KEY UPDATE category_table = VALUES(category_table), price = VALUES(price), " +
+		"first_seen = VALUES(first_seen), last_seen = VALUES(last_seen)";
+	private static final String HEARTBEAT_SQL =
+		"INSERT INTO last_seen_prices (product_key, last_seen) VALUES (?, ?) " +
+		"ON DUPLICATE KEY UPDATE last_seen = GREATEST(COALESCE(last_seen, VALUES(last_seen)), VALUES(last_seen))";
+	private ConnectionPool connection_pool;
+	private Connection connection;
+	private PreparedStatement price_change_statement;
+	private PreparedStatement heartbeat_statement;
+	private HashMap<String, SeenPrice> last_seen_prices;
+	// the prices handed out by priceChanged() whose rows have not been confirmed (or discarded) yet
+	private HashMap<String, SeenPrice> pending_prices;
+	private long change_sequence;
+	private MessageDigest digest;
+	private int batch_size;
+	private int staged_rows;
+	private long changed_count;
+	private long unchanged_count;
+	private long heartbeat_count;
+
+
+	/**
+	 * SeenPrice - the last price recorded for a product, and the last day it was seen at that price
+	 */
+	private static class SeenPrice {
+		private String price;
+		private long last_seen_day;
+		// the order in which the price changes were handed out (0 for prices read from the table)
+		private long sequence;
+
+		SeenPrice(String price, long last_seen_day, long sequence) {
+			this.price = price;
+			this.last_seen_day = last_seen_day;
+			this.sequence = sequence;
+		}
+	}
+
+
+	/**
+	 * PriceChange - a price change found by priceChanged(), to be passed to confirm() once the record's row is
+	 * committed to its category table, or to discard() if it could not be written
+	 */
+	static class PriceChange {
+		private String product_key;
+		private String table_name;
+		private ProductRecord product_info;
+		private java.sql.Date first_seen;
+		private SeenPrice seen_price;
+
+		private PriceChange(
+			String product_key, String table_name, ProductRecord product_info, java.sql.Date first_seen,
+			SeenPrice seen_price
+		) {
+			this.product_key = product_key;
+			this.table_name = table_name;
+			this.product_info = product_info;
+			this.first_seen = first_seen;
+			this.seen_price = seen_price;
+		}
+	}
+
+
+	/**
+	 * LastSeenPriceCache - borrows a connection for the lifetime of the cache and warms the cache with every
+	 * product's last recorded price from the last_seen_prices table
+	 * @param connection_pool - the pool to borrow the connection from
+	 * @param batch_size - the number of cache updates sent to the server per batch (must be larger than 0)
+	 * @throws SQLException - if the cache could not be warmed
+	 */
+	LastSeenPriceCache(ConnectionPool connection_pool, int batch_size) throws SQLException {
+		assert (batch_size > 0);
+		this.connection_pool = connection_pool;
+		this.batch_size = batch_size;
+		this.staged_rows = 0;
+		this.last_seen_prices = new HashMap<>();
+		this.pending_prices = new HashMap<>();
+		this.change_sequence = 0;
+		try {
+			this.digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException err) {
+			throw new IllegalStateException(err);
+		}
+		this.connection = connection_pool.borrow();
+		try {
+			try (Statement stmt = this.connection.createStatement();
+			     ResultSet rows = stmt.executeQuery(WARM_UP_SQL)) {
+				while (rows.next()) {
+					java.sql.Date last_seen = rows.getDate(3);
+					long last_seen_day = (last_seen == null) ? 0 : last_seen.toLocalDate().toEpochDay();
+					this.last_seen_prices.put(rows.getString(1), new SeenPrice(rows.getString(2), last_seen_day, 0));
+				}
+			}
+			this.connection.setAutoCommit(false);
+			this.price_change_statement = this.connection.prepareStatement(PRICE_CHANGE_SQL);
+			this.heartbeat_statement = this.connection.prepareStatement(HEARTBEAT_SQL);
+		} catch (SQLException err) {
+			this.connection_pool.giveBack(this.connection);
+			this.connection = null;
+			throw err;
+		}
+	}
+
+
+	/**
+	 * productKey - a private helper method that hashes the fields identifying a product in a given store
+	 * (store chain, township, product title and package size) into a 40 character hex key
+	 * @param product_info - the product information
+	 * @return - the SHA-1 of the identifying fields, as a hex String
+	 */
+	private String productKey(ProductRecord product_info) {
+		String[] key_values = {
+			product_info.getStoreChainName(), product_info.getTownshipLocation(), product_info.getProductTitle(),
+			product_info.getSize()
+		};
+		for (String value: key_values) {
+			this.digest.update((value == null ? "" : value).getBytes(StandardCharsets.UTF_8));
+			this.digest.update((byte) 0x1f);
+		}
+		byte[] hash = this.digest.digest();
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte hash_byte: hash) {
+			hex.append(Character.forDigit((hash_byte >> 4) & 0xf, 16)).append(Character.forDigit(hash_byte & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+
+	/**
+	 * priceChanged - a public method that checks a scraped record against the last price seen for the product
+	 * - if the product is new or its price changed, a PriceChange is returned, meaning the record should be
+	 *   inserted; the cache and the last_seen_prices table are only updated when the change is passed to
+	 *   confirm() after the record's row was committed, so a row that failed to be written is not suppressed
+	 *   by a price that was never recorded (later records of the product are checked against the pending
+	 *   price in the meantime, so one load does not insert the same change twice)
+	 * - otherwise the product's last_seen date is moved forward (at most once per day per product) and null
+	 *   is returned, meaning the record can be skipped
+	 * @param table_name - the category table the record belongs in
+	 * @param product_info - the scraped product information
+	 * @return - a PriceChange instance if the record should be inserted, null otherwise
+	 * @throws SQLException - if the staged cache updates could not be written
+	 */
+	public synchronized PriceChange priceChanged(String table_name, ProductRecord product_info)
+		throws SQLException {
+		String product_key = this.productKey(product_info);
+		String price = product_info.getPrice();
+		java.sql.Date date_collected = BatchInserter.parseCollectionDate(product_info.getDate());
+		if (date_collected == null) {
+			date_collected = java.sql.Date.valueOf(LocalDate.now());
+		}
+		long seen_day = date_collected.toLocalDate().toEpochDay();
+		SeenPrice pending_price = this.pending_prices.get(product_key);
+		if ((pending_price != null) && Objects.equals(pending_price.price, price)) {
+			// written to last_seen_prices along with the change when it is confirmed
+			this.unchanged_count += 1;
+			pending_price.last_seen_day = Math.max(pending_price.last_seen_day, seen_day);
+			return null;
+		}
+		SeenPrice seen_price = this.last_seen_prices.get(product_key);
+		if ((pending_price == null) && (seen_price != null) && Objects.equals(seen_price.price, price)) {
+			this.unchanged_count += 1;
+			if (seen_price.last_seen_day < seen_day) {
+				seen_price.last_seen_day = seen_day;
+				this.heartbeat_statement.setString(1, product_key);
+				this.heartbeat_statement.setDate(2, date_collected);
+				this.heartbeat_statement.addBatch();
+				this.heartbeat_count += 1;
+				this.stageRow();
+			}
+			return null;
+		}
+		this.change_sequence += 1;
+		SeenPrice changed_price = new SeenPrice(price, seen_day, this.change_sequence);
+		this.pending_prices.put(product_key, changed_price);
+		this.changed_count += 1;
+		return new PriceChange(product_key, table_name, product_info, date_collected, changed_price);
+	}
+
+
+	/**
+	 * confirm - a public method that records price changes whose rows were committed: the cache is updated and
+	 * the changes are written to last_seen_prices (and committed) right away
+	 * - a change older than the one already recorded for its product (confirmed out of order by another
+	 *   writer thread) is dropped
+	 * @param changes - the changes returned by priceChanged()
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the changes could not be written
+	 */
+	public synchronized void confirm(List<PriceChange> changes) throws SQLException {
+		for (PriceChange change: changes) {
+			if (this.pending_prices.get(change.product_key) == change.seen_price) {
+				this.pending_prices.remove(change.product_key);
+			}
+			SeenPrice recorded = this.last_seen_prices.get(change.product_key);
+			if ((recorded != null) && (recorded.sequence > change.seen_price.sequence)) {
+				continue;
+			}
+			this.last_seen_prices.put(change.product_key, change.seen_price);
+			ProductRecord product_info = change.product_info;
+			this.price_change_statement.setString(1, change.product_key);
+			this.price_change_statement.setString(2, change.table_name);
+			this.price_change_statement.setString(3, product_info.getStoreChainName());
+			this.price_change_statement.setString(4, product_info.getTownshipLocation());
+			this.price_change_statement.setString(5, product_info.getProductTitle());
+			this.price_change_statement.setString(6, product_info.getSize());
+			this.price_change_statement.setString(7, change.seen_price.price);
+			this.price_change_statement.setDate(8, change.first_seen);
+			this.price_change_statement.setDate(9, java.sql.Date.valueOf(LocalDate.ofEpochDay(change.seen_price.last_seen_day)));
+			this.price_change_statement.addBatch();
+			this.staged_rows += 1;
+		}
+		this.flush();
+	}
+
+
+	/**
+	 * discard - a public method that forgets price changes whose rows could not be written, so the next record
+	 * of each product is checked against its last recorded price again
+	 * @param changes - the changes returned by priceChanged()
+	 * @return - returns nothing (void)
+	 */
+	public synchronized void discard(List<PriceChange> changes) {
+		for (PriceChange change: changes) {
+			if (this.pending_prices.get(change.product_key) == change.seen_price) {
+				this.pending_prices.remove(change.product_key);
+			}
+		}
+	}
+
+
+	private void stageRow() throws SQLException {
+		this.staged_rows += 1;
+		if (this.staged_rows >= this.batch_size) {
+			this.flush();
+		}
+	}
+
+
+	/**
+	 * flush - a public method that writes the staged price changes and heartbeats back to last_seen_prices
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the updates could not be written
+	 */
+	public synchronized void flush() throws SQLException {
+		if (this.staged_rows == 0) {
+			return;
+		}
+		this.price_change_statement.executeBatch();
+		this.heartbeat_statement.executeBatch();
+		this.connection.commit();
+		this.staged_rows = 0;
+	}
+
+
+	/**
+	 * getMetrics - a public method that summarizes how many records were changed, unchanged or heartbeats
+	 * @return - a String with the cache metrics
+	 */
+	public synchronized String getMetrics() {
+		return String.format(
+			"last seen prices: cached=%d, changed=%d, unchanged=%d, heartbeats=%d",
+			this.last_seen_prices.size(), this.changed_count, this.unchanged_count, this.heartbeat_count
+		);
+	}
+
+
+	/**
+	 * close - a public method that flushes the staged updates and hands the connection back to the pool
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the last updates could not be written
+	 */
+	public synchronized void close() throws SQLException {
+		if (this.connection == null) {
+			return;
+		}
+		try {
+			this.flush();
+		} finally {
+			try {
+				this.price_change_statement.close();
+				this.heartbeat_statement.close();
+			} finally {
+				this.connection_pool.giveBack(this.connection);
+				this.connection = null;
+			}
+		}
+	}
+
+
+}
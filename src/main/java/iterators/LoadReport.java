@@ -0,0 +1,198 @@
+package iterators;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+
+class LoadReport {
+	private String load_mode;
+	private String run_started;
+	private ArrayList<TableLoad> table_loads;
+	private int worker_count;
+	private long wall_clock_millis;
+
+
+	/**
+	 * TableLoad - the outcome of loading a single category table
+	 */
+	static class TableLoad {
+		String table_name;
+		long rows_loaded;
+		long rows_rejected;
+		long elapsed_millis;
+
+		TableLoad(String table_name, long rows_loaded, long rows_rejected, long elapsed_millis) {
+			this.table_name = table_name;
+			this.rows_loaded = rows_loaded;
+			this.rows_rejected = rows_rejected;
+			this.elapsed_millis = elapsed_millis;
+		}
+
+		double rowsPerSecond() {
+			if (this.elapsed_millis <= 0) {
+				return this.rows_loaded;
+			}
+			return (this.rows_loaded * 1000.0) / this.elapsed_millis;
+		}
+	}
+
+
+	public LoadReport(String load_mode) {
+		this.load_mode = load_mode;
+		this.run_started = LocalDateTime.now().toString();
+		this.table_loads = new ArrayList<>();
+		this.worker_count = 1;
+		this.wall_clock_millis = -1;
+	}
+
+
+	/**
+	 * addTable - a public method that records the outcome of loading one table
+	 * @param table_name - the name of the table
+	 * @param rows_loaded - the number of rows that made it into the table
+	 * @param rows_rejected - the number of rows the database refused (or skipped as duplicates)
+	 * @param elapsed_millis - the wall-clock time spent loading the table, in milliseconds
+	 * @return - returns nothing (void)
+	 */
+	public synchronized void addTable(String table_name, long rows_loaded, long rows_rejected, long elapsed_millis) {
+		this.table_loads.add(new TableLoad(table_name, rows_loaded, rows_rejected, elapsed_millis));
+	}
+
+
+	/**
+	 * setWallClock - a public method that records how long the whole load took when tables were loaded in
+	 * parallel, since the elapsed times of the tables then overlap and their sum overstates the load time
+	 * @param worker_count - the number of tables loaded at the same time
+	 * @param wall_clock_millis - the wall-clock time from the first table starting to the last one finishing
+	 * @return - returns nothing (void)
+	 */
+	public synchronized void setWallClock(int worker_count, long wall_clock_millis) {
+		this.worker_count = worker_count;
+		this.wall_clock_millis = wall_clock_millis;
+	}
+
+
+	/**
+	 * print - a public method that prints one line per table and a total for the run
+	 * @param out - the PrintStream to print to (usually System.out)
+	 * @return - returns nothing (void)
+	 */
+	public synchronized void print(PrintStream out) {
+		long total_rows = 0;
+		long total_rejected = 0;
+		long total_millis = 0;
+		out.println("Load report (" + this.load_mode + " mode, started " + this.run_started + "):");
+		for (TableLoad table_load: this.table_loads) {
+			out.println(String.format(
+				"\t%-28s loaded=%-10d rejected=%-8d elapsed=%8d ms  (%.1f rows/s)",
+				table_load.table_name, table_load.rows_loaded, table_load.rows_rejected,
+				table_load.elapsed_millis, table_load.rowsPerSecond()
+			));
+			total_rows += table_load.rows_loaded;
+			total_rejected += table_load.rows_rejected;
+			total_millis += table_load.elapsed_millis;
+		}
+		TableLoad total = new TableLoad("total", total_rows, total_rejected, total_millis);
+		out.println(String.format(
+			"\t%-28s loaded=%-10d rejected=%-8d elapsed=%8d ms  (%.1f rows/s)",
+			total.table_name, total.rows_loaded, total.rows_rejected, total.elapsed_millis, total.rowsPerSecond()
+		));
+		if (this.wall_clock_millis >= 0) {
+			TableLoad wall_clock = new TableLoad("wall clock", total_rows, total_rejected, this.wall_clock_millis);
+			out.println(String.format(
+				"\t%-28s workers=%-9d elapsed=%8d ms  (%.1f rows/s)",
+				wall_clock.table_name, this.worker_count, wall_clock.elapsed_millis, wall_clock.rowsPerSecond()
+			));
+		}
+	}
+
+
+	/**
+	 * appendTo - a public method that appends this run's results to the run report file, one tab separated
+	 * line per table (run start, mode, table, rows loaded, rows rejected, elapsed milliseconds)
+	 * @param report_path - the Path of the run report file (created if it does not exist)
+	 * @return - returns nothing (void)
+	 */
+	public synchronized void appendTo(Path report_path) {
+		StringBuilder lines = new StringBuilder();
+		for (TableLoad table_load: this.table_loads) {
+			lines.append(this.run_started).append('\t')
+				.append(this.load_mode).append('\t')
+				.append(table_load.table_name).append('\t')
+				.append(table_load.rows_loaded).append('\t')
+				.append(table_load.rows_rejected).append('\t')
+				.append(table_load.elapsed_millis).append('\n');
+		}
+		try {
+			Files.write(
+				report_path, lines.toString().getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND
+			);
+		} catch (IOException err) {
+			err.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * printComparison - a public method that compares this run with the most recent run in the run report
+	 * file that used a different load mode (for example bulk against batched), table by table
+	 * - should be called before appendTo(), otherwise the comparison could only find this run
+	 * @param report_path - the Path of the run report file
+	 * @param out - the PrintStream to print to (usually System.out)
+	 * @return - returns nothing (void)
+	 */
+	public synchronized void printComparison(Path report_path, PrintStream out) {
+		if (!(Files.exists(report_path))) {
+			return;
+		}
+		String other_run = null;
+		String other_mode = null;
+		HashMap<String, TableLoad> other_loads = new HashMap<>();
+		try {
+			for (String line: Files.readAllLines(report_path, StandardCharsets.UTF_8)) {
+				String[] fields = line.split("\t");
+				if ((fields.length < 6) || fields[1].equals(this.load_mode)) {
+					continue;
+				}
+				if (!(fields[0].equals(other_run))) {
+					other_run = fields[0];
+					other_mode = fields[1];
+					other_loads.clear();
+				}
+				other_loads.put(fields[2], new TableLoad(
+					fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5])
+				));
+			}
+		} catch (IOException | NumberFormatException err) {
+			err.printStackTrace();
+			return;
+		}
+		if (other_run == null) {
+			return;
+		}
+		out.println(
+			"Comparison with the " + other_mode + " run started " + other_run + " (" + this.load_mode + " vs " +
+			other_mode + "):"
+		);
+		for (TableLoad table_load: this.table_loads) {
+			TableLoad other = other_loads.get(table_load.table_name);
+			if (other == null) {
+				continue;
+			}
+			double speedup = (other.rowsPerSecond() > 0) ? table_load.rowsPerSecond() / other.rowsPerSecond() : 0.0;
+			out.println(String.format(
+				"\t%-28s %8d ms vs %8d ms  (%.1f vs %.1f rows/s, %.2fx)",
+				table_load.table_name, table_load.elapsed_millis, other.elapsed_millis,
+				table_load.rowsPerSecond(), other.rowsPerSecond(), speedup
+			));
+		}
+	}
+
+
+}
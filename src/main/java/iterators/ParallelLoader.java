@@ -0,0 +1,228 @@
+package iterators;
+import java.lang.*;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.sql.SQLException;
+import javax.xml.stream.XMLStreamException;
+import iterators.xml.XMLParser;
+import iterators.util.ProductRecord;
+
+
+class ParallelLoader {
+	// the number of records read from a parser at a time
+	private static final int READ_BATCH_SIZE = 500;
+	// the number of parsed batches buffered ahead of a worker by its reader threads
+	private static final int PREFETCH_BATCHES = 16;
+	private StorageBackend storage_backend;
+	private BulkLoader bulk_loader;
+	private LastSeenPriceCache last_seen_prices;
+	private String load_mode;
+	private int parallelism;
+	private int reader_threads;
+
+
+	/**
+	 * ParallelLoader - loads the category tables side by side, one worker per table, where every worker has
+	 * its own writer and its own batch pipeline (a RecordWriter of the storage backend, or a spool file and
+	 * LOAD DATA statement in bulk mode)
+	 * @param storage_backend - the StorageBackend to load through
+	 * @param bulk_loader - the BulkLoader used when load_mode is bulk
+	 * @param last_seen_prices - the last seen price cache for change-only ingestion, may be null
+	 * @param load_mode - batched or bulk
+	 * @param parallelism - the number of tables loaded at the same time (must be larger than 0)
+	 * @param reader_threads - the number of a table's xml files (dated runs and segments) parsed at the same
+	 * time for its worker in batched mode (must be larger than 0; one is used with change-only ingestion)
+	 */
+	ParallelLoader(
+		StorageBackend storage_backend, BulkLoader bulk_loader, LastSeenPriceCache last_seen_prices, String load_mode,
+		int parallelism, int reader_threads
+	) {
+		assert ((parallelism > 0) && (reader_threads > 0));
+		this.reader_threads = reader_threads;
+		this.storage_backend = storage_backend;
+		this.bulk_loader = bulk_loader;
+		this.last_seen_prices = last_seen_prices;
+		this.load_mode = load_mode;
+		this.parallelism = parallelism;
+	}
+
+
+	/**
+	 * loadAll - a public method that loads every table in parsers, running at most this.parallelism table
+	 * loads at a time, and waits for all of them to finish
+	 * - the worker count is capped by the number of writers the backend can have open (for MySQL the pool
+	 *   size, less the connection held by the last seen price cache), since a worker holds its writer for as
+	 *   long as its table is loading and a worker left waiting on the pool would otherwise time out
+	 * @param parsers - the XMLParser of each table, keyed by table name
+	 * @param report - the LoadReport to add each table's rows loaded, rows rejected and elapsed time to
+	 * @return - returns nothing (void)
+	 * @throws InterruptedException - if interrupted while waiting for the workers
+	 */
+	public void loadAll(Map<String, XMLParser> parsers, LoadReport report) throws InterruptedException {
+		int reserved_connections = (this.last_seen_prices == null) ? 0 : 1;
+		int worker_count = Math.min(this.parallelism, this.storage_backend.getMaxWriters() - reserved_connections);
+		worker_count = Math.max(1, Math.min(worker_count, parsers.size()));
+		ExecutorService workers = Executors.newFixedThreadPool(worker_count, new ThreadFactory() {
+			private int thread_count = 0;
+
+			public synchronized Thread newThread(Runnable task) {
+				Thread worker = new Thread(task, "table-loader-" + this.thread_count);
+				this.thread_count += 1;
+				worker.setDaemon(true);
+				return worker;
+			}
+		});
+		long start_millis = System.currentTimeMillis();
+		ArrayList<Future<?>> table_loads = new ArrayList<>();
+		for (Map.Entry<String, XMLParser> entry: parsers.entrySet()) {
+			table_loads.add(workers.submit(() -> this.loadTable(entry.getKey(), entry.getValue(), report)));
+		}
+		workers.shutdown();
+		try {
+			for (Future<?> table_load: table_loads) {
+				try {
+					table_load.get();
+				} catch (ExecutionException err) {
+					err.getCause().printStackTrace();
+				}
+			}
+		} catch (InterruptedException err) {
+			workers.shutdownNow();
+			throw err;
+		}
+		report.setWallClock(worker_count, System.currentTimeMillis() - start_millis);
+	}
+
+
+	/**
+	 * loadTable - the body of each worker: loads one table from its parser and records the outcome
+	 * - the parser's files are read through XMLParser.stream(), so with more than one reader thread a backlog
+	 *   of several runs is parsed on several cores while the worker writes
+	 * - if the parser is resumable (see XMLParser.enableReadOffsets()), it is read one batch at a time instead,
+	 *   and every batch is flushed to the table before its read offsets are committed, so a load that was cut
+	 *   short carries on from the last batch it stored
+	 * - a load cut short between the two reads that batch again, so a resumable parser is only loaded into a
+	 *   table with its natural key (which makes writing a batch twice store it once), and fails otherwise
+	 * @param table_name - the name of the table to load
+	 * @param parser - the XMLParser to read the table's product records from
+	 * @param report - the LoadReport to add the outcome to
+	 * @return - returns nothing (void)
+	 */
+	private void loadTable(String table_name, XMLParser parser, LoadReport report) {
+		if (this.load_mode.equals("bulk")) {
+			this.bulk_loader.load(table_name, parser, report);
+			return;
+		}
+		long start_millis = System.currentTimeMillis();
+		long rows_read = 0;
+		long rows_loaded = 0;
+		try {
+			// checked before the writer is opened, since both take a pooled connection
+			if (parser.isResumable() && !(this.storage_backend.hasNaturalKey(table_name))) {
+				throw new SQLException(
+					"Resumable loads need natural_key_idx on " + table_name + " (see migrations/004_natural_key.sql)"
+				);
+			}
+			try (RecordWriter inserter = this.storage_backend.openWriter(table_name)) {
+				if (parser.isResumable()) {
+					rows_read = this.loadResumable(table_name, parser, inserter);
+				} else {
+					rows_read = this.loadStream(table_name, parser, inserter);
+				}
+				inserter.flush();
+				rows_loaded = inserter.getRowsWritten();
+			}
+		} catch (SQLException | XMLStreamException | IOException | IllegalStateException err) {
+			err.printStackTrace();
+		}
+		report.addTable(table_name, rows_loaded, rows_read - rows_loaded, System.currentTimeMillis() - start_millis);
+	}
+
+
+	/**
+	 * loadStream - a private helper method that writes the records of a parser's prefetching stream
+	 * @return - the number of records handed to the writer
+	 */
+	private long loadStream(String table_name, XMLParser parser, RecordWriter inserter) throws SQLException {
+		long rows_read = 0;
+		// change-only ingestion compares every record with the last price seen, so the runs have to be read one
+		// at a time in the order they were scraped (more reader threads interleave them)
+		int threads = (this.last_seen_prices == null) ? this.reader_threads : 1;
+		try (Stream<ProductRecord> records = parser.stream(threads, PREFETCH_BATCHES)) {
+			Iterator<ProductRecord> record_iterator = records.iterator();
+			ArrayList<ProductRecord> batch = new ArrayList<>(READ_BATCH_SIZE);
+			while (record_iterator.hasNext()) {
+				batch.add(record_iterator.next());
+				if (batch.size() >= READ_BATCH_SIZE) {
+					rows_read += this.writeChanged(table_name, batch, inserter);
+					batch = new ArrayList<>(READ_BATCH_SIZE);
+				}
+			}
+			rows_read += this.writeChanged(table_name, batch, inserter);
+		}
+		return rows_read;
+	}
+
+
+	/**
+	 * loadResumable - a private helper method that writes the records of a resumable parser one batch at a
+	 * time, flushing every batch to the table before committing the parser's read offsets
+	 * @return - the number of records handed to the writer
+	 */
+	private long loadResumable(String table_name, XMLParser parser, RecordWriter inserter)
+		throws SQLException, XMLStreamException, IOException {
+		long rows_read = 0;
+		ArrayList<ProductRecord> batch = parser.nextBatch(READ_BATCH_SIZE);
+		while (!(batch.isEmpty())) {
+			rows_read += this.writeChanged(table_name, batch, inserter);
+			inserter.flush();
+			parser.commitReadOffsets();
+			batch = parser.nextBatch(READ_BATCH_SIZE);
+		}
+		// marks the last file as done, now that nextBatch() has reached its end
+		parser.commitReadOffsets();
+		return rows_read;
+	}
+
+
+	/**
+	 * writeChanged - a private helper method that writes the records of a batch whose price changed since it
+	 * was last seen (the whole batch if change-only ingestion is off)
+	 * - with change-only ingestion the batch is flushed to the table before its price changes are confirmed
+	 *   to the last seen price cache, so a row that failed to be written is not recorded as seen
+	 * @param table_name - the table the batch is loaded into
+	 * @param batch - the records read from the parser
+	 * @param inserter - the RecordWriter of the table
+	 * @return - the number of records handed to the writer
+	 * @throws SQLException - if the records could not be written or the cache could not be updated
+	 */
+	private long writeChanged(String table_name, ArrayList<ProductRecord> batch, RecordWriter inserter)
+		throws SQLException {
+		if (this.last_seen_prices == null) {
+			inserter.addAll(batch);
+			return batch.size();
+		}
+		ArrayList<ProductRecord> changed = new ArrayList<>(batch.size());
+		ArrayList<LastSeenPriceCache.PriceChange> price_changes = new ArrayList<>();
+		for (ProductRecord product_info: batch) {
+			LastSeenPriceCache.PriceChange price_change = this.last_seen_prices.priceChanged(table_name, product_info);
+			if (price_change != null) {
+				changed.add(product_info);
+				price_changes.add(price_change);
+			}
+		}
+		try {
+			inserter.addAll(changed);
+			inserter.flush();
+		} catch (SQLException | RuntimeException err) {
+			this.last_seen_prices.discard(price_changes);
+			throw err;
+		}
+		this.last_seen_prices.confirm(price_changes);
+		return changed.size();
+	}
+
+
+}
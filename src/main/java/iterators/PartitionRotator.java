@@ -0,0 +1,146 @@
+package iterators;
+import java.lang.*;
+import java.util.*;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+
+
+class PartitionRotator {
+	private static final DateTimeFormatter PARTITION_NAME_FORMATTER = DateTimeFormatter.ofPattern("'p'yyyyMM");
+	private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+	private static final String PARTITIONS_SQL =
+		"SELECT PARTITION_NAME FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() " +
+		"AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+	private ConnectionPool connection_pool;
+	private int months_ahead;
+	private int months_to_keep;
+
+
+	/**
+	 * PartitionRotator - manages the monthly date_collected partitions of the category tables, where the
+	 * partition named pYYYYMM holds the rows collected in that month, p_history holds everything older than
+	 * the first monthly partition, and p_future (VALUES LESS THAN MAXVALUE) catches everything else
+	 * @param connection_pool - the pool to borrow connections from
+	 * @param months_ahead - the number of months after the current one to create partitions for
+	 * @param months_to_keep - the number of monthly partitions (including the current month) to keep, older
+	 * ones are dropped along with their rows (0 keeps every partition)
+	 */
+	PartitionRotator(ConnectionPool connection_pool, int months_ahead, int months_to_keep) {
+		assert (months_ahead >= 0);
+		assert (months_to_keep >= 0);
+		this.connection_pool = connection_pool;
+		this.months_ahead = months_ahead;
+		this.months_to_keep = months_to_keep;
+	}
+
+
+	/**
+	 * rotate - a public method that makes sure table_name has a partition for every month up to
+	 * this.months_ahead months from now (split off p_future), and drops the monthly partitions that fall
+	 * outside of the retention window
+	 * - on a freshly migrated table (only p_history and p_future), monthly partitions start at the month of
+	 *   the oldest row in p_future, so existing rows end up in their own months
+	 * @param table_name - the (already validated) name of the partitioned table
+	 * @return - returns nothing (void)
+	 * @throws SQLException - if the partitions could not be read or changed
+	 */
+	public void rotate(String table_name) throws SQLException {
+		Connection con = this.connection_pool.borrow();
+		try {
+			TreeSet<YearMonth> monthly_partitions = new TreeSet<>();
+			boolean has_future_partition = false;
+			try (PreparedStatement stmt = con.prepareStatement(PARTITIONS_SQL)) {
+				stmt.setString(1, table_name);
+				try (ResultSet rows = stmt.executeQuery()) {
+					while (rows.next()) {
+						String partition_name = rows.getString(1);
+						if (partition_name.equals("p_future")) {
+							has_future_partition = true;
+						} else if (partition_name.matches("p[0-9]{6}")) {
+							monthly_partitions.add(YearMonth.parse(partition_name.substring(1), MONTH_FORMATTER));
+						}
+					}
+				}
+			}
+			if (!has_future_partition) {
+				throw new SQLException(
+					"Table " + table_name + " is not partitioned by month (see migrations/003_keys_indexes_partitions.sql)"
+				);
+			}
+			YearMonth current_month = YearMonth.now();
+			YearMonth first_missing_month;
+			if (monthly_partitions.isEmpty()) {
+				first_missing_month = this.oldestMonthInFuturePartition(con, table_name, current_month);
+			} else {
+				first_missing_month = monthly_partitions.last().plusMonths(1);
+			}
+			YearMonth last_month = current_month.plusMonths(this.months_ahead);
+			if (!(first_missing_month.isAfter(last_month))) {
+				StringBuilder sql_text = new StringBuilder("ALTER TABLE ").append(table_name)
+					.append(" REORGANIZE PARTITION p_future INTO (");
+				for (YearMonth month = first_missing_month; !(month.isAfter(last_month)); month = month.plusMonths(1)) {
+					sql_text.append(partitionDefinition(month)).append(", ");
+					monthly_partitions.add(month);
+				}
+				sql_text.append("PARTITION p_future VALUES LESS THAN (MAXVALUE))");
+				try (Statement stmt = con.createStatement()) {
+					stmt.execute(sql_text.toString());
+				}
+			}
+			if (this.months_to_keep > 0) {
+				YearMonth oldest_kept_month = current_month.minusMonths(this.months_to_keep - 1);
+				ArrayList<String> expired_partitions = new ArrayList<>();
+				for (YearMonth month: monthly_partitions.headSet(oldest_kept_month)) {
+					expired_partitions.add(month.format(PARTITION_NAME_FORMATTER));
+				}
+				if (!(expired_partitions.isEmpty())) {
+					try (Statement stmt = con.createStatement()) {
+						stmt.execute(
+							"ALTER TABLE " + table_name + " DROP PARTITION " + String.join(", ", expired_partitions)
+						);
+					}
+				}
+			}
+		} finally {
+			this.connection_pool.giveBack(con);
+		}
+	}
+
+
+	/**
+	 * partitionDefinition - a static helper method that builds the definition of the partition holding the
+	 * rows of a given month
+	 * @param month - the month in question
+	 * @return - a String such as "PARTITION p202610 VALUES LESS THAN ('2026-11-01')"
+	 */
+	static String partitionDefinition(YearMonth month) {
+		LocalDate upper_bound = month.plusMonths(1).atDay(1);
+		return "PARTITION " + month.format(PARTITION_NAME_FORMATTER) + " VALUES LESS THAN ('" + upper_bound + "')";
+	}
+
+
+	/**
+	 * oldestMonthInFuturePartition - a private helper method that finds the month of the oldest row that is
+	 * still in p_future (capped at current_month)
+	 * @param con - the Connection to use
+	 * @param table_name - the name of the table
+	 * @param current_month - the current month
+	 * @return - the month to start creating monthly partitions from
+	 * @throws SQLException - if the query failed
+	 */
+	private YearMonth oldestMonthInFuturePartition(Connection con, String table_name, YearMonth current_month)
+		throws SQLException {
+		String sql_text = "SELECT MIN(date_collected) FROM " + table_name + " PARTITION (p_future)";
+		try (Statement stmt = con.createStatement(); ResultSet rows = stmt.executeQuery(sql_text)) {
+			if (rows.next() && (rows.getDate(1) != null)) {
+				YearMonth oldest_month = YearMonth.from(rows.getDate(1).toLocalDate());
+				return oldest_month.isBefore(current_month) ? oldest_month : current_month;
+			}
+		}
+		return current_month;
+	}
+
+
+}
@@ -0,0 +1,23 @@
+package iterators;
+import java.util.List;
+import java.sql.SQLException;
+import iterators.util.ProductRecord;
+
+/**
+ * RecordWriter - an open ingestion pipeline into one category table of a StorageBackend, owned by a single
+ * thread (rows are only guaranteed to be stored once flush() or close() returns)
+ */
+public interface RecordWriter extends AutoCloseable {
+	public void add(ProductRecord product_info) throws SQLException;
+
+	public default void addAll(List<ProductRecord> product_infos) throws SQLException {
+		for (ProductRecord product_info: product_infos) {
+			this.add(product_info);
+		}
+	}
+
+	public void flush() throws SQLException;
+	public long getRowsWritten();
+	public String getTableName();
+	public void close() throws SQLException;
+}
@@ -0,0 +1,64 @@
+package iterators;
+import java.util.*;
+import java.util.function.Consumer;
+import java.sql.SQLException;
+import iterators.util.ProductRecord;
+
+/**
+ * StorageBackend - where the category tables live: the MySQL server (DatabaseClient) or local files in the
+ * same process (EmbeddedFileBackend), chosen with storage_backend in database.properties
+ * - records go in as ProductRecord instances, records coming out are keyed by column name
+ *   (BatchInserter.COLUMNS) with every value as text, null if missing
+ * - errors are reported as SQLException whatever the backend, so callers handle every backend the same way
+ */
+public interface StorageBackend extends AutoCloseable {
+	/**
+	 * openWriter - opens an ingestion pipeline into table_name, which the caller must close
+	 */
+	public RecordWriter openWriter(String table_name) throws SQLException;
+
+	/**
+	 * latestPrice - returns the most recently collected row for a product in a given store, or null if the
+	 * product has never been seen there
+	 */
+	public HashMap<String, String> latestPrice(
+		String table_name, String store_chain_name, String township_location, String product_title,
+		String product_size
+	) throws SQLException;
+
+	/**
+	 * scanHistory - passes every row collected for a product in a given store (all package sizes) to consumer,
+	 * oldest collection date first
+	 */
+	public void scanHistory(
+		String table_name, String store_chain_name, String township_location, String product_title,
+		Consumer<HashMap<String, String>> consumer
+	) throws SQLException;
+
+	/**
+	 * hasNaturalKey - returns true if table_name keeps a single row per natural key (BatchInserter.NATURAL_KEY_COLUMNS),
+	 * so that writing the same records again leaves it unchanged
+	 */
+	public boolean hasNaturalKey(String table_name) throws SQLException;
+
+	/**
+	 * getMaxWriters - returns the number of writers that can usefully be open at the same time
+	 */
+	public int getMaxWriters();
+
+	public void close();
+
+	/**
+	 * insertBatch - writes all of the records into table_name through a single writer
+	 * @return - the number of rows written
+	 */
+	public default long insertBatch(String table_name, List<ProductRecord> records) throws SQLException {
+		try (RecordWriter writer = this.openWriter(table_name)) {
+			for (ProductRecord record: records) {
+				writer.add(record);
+			}
+			writer.flush();
+			return writer.getRowsWritten();
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package iterators;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.sql.SQLException;
+import iterators.util.ProductRecord;
+
+
+class WriteBehindQueue {
+	private StorageBackend storage_backend;
+	private LastSeenPriceCache last_seen_prices;
+	private ArrayBlockingQueue<PendingRecord> pending_records;
+	private ArrayList<Thread> writer_threads;
+	private int batch_size;
+	private long max_delay_millis;
+	private volatile boolean closing;
+	private AtomicLong rows_enqueued;
+	private AtomicLong rows_written;
+	private AtomicLong rows_failed;
+	private AtomicLong batches_written;
+	private AtomicLong producer_blocked_nanos;
+
+
+	/**
+	 * PendingRecord - a product record waiting to be written, along with the table it belongs in and the price
+	 * change it records (null if change-only ingestion is off)
+	 */
+	private static class PendingRecord {
+		private String table_name;
+		private ProductRecord product_info;
+		private LastSeenPriceCache.PriceChange price_change;
+
+		PendingRecord(String table_name, ProductRecord product_info, LastSeenPriceCache.PriceChange price_change) {
+			this.table_name = table_name;
+			this.product_info = product_info;
+			this.price_change = price_change;
+		}
+	}
+
+
+	/**
+	 * WriteBehindQueue - creates the queue and starts the writer threads
+	 * @param storage_backend - the StorageBackend the writer threads insert through
+	 * @param last_seen_prices - the last seen price cache the price changes of written records are confirmed
+	 * to, may be null
+	 * @param capacity - the maximum number of records held in memory, producers block once it is reached
+	 * @param writer_count - the number of writer threads (each one uses at most one writer at a time)
+	 * @param batch_size - the maximum number of records a writer takes off the queue per commit
+	 * @param max_delay_millis - the longest a record waits for a batch to fill before it is written anyway
+	 */
+	public WriteBehindQueue(
+		StorageBackend storage_backend, LastSeenPriceCache last_seen_prices, int capacity, int writer_count,
+		int batch_size, long max_delay_millis
+	) {
+		assert (capacity > 0);
+		assert (writer_count > 0);
+		assert (batch_size > 0);
+		this.storage_backend = storage_backend;
+		this.last_seen_prices = last_seen_prices;
+		this.pending_records = new ArrayBlockingQueue<>(capacity);
+		this.batch_size = batch_size;
+		this.max_delay_millis = max_delay_millis;
+		this.closing = false;
+		this.rows_enqueued = new AtomicLong(0);
+		this.rows_written = new AtomicLong(0);
+		this.rows_failed = new AtomicLong(0);
+		this.batches_written = new AtomicLong(0);
+		this.producer_blocked_nanos = new AtomicLong(0);
+		this.writer_threads = new ArrayList<>();
+		for (int i = 0; i < writer_count; ++i) {
+			Thread writer = new Thread(this::drainLoop, "write-behind-" + i);
+			writer.setDaemon(true);
+			writer.start();
+			this.writer_threads.add(writer);
+		}
+	}
+
+
+	/**
+	 * put - a public method that hands a record to the writer threads, blocking while the queue is full so
+	 * that the scraper slows down to the pace of the database instead of running out of memory
+	 * @param table_name - the table the record belongs in
+	 * @param product_info - the product information
+	 * @param price_change - the change returned by LastSeenPriceCache.priceChanged() for the record, which is
+	 * confirmed once the record is committed (or discarded if it could not be written), may be null
+	 * @return - returns nothing (void)
+	 * @throws InterruptedException - if interrupted while waiting for space in the queue
+	 */
+	public void put(String table_name, ProductRecord product_info, LastSeenPriceCache.PriceChange price_change)
+		throws InterruptedException {
+		if (this.closing) {
+			throw new IllegalStateException("The write-behind queue has been closed");
+		}
+		PendingRecord pending_record = new PendingRecord(table_name, product_info, price_change);
+		if (!(this.pending_records.offer(pending_record))) {
+			long wait_start = System.nanoTime();
+			this.pending_records.put(pending_record);
+			this.producer_blocked_nanos.addAndGet(System.nanoTime() - wait_start);
+		}
+		this.rows_enqueued.incrementAndGet();
+	}
+
+
+	/**
+	 * drainLoop - the body of each writer thread: waits for a record, gathers up to this.batch_size records
+	 * (or whatever arrived within this.max_delay_millis) and writes them, one commit per table
+	 * @return - returns nothing (void)
+	 */
+	private void drainLoop() {
+		ArrayList<PendingRecord> batch = new ArrayList<>(this.batch_size);
+		while (!(this.closing && this.pending_records.isEmpty())) {
+			try {
+				PendingRecord first = this.pending_records.poll(this.max_delay_millis, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.max_delay_millis);
+				while ((batch.size() < this.batch_size) && !(this.closing)) {
+					this.pending_records.drainTo(batch, this.batch_size - batch.size());
+					long remaining_nanos = deadline - System.nanoTime();
+					if ((batch.size() >= this.batch_size) || (remaining_nanos <= 0)) {
+						break;
+					}
+					PendingRecord next = this.pending_records.poll(remaining_nanos, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				this.pending_records.drainTo(batch, this.batch_size - batch.size());
+			} catch (InterruptedException err) {
+				Thread.currentThread().interrupt();
+				this.pending_records.drainTo(batch);
+				this.writeBatch(batch);
+				return;
+			}
+			this.writeBatch(batch);
+			batch.clear();
+		}
+	}
+
+
+	/**
+	 * writeBatch - a private helper method that groups a batch by table and inserts each group with its own
+	 * RecordWriter, so every group is committed (and visible) as soon as it is written
+	 * @param batch - the records taken off the queue
+	 * @return - returns nothing (void)
+	 */
+	private void writeBatch(List<PendingRecord> batch) {
+		HashMap<String, ArrayList<ProductRecord>> records_by_table = new HashMap<>();
+		HashMap<String, ArrayList<LastSeenPriceCache.PriceChange>> changes_by_table = new HashMap<>();
+		for (PendingRecord pending_record: batch) {
+			records_by_table.computeIfAbsent(pending_record.table_name, table -> new ArrayList<>())
+				.add(pending_record.product_info);
+			ArrayList<LastSeenPriceCache.PriceChange> price_changes = changes_by_table.computeIfAbsent(
+				pending_record.table_name, table -> new ArrayList<>()
+			);
+			if (pending_record.price_change != null) {
+				price_changes.add(pending_record.price_change);
+			}
+		}
+		for (Map.Entry<String, ArrayList<ProductRecord>> entry: records_by_table.entrySet()) {
+			ArrayList<LastSeenPriceCache.PriceChange> price_changes = changes_by_table.get(entry.getKey());
+			try {
+				this.rows_written.addAndGet(this.storage_backend.insertBatch(entry.getKey(), entry.getValue()));
+				this.batches_written.incrementAndGet();
+			} catch (SQLException err) {
+				this.rows_failed.addAndGet(entry.getValue().size());
+				err.printStackTrace();
+				// the prices were not recorded, so the next records of these products are inserted again
+				if (this.last_seen_prices != null) {
+					this.last_seen_prices.discard(price_changes);
+				}
+				continue;
+			}
+			if ((this.last_seen_prices != null) && !(price_changes.isEmpty())) {
+				try {
+					this.last_seen_prices.confirm(price_changes);
+				} catch (SQLException err) {
+					err.printStackTrace();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * close - a public method that stops accepting records, waits for the writer threads to write everything
+	 * still in the queue, and then returns
+	 * @return - returns nothing (void)
+	 * @throws InterruptedException - if interrupted while waiting for the writer threads
+	 */
+	public void close() throws InterruptedException {
+		this.closing = true;
+		for (Thread writer: this.writer_threads) {
+			writer.join();
+		}
+	}
+
+
+	/**
+	 * getMetrics - a public method that summarizes the queue's throughput and how long the producers were
+	 * held back by a full queue
+	 * @return - a String with the queue metrics
+	 */
+	public String getMetrics() {
+		return String.format(
+			"write-behind: enqueued=%d, written=%d, failed=%d, batches=%d, queued now=%d, producer blocked=%d ms",
+			this.rows_enqueued.get(), this.rows_written.get(), this.rows_failed.get(), this.batches_written.get(),
+			this.pending_records.size(), TimeUnit.NANOSECONDS.toMillis(this.producer_blocked_nanos.get())
+		);
+	}
+
+
+}
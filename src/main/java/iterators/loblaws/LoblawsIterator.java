@@ -324,7 +324,7 @@ public class LoblawsIterator extends BaseIterator {
 
 	/**
 	 * scrapeProductInfo - a private helper method that scrapes all of the information available on the
-	 * product and returns a HashMap<String, String> instance with all available product information
+	 * product and returns a ProductRecord instance with all available product information
 	 * - This method will open the link in a new tab, and bring that tab into focus, the link being to
 	 *   the information page for that product (its CSS selector being the resulting string of
 	 *   product_info_link_selector)
@@ -335,10 +335,10 @@ public class LoblawsIterator extends BaseIterator {
 	 * as "Toronto, Ontario")
 	 * @param product_info_link_selector - a StringBuilder instance that represents the CSS selector for the
 	 * link to the product information page (the CSS selector for the specific <a> tag in question)
-	 * @return - returns a HashMap<String, String> instance
+	 * @return - returns a ProductRecord instance
 	 */
-	private HashMap<String, String> scrapeProductInfo(String township, StringBuilder product_info_link_selector) {
-		HashMap<String, String> product_info = new HashMap<>();
+	private ProductRecord scrapeProductInfo(String township, StringBuilder product_info_link_selector) {
+		ProductRecord.Builder product_info = new ProductRecord.Builder();
 		String brand_name_selector = this.getConfigProperty("brand_name_selector");
 		String product_name_selector = this.getConfigProperty("product_name_selector");
 		String package_size_selector = this.getConfigProperty("package_size_selector");
@@ -372,9 +372,9 @@ public class LoblawsIterator extends BaseIterator {
 			WebElement price_value = WebElementOperations.fluentWait(price_value_locator, this.driver, 30, 100L);
 			WebElement price_unit = WebElementOperations.fluentWait(price_unit_locator, this.driver, 30, 100L);
 			String price_info = price_value.getText() + " " + price_unit.getText();
-			product_info.put("product_name", product_name.getText());
-			product_info.put("price_info", price_info);
-			product_info.put("township_location", township);
+			product_info.set(ProductRecord.Field.PRODUCT_TITLE, product_name.getText());
+			product_info.set(ProductRecord.Field.PRICE, price_info);
+			product_info.set(ProductRecord.Field.TOWNSHIP_LOCATION, township);
 			boolean brand_name_exists = WebElementOperations.elementExistsByJavaScript(
 				this.driver, brand_name_selector
 			);
@@ -389,11 +389,11 @@ public class LoblawsIterator extends BaseIterator {
 			);
 			if (brand_name_exists) {
 				WebElement brand_name = this.driver.findElement(brand_name_locator);
-				product_info.put("brand_name", brand_name.getText());
+				product_info.set(ProductRecord.Field.BRAND, brand_name.getText());
 			}
 			if (package_size_exists) {
 				WebElement package_size_info = this.driver.findElement(package_size_locator);
-				product_info.put("package_size", package_size_info.getText());
+				product_info.set(ProductRecord.Field.SIZE, package_size_info.getText());
 			}
 			if (comparison_price_value_exists && comparison_price_unit_exists) {
 				WebElement comparison_price_value = WebElementOperations.fluentWait(
@@ -404,28 +404,28 @@ public class LoblawsIterator extends BaseIterator {
 				);
 				String comparison_unit_price = comparison_price_value.getText() + " "
 								+ comparison_price_unit.getText();
-				product_info.put("unit_price_for_comparison", comparison_unit_price);
+				product_info.set(ProductRecord.Field.UNIT_PRICE, comparison_unit_price);
 			}
 			driver.close();
 			driver.switchTo().window(original_window);
 		} catch (Throwable err) {
 			driver.close();
 			driver.switchTo().window(original_window);
-			return product_info;
+			return product_info.build();
 		}
 		String date_pattern = "-MMM-dd-yyyy-HH-mm";
 		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(date_pattern);
 		LocalDateTime current_time = LocalDateTime.now();
 		String formatted_date = current_time.format(formatter);
-		product_info.put("date", formatted_date);
-		return product_info;
+		product_info.set(ProductRecord.Field.DATE, formatted_date);
+		return product_info.build();
 	}
 
 
 	/**
 	 * scrapeProductInfoWithRetries - a helper method to scrape product information with a given number of
 	 * retries in case the page doesn't load the first time
-	 * - after the given number of retries, return an empty hashmap as the result
+	 * - after the given number of retries, return an empty ProductRecord as the result
 	 * @param township - a string representing the township where the price is being scraped (will be added to
 	 * the hashmap of product info)
 	 * @param product_info_link_selector - a StringBuilder representing the CSS Selector for the link to more
@@ -433,14 +433,14 @@ public class LoblawsIterator extends BaseIterator {
 	 * @param retries - an integer representing the number of retries that are left to scrape the product's
 	 * information (must be greater than or equal to 0)
 	 */
-	private HashMap<String, String> scrapeProductInfoWithRetries(
+	private ProductRecord scrapeProductInfoWithRetries(
 			String township, StringBuilder product_info_link_selector, int retries
 	) {
 		assert(retries >= 0);
-		HashMap<String, String> information = this.scrapeProductInfo(township, product_info_link_selector);
+		ProductRecord information = this.scrapeProductInfo(township, product_info_link_selector);
 		if (information.isEmpty()) {
 			if (retries == 0) {
-				HashMap<String, String> result = new HashMap<>();
+				ProductRecord result = new ProductRecord.Builder().build();
 				return result;
 			}
 			return this.scrapeProductInfoWithRetries(township, product_info_link_selector, (retries - 1));
@@ -456,10 +456,10 @@ public class LoblawsIterator extends BaseIterator {
 	 * - once the information is scraped, it is put into XML
 	 * @param township - the String representing the township to put in the XML with the product information
 	 * @param product_parent_container - the WebElement representing the parent container with all product information
-	 * @return - a HashMap<String, String> instance with product data information (i.e. price, brand name, size, etc.)
+	 * @return - a ProductRecord instance with product data information (i.e. price, brand name, size, etc.)
 	 */
-	private HashMap<String, String> scrapeCompactProductInfo(String township, WebElement product_parent_container) {
-		HashMap<String, String> product_info = new HashMap<>();
+	private ProductRecord scrapeCompactProductInfo(String township, WebElement product_parent_container) {
+		ProductRecord.Builder product_info = new ProductRecord.Builder();
 		String product_price_information_selctor = this.getConfigProperty("product_price_information_selctor");
 		String price_without_sale_price_selector = this.getConfigProperty("price_without_sale_price_selector");
 		String regular_price_selector = this.getConfigProperty("regular_price_selector");
@@ -492,15 +492,15 @@ public class LoblawsIterator extends BaseIterator {
 		}
 		if (!(price_info_selector.isEmpty())) {
 			WebElement price_info = product_parent_container.findElement(new By.ByCssSelector(price_info_selector));
-			product_info.put("price", price_info.getText());
+			product_info.set(ProductRecord.Field.PRICE, price_info.getText());
 		}
 		if (brand_selector_exists) {
 			WebElement brand_info = product_parent_container.findElement(new By.ByCssSelector(brand_selector));
-			product_info.put("brand", brand_info.getText());
+			product_info.set(ProductRecord.Field.BRAND, brand_info.getText());
 		}
 		if (product_title_exists) {
 			WebElement product_title = product_parent_container.findElement(new By.ByCssSelector(product_title_selector));
-			product_info.put("product_title", product_title.getText());
+			product_info.set(ProductRecord.Field.PRODUCT_TITLE, product_title.getText());
 		}
 		if (product_package_size_exists) {
 			WebElement product_package_size_info = product_parent_container.findElement(
@@ -509,9 +509,9 @@ public class LoblawsIterator extends BaseIterator {
 			String package_size = product_package_size_info.getText();
 			String[] sizing_units = package_size.split("[,.]{1}\\s*\\${1}");
 			if (sizing_units.length > 1) {
-				product_info.put("unit_price", "$" + sizing_units[1]);
+				product_info.set(ProductRecord.Field.UNIT_PRICE, "$" + sizing_units[1]);
 			}
-			product_info.put("size", sizing_units[0]);
+			product_info.set(ProductRecord.Field.SIZE, sizing_units[0]);
 		}
 		WebElement breadcrumb_container = this.driver.findElement(new By.ByCssSelector(breadcrumb_container_selector));
 		String category_path = WebElementOperations.getInnerText(breadcrumb_container, this.driver).replace("\n", ">");
@@ -519,11 +519,11 @@ public class LoblawsIterator extends BaseIterator {
 		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(date_pattern);
 		LocalDateTime current_time = LocalDateTime.now();
 		String formatted_date = current_time.format(formatter);
-		product_info.put("date", formatted_date);
-		product_info.put("store_chain_name", this.store_name);
-		product_info.put("category_path", category_path);
-		product_info.put("township_location", township);
-		return product_info;
+		product_info.set(ProductRecord.Field.DATE, formatted_date);
+		product_info.set(ProductRecord.Field.STORE_CHAIN_NAME, this.store_name);
+		product_info.set(ProductRecord.Field.CATEGORY_PATH, category_path);
+		product_info.set(ProductRecord.Field.TOWNSHIP_LOCATION, township);
+		return product_info.build();
 	}
 
 
@@ -560,7 +560,7 @@ public class LoblawsIterator extends BaseIterator {
 		By product_parent_container_locator = new By.ByCssSelector(
 			product_parent_container_selector.toString()
 		);
-		HashMap<String, String> price_data = new HashMap<>();
+		ProductRecord price_data;
 		boolean next_button_interactable = true;
 		boolean at_bottom = false;
 		boolean pagination_exists;
@@ -607,7 +607,7 @@ public class LoblawsIterator extends BaseIterator {
 				//price_data = this.scrapeProductInfoWithRetries(city, product_info_link_selector, 3);
 				price_data = this.scrapeCompactProductInfo(city, product_parent_container);
 				if (!(price_data.isEmpty())) {
-					this.xml_parser.hashmapToXML(price_data);
+					this.writeRecord(price_data);
 				}
 				product_parent_container_selector = SelectorOperations.incrementSelectorDigit(
 					product_parent_container_selector
@@ -1117,7 +1117,7 @@ public class LoblawsIterator extends BaseIterator {
 				}
 			}
 		}
-		this.xml_parser.closeProductXmlOutputStream();
+		this.closeRecordOutput();
 		this.driver.quit();
 	}
 
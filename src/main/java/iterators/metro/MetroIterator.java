@@ -431,17 +431,13 @@ public class MetroIterator extends BaseIterator {
 
 
 	/**
-	 * addInfoToHashMap - a private helper method that adds text to the hashmap passed in, with the text being the innerText
-	 * property of HTML element selected by css_selector, with the key in the hashmap being the passed in key_value parameter
+	 * scrapeText - a private helper method that returns the innerText property of the HTML element selected by
+	 * css_selector inside parent_element, on one line
 	 * @param css_selector - a String representing the CSS selector to find the element in question
-	 * @param key_value - the key value for the new entry in product_info
 	 * @param parent_element - the parent element to start searching from (i.e. parent_element.findElement(. . .))
-	 * @param product_info - the hash map in question
-	 * @return - returns nothing (void)
+	 * @return - the text, or null if the element does not exist or has no text
 	 */
-	private void addInfoToHashMap(
-		String css_selector, String key_value, WebElement parent_element, HashMap<String, String> product_info
-	) {
+	private String scrapeText(String css_selector, WebElement parent_element) {
 		boolean element_exists = WebElementOperations.elementExistsByJavaScript(
 			this.driver, css_selector, parent_element
 		);
@@ -449,9 +445,10 @@ public class MetroIterator extends BaseIterator {
 			WebElement element = parent_element.findElement(new By.ByCssSelector(css_selector));
 			String text_content = WebElementOperations.getInnerText(element, this.driver).trim().replace("\n", " ");
 			if (!(text_content.isEmpty())) {
-				product_info.put(key_value, text_content);
+				return text_content;
 			}
 		}
+		return null;
 	}
 
 
@@ -473,7 +470,8 @@ public class MetroIterator extends BaseIterator {
 		String product_brand_selector = this.getConfigProperty("product_brand_selector");
 		String missing_container_selector = this.getConfigProperty("missing_container_selector");
 		String product_title, product_price, pricing_unit_value, comparison_unit_price, product_brand_name, volume;
-		HashMap<String, String> product_info = new HashMap<>();
+		String store_name = this.getConfigProperty("store_name");
+		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM-dd-yyyy-HH-mm");
 		WebElement container, product_title_label, product_price_label, pricing_unit_value_label, comparison_unit_price_label,
 			   product_brand_label, volume_label;
 		element_exists = WebElementOperations.elementExistsAndIsInteractable(
@@ -486,17 +484,25 @@ public class MetroIterator extends BaseIterator {
 			js.executeScript(
 				"arguments[0].scrollIntoView({block: 'end', inline:'nearest', behaviour:'smooth'});", product_container
 			);
-			this.addInfoToHashMap(product_title_selector, "product_title", product_container, product_info);
-			this.addInfoToHashMap(product_price_selector, "product_price", product_container, product_info);
-			this.addInfoToHashMap(pricing_unit_value_selector, "price_unit_Value", product_container, product_info);
-			this.addInfoToHashMap(
-				comparison_price_unit_selector, "comparison_unit_price", product_container, product_info
+			product_price = this.scrapeText(product_price_selector, product_container);
+			pricing_unit_value = this.scrapeText(pricing_unit_value_selector, product_container);
+			// a price by weight keeps its unit (for example "$2.20 /lb"), like the Loblaws product page prices
+			if ((product_price != null) && (pricing_unit_value != null)) {
+				product_price = product_price + " " + pricing_unit_value;
+			}
+			ProductRecord.Builder product_info = new ProductRecord.Builder();
+			product_info.set(ProductRecord.Field.PRODUCT_TITLE, this.scrapeText(product_title_selector, product_container));
+			product_info.set(ProductRecord.Field.PRICE, product_price);
+			product_info.set(
+				ProductRecord.Field.UNIT_PRICE, this.scrapeText(comparison_price_unit_selector, product_container)
 			);
-			this.addInfoToHashMap(product_brand_selector, "product_brand_name", product_container, product_info);
-			this.addInfoToHashMap(volume_selector.toString(), "volume", product_container, product_info);
-			product_info.put("category", this.categories_left.get(0));
-			product_info.put("township_location", township);
-			this.xml_parser.hashmapToXML(product_info);
+			product_info.set(ProductRecord.Field.BRAND, this.scrapeText(product_brand_selector, product_container));
+			product_info.set(ProductRecord.Field.SIZE, this.scrapeText(volume_selector.toString(), product_container));
+			product_info.set(ProductRecord.Field.CATEGORY_PATH, this.categories_left.get(0));
+			product_info.set(ProductRecord.Field.TOWNSHIP_LOCATION, township);
+			product_info.set(ProductRecord.Field.STORE_CHAIN_NAME, store_name);
+			product_info.set(ProductRecord.Field.DATE, LocalDateTime.now().format(formatter));
+			this.writeRecord(product_info.build());
 		}
 	}
 
@@ -697,7 +703,7 @@ public class MetroIterator extends BaseIterator {
 		if (!(cities_xml_dom_parser.hasNext())) {
 			cities_xml_dom_parser.delete();
 		}
-		this.xml_parser.closeProductXmlOutputStream();
+		this.closeRecordOutput();
 		this.driver.quit();
 	}
 }
@@ -0,0 +1,305 @@
+package iterators.util;
+import java.lang.*;
+import java.util.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+public class PriceParser {
+	// a dollar amount such as "$3.49" or "$1,299.00", a bare amount such as "3.49", or a cent amount such as "99¢"
+	private static final Pattern DOLLAR_PATTERN = Pattern.compile("\\$\\s*(\\d{1,3}(?:,\\d{3})+|\\d+)(?:\\.(\\d{1,2}))?");
+	private static final Pattern PLAIN_NUMBER_PATTERN = Pattern.compile("^\\s*(\\d+)(?:\\.(\\d{1,2}))?\\s*$");
+	private static final Pattern CENTS_PATTERN = Pattern.compile("(\\d+)\\s*(?:¢|c\\b)");
+	// "2 for $5.00" style multi-buy prices
+	private static final Pattern MULTI_BUY_PATTERN = Pattern.compile("(\\d+)\\s*(?:for|/)\\s*\\$");
+	// an optional pack count followed by an amount and a unit, such as "1.89 kg", "100g" or "12 x 355 mL"
+	private static final Pattern QUANTITY_PATTERN = Pattern.compile(
+		"(?:(\\d+)\\s*[x×]\\s*)?(\\d+(?:[.,]\\d+)?)?\\s*(?<!\\p{L})" +
+		"(fl\\.?\\s*oz|kg|mg|g|lbs?|oz|ml|cl|dl|l|ea|each|un|unit|units|pk|pack|ct|count|pcs?|pieces?|bunch)\\b",
+		Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE
+	);
+	private static final BigDecimal HUNDRED = new BigDecimal(100);
+
+
+	/**
+	 * Quantity - an amount in one of the canonical units: "g" (mass), "ml" (volume) or "ea" (items)
+	 */
+	public static class Quantity {
+		private BigDecimal amount;
+		private String unit;
+
+		public Quantity(BigDecimal amount, String unit) {
+			this.amount = amount;
+			this.unit = unit;
+		}
+
+		public BigDecimal getAmount() {
+			return this.amount;
+		}
+
+		public String getUnit() {
+			return this.unit;
+		}
+
+		@Override
+		public String toString() {
+			return this.amount.toPlainString() + " " + this.unit;
+		}
+	}
+
+
+	/**
+	 * UnitPrice - a price in cents for a given quantity, such as 38 cents per 100 g for "$0.38/100g"
+	 */
+	public static class UnitPrice {
+		private long cents;
+		private Quantity quantity;
+
+		public UnitPrice(long cents, Quantity quantity) {
+			this.cents = cents;
+			this.quantity = quantity;
+		}
+
+		public long getCents() {
+			return this.cents;
+		}
+
+		public Quantity getQuantity() {
+			return this.quantity;
+		}
+	}
+
+
+	/**
+	 * parseCents - a public static method that turns a displayed price into an integer number of cents
+	 * - "$3.49" gives 349, "$1,299.00" gives 129900, "99¢" gives 99 and "3.49" gives 349
+	 * - multi-buy prices are turned into the price of a single item ("2 for $5.00" gives 250)
+	 * @param price_text - the price as shown on the store's website, may be null
+	 * @return - the price in cents, or null if no price could be found in the text
+	 */
+	public static Long parseCents(String price_text) {
+		if (price_text == null) {
+			return null;
+		}
+		Matcher dollar_matcher = DOLLAR_PATTERN.matcher(price_text);
+		if (dollar_matcher.find()) {
+			long cents = toCents(dollar_matcher.group(1).replace(",", ""), dollar_matcher.group(2));
+			Matcher multi_buy_matcher = MULTI_BUY_PATTERN.matcher(price_text);
+			if (multi_buy_matcher.find() && (multi_buy_matcher.end() <= dollar_matcher.start() + 1)) {
+				long item_count = Long.parseLong(multi_buy_matcher.group(1));
+				if (item_count > 0) {
+					cents = BigDecimal.valueOf(cents).divide(
+						BigDecimal.valueOf(item_count), 0, RoundingMode.HALF_UP
+					).longValue();
+				}
+			}
+			return cents;
+		}
+		Matcher cents_matcher = CENTS_PATTERN.matcher(price_text);
+		if (cents_matcher.find()) {
+			return Long.parseLong(cents_matcher.group(1));
+		}
+		Matcher plain_matcher = PLAIN_NUMBER_PATTERN.matcher(price_text);
+		if (plain_matcher.find()) {
+			return toCents(plain_matcher.group(1), plain_matcher.group(2));
+		}
+		return null;
+	}
+
+
+	private static long toCents(String dollars, String fraction) {
+		long cents = Long.parseLong(dollars) * 100;
+		if (fraction != null) {
+			cents += (fraction.length() == 1) ? Long.parseLong(fraction) * 10 : Long.parseLong(fraction);
+		}
+		return cents;
+	}
+
+
+	/**
+	 * parseQuantity - a public static method that turns a package size into a quantity in a canonical unit
+	 * - masses are converted to grams, volumes to millilitres, and counts to items ("ea")
+	 * - "1.89 kg" gives 1890 g, "12 x 355 mL" gives 4260 ml, "1 lb" gives 453.592 g and "6 pk" gives 6 ea
+	 * @param size_text - the package size as shown on the store's website, may be null
+	 * @return - a Quantity instance, or null if no amount and unit could be found in the text
+	 */
+	public static Quantity parseQuantity(String size_text) {
+		if (size_text == null) {
+			return null;
+		}
+		Matcher matcher = QUANTITY_PATTERN.matcher(size_text);
+		while (matcher.find()) {
+			String unit = matcher.group(3).toLowerCase(Locale.ROOT).replaceAll("[\\s.]", "");
+			String amount_text = matcher.group(2);
+			if ((amount_text == null) && !(isCountUnit(unit))) {
+				continue;
+			}
+			BigDecimal amount = (amount_text == null) ? BigDecimal.ONE : new BigDecimal(amount_text.replace(',', '.'));
+			if (matcher.group(1) != null) {
+				amount = amount.multiply(new BigDecimal(matcher.group(1)));
+			}
+			return toCanonical(amount, unit);
+		}
+		return null;
+	}
+
+
+	/**
+	 * parseUnitPrice - a public static method that parses a comparison price such as "$0.38/100g",
+	 * "$8.80/1kg" or "$1.10 / 1ea"
+	 * @param unit_price_text - the comparison price as shown on the store's website, may be null
+	 * @return - a UnitPrice instance (with the quantity in a canonical unit), or null if the text could not be
+	 * parsed
+	 */
+	public static UnitPrice parseUnitPrice(String unit_price_text) {
+		if (unit_price_text == null) {
+			return null;
+		}
+		int separator = unit_price_text.indexOf('/');
+		if (separator < 0) {
+			return null;
+		}
+		Long cents = parseCents(unit_price_text.substring(0, separator));
+		Quantity quantity = parseQuantity(unit_price_text.substring(separator + 1));
+		if ((cents == null) || (quantity == null)) {
+			return null;
+		}
+		return new UnitPrice(cents, quantity);
+	}
+
+
+	/**
+	 * comparisonPrice - a public static method that works out a price that can be compared across products:
+	 * cents per 100 g, per 100 ml, or per item, depending on the canonical unit
+	 * - the store's own comparison price is used when there is one, otherwise the shelf price is divided by
+	 *   the package size
+	 * @param price_cents - the shelf price in cents, may be null
+	 * @param size - the package size, may be null
+	 * @param unit_price - the store's comparison price, may be null
+	 * @return - a Comparison with the comparable price in cents (to 4 decimal places) and its unit, or null if
+	 * it cannot be worked out
+	 */
+	public static Comparison comparisonPrice(Long price_cents, Quantity size, UnitPrice unit_price) {
+		BigDecimal cents;
+		Quantity quantity;
+		if ((unit_price != null) && (unit_price.getQuantity().getAmount().signum() > 0)) {
+			cents = BigDecimal.valueOf(unit_price.getCents());
+			quantity = unit_price.getQuantity();
+		} else if ((price_cents != null) && (size != null) && (size.getAmount().signum() > 0)) {
+			cents = BigDecimal.valueOf(price_cents);
+			quantity = size;
+		} else {
+			return null;
+		}
+		BigDecimal base_amount = quantity.getUnit().equals("ea") ? BigDecimal.ONE : HUNDRED;
+		BigDecimal comparable_cents = cents.multiply(base_amount).divide(quantity.getAmount(), 4, RoundingMode.HALF_UP);
+		String comparison_unit = quantity.getUnit().equals("ea") ? "ea" : "100" + quantity.getUnit();
+		return new Comparison(comparable_cents, comparison_unit);
+	}
+
+
+	/**
+	 * Comparison - a comparable price: cents per "100g", per "100ml" or per "ea"
+	 */
+	public static class Comparison {
+		private BigDecimal cents;
+		private String unit;
+
+		public Comparison(BigDecimal cents, String unit) {
+			this.cents = cents;
+			this.unit = unit;
+		}
+
+		public BigDecimal getCents() {
+			return this.cents;
+		}
+
+		public String getUnit() {
+			return this.unit;
+		}
+	}
+
+
+	private static boolean isCountUnit(String unit) {
+		switch (unit) {
+			case "ea":
+			case "each":
+			case "un":
+			case "unit":
+			case "units":
+			case "pk":
+			case "pack":
+			case "ct":
+			case "count":
+			case "pc":
+			case "pcs":
+			case "piece":
+			case "pieces":
+			case "bunch":
+				return true;
+			default:
+				return false;
+		}
+	}
+
+
+	private static Quantity toCanonical(BigDecimal amount, String unit) {
+		BigDecimal factor;
+		String canonical_unit;
+		switch (unit) {
+			case "kg":
+				factor = new BigDecimal(1000);
+				canonical_unit = "g";
+				break;
+			case "g":
+				factor = BigDecimal.ONE;
+				canonical_unit = "g";
+				break;
+			case "mg":
+				factor = new BigDecimal("0.001");
+				canonical_unit = "g";
+				break;
+			case "lb":
+			case "lbs":
+				factor = new BigDecimal("453.59237");
+				canonical_unit = "g";
+				break;
+			case "oz":
+				factor = new BigDecimal("28.349523125");
+				canonical_unit = "g";
+				break;
+			case "floz":
+				factor = new BigDecimal("29.5735295625");
+				canonical_unit = "ml";
+				break;
+			case "l":
+				factor = new BigDecimal(1000);
+				canonical_unit = "ml";
+				break;
+			case "dl":
+				factor = HUNDRED;
+				canonical_unit = "ml";
+				break;
+			case "cl":
+				factor = BigDecimal.TEN;
+				canonical_unit = "ml";
+				break;
+			case "ml":
+				factor = BigDecimal.ONE;
+				canonical_unit = "ml";
+				break;
+			default:
+				factor = BigDecimal.ONE;
+				canonical_unit = "ea";
+		}
+		BigDecimal canonical_amount = amount.multiply(factor).setScale(3, RoundingMode.HALF_UP).stripTrailingZeros();
+		if (canonical_amount.scale() < 0) {
+			canonical_amount = canonical_amount.setScale(0);
+		}
+		return new Quantity(canonical_amount, canonical_unit);
+	}
+
+
+}
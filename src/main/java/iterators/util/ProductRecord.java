@@ -0,0 +1,276 @@
+package iterators.util;
+import java.lang.*;
+import java.util.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+
+public final class ProductRecord {
+	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMM-dd-yyyy-HH-mm");
+	private static final Field[] FIELDS = Field.values();
+	// the value of every field, indexed by Field.ordinal() (null for fields that were not scraped)
+	private final String[] values;
+
+
+	/**
+	 * Field - the shared schema of a product record: every field, the key it is written under in the product
+	 * xml and binary files, and the other keys the iterators have used for it (Metro pages are scraped into
+	 * product_brand_name, product_price and volume, the old Loblaws product page scraper used brand_name,
+	 * price_info and package_size), which are read into the same field
+	 */
+	public enum Field {
+		BRAND("brand", "product_brand_name", "brand_name"),
+		DATE("date"),
+		PRICE("price", "product_price", "price_info"),
+		PRODUCT_TITLE("product_title", "product_name"),
+		SIZE("size", "volume", "package_size"),
+		STORE_CHAIN_NAME("store_chain_name"),
+		TOWNSHIP_LOCATION("township_location"),
+		UNIT_PRICE("unit_price", "comparison_unit_price", "unit_price_for_comparison"),
+		CATEGORY_PATH("category_path", "category");
+
+		private static final HashMap<String, Field> BY_KEY = new HashMap<>();
+		private final String key;
+		private final String[] aliases;
+
+		static {
+			for (Field field: Field.values()) {
+				BY_KEY.put(field.key, field);
+				for (String alias: field.aliases) {
+					BY_KEY.put(alias, field);
+				}
+			}
+		}
+
+		Field(String key, String... aliases) {
+			this.key = key;
+			this.aliases = aliases;
+		}
+
+		public String getKey() {
+			return this.key;
+		}
+
+		/**
+		 * forKey - returns the field a key (or one of its older aliases) is stored in, or null if the key is
+		 * not part of the schema
+		 */
+		public static Field forKey(String key) {
+			return BY_KEY.get(key);
+		}
+	}
+
+
+	private ProductRecord(String[] values) {
+		this.values = values;
+	}
+
+
+	public String get(Field field) {
+		return this.values[field.ordinal()];
+	}
+
+
+	public String getBrand() {
+		return this.values[Field.BRAND.ordinal()];
+	}
+
+
+	public String getDate() {
+		return this.values[Field.DATE.ordinal()];
+	}
+
+
+	public String getPrice() {
+		return this.values[Field.PRICE.ordinal()];
+	}
+
+
+	public String getProductTitle() {
+		return this.values[Field.PRODUCT_TITLE.ordinal()];
+	}
+
+
+	public String getSize() {
+		return this.values[Field.SIZE.ordinal()];
+	}
+
+
+	public String getStoreChainName() {
+		return this.values[Field.STORE_CHAIN_NAME.ordinal()];
+	}
+
+
+	public String getTownshipLocation() {
+		return this.values[Field.TOWNSHIP_LOCATION.ordinal()];
+	}
+
+
+	public String getUnitPrice() {
+		return this.values[Field.UNIT_PRICE.ordinal()];
+	}
+
+
+	public String getCategoryPath() {
+		return this.values[Field.CATEGORY_PATH.ordinal()];
+	}
+
+
+	/**
+	 * getCollectedAt - a public method that parses the date the record was scraped on (for example
+	 * "Oct-17-2026-10-30", older records were written with a leading dash)
+	 * @return - a LocalDateTime instance, or null if the date is missing or could not be parsed
+	 */
+	public LocalDateTime getCollectedAt() {
+		String date_text = this.getDate();
+		if (date_text == null) {
+			return null;
+		}
+		String trimmed = date_text.strip();
+		if (trimmed.startsWith("-")) {
+			trimmed = trimmed.substring(1);
+		}
+		try {
+			return LocalDateTime.parse(trimmed, DATE_FORMATTER);
+		} catch (DateTimeParseException err) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * getPriceCents - a public method that parses the price with PriceParser.parseCents()
+	 * @return - the price in cents, or null if there is no price or it could not be parsed
+	 */
+	public Long getPriceCents() {
+		return PriceParser.parseCents(this.getPrice());
+	}
+
+
+	/**
+	 * getSizeQuantity - a public method that parses the package size with PriceParser.parseQuantity()
+	 * @return - a PriceParser.Quantity instance, or null if there is no size or it could not be parsed
+	 */
+	public PriceParser.Quantity getSizeQuantity() {
+		return PriceParser.parseQuantity(this.getSize());
+	}
+
+
+	/**
+	 * with - a public method that returns a copy of this record with one field changed
+	 * @param field - the field to change
+	 * @param value - the new value, or null to remove the field
+	 * @return - a new ProductRecord instance
+	 */
+	public ProductRecord with(Field field, String value) {
+		String[] changed_values = this.values.clone();
+		changed_values[field.ordinal()] = value;
+		return new ProductRecord(changed_values);
+	}
+
+
+	/**
+	 * isEmpty - a public method that returns true if none of the fields were scraped
+	 */
+	public boolean isEmpty() {
+		for (String value: this.values) {
+			if (value != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * toMap - a public method that returns the fields that are set, keyed by Field.getKey() in schema order
+	 * @return - a LinkedHashMap<String, String> instance
+	 */
+	public LinkedHashMap<String, String> toMap() {
+		LinkedHashMap<String, String> mapping = new LinkedHashMap<>();
+		for (Field field: FIELDS) {
+			if (this.values[field.ordinal()] != null) {
+				mapping.put(field.key, this.values[field.ordinal()]);
+			}
+		}
+		return mapping;
+	}
+
+
+	/**
+	 * fromMap - a public static method that reads a record from a map keyed by Field.getKey() or any of the
+	 * older aliases (keys that are not part of the schema are ignored)
+	 * @param mapping - the map to read
+	 * @return - a ProductRecord instance
+	 */
+	public static ProductRecord fromMap(Map<String, String> mapping) {
+		Builder builder = new Builder();
+		for (Map.Entry<String, String> entry: mapping.entrySet()) {
+			builder.set(entry.getKey(), entry.getValue());
+		}
+		return builder.build();
+	}
+
+
+	@Override
+	public boolean equals(Object other) {
+		return (other instanceof ProductRecord) && Arrays.equals(this.values, ((ProductRecord) other).values);
+	}
+
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.values);
+	}
+
+
+	@Override
+	public String toString() {
+		return this.toMap().toString();
+	}
+
+
+	/**
+	 * Builder - collects the fields of a record while it is being scraped or parsed
+	 */
+	public static class Builder {
+		private String[] values;
+
+		public Builder() {
+			this.values = new String[FIELDS.length];
+		}
+
+		public Builder set(Field field, String value) {
+			this.values[field.ordinal()] = value;
+			return this;
+		}
+
+		/**
+		 * set - sets the field stored under key (see Field.forKey())
+		 * @return - true if key is part of the schema, false if the value was ignored
+		 */
+		public boolean set(String key, String value) {
+			Field field = Field.forKey(key);
+			if (field == null) {
+				return false;
+			}
+			this.values[field.ordinal()] = value;
+			return true;
+		}
+
+		public ProductRecord build() {
+			return new ProductRecord(this.values.clone());
+		}
+
+		/**
+		 * clear - unsets every field, so the builder can be reused for the next record
+		 */
+		public Builder clear() {
+			Arrays.fill(this.values, null);
+			return this;
+		}
+	}
+
+
+}
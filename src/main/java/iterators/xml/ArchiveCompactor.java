@@ -0,0 +1,601 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import iterators.util.ProductRecord;
+
+
+public class ArchiveCompactor {
+	// the archive of a month is <stem>-archive-yyyy-MM.xml.gz, with its block index next to it
+	static final String ARCHIVE_INFIX = "-archive-";
+	static final String BLOCK_INDEX_SUFFIX = ".blocks" + RecordIndex.INDEX_SUFFIX;
+	// the processing instruction after the opening root tag of an archive that holds its generation id, a
+	// random number that is also stamped in its block index (see townshipRecords())
+	private static final String GENERATION_TARGET = "archive_generation";
+	// the date and time XMLParser adds to the name of every file of a run
+	private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("-MMM-dd-yyyy-HH-mm");
+	private static final int FILE_DATE_LENGTH = 18;
+	// records sorted in memory at a time (larger months are sorted in runs spilled to binary record files)
+	private static final int SORT_RUN_RECORDS = 100000;
+	// the most records in a compressed block (a block also ends where the township changes)
+	private static final int BLOCK_RECORDS = 4096;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// the archive order: township, then category, then product, with the remaining fields breaking ties so
+	// that only exact duplicates compare equal
+	private static final ProductRecord.Field[] SORT_FIELDS = {
+		ProductRecord.Field.TOWNSHIP_LOCATION, ProductRecord.Field.CATEGORY_PATH, ProductRecord.Field.PRODUCT_TITLE,
+		ProductRecord.Field.BRAND, ProductRecord.Field.SIZE, ProductRecord.Field.DATE, ProductRecord.Field.PRICE,
+		ProductRecord.Field.UNIT_PRICE, ProductRecord.Field.STORE_CHAIN_NAME
+	};
+	static final Comparator<ProductRecord> ARCHIVE_ORDER = (first, second) -> {
+		for (ProductRecord.Field field: SORT_FIELDS) {
+			int order = Comparator.nullsFirst(Comparator.<String>naturalOrder()).compare(
+				first.get(field), second.get(field)
+			);
+			if (order != 0) {
+				return order;
+			}
+		}
+		return 0;
+	};
+	private XMLParser stream;
+	private String stem;
+	private String root_tag;
+	private String mapping_tag;
+
+
+	/**
+	 * ArchiveCompactor - merges the dated files that every run of a stream leaves in the working directory
+	 * (one stream per store chain, for example nofrills_product_info-Oct-17-2026-10-30.xml) into one archive
+	 * per month, nofrills_product_info-archive-2026-10.xml.gz
+	 * - the records of an archive are sorted by township, category and product, and exact duplicates (every
+	 *   field equal) are kept once
+	 * - the archive is a product xml file compressed as a series of gzip members (any gzip reader, and so any
+	 *   XMLParser, reads it as one stream), each holding a block of at most BLOCK_RECORDS records of a single
+	 *   township; the block index next to it (the archive name followed by .blocks.idx, in the RecordIndex
+	 *   format with one entry per block) gives the offset of every block, so townshipRecords() decompresses
+	 *   only the blocks of one township
+	 * - only files the stream's readers would read are compacted (with a segment manifest, only complete
+	 *   ones); the consumers of the stream should be done with the files in the window, since they are removed
+	 * @param xml_filename - the xml file name of the stream, as given to its XMLParser
+	 * @param root_tag - the root tag of the files
+	 * @param mapping_tag - the mapping tag of the records
+	 */
+	public ArchiveCompactor(String xml_filename, String root_tag, String mapping_tag) {
+		this.stream = new XMLParser(xml_filename, root_tag, mapping_tag, true);
+		this.stem = xml_filename.split("\\.")[0];
+		this.root_tag = root_tag;
+		this.mapping_tag = mapping_tag;
+	}
+
+
+	/**
+	 * setWorkingDirectory - a public method that compacts the files of the stream (and keeps the archives) in a
+	 * directory other than the working directory of the JVM (see XMLParser.setWorkingDirectory())
+	 * @param directory - the directory of the files
+	 * @return - returns nothing (void)
+	 */
+	public void setWorkingDirectory(Path directory) {
+		this.stream.setWorkingDirectory(directory);
+	}
+
+
+	/**
+	 * archivePath - a public method that returns the path of the archive of a month in the working directory
+	 */
+	public Path archivePath(YearMonth month) {
+		return this.stream.workingDirectory().resolve(this.stem + ARCHIVE_INFIX + month + ".xml.gz");
+	}
+
+
+	static Path blockIndexPath(Path archive_path) {
+		return Paths.get(archive_path.toString() + BLOCK_INDEX_SUFFIX);
+	}
+
+
+	/**
+	 * compact - a public method that compacts the files of the stream written from the start of one day up to
+	 * (not including) the start of another, month by month
+	 * - the records of a month that already has an archive are merged into it
+	 * - the archive is written to a temporary file and read back in full (record count, order and a sum of
+	 *   record hashes must match what was written) before it replaces the old archive, and the compacted
+	 *   files (with their checkpoint markers and record indexes) are only deleted after that and removed from
+	 *   the segment manifest, if there is one
+	 * - the archive only holds the ProductRecord fields, so a month with a file that has any other tag is not
+	 *   compacted and its files are kept (the months before it are already done)
+	 * @param from - the first day of the window
+	 * @param to - the day after the window
+	 * @return - an ArrayList<CompactionReport> with a report for every month that had files in the window
+	 * @throws IOException - if a file could not be read or written, or an archive failed verification
+	 * @throws XMLStreamException - if a file could not be parsed or has a tag outside the ProductRecord schema
+	 */
+	public ArrayList<CompactionReport> compact(LocalDate from, LocalDate to) throws IOException, XMLStreamException {
+		TreeMap<YearMonth, ArrayList<String>> files_by_month = new TreeMap<>();
+		for (String source_file: this.stream.sourceFilesForStream()) {
+			LocalDate file_date = this.fileDate(source_file);
+			if ((file_date != null) && !file_date.isBefore(from) && file_date.isBefore(to)) {
+				files_by_month.computeIfAbsent(YearMonth.from(file_date), month -> new ArrayList<>()).add(source_file);
+			}
+		}
+		ArrayList<CompactionReport> reports = new ArrayList<>();
+		for (Map.Entry<YearMonth, ArrayList<String>> month_files: files_by_month.entrySet()) {
+			reports.add(this.compactMonth(month_files.getKey(), month_files.getValue()));
+		}
+		return reports;
+	}
+
+
+	/**
+	 * fileDate - a private helper method that returns the day a file of the stream was written on, from the
+	 * date and time in its name
+	 * @param source_file - the path of the file
+	 * @return - a LocalDate instance, or null if the name has no date
+	 */
+	private LocalDate fileDate(String source_file) {
+		String file_name = Paths.get(source_file).getFileName().toString();
+		if (!file_name.startsWith(this.stem) || (file_name.length() < this.stem.length() + FILE_DATE_LENGTH)) {
+			return null;
+		}
+		try {
+			return LocalDateTime.parse(
+				file_name.substring(this.stem.length(), this.stem.length() + FILE_DATE_LENGTH), FILE_DATE_FORMAT
+			).toLocalDate();
+		} catch (DateTimeParseException err) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * compactMonth - a private helper method that merges the files of one month (and its existing archive)
+	 * into a new archive, verifies it and removes the files
+	 * @param month - the month
+	 * @param source_files - the paths of the files of the month, in run order
+	 * @return - a CompactionReport instance
+	 * @throws IOException - if a file could not be read or written, or the archive failed verification
+	 * @throws XMLStreamException - if a file could not be parsed
+	 */
+	private CompactionReport compactMonth(YearMonth month, ArrayList<String> source_files) throws IOException, XMLStreamException {
+		Path archive_path = this.archivePath(month);
+		Path pwd = archive_path.getParent();
+		ArrayList<String> input_files = new ArrayList<>(source_files);
+		if (Files.exists(archive_path)) {
+			input_files.add(archive_path.toString());
+		}
+		Path spill_directory = Files.createTempDirectory(pwd, "compaction-");
+		Path temporary_archive = Paths.get(archive_path.toString() + ".tmp");
+		Path temporary_index = Paths.get(blockIndexPath(archive_path).toString() + ".tmp");
+		long records_read = 0;
+		long[] written;
+		try {
+			// sorted runs of SORT_RUN_RECORDS records, kept in memory if there is only one; the archive only holds
+			// the ProductRecord fields, so a file with any other tag is left alone rather than losing the tag
+			// (and records that differ only in it would be taken for duplicates)
+			ArrayList<SortedRun> runs = new ArrayList<>();
+			XMLParser reader = this.stream.readerForFiles(input_files);
+			ArrayList<ProductRecord> batch = reader.nextSchemaBatch(SORT_RUN_RECORDS);
+			while (!batch.isEmpty()) {
+				records_read += batch.size();
+				batch.sort(ARCHIVE_ORDER);
+				ArrayList<ProductRecord> next_batch = reader.nextSchemaBatch(SORT_RUN_RECORDS);
+				if (runs.isEmpty() && next_batch.isEmpty()) {
+					runs.add(new SortedRun(batch.iterator()));
+				} else {
+					String run_filename = String.format("run%04d.bin", runs.size() + 1);
+					BinaryRecordFile run_file = new BinaryRecordFile(spill_directory, run_filename, false);
+					for (ProductRecord record: batch) {
+						run_file.write(record);
+					}
+					run_file.close();
+					runs.add(new SortedRun(new BinaryRecordFile(spill_directory, run_filename, false)));
+				}
+				batch = next_batch;
+			}
+			reader.closeProductXmlInputStream();
+			written = this.writeArchive(runs, temporary_archive, temporary_index);
+			this.replaceArchive(archive_path, temporary_archive, temporary_index, written);
+		} finally {
+			for (File spill_file: spill_directory.toFile().listFiles()) {
+				spill_file.delete();
+			}
+			Files.delete(spill_directory);
+			// left behind if the archive could not be written or failed verification
+			Files.deleteIfExists(temporary_archive);
+			Files.deleteIfExists(temporary_index);
+		}
+		ArrayList<String> removed_names = new ArrayList<>();
+		for (String source_file: source_files) {
+			Path source_path = Paths.get(source_file);
+			Files.deleteIfExists(source_path);
+			Files.deleteIfExists(Paths.get(source_file + ".ckpt"));
+			Files.deleteIfExists(RecordIndex.indexPath(source_path));
+			removed_names.add(source_path.getFileName().toString());
+		}
+		SegmentManifest manifest = this.stream.segmentManifest(pwd);
+		if (manifest.exists()) {
+			manifest.remove(removed_names);
+		}
+		return new CompactionReport(
+			month, archive_path, source_files.size(), records_read, written[0], written[2], Files.size(archive_path)
+		);
+	}
+
+
+	/**
+	 * replaceArchive - a private helper method that verifies a newly written archive and moves it and its block
+	 * index over the old ones
+	 * - the archive is moved first: if the process dies between the two moves, the old index is left next to
+	 *   the new archive, which townshipRecords() detects from the size and generation id stamped in the index
+	 * - the caller deletes the temporary files if this fails
+	 * @param archive_path - the path of the archive
+	 * @param temporary_archive - the path the new archive was written to
+	 * @param temporary_index - the path its block index was written to
+	 * @param written - what writeArchive() returned
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the archive failed verification or could not be moved
+	 * @throws XMLStreamException - if the archive could not be parsed
+	 */
+	private void replaceArchive(Path archive_path, Path temporary_archive, Path temporary_index, long[] written)
+		throws IOException, XMLStreamException {
+		if (!this.verifyArchive(temporary_archive, temporary_index, written)) {
+			throw new IOException(temporary_archive + " did not read back as written, the compacted files were kept");
+		}
+		Files.move(temporary_archive, archive_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.move(temporary_index, blockIndexPath(archive_path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	/**
+	 * rebuildBlockIndex - a private helper method that writes an archive again (it is already in order, so it
+	 * is read as a single sorted run) to give it a block index that matches it
+	 * @param archive_path - the path of the archive
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the archive could not be read or written
+	 * @throws XMLStreamException - if the archive could not be parsed
+	 */
+	private void rebuildBlockIndex(Path archive_path) throws IOException, XMLStreamException {
+		Path temporary_archive = Paths.get(archive_path.toString() + ".tmp");
+		Path temporary_index = Paths.get(blockIndexPath(archive_path).toString() + ".tmp");
+		XMLParser reader = this.stream.readerForFiles(Arrays.asList(archive_path.toString()));
+		try {
+			long[] written;
+			try (java.util.stream.Stream<ProductRecord> records = reader.stream(false)) {
+				written = this.writeArchive(
+					new ArrayList<>(Arrays.asList(new SortedRun(records.iterator()))), temporary_archive, temporary_index
+				);
+			}
+			this.replaceArchive(archive_path, temporary_archive, temporary_index, written);
+		} finally {
+			Files.deleteIfExists(temporary_archive);
+			Files.deleteIfExists(temporary_index);
+		}
+	}
+
+
+	/**
+	 * writeArchive - a private helper method that merges sorted runs into a block compressed archive and its
+	 * block index, dropping exact duplicates
+	 * - the archive gets a new generation id, written after its opening root tag and stamped in the index
+	 *   along with the size of the archive
+	 * @param runs - the sorted runs
+	 * @param archive_path - the path to write the archive to
+	 * @param index_path - the path to write the block index to
+	 * @return - a three element array: the number of records written, the sum of their hash codes, and the
+	 * number of blocks
+	 * @throws IOException - if a run could not be read or the archive could not be written
+	 * @throws XMLStreamException - if the xml could not be written
+	 */
+	private long[] writeArchive(ArrayList<SortedRun> runs, Path archive_path, Path index_path)
+		throws IOException, XMLStreamException {
+		long[] written = new long[3];
+		PriorityQueue<SortedRun> heads = new PriorityQueue<>((first, second) -> ARCHIVE_ORDER.compare(first.head, second.head));
+		for (SortedRun run: runs) {
+			if (run.advance()) {
+				heads.add(run);
+			}
+		}
+		// non-negative, since -1 stands for an archive without a generation id
+		long generation = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+		FileOutputStream file_stream = new FileOutputStream(archive_path.toFile());
+		RecordIndex.Appender block_index = null;
+		try {
+			CountingOutputStream file_output = new CountingOutputStream(new BufferedOutputStream(file_stream, BUFFER_SIZE), 0);
+			GzipBlockOutputStream block_output = new GzipBlockOutputStream(file_output);
+			block_index = RecordIndex.Appender.forIndexFile(index_path, 0);
+			// the xml writer hands over a few bytes at a time, which would mean a deflate call per tag without a buffer
+			XMLStreamWriter writer = XMLParser.XML_OUTPUT_FACTORY.createXMLStreamWriter(
+				new BufferedOutputStream(block_output, BUFFER_SIZE), "UTF-8"
+			);
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement(this.root_tag);
+			writer.writeCharacters("\n\t");
+			writer.writeProcessingInstruction(GENERATION_TARGET, Long.toString(generation));
+			writer.writeCharacters("\n");
+			ProductRecord previous = null;
+			int block_records = 0;
+			while (!heads.isEmpty()) {
+				SortedRun run = heads.poll();
+				ProductRecord record = run.head;
+				if (run.advance()) {
+					heads.add(run);
+				}
+				if ((previous != null) && record.equals(previous)) {
+					continue;
+				}
+				boolean township_changed = (previous != null) &&
+					!Objects.equals(previous.getTownshipLocation(), record.getTownshipLocation());
+				if ((block_records == BLOCK_RECORDS) || township_changed) {
+					writer.flush();
+					block_output.nextBlock();
+					block_records = 0;
+				}
+				if (block_records == 0) {
+					block_index.add(block_output.block_offset, record.getTownshipLocation(), record.getCategoryPath());
+					written[2] += 1;
+				}
+				XMLParser.writeRecord(writer, this.mapping_tag, record);
+				block_records += 1;
+				written[0] += 1;
+				written[1] += record.hashCode();
+				previous = record;
+			}
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.flush();
+			block_output.finish();
+			file_output.flush();
+			file_stream.getFD().sync();
+			file_output.close();
+			block_index.stamp(file_output.getCount(), generation);
+			block_index.close();
+			return written;
+		} finally {
+			// a no-op after a clean close, and frees the files if writing failed
+			file_stream.close();
+			if (block_index != null) {
+				block_index.close();
+			}
+		}
+	}
+
+
+	/**
+	 * verifyArchive - a private helper method that reads a newly written archive back in full
+	 * @param archive_path - the path of the archive
+	 * @param index_path - the path of its block index
+	 * @param written - what writeArchive() returned
+	 * @return - true if the archive holds the records that were written, in strictly increasing order, and
+	 * its block index has an entry per block
+	 * @throws IOException - if the archive could not be read
+	 * @throws XMLStreamException - if the archive could not be parsed
+	 */
+	private boolean verifyArchive(Path archive_path, Path index_path, long[] written) throws IOException, XMLStreamException {
+		long records = 0;
+		long hash_sum = 0;
+		ProductRecord previous = null;
+		try (InputStream archive_stream = XMLParser.openDecompressedInput(archive_path.toFile())) {
+			XMLStreamReader reader = XMLParser.XML_INPUT_FACTORY.createXMLStreamReader(archive_stream);
+			ProductRecord.Builder record = new ProductRecord.Builder();
+			while (XMLParser.advanceToMapping(reader, this.mapping_tag)) {
+				record.clear();
+				if (!XMLParser.readMapping(reader, this.root_tag, this.mapping_tag, record::set)) {
+					return false;
+				}
+				ProductRecord read_record = record.build();
+				if ((previous != null) && (ARCHIVE_ORDER.compare(previous, read_record) >= 0)) {
+					return false;
+				}
+				records += 1;
+				hash_sum += read_record.hashCode();
+				previous = read_record;
+			}
+			reader.close();
+		}
+		return (records == written[0]) && (hash_sum == written[1]) &&
+			(RecordIndex.loadFile(index_path).size() == written[2]);
+	}
+
+
+	/**
+	 * townshipRecords - a public method that reads the records of one township from the archive of a month,
+	 * decompressing only its blocks
+	 * @param month - the month of the archive
+	 * @param township - the township_location of the records
+	 * @return - an ArrayList<ProductRecord> of the records, in archive order (empty if there is no archive)
+	 * @throws IOException - if the archive or its block index could not be read
+	 * @throws XMLStreamException - if the archive could not be parsed
+	 */
+	public ArrayList<ProductRecord> townshipRecords(YearMonth month, String township) throws IOException, XMLStreamException {
+		ArrayList<ProductRecord> records = new ArrayList<>();
+		Path archive_path = this.archivePath(month);
+		if (!Files.exists(archive_path)) {
+			return records;
+		}
+		// an index that is missing or does not match the archive (left by a compaction that died between moving
+		// the two) is rebuilt before it is used; the generation id is at the start of the archive, so checking
+		// it only decompresses the first few bytes
+		Path index_path = blockIndexPath(archive_path);
+		RecordIndex blocks = Files.exists(index_path) ? RecordIndex.loadFile(index_path) : null;
+		if ((blocks == null) || !blocks.matchesStamp(Files.size(archive_path), this.archiveGeneration(archive_path))) {
+			this.rebuildBlockIndex(archive_path);
+			blocks = RecordIndex.loadFile(index_path);
+		}
+		// blocks never span townships and a township's blocks are consecutive, so reading starts at its first
+		// block and stops at the first record of another township
+		int[] township_blocks = blocks.recordsInTownship(township);
+		if (township_blocks.length == 0) {
+			return records;
+		}
+		long block_offset = blocks.getOffset(township_blocks[0]);
+		try (FileChannel channel = FileChannel.open(archive_path, StandardOpenOption.READ)) {
+			channel.position(block_offset);
+			// a gzip stream goes on into the members after the first one, so the blocks are read in one pass
+			InputStream block_stream = new GZIPInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE), BUFFER_SIZE
+			);
+			// the first block starts with the xml declaration and root tag, the others in the middle of the root
+			XMLStreamReader reader = (block_offset == 0) ?
+				XMLParser.XML_INPUT_FACTORY.createXMLStreamReader(block_stream) :
+				XMLParser.XML_INPUT_FACTORY.createXMLStreamReader(
+					XMLParser.reopenRoot(new InputStreamReader(block_stream, StandardCharsets.UTF_8), this.root_tag)
+				);
+			while (XMLParser.advanceToMapping(reader, this.mapping_tag)) {
+				ProductRecord.Builder record = new ProductRecord.Builder();
+				XMLParser.readMapping(reader, this.root_tag, this.mapping_tag, record::set);
+				ProductRecord read_record = record.build();
+				if (!township.equals(read_record.getTownshipLocation())) {
+					break;
+				}
+				records.add(read_record);
+			}
+			reader.close();
+		}
+		return records;
+	}
+
+
+	/**
+	 * archiveGeneration - a private helper method that reads the generation id of an archive, stopping at the
+	 * first record
+	 * @param archive_path - the path of the archive
+	 * @return - the generation id, or -1 if the archive has none (it was written before archives had one)
+	 * @throws IOException - if the archive could not be read
+	 * @throws XMLStreamException - if the start of the archive could not be parsed
+	 */
+	private long archiveGeneration(Path archive_path) throws IOException, XMLStreamException {
+		try (InputStream archive_stream = XMLParser.openDecompressedInput(archive_path.toFile())) {
+			XMLStreamReader reader = XMLParser.XML_INPUT_FACTORY.createXMLStreamReader(archive_stream);
+			try {
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if ((event == XMLStreamConstants.PROCESSING_INSTRUCTION) && GENERATION_TARGET.equals(reader.getPITarget())) {
+						return Long.parseLong(reader.getPIData().strip());
+					}
+					if ((event == XMLStreamConstants.START_ELEMENT) && reader.getLocalName().equals(this.mapping_tag)) {
+						return -1;
+					}
+				}
+			} catch (NumberFormatException err) {
+				return -1;
+			} finally {
+				reader.close();
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * SortedRun - one sorted run of records being merged, read from memory or from a spilled binary record
+	 * file, with its next record in head
+	 */
+	private static class SortedRun {
+		private Iterator<ProductRecord> records;
+		private BinaryRecordFile run_file;
+		ProductRecord head;
+
+		SortedRun(Iterator<ProductRecord> records) {
+			this.records = records;
+		}
+
+		SortedRun(BinaryRecordFile run_file) {
+			this.run_file = run_file;
+		}
+
+		boolean advance() throws IOException {
+			if (this.records != null) {
+				this.head = this.records.hasNext() ? this.records.next() : null;
+			} else {
+				this.head = this.run_file.hasNext() ? this.run_file.nextRecord() : null;
+			}
+			return this.head != null;
+		}
+	}
+
+
+	/**
+	 * GzipBlockOutputStream - compresses what is written to it as a series of gzip members, a new one being
+	 * started by nextBlock()
+	 */
+	private static class GzipBlockOutputStream extends OutputStream {
+		private CountingOutputStream out;
+		private GZIPOutputStream block;
+		// the offset of the current member in the file (its gzip header is written as soon as it is started)
+		long block_offset;
+
+		GzipBlockOutputStream(CountingOutputStream out) throws IOException {
+			this.out = out;
+			this.block_offset = out.getCount();
+			this.block = new GZIPOutputStream(out, BUFFER_SIZE);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.block.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.block.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.block.flush();
+		}
+
+		// ends the current member (without closing the stream below it) and starts the next one
+		void nextBlock() throws IOException {
+			this.block.finish();
+			this.block_offset = this.out.getCount();
+			this.block = new GZIPOutputStream(this.out, BUFFER_SIZE);
+		}
+
+		void finish() throws IOException {
+			this.block.finish();
+		}
+	}
+
+
+	/**
+	 * main - compacts the files of a stream in the working directory
+	 * - usage: ArchiveCompactor XML_FILE FROM TO [ROOT_TAG MAPPING_TAG] (for example
+	 *   nofrills_product_info.xml 2026-09-01 2026-10-01, TO being the day after the window)
+	 */
+	public static void main(String[] args) throws IOException, XMLStreamException {
+		if ((args.length != 3) && (args.length != 5)) {
+			System.out.println("usage: ArchiveCompactor XML_FILE FROM TO [ROOT_TAG MAPPING_TAG]");
+			System.exit(2);
+		}
+		String root_tag = (args.length == 5) ? args[3] : "product_records";
+		String mapping_tag = (args.length == 5) ? args[4] : "product_record";
+		ArchiveCompactor compactor = new ArchiveCompactor(args[0], root_tag, mapping_tag);
+		ArrayList<CompactionReport> reports = compactor.compact(LocalDate.parse(args[1]), LocalDate.parse(args[2]));
+		for (CompactionReport report: reports) {
+			System.out.println(report);
+		}
+		System.out.println("Wrote " + reports.size() + " archives");
+	}
+
+
+}
@@ -0,0 +1,577 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.StandardOpenOption;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.function.BiConsumer;
+import iterators.util.ProductRecord;
+
+
+public class BinaryRecordFile {
+	// every file starts with these bytes followed by the format version
+	private static final byte[] MAGIC = {'G', 'S', 'P', 'R'};
+	private static final int FORMAT_VERSION = 1;
+	// frame types: a new dictionary string, a product record, and a dictionary reset (written when records are
+	// appended to an existing file, since the dictionary of the earlier writer is not known)
+	private static final int DICTIONARY_FRAME = 1;
+	private static final int RECORD_FRAME = 2;
+	private static final int RESET_FRAME = 3;
+	// values are only added to the dictionary while it is below this size, and if they are short enough to
+	// be likely to repeat (store chains, townships, brands, sizes, prices); anything else is written inline
+	private static final int MAX_DICTIONARY_ENTRIES = 1 << 16;
+	private static final int MAX_DICTIONARY_VALUE_LENGTH = 128;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// the date and time added to the name of every run's file (the same as XMLParser's)
+	private static final String DATE_PATTERN = "-MMM-dd-yyyy-HH-mm";
+	private static final ProductRecord.Field[] RECORD_FIELDS = ProductRecord.Field.values();
+	private Path directory;
+	private String filename;
+	private boolean add_name_suffix;
+	private String current_output_filename;
+	private String glob_pattern;
+	private DataOutputStream output;
+	private HashMap<String, Integer> output_dictionary;
+	private ByteArrayOutputStream record_body;
+	private DataInputStream input;
+	private ArrayList<String> input_dictionary;
+	private ArrayList<String> matched_filenames;
+	private boolean input_opened;
+	private byte[] pending_record;
+	private int pending_record_length;
+	private int incomplete_frames_skipped;
+
+
+	public BinaryRecordFile(String filename, boolean name_suffix) {
+		this(Paths.get(System.getProperty("user.dir")), filename, name_suffix);
+	}
+
+
+	/**
+	 * BinaryRecordFile - reads and writes product records in a compact binary format, as an alternative to
+	 * the product xml files of XMLParser (with the same file naming: if name_suffix is true every run writes
+	 * to name-MMM-dd-yyyy-HH-mm.ext, and the readers go through every such file in the order the runs started)
+	 * - a file is the bytes GSPR, a format version byte, and then a sequence of frames, each one a type byte
+	 *   and a varint length followed by that many bytes
+	 * - dictionary frames add a UTF-8 string to the dictionary of the file (ids are given out in order from
+	 *   0), record frames hold a varint field count and, per field, the dictionary id of the key and either
+	 *   the dictionary id of the value (shifted left by one) or 1 followed by the value inline
+	 * - the length prefix lets a reader skip a record without decoding it, and a file cut short in the middle
+	 *   of a frame is read up to the last complete frame
+	 * @param directory - the directory holding the files
+	 * @param filename - the file name, with an extension (for example nofrills_product_info.bin)
+	 * @param name_suffix - true to add the date and time to the name of the output file
+	 */
+	public BinaryRecordFile(Path directory, String filename, boolean name_suffix) {
+		this.directory = directory;
+		this.filename = filename;
+		this.add_name_suffix = name_suffix;
+		this.input_opened = false;
+		this.matched_filenames = new ArrayList<>();
+		this.pending_record = new byte[256];
+		this.pending_record_length = -1;
+		this.incomplete_frames_skipped = 0;
+		String[] prefix_and_extension = filename.split("\\.");
+		if (name_suffix) {
+			String formatted_date = LocalDateTime.now().format(DateTimeFormatter.ofPattern(DATE_PATTERN));
+			this.current_output_filename = prefix_and_extension[0] + formatted_date + "." + prefix_and_extension[1];
+			this.glob_pattern = prefix_and_extension[0] +
+				"-[A-Za-z][A-Za-z][A-Za-z]-[0-9][0-9]-[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]." +
+				prefix_and_extension[1] + "{,.gz}";
+		} else {
+			this.current_output_filename = filename;
+			this.glob_pattern = prefix_and_extension[0] + "." + prefix_and_extension[1] + "{,.gz}";
+		}
+	}
+
+
+	/**
+	 * writeVarint - a static helper method that writes a non-negative int in 7 bit groups, lowest first, with
+	 * the high bit set on every byte but the last
+	 * @param out - the OutputStream to write to
+	 * @param value - the value (must be non-negative)
+	 * @return - returns nothing (void)
+	 */
+	static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+
+	/**
+	 * readVarint - a static helper method that reads a varint written by writeVarint
+	 * @param in - the InputStream to read from
+	 * @return - the value
+	 * @throws EOFException - if the stream ends before the last byte of the varint
+	 */
+	static int readVarint(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int next_byte = in.read();
+			if (next_byte < 0) {
+				throw new EOFException();
+			}
+			value |= (next_byte & 0x7f) << shift;
+			if ((next_byte & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+
+	static int readVarint(byte[] bytes, int[] position) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int next_byte = bytes[position[0]] & 0xff;
+			position[0] += 1;
+			value |= (next_byte & 0x7f) << shift;
+			if ((next_byte & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint in binary record file");
+	}
+
+
+	/**
+	 * openOutput - a private helper method that opens the output file for appending, writing the file header
+	 * if the file is new or a dictionary reset if it already has records in it
+	 * - an existing file is first cut back to the end of its last complete frame, since a frame torn by a
+	 *   writer that died would otherwise swallow the start of the frames appended after it
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the file could not be opened, or is not a binary record file
+	 */
+	private void openOutput() throws IOException {
+		if (this.output != null) {
+			return;
+		}
+		File output_file = this.directory.resolve(this.current_output_filename).toFile();
+		boolean file_already_exists = !(output_file.createNewFile());
+		if (file_already_exists && (output_file.length() > 0)) {
+			long complete_length = completeLength(output_file);
+			if (complete_length < output_file.length()) {
+				try (FileChannel channel = FileChannel.open(output_file.toPath(), StandardOpenOption.WRITE)) {
+					channel.truncate(complete_length);
+					channel.force(true);
+				}
+			}
+		}
+		this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output_file, true), BUFFER_SIZE));
+		this.output_dictionary = new HashMap<>();
+		this.record_body = new ByteArrayOutputStream(256);
+		if (file_already_exists && (output_file.length() > 0)) {
+			this.output.write(RESET_FRAME);
+			writeVarint(this.output, 0);
+		} else {
+			this.output.write(MAGIC);
+			this.output.write(FORMAT_VERSION);
+		}
+	}
+
+
+	/**
+	 * completeLength - a static helper method that returns the length of the complete frames of a file (with
+	 * its header), that is the length it should have if its writer died in the middle of a frame
+	 * @param file - the file
+	 * @return - the length, 0 if not even the header is complete
+	 * @throws IOException - if the file could not be read, or is not a binary record file
+	 */
+	static long completeLength(File file) throws IOException {
+		try (DataInputStream file_input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			byte[] header = new byte[MAGIC.length + 1];
+			try {
+				file_input.readFully(header);
+			} catch (EOFException err) {
+				return 0;
+			}
+			if (!(Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) || (header[MAGIC.length] != FORMAT_VERSION)) {
+				throw new IOException(file + " is not a version " + FORMAT_VERSION + " binary record file");
+			}
+			long complete_length = header.length;
+			while (true) {
+				int frame_type = file_input.read();
+				if (frame_type < 0) {
+					return complete_length;
+				}
+				if ((frame_type != DICTIONARY_FRAME) && (frame_type != RECORD_FRAME) && (frame_type != RESET_FRAME)) {
+					throw new IOException("Unknown frame type " + frame_type + " in " + file + " at " + complete_length);
+				}
+				try {
+					int frame_length = readVarint(file_input);
+					long varint_length = 1;
+					for (int rest = frame_length >>> 7; rest != 0; rest >>>= 7) {
+						varint_length += 1;
+					}
+					// read rather than skipped, since a file input stream skips past its end without noticing
+					byte[] body = new byte[Math.min(frame_length, BUFFER_SIZE)];
+					int remaining = frame_length;
+					while (remaining > 0) {
+						int chunk_length = Math.min(remaining, body.length);
+						file_input.readFully(body, 0, chunk_length);
+						remaining -= chunk_length;
+					}
+					complete_length += 1 + varint_length + frame_length;
+				} catch (EOFException err) {
+					return complete_length;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * dictionaryId - a private helper method that returns the dictionary id of a string, adding it to the
+	 * dictionary (and writing its dictionary frame ahead of the record) if it is new
+	 * @param value - the string
+	 * @param required - true if the string must be in the dictionary (keys), false if it may be inlined
+	 * @return - the dictionary id, or -1 if the string should be written inline
+	 */
+	private int dictionaryId(String value, boolean required) throws IOException {
+		Integer id = this.output_dictionary.get(value);
+		if (id != null) {
+			return id;
+		}
+		boolean dictionary_full = this.output_dictionary.size() >= MAX_DICTIONARY_ENTRIES;
+		if (!required && (dictionary_full || (value.length() > MAX_DICTIONARY_VALUE_LENGTH))) {
+			return -1;
+		}
+		byte[] value_bytes = value.getBytes(StandardCharsets.UTF_8);
+		this.output.write(DICTIONARY_FRAME);
+		writeVarint(this.output, value_bytes.length);
+		this.output.write(value_bytes);
+		id = this.output_dictionary.size();
+		this.output_dictionary.put(value, id);
+		return id;
+	}
+
+
+	/**
+	 * write - a public method that appends a product record to the output file (the counterpart of
+	 * XMLParser.hashmapToXML; values are stripped of surrounding whitespace like XMLParser.next() does, and a
+	 * null value is written as an empty string)
+	 * @param mapping - the product record
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the record could not be written
+	 */
+	public synchronized void write(HashMap<String, String> mapping) throws IOException {
+		this.openOutput();
+		this.record_body.reset();
+		writeVarint(this.record_body, mapping.size());
+		for (Map.Entry<String, String> entry: mapping.entrySet()) {
+			this.writeField(entry.getKey(), entry.getValue());
+		}
+		this.writeRecordFrame();
+	}
+
+
+	/**
+	 * write - a public method that appends a ProductRecord to the output file, with one field per field of
+	 * the record that is set (named by ProductRecord.Field.getKey())
+	 * @param record - the ProductRecord instance
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the record could not be written
+	 */
+	public synchronized void write(ProductRecord record) throws IOException {
+		this.openOutput();
+		this.record_body.reset();
+		int field_count = 0;
+		for (ProductRecord.Field field: RECORD_FIELDS) {
+			field_count += (record.get(field) == null) ? 0 : 1;
+		}
+		writeVarint(this.record_body, field_count);
+		for (ProductRecord.Field field: RECORD_FIELDS) {
+			if (record.get(field) != null) {
+				this.writeField(field.getKey(), record.get(field));
+			}
+		}
+		this.writeRecordFrame();
+	}
+
+
+	/**
+	 * writeField - a private helper method that adds a key and value to the record being built in
+	 * this.record_body (writing dictionary frames for new strings)
+	 * @param key - the key
+	 * @param value - the value, may be null
+	 * @return - returns nothing (void)
+	 */
+	private void writeField(String key, String value) throws IOException {
+		value = (value == null) ? "" : value.strip();
+		writeVarint(this.record_body, this.dictionaryId(key, true));
+		int value_id = this.dictionaryId(value, false);
+		if (value_id >= 0) {
+			writeVarint(this.record_body, value_id << 1);
+		} else {
+			byte[] value_bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(this.record_body, 1);
+			writeVarint(this.record_body, value_bytes.length);
+			this.record_body.write(value_bytes);
+		}
+	}
+
+
+	private void writeRecordFrame() throws IOException {
+		this.output.write(RECORD_FRAME);
+		writeVarint(this.output, this.record_body.size());
+		this.record_body.writeTo(this.output);
+	}
+
+
+	/**
+	 * close - a public method that writes out the buffered records and closes the output file (a later
+	 * write() opens it again and appends to it)
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the file could not be written
+	 */
+	public synchronized void close() throws IOException {
+		if (this.output == null) {
+			return;
+		}
+		this.output.close();
+		this.output = null;
+	}
+
+
+	/**
+	 * listSourceFiles - a private helper method that lists the files in this.directory matching the glob
+	 * pattern, in run order (see XMLParser.runOrder(), by name "Nov" would come before "Oct")
+	 * @return - an ArrayList<String> of the matching file names
+	 * @throws IOException - if the directory could not be read
+	 */
+	private ArrayList<String> listSourceFiles() throws IOException {
+		ArrayList<String> result = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, this.glob_pattern)) {
+			for (Path entry: stream) {
+				result.add(entry.toString());
+			}
+		} catch (DirectoryIteratorException err) {
+			throw err.getCause();
+		}
+		result.sort(XMLParser.runOrder(this.filename, DATE_PATTERN));
+		return result;
+	}
+
+
+	/**
+	 * openNextInput - a private helper method that closes the current input file and opens the next matched
+	 * one, checking its header
+	 * @return - true if a file was opened, false if there are no more files
+	 * @throws IOException - if a file could not be opened or is not a binary record file
+	 */
+	private boolean openNextInput() throws IOException {
+		if (this.input != null) {
+			this.input.close();
+			this.input = null;
+		}
+		if (this.matched_filenames.isEmpty()) {
+			return false;
+		}
+		String input_filename = this.matched_filenames.remove(0);
+		this.input = new DataInputStream(XMLParser.openDecompressedInput(new File(input_filename)));
+		this.input_dictionary = new ArrayList<>();
+		byte[] header = new byte[MAGIC.length + 1];
+		try {
+			this.input.readFully(header);
+		} catch (EOFException err) {
+			// an empty file (the writer was stopped before the header was written out)
+			return this.openNextInput();
+		}
+		if (!(Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) || (header[MAGIC.length] != FORMAT_VERSION)) {
+			throw new IOException(input_filename + " is not a version " + FORMAT_VERSION + " binary record file");
+		}
+		return true;
+	}
+
+
+	/**
+	 * readFrame - a private helper method that reads frames from the current input file until it reaches a
+	 * record frame (dictionary frames are added to the dictionary along the way)
+	 * @return - true if a record was read into this.pending_record, false at the end of the file (or at an
+	 * incomplete frame at the end of a file that was cut short)
+	 * @throws IOException - if the file could not be read
+	 */
+	private boolean readFrame() throws IOException {
+		while (true) {
+			int frame_type = this.input.read();
+			if (frame_type < 0) {
+				return false;
+			}
+			try {
+				int frame_length = readVarint(this.input);
+				if (this.pending_record.length < frame_length) {
+					this.pending_record = new byte[Math.max(frame_length, 2 * this.pending_record.length)];
+				}
+				this.input.readFully(this.pending_record, 0, frame_length);
+				switch (frame_type) {
+					case DICTIONARY_FRAME:
+						this.input_dictionary.add(new String(this.pending_record, 0, frame_length, StandardCharsets.UTF_8));
+						break;
+					case RECORD_FRAME:
+						this.pending_record_length = frame_length;
+						return true;
+					case RESET_FRAME:
+						this.input_dictionary.clear();
+						break;
+					default:
+						throw new IOException("Unknown frame type " + frame_type + " in binary record file");
+				}
+			} catch (EOFException err) {
+				this.incomplete_frames_skipped += 1;
+				return false;
+			}
+		}
+	}
+
+
+	/**
+	 * getIncompleteFramesSkipped - a public method that returns the number of files whose reading ended at an
+	 * incomplete frame (a file cut short by a writer that died), which readers skip
+	 * @return - the number of incomplete frames skipped so far
+	 */
+	public int getIncompleteFramesSkipped() {
+		return this.incomplete_frames_skipped;
+	}
+
+
+	/**
+	 * hasNext - a public method that checks if there are any more records to read, going through the
+	 * matched files in run order
+	 * @return - true if next() will return a record, false otherwise
+	 * @throws IOException - if a file could not be read
+	 */
+	public boolean hasNext() throws IOException {
+		if (!this.input_opened) {
+			this.matched_filenames = this.listSourceFiles();
+			this.input_opened = true;
+			if (!this.openNextInput()) {
+				return false;
+			}
+		}
+		if (this.pending_record_length >= 0) {
+			return true;
+		}
+		while (this.input != null) {
+			if (this.readFrame()) {
+				return true;
+			}
+			if (!this.openNextInput()) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * next - a public method that decodes the next record (the counterpart of XMLParser.next())
+	 * @return - a HashMap with the fields of the record
+	 * @throws IOException - if a file could not be read, or the record refers to an unknown dictionary id
+	 * @throws NoSuchElementException - if there are no more records
+	 */
+	public HashMap<String, String> next() throws IOException {
+		HashMap<String, String> product_details = new HashMap<>();
+		this.decodeRecord(product_details::put);
+		return product_details;
+	}
+
+
+	/**
+	 * nextRecord - a public method that decodes the next record into a ProductRecord (fields that are not
+	 * part of the ProductRecord schema are skipped)
+	 * @return - a ProductRecord instance
+	 * @throws IOException - if a file could not be read, or the record refers to an unknown dictionary id
+	 * @throws NoSuchElementException - if there are no more records
+	 */
+	public ProductRecord nextRecord() throws IOException {
+		ProductRecord.Builder record = new ProductRecord.Builder();
+		this.decodeRecord(record::set);
+		return record.build();
+	}
+
+
+	/**
+	 * nextBatch - a public method that decodes up to max records (one builder is reused for every record)
+	 * @param max - the largest number of records to return (must be larger than 0)
+	 * @return - an ArrayList<ProductRecord>, with fewer than max records only once the files run out
+	 * @throws IOException - if a file could not be read
+	 */
+	public ArrayList<ProductRecord> nextBatch(int max) throws IOException {
+		assert (max > 0);
+		ArrayList<ProductRecord> batch = new ArrayList<>(Math.min(max, 4096));
+		ProductRecord.Builder record = new ProductRecord.Builder();
+		BiConsumer<String, String> field_consumer = record::set;
+		while ((batch.size() < max) && this.hasNext()) {
+			this.decodeRecord(field_consumer);
+			batch.add(record.build());
+			record.clear();
+		}
+		return batch;
+	}
+
+
+	/**
+	 * decodeRecord - a private helper method that decodes the next record, passing every key and value in
+	 * it to field_consumer
+	 * @param field_consumer - called once per field of the record
+	 * @return - returns nothing (void)
+	 */
+	private void decodeRecord(BiConsumer<String, String> field_consumer) throws IOException {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		int[] position = {0};
+		try {
+			int field_count = readVarint(this.pending_record, position);
+			for (int i = 0; i < field_count; ++i) {
+				String key = this.input_dictionary.get(readVarint(this.pending_record, position));
+				int value_code = readVarint(this.pending_record, position);
+				String value;
+				if ((value_code & 1) == 0) {
+					value = this.input_dictionary.get(value_code >>> 1);
+				} else {
+					int value_length = readVarint(this.pending_record, position);
+					value = new String(this.pending_record, position[0], value_length, StandardCharsets.UTF_8);
+					position[0] += value_length;
+				}
+				field_consumer.accept(key, value);
+			}
+		} catch (IndexOutOfBoundsException err) {
+			throw new IOException("Corrupt record in binary record file", err);
+		}
+		this.pending_record_length = -1;
+	}
+
+
+	/**
+	 * clear - a public method that deletes every file matching the glob pattern
+	 * @return - returns nothing (void)
+	 */
+	public void clear() {
+		try {
+			for (String matched_filename: this.listSourceFiles()) {
+				new File(matched_filename).delete();
+			}
+		} catch (IOException err) {
+			err.printStackTrace();
+		}
+	}
+
+
+	public String getCurrentOutputFilename() {
+		return this.current_output_filename;
+	}
+
+
+}
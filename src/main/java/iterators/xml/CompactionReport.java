@@ -0,0 +1,82 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.time.YearMonth;
+
+
+public class CompactionReport {
+	private YearMonth month;
+	private Path archive_path;
+	private int files_compacted;
+	private long records_read;
+	private long records_written;
+	private long blocks;
+	private long archive_bytes;
+
+
+	/**
+	 * CompactionReport - what ArchiveCompactor.compact() did with the files of one month
+	 * @param month - the month
+	 * @param archive_path - the path of the archive of the month
+	 * @param files_compacted - the number of files merged into the archive (and removed)
+	 * @param records_read - the number of records read from the files and the previous archive
+	 * @param records_written - the number of records in the new archive (duplicates are only written once)
+	 * @param blocks - the number of compressed blocks in the new archive
+	 * @param archive_bytes - the size of the new archive
+	 */
+	CompactionReport(
+		YearMonth month, Path archive_path, int files_compacted, long records_read, long records_written, long blocks,
+		long archive_bytes
+	) {
+		this.month = month;
+		this.archive_path = archive_path;
+		this.files_compacted = files_compacted;
+		this.records_read = records_read;
+		this.records_written = records_written;
+		this.blocks = blocks;
+		this.archive_bytes = archive_bytes;
+	}
+
+
+	public YearMonth getMonth() {
+		return this.month;
+	}
+
+
+	public Path getArchivePath() {
+		return this.archive_path;
+	}
+
+
+	public int getFilesCompacted() {
+		return this.files_compacted;
+	}
+
+
+	public long getRecordsRead() {
+		return this.records_read;
+	}
+
+
+	public long getRecordsWritten() {
+		return this.records_written;
+	}
+
+
+	public long getDuplicatesDropped() {
+		return this.records_read - this.records_written;
+	}
+
+
+	@Override
+	public String toString() {
+		return "Compacted " + this.files_compacted + " files of " + this.month + " into " +
+			this.archive_path.getFileName() + ": " + this.records_read + " records read, " +
+			this.getDuplicatesDropped() + " duplicates dropped, " + this.records_written + " records in " +
+			this.blocks + " blocks (" + this.archive_bytes + " bytes)";
+	}
+
+
+}
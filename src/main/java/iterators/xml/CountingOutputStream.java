@@ -0,0 +1,40 @@
+package iterators.xml;
+import java.io.*;
+
+
+class CountingOutputStream extends FilterOutputStream {
+	private long count;
+
+
+	/**
+	 * CountingOutputStream - passes everything through to out while keeping track of the number of bytes
+	 * written to it
+	 * @param out - the OutputStream to write to
+	 * @param initial_count - the count to start from (for example the size of a file being appended to)
+	 */
+	CountingOutputStream(OutputStream out, long initial_count) {
+		super(out);
+		this.count = initial_count;
+	}
+
+
+	@Override
+	public void write(int b) throws IOException {
+		this.out.write(b);
+		this.count += 1;
+	}
+
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		this.out.write(b, off, len);
+		this.count += len;
+	}
+
+
+	long getCount() {
+		return this.count;
+	}
+
+
+}
@@ -0,0 +1,79 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+
+
+public class DurabilityPolicy {
+	private int buffer_size;
+	private int group_commit_records;
+	private long group_commit_millis;
+	private boolean fsync;
+
+
+	/**
+	 * DurabilityPolicy - how an XMLParser trades write throughput against the records that can be lost in a
+	 * crash: records are buffered in memory and written out together (a group commit) every
+	 * group_commit_records records or every group_commit_millis milliseconds, whichever comes first
+	 * @param buffer_size - the size in bytes of the output buffer (0 writes straight to the file)
+	 * @param group_commit_records - the number of records per group commit (0 to only commit on time)
+	 * @param group_commit_millis - the longest a record waits in the buffer before it is committed (0 to only
+	 * commit on the number of records)
+	 * @param fsync - if true, every group commit waits for the file (and its checkpoint) to reach the disk
+	 */
+	public DurabilityPolicy(int buffer_size, int group_commit_records, long group_commit_millis, boolean fsync) {
+		assert (buffer_size >= 0);
+		assert (group_commit_records >= 0);
+		assert (group_commit_millis >= 0);
+		this.buffer_size = buffer_size;
+		this.group_commit_records = group_commit_records;
+		this.group_commit_millis = group_commit_millis;
+		this.fsync = fsync;
+	}
+
+
+	/**
+	 * fromProperties - a static method that reads a durability policy from a .properties file
+	 * (xml_buffer_size, xml_group_commit_records, xml_group_commit_millis and xml_fsync)
+	 * @param config - the loaded Properties instance
+	 * @return - a DurabilityPolicy instance, or null if none of the settings are present (in which case the
+	 * XMLParser keeps its default behaviour of only writing the buffer out when it fills up or is closed)
+	 */
+	public static DurabilityPolicy fromProperties(Properties config) {
+		String[] setting_names = {"xml_buffer_size", "xml_group_commit_records", "xml_group_commit_millis", "xml_fsync"};
+		boolean configured = false;
+		for (String setting_name: setting_names) {
+			configured = configured || (config.getProperty(setting_name) != null);
+		}
+		if (!configured) {
+			return null;
+		}
+		return new DurabilityPolicy(
+			Integer.parseInt(config.getProperty("xml_buffer_size", "65536").strip()),
+			Integer.parseInt(config.getProperty("xml_group_commit_records", "0").strip()),
+			Long.parseLong(config.getProperty("xml_group_commit_millis", "0").strip()),
+			Boolean.parseBoolean(config.getProperty("xml_fsync", "false").strip())
+		);
+	}
+
+
+	public int getBufferSize() {
+		return this.buffer_size;
+	}
+
+
+	public int getGroupCommitRecords() {
+		return this.group_commit_records;
+	}
+
+
+	public long getGroupCommitMillis() {
+		return this.group_commit_millis;
+	}
+
+
+	public boolean getFsync() {
+		return this.fsync;
+	}
+
+
+}
@@ -0,0 +1,99 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import iterators.util.ProductRecord;
+
+
+class IndexedRecordReader implements Closeable {
+	private Path xml_path;
+	private String root_tag;
+	private String mapping_tag;
+	private RecordIndex index;
+	private FileChannel channel;
+	private XMLStreamReader reader;
+	// the record the reader is positioned in front of (-1 before the first seek)
+	private int next_record;
+
+
+	/**
+	 * IndexedRecordReader - reads single records (or runs of records) of an uncompressed xml file at the byte
+	 * offsets in its record index: the file is positioned at the offset and parsed from there, and a record
+	 * that directly follows the last one read is parsed without seeking again
+	 * - index entries at or past the end of the file (written out before the records they point to when the
+	 *   writer died) are dropped
+	 * @param xml_path - the path of the xml file
+	 * @param root_tag - the root tag of the file
+	 * @param mapping_tag - the mapping tag of the records
+	 * @throws IOException - if the file or its index could not be opened
+	 */
+	IndexedRecordReader(Path xml_path, String root_tag, String mapping_tag) throws IOException {
+		this.xml_path = xml_path;
+		this.root_tag = root_tag;
+		this.mapping_tag = mapping_tag;
+		this.index = RecordIndex.load(xml_path);
+		this.channel = FileChannel.open(xml_path, StandardOpenOption.READ);
+		this.index.truncate(this.channel.size());
+		this.reader = null;
+		this.next_record = -1;
+	}
+
+
+	RecordIndex getIndex() {
+		return this.index;
+	}
+
+
+	/**
+	 * read - parses record n of the file
+	 * @param n - the number of the record, counting from 0 (must be below getIndex().size())
+	 * @return - a ProductRecord instance
+	 * @throws IOException - if the file could not be read, or has no record at the indexed offset
+	 * @throws XMLStreamException - if the record could not be parsed
+	 */
+	ProductRecord read(int n) throws IOException, XMLStreamException {
+		if (n != this.next_record) {
+			this.seek(n);
+		}
+		ProductRecord.Builder record = new ProductRecord.Builder();
+		if (!XMLParser.advanceToMapping(this.reader, this.mapping_tag) ||
+		    !XMLParser.readMapping(this.reader, this.root_tag, this.mapping_tag, record::set)) {
+			throw new IOException("No record at the indexed offset of record " + n + " in " + this.xml_path);
+		}
+		this.next_record = n + 1;
+		return record.build();
+	}
+
+
+	private void seek(int n) throws IOException, XMLStreamException {
+		if (this.reader != null) {
+			this.reader.close();
+		}
+		this.channel.position(this.index.getOffset(n));
+		// the channel stays open for the next seek, it is closed by close()
+		Reader rest = new InputStreamReader(Channels.newInputStream(this.channel), StandardCharsets.UTF_8);
+		this.reader = XMLParser.XML_INPUT_FACTORY.createXMLStreamReader(XMLParser.reopenRoot(rest, this.root_tag));
+	}
+
+
+	@Override
+	public void close() {
+		try {
+			if (this.reader != null) {
+				this.reader.close();
+			}
+			this.channel.close();
+		} catch (IOException | XMLStreamException err) {
+			err.printStackTrace();
+		}
+	}
+
+
+}
@@ -0,0 +1,129 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.xml.stream.XMLStreamException;
+import iterators.util.ProductRecord;
+
+
+class PrefetchingRecordIterator implements Iterator<ProductRecord> {
+	// the number of records in each batch handed from a reader thread to the consumer
+	private static final int BATCH_SIZE = 256;
+	// put on the queue by a reader thread once its file is done (an empty batch is never queued otherwise)
+	private static final ArrayList<ProductRecord> END_OF_FILE = new ArrayList<>();
+	private ExecutorService readers;
+	private ArrayBlockingQueue<ArrayList<ProductRecord>> parsed_batches;
+	private int files_remaining;
+	private volatile Throwable read_failure;
+	private ArrayList<ProductRecord> batch;
+	private int batch_index;
+
+
+	/**
+	 * PrefetchingRecordIterator - parses a list of xml files on up to threads background threads, one file per
+	 * thread at a time, and hands the records to a single consumer through a queue of at most prefetch_batches
+	 * batches (a reader thread waits while the queue is full)
+	 * @param template - the XMLParser whose tags are used to read every file (see XMLParser.readerForFiles())
+	 * @param files - the paths of the files to read, started in this order
+	 * @param threads - the number of reader threads (must be larger than 0)
+	 * @param prefetch_batches - the capacity of the queue, in batches (must be larger than 0)
+	 */
+	PrefetchingRecordIterator(XMLParser template, List<String> files, int threads, int prefetch_batches) {
+		this.parsed_batches = new ArrayBlockingQueue<>(prefetch_batches);
+		this.files_remaining = files.size();
+		this.read_failure = null;
+		this.batch = END_OF_FILE;
+		this.batch_index = 0;
+		this.readers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())), new ThreadFactory() {
+			private int thread_count = 0;
+
+			public synchronized Thread newThread(Runnable task) {
+				Thread reader = new Thread(task, "xml-reader-" + this.thread_count);
+				this.thread_count += 1;
+				reader.setDaemon(true);
+				return reader;
+			}
+		});
+		for (String file: files) {
+			this.readers.submit(() -> this.readFile(template.readerForFiles(List.of(file))));
+		}
+		this.readers.shutdown();
+	}
+
+
+	/**
+	 * readFile - the body of each reader task: parses one file in batches onto the queue, then queues
+	 * END_OF_FILE (also if the file could not be read, after recording the error for the consumer)
+	 * @param reader - the XMLParser reading the file
+	 * @return - returns nothing (void)
+	 */
+	private void readFile(XMLParser reader) {
+		try {
+			try {
+				ArrayList<ProductRecord> file_batch = reader.nextBatch(BATCH_SIZE);
+				while (!(file_batch.isEmpty())) {
+					this.parsed_batches.put(file_batch);
+					file_batch = reader.nextBatch(BATCH_SIZE);
+				}
+			} catch (XMLStreamException | RuntimeException err) {
+				this.read_failure = err;
+			} finally {
+				reader.closeProductXmlInputStream();
+			}
+			this.parsed_batches.put(END_OF_FILE);
+		} catch (InterruptedException err) {
+			// the consumer closed the iterator
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	@Override
+	public boolean hasNext() {
+		while (this.batch_index >= this.batch.size()) {
+			if (this.files_remaining == 0) {
+				return false;
+			}
+			try {
+				this.batch = this.parsed_batches.take();
+			} catch (InterruptedException err) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for product records", err);
+			}
+			this.batch_index = 0;
+			if (this.batch == END_OF_FILE) {
+				this.files_remaining -= 1;
+				if (this.read_failure != null) {
+					this.close();
+					throw new IllegalStateException("Could not read a product xml file", this.read_failure);
+				}
+			}
+		}
+		return true;
+	}
+
+
+	@Override
+	public ProductRecord next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ProductRecord record = this.batch.get(this.batch_index);
+		this.batch_index += 1;
+		return record;
+	}
+
+
+	/**
+	 * close - stops the reader threads (run when the stream is closed, and after a read failure)
+	 * @return - returns nothing (void)
+	 */
+	void close() {
+		this.readers.shutdownNow();
+		this.files_remaining = 0;
+		this.batch = END_OF_FILE;
+		this.batch_index = 0;
+	}
+
+
+}
@@ -0,0 +1,175 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.*;
+import java.util.zip.CRC32;
+
+
+class ReadOffsets {
+	// the value stored for a file that has been read to the end (and was not archived)
+	private static final String DONE = "done";
+	// separates the position of a file from the identity of the file it was committed for
+	private static final String IDENTITY_SEPARATOR = "|";
+	// the number of bytes at the start of a file whose CRC32 is part of its identity
+	private static final int HEAD_BYTES = 4096;
+	private Path offsets_path;
+	private Properties offsets;
+
+
+	/**
+	 * ReadOffsets - the committed read position of one consumer in each of the xml files it reads, kept in a
+	 * properties file keyed by file name; the position of a file is the number of records consumed from it
+	 * and the character offset just past the last of them (-1 if the xml reader does not report offsets), or
+	 * "done" once the whole file has been consumed
+	 * - file names are reused (the category files are written under the same name every run unless they are
+	 *   archived), so every position also records the identity of the file it was committed for: its file
+	 *   key (the inode), the CRC32 of its first bytes (an inode is reused as soon as a file is deleted), its
+	 *   size and its modification time
+	 * - a position is only used while the file is the same one, only appended to since (the same file key and
+	 *   first bytes, and at least the same size), and "done" only while the file is unchanged; otherwise the
+	 *   position is dropped and the file is read from its first record
+	 * @param offsets_path - the path of the offsets file (read if it exists)
+	 * @throws IOException - if the offsets file exists but could not be read
+	 */
+	ReadOffsets(Path offsets_path) throws IOException {
+		this.offsets_path = offsets_path;
+		this.offsets = new Properties();
+		if (Files.exists(offsets_path)) {
+			try (InputStream offsets_stream = Files.newInputStream(offsets_path)) {
+				this.offsets.load(offsets_stream);
+			}
+		}
+	}
+
+
+	/**
+	 * getPosition - returns the committed position in a file
+	 * @param xml_path - the path of the file
+	 * @return - a two element array (records consumed, character offset), or null if nothing has been
+	 * committed for the file, it is done, or the position was committed for a different file of the same name
+	 */
+	long[] getPosition(Path xml_path) {
+		String position = this.matchingPosition(xml_path);
+		if ((position == null) || position.equals(DONE)) {
+			return null;
+		}
+		String[] records_and_offset = position.split(":");
+		return new long[] {Long.parseLong(records_and_offset[0]), Long.parseLong(records_and_offset[1])};
+	}
+
+
+	boolean isDone(Path xml_path) {
+		return DONE.equals(this.matchingPosition(xml_path));
+	}
+
+
+	void setPosition(Path xml_path, long records, long char_offset) throws IOException {
+		this.offsets.setProperty(fileName(xml_path), records + ":" + char_offset + identity(xml_path));
+	}
+
+
+	void setDone(Path xml_path) throws IOException {
+		this.offsets.setProperty(fileName(xml_path), DONE + identity(xml_path));
+	}
+
+
+	void remove(Path xml_path) {
+		this.offsets.remove(fileName(xml_path));
+	}
+
+
+	private static String fileName(Path xml_path) {
+		return xml_path.getFileName().toString();
+	}
+
+
+	/**
+	 * identity - a private helper method that describes the file a position is committed for
+	 * @return - a String with the separator followed by the file key, the length and CRC32 of the head of the
+	 * file, its size and its modification time (each after a separator)
+	 */
+	private static String identity(Path xml_path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(xml_path, BasicFileAttributes.class);
+		int head_length = (int) Math.min(attributes.size(), HEAD_BYTES);
+		return IDENTITY_SEPARATOR + attributes.fileKey() + IDENTITY_SEPARATOR + head_length + IDENTITY_SEPARATOR +
+			headChecksum(xml_path, head_length) + IDENTITY_SEPARATOR + attributes.size() + IDENTITY_SEPARATOR +
+			attributes.lastModifiedTime().toMillis();
+	}
+
+
+	private static long headChecksum(Path xml_path, int head_length) throws IOException {
+		byte[] head = new byte[head_length];
+		try (InputStream file_input = Files.newInputStream(xml_path)) {
+			int head_read = 0;
+			while (head_read < head_length) {
+				int bytes_read = file_input.read(head, head_read, head_length - head_read);
+				if (bytes_read < 0) {
+					return -1;
+				}
+				head_read += bytes_read;
+			}
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(head);
+		return checksum.getValue();
+	}
+
+
+	/**
+	 * matchingPosition - a private helper method that returns the committed position of a file if it was
+	 * committed for the file that now has its name, and drops it otherwise (see the constructor)
+	 * - a file that cannot be checked is treated as a different file, so it is read from the start
+	 * @return - the position ("records:char_offset" or "done"), or null
+	 */
+	private String matchingPosition(Path xml_path) {
+		String value = this.offsets.getProperty(fileName(xml_path));
+		if (value == null) {
+			return null;
+		}
+		// position, file key, head length, head checksum, size and modification time (entries written before
+		// identities were recorded have only the position, and are dropped)
+		String[] fields = value.split("\\" + IDENTITY_SEPARATOR, -1);
+		try {
+			if (fields.length == 6) {
+				BasicFileAttributes attributes = Files.readAttributes(xml_path, BasicFileAttributes.class);
+				long size = Long.parseLong(fields[4]);
+				int head_length = Integer.parseInt(fields[2]);
+				boolean same_file = fields[1].equals(String.valueOf(attributes.fileKey())) && (attributes.size() >= size) &&
+					(headChecksum(xml_path, head_length) == Long.parseLong(fields[3]));
+				boolean unchanged = same_file && (attributes.size() == size) &&
+					(attributes.lastModifiedTime().toMillis() == Long.parseLong(fields[5]));
+				if (fields[0].equals(DONE) ? unchanged : same_file) {
+					return fields[0];
+				}
+			}
+		} catch (IOException | NumberFormatException err) {
+			err.printStackTrace();
+		}
+		this.remove(xml_path);
+		return null;
+	}
+
+
+	/**
+	 * save - writes the offsets to a temporary file, syncs it and renames it over the offsets file, so a crash
+	 * leaves either the previous offsets or the new ones
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the offsets could not be written
+	 */
+	void save() throws IOException {
+		Path temporary_path = Paths.get(this.offsets_path.toString() + ".tmp");
+		try (FileOutputStream offsets_stream = new FileOutputStream(temporary_path.toFile())) {
+			this.offsets.store(offsets_stream, "read offsets committed at " + LocalDateTime.now());
+			offsets_stream.getFD().sync();
+		}
+		Files.move(temporary_path, this.offsets_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+}
@@ -0,0 +1,83 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import javax.xml.stream.XMLStreamException;
+
+
+public class RecordFormatConverter {
+
+
+	/**
+	 * xmlToBinary - a public static method that copies every product record read by an XMLParser (every
+	 * file its glob matches) into a BinaryRecordFile, and closes the binary output
+	 * @param xml_source - the XMLParser to read from
+	 * @param binary_target - the BinaryRecordFile to write to
+	 * @return - the number of records copied
+	 * @throws IOException - if the binary file could not be written
+	 * @throws XMLStreamException - if the xml could not be read
+	 */
+	public static long xmlToBinary(XMLParser xml_source, BinaryRecordFile binary_target)
+		throws IOException, XMLStreamException {
+		long records = 0;
+		while (xml_source.hasNext()) {
+			binary_target.write(xml_source.next());
+			records += 1;
+		}
+		binary_target.close();
+		return records;
+	}
+
+
+	/**
+	 * binaryToXml - a public static method that copies every product record in the files matched by a
+	 * BinaryRecordFile into the output file of an XMLParser, and closes the xml output
+	 * @param binary_source - the BinaryRecordFile to read from
+	 * @param xml_target - the XMLParser to write to
+	 * @return - the number of records copied
+	 * @throws IOException - if the binary files could not be read
+	 * @throws XMLStreamException - if the xml could not be written
+	 */
+	public static long binaryToXml(BinaryRecordFile binary_source, XMLParser xml_target)
+		throws IOException, XMLStreamException {
+		long records = 0;
+		while (binary_source.hasNext()) {
+			xml_target.hashmapToXML(binary_source.next());
+			records += 1;
+		}
+		xml_target.closeProductXmlOutputStream();
+		return records;
+	}
+
+
+	/**
+	 * main - converts files in the working directory between the two formats
+	 * - usage: RecordFormatConverter to-binary|to-xml SOURCE TARGET [ROOT_TAG MAPPING_TAG]
+	 *   (for example to-binary nofrills_product_info.xml nofrills_product_info.bin); the source name is used
+	 *   as it would be by a reader of that format, so every dated file of a run (and every segment) is read,
+	 *   and the target is written without a date suffix
+	 */
+	public static void main(String[] args) throws IOException, XMLStreamException {
+		if ((args.length != 3) && (args.length != 5)) {
+			System.out.println("usage: RecordFormatConverter to-binary|to-xml SOURCE TARGET [ROOT_TAG MAPPING_TAG]");
+			System.exit(2);
+		}
+		String root_tag = (args.length == 5) ? args[3] : "product_records";
+		String mapping_tag = (args.length == 5) ? args[4] : "product_record";
+		long records;
+		if (args[0].equals("to-binary")) {
+			records = xmlToBinary(
+				new XMLParser(args[1], root_tag, mapping_tag, true), new BinaryRecordFile(args[2], false)
+			);
+		} else if (args[0].equals("to-xml")) {
+			XMLParser xml_target = new XMLParser(args[2], root_tag, mapping_tag, false);
+			xml_target.setFastWriter(true);
+			records = binaryToXml(new BinaryRecordFile(args[1], true), xml_target);
+		} else {
+			throw new IllegalArgumentException("Unknown conversion: " + args[0]);
+		}
+		System.out.println("Converted " + records + " records");
+	}
+
+
+}
@@ -0,0 +1,340 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+
+public class RecordIndex {
+	// the suffix added to the name of the xml file for the name of its index
+	public static final String INDEX_SUFFIX = ".idx";
+	// every index starts with these bytes followed by the format version
+	private static final byte[] MAGIC = {'G', 'S', 'P', 'I'};
+	private static final int FORMAT_VERSION = 1;
+	// frame types: a new key string, a record, a key reset (written when records are appended to an existing
+	// index, since the keys of the earlier writer are not known), and the offset the next record's is counted
+	// from (written after the header and after every reset), and the size and generation id of the file the
+	// index was written for (only written for the block index of an archive, see ArchiveCompactor)
+	private static final int KEY_FRAME = 1;
+	private static final int RECORD_FRAME = 2;
+	private static final int RESET_FRAME = 3;
+	private static final int BASE_FRAME = 4;
+	private static final int STAMP_FRAME = 5;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private long[] offsets;
+	private String[] townships;
+	private String[] categories;
+	private int size;
+	private long stamp_size;
+	private long stamp_generation;
+
+
+	private RecordIndex() {
+		this.offsets = new long[1024];
+		this.townships = new String[1024];
+		this.categories = new String[1024];
+		this.size = 0;
+		this.stamp_size = -1;
+		this.stamp_generation = -1;
+	}
+
+
+	/**
+	 * indexPath - a public static method that returns the path of the index of an xml file (the xml file
+	 * name followed by .idx)
+	 */
+	public static Path indexPath(Path xml_path) {
+		return Paths.get(xml_path.toString() + INDEX_SUFFIX);
+	}
+
+
+	/**
+	 * load - a public static method that reads the index of an xml file written with XMLParser.setRecordIndex()
+	 * - an entry cut off by a crash ends the index, the records after it are simply not indexed
+	 * @param xml_path - the path of the xml file
+	 * @return - a RecordIndex instance
+	 * @throws IOException - if the index does not exist or is not an index file
+	 */
+	public static RecordIndex load(Path xml_path) throws IOException {
+		return loadFile(indexPath(xml_path));
+	}
+
+
+	/**
+	 * loadFile - the same as load(), for an index file at any path (such as the block index of an archive,
+	 * see ArchiveCompactor)
+	 * @param index_path - the path of the index file
+	 * @return - a RecordIndex instance
+	 * @throws IOException - if the index does not exist or is not an index file
+	 */
+	static RecordIndex loadFile(Path index_path) throws IOException {
+		RecordIndex index = new RecordIndex();
+		ArrayList<String> keys = new ArrayList<>();
+		// the index is a few bytes per record, so it is read whole and decoded in memory
+		byte[] bytes = Files.readAllBytes(index_path);
+		if ((bytes.length <= MAGIC.length) || !Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC) ||
+		    (bytes[MAGIC.length] != FORMAT_VERSION)) {
+			throw new IOException(index_path + " is not a record index");
+		}
+		int[] position = {MAGIC.length + 1};
+		long offset = 0;
+		try {
+			while (position[0] < bytes.length) {
+				int frame_type = bytes[position[0]];
+				position[0] += 1;
+				if (frame_type == RECORD_FRAME) {
+					offset += BinaryRecordFile.readVarint(bytes, position);
+					int township_id = BinaryRecordFile.readVarint(bytes, position);
+					int category_id = BinaryRecordFile.readVarint(bytes, position);
+					index.add(
+						offset, (township_id == 0) ? null : keys.get(township_id - 1),
+						(category_id == 0) ? null : keys.get(category_id - 1)
+					);
+				} else if (frame_type == KEY_FRAME) {
+					int key_length = ((bytes[position[0]] & 0xff) << 8) | (bytes[position[0] + 1] & 0xff);
+					keys.add(new DataInputStream(new ByteArrayInputStream(bytes, position[0], key_length + 2)).readUTF());
+					position[0] += key_length + 2;
+				} else if (frame_type == BASE_FRAME) {
+					offset = new DataInputStream(new ByteArrayInputStream(bytes, position[0], 8)).readLong();
+					position[0] += 8;
+				} else if (frame_type == RESET_FRAME) {
+					keys.clear();
+				} else if (frame_type == STAMP_FRAME) {
+					DataInputStream stamp_input = new DataInputStream(new ByteArrayInputStream(bytes, position[0], 16));
+					index.stamp_size = stamp_input.readLong();
+					index.stamp_generation = stamp_input.readLong();
+					position[0] += 16;
+				} else {
+					throw new IOException("Unknown frame type " + frame_type + " in " + index_path);
+				}
+			}
+		} catch (EOFException | ArrayIndexOutOfBoundsException err) {
+			// a torn last entry (the varints run off the end of the array), everything before it is complete
+		}
+		return index;
+	}
+
+
+	private void add(long offset, String township, String category) {
+		if (this.size == this.offsets.length) {
+			this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+			this.townships = Arrays.copyOf(this.townships, this.size * 2);
+			this.categories = Arrays.copyOf(this.categories, this.size * 2);
+		}
+		this.offsets[this.size] = offset;
+		this.townships[this.size] = township;
+		this.categories[this.size] = category;
+		this.size += 1;
+	}
+
+
+	/**
+	 * truncate - drops the entries at or past file_size (the index is written ahead of the xml file, so after
+	 * a crash it can point past the end of it)
+	 */
+	void truncate(long file_size) {
+		while ((this.size > 0) && (this.offsets[this.size - 1] >= file_size)) {
+			this.size -= 1;
+		}
+	}
+
+
+	/**
+	 * truncateIndex - a static helper method that rewrites the index of an xml file without the entries at or
+	 * past file_size (for a file cut back by TornFileRecovery), replacing the old index atomically
+	 * @param xml_path - the path of the xml file
+	 * @param file_size - the new size of the xml file
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the index could not be read or written
+	 */
+	static void truncateIndex(Path xml_path, long file_size) throws IOException {
+		RecordIndex index = load(xml_path);
+		index.truncate(file_size);
+		Path index_path = indexPath(xml_path);
+		Path temporary_path = Paths.get(index_path.toString() + ".tmp");
+		Appender appender = Appender.forIndexFile(temporary_path, (index.size == 0) ? 0 : index.offsets[0]);
+		for (int i = 0; i < index.size; ++i) {
+			appender.add(index.offsets[i], index.townships[i], index.categories[i]);
+		}
+		appender.close();
+		Files.move(temporary_path, index_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	public int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * matchesStamp - checks that the index was written for a file of the given size and generation id (see
+	 * Appender.stamp()), false if it has no stamp
+	 */
+	boolean matchesStamp(long file_size, long file_generation) {
+		return (this.stamp_size == file_size) && (this.stamp_generation == file_generation);
+	}
+
+
+	/**
+	 * getOffset - returns the byte offset in the xml file at which record n (counting from 0) starts
+	 */
+	public long getOffset(int n) {
+		return this.offsets[n];
+	}
+
+
+	public String getTownship(int n) {
+		return this.townships[n];
+	}
+
+
+	public String getCategory(int n) {
+		return this.categories[n];
+	}
+
+
+	/**
+	 * recordsInTownship - a public method that returns the numbers of the records of one township, in file order
+	 * @param township - the township_location of the records
+	 * @return - an int[] of record numbers
+	 */
+	public int[] recordsInTownship(String township) {
+		return this.recordsWithKey(this.townships, township);
+	}
+
+
+	/**
+	 * recordsInCategory - a public method that returns the numbers of the records of one category, in file order
+	 * @param category - the category_path of the records
+	 * @return - an int[] of record numbers
+	 */
+	public int[] recordsInCategory(String category) {
+		return this.recordsWithKey(this.categories, category);
+	}
+
+
+	private int[] recordsWithKey(String[] record_keys, String key) {
+		int[] matches = new int[16];
+		int match_count = 0;
+		for (int i = 0; i < this.size; ++i) {
+			if (key.equals(record_keys[i])) {
+				if (match_count == matches.length) {
+					matches = Arrays.copyOf(matches, match_count * 2);
+				}
+				matches[match_count] = i;
+				match_count += 1;
+			}
+		}
+		return Arrays.copyOf(matches, match_count);
+	}
+
+
+	/**
+	 * Appender - writes the index of an xml file as its records are written: a key frame the first time a
+	 * township or category is seen, and one record frame per record holding varints of the distance from the
+	 * previous record's offset and the ids of its township and category keys (0 for none), which comes to
+	 * about 5 bytes per record
+	 */
+	static class Appender {
+		private DataOutputStream output;
+		private HashMap<String, Integer> key_ids;
+		private long last_offset;
+
+
+		/**
+		 * Appender - opens the index of an xml file
+		 * @param xml_path - the path of the xml file
+		 * @param append - true to add to the existing index of a file that records are being appended to,
+		 * false to start a new index
+		 * @param start_offset - the size of the xml file when it was opened (no record starts before it)
+		 * @throws IOException - if the index could not be opened
+		 */
+		Appender(Path xml_path, boolean append, long start_offset) throws IOException {
+			this(indexPath(xml_path), start_offset, append);
+		}
+
+
+		private Appender(Path index_path, long start_offset, boolean append) throws IOException {
+			boolean continue_index = append && Files.exists(index_path) && (Files.size(index_path) > MAGIC.length);
+			this.output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(index_path.toFile(), continue_index), BUFFER_SIZE)
+			);
+			this.key_ids = new HashMap<>();
+			if (continue_index) {
+				this.output.writeByte(RESET_FRAME);
+			} else {
+				this.output.write(MAGIC);
+				this.output.writeByte(FORMAT_VERSION);
+			}
+			this.output.writeByte(BASE_FRAME);
+			this.output.writeLong(start_offset);
+			this.last_offset = start_offset;
+		}
+
+
+		/**
+		 * forIndexFile - starts a new index at any path (such as the block index of an archive, see
+		 * ArchiveCompactor) rather than next to an xml file
+		 * @param index_path - the path of the index file
+		 * @param start_offset - the offset no entry starts before
+		 * @return - an Appender instance
+		 * @throws IOException - if the index could not be opened
+		 */
+		static Appender forIndexFile(Path index_path, long start_offset) throws IOException {
+			return new Appender(index_path, start_offset, false);
+		}
+
+
+		void add(long offset, String township, String category) throws IOException {
+			int township_id = this.keyId(township);
+			int category_id = this.keyId(category);
+			this.output.writeByte(RECORD_FRAME);
+			BinaryRecordFile.writeVarint(this.output, (int) (offset - this.last_offset));
+			BinaryRecordFile.writeVarint(this.output, township_id);
+			BinaryRecordFile.writeVarint(this.output, category_id);
+			this.last_offset = offset;
+		}
+
+
+		private int keyId(String key) throws IOException {
+			if (key == null) {
+				return 0;
+			}
+			Integer key_id = this.key_ids.get(key);
+			if (key_id == null) {
+				key_id = this.key_ids.size() + 1;
+				this.key_ids.put(key, key_id);
+				this.output.writeByte(KEY_FRAME);
+				this.output.writeUTF(key);
+			}
+			return key_id;
+		}
+
+
+		/**
+		 * stamp - records the size of the file the index was written for and a generation id written into the
+		 * file as well, so a reader can tell an index that does not belong to the file next to it (see
+		 * RecordIndex.matchesStamp())
+		 */
+		void stamp(long file_size, long file_generation) throws IOException {
+			this.output.writeByte(STAMP_FRAME);
+			this.output.writeLong(file_size);
+			this.output.writeLong(file_generation);
+		}
+
+
+		void flush() throws IOException {
+			this.output.flush();
+		}
+
+
+		void close() throws IOException {
+			this.output.close();
+		}
+	}
+
+
+}
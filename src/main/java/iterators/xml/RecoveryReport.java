@@ -0,0 +1,64 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+
+
+public class RecoveryReport {
+	private String file_name;
+	private long salvaged_records;
+	private long committed_records;
+	private long dropped_bytes;
+	private boolean compressed;
+
+
+	/**
+	 * RecoveryReport - what XMLParser.recoverTornFiles() salvaged from one file that a writer left without
+	 * its closing root tag
+	 * @param file_name - the name of the file
+	 * @param salvaged_records - the number of complete records the repaired file holds
+	 * @param committed_records - the number of records the last group commit of the file recorded in its
+	 * checkpoint marker, or -1 if it has none
+	 * @param dropped_bytes - the size of the torn tail that was cut off (of the decompressed xml, for a
+	 * compressed file)
+	 * @param compressed - true if the file is gzip compressed (and was rewritten rather than truncated)
+	 */
+	RecoveryReport(String file_name, long salvaged_records, long committed_records, long dropped_bytes, boolean compressed) {
+		this.file_name = file_name;
+		this.salvaged_records = salvaged_records;
+		this.committed_records = committed_records;
+		this.dropped_bytes = dropped_bytes;
+		this.compressed = compressed;
+	}
+
+
+	public String getFileName() {
+		return this.file_name;
+	}
+
+
+	public long getSalvagedRecords() {
+		return this.salvaged_records;
+	}
+
+
+	public long getCommittedRecords() {
+		return this.committed_records;
+	}
+
+
+	public long getDroppedBytes() {
+		return this.dropped_bytes;
+	}
+
+
+	@Override
+	public String toString() {
+		String committed = (this.committed_records < 0) ? "no checkpoint" :
+			(this.committed_records + " committed at the last checkpoint");
+		return "Recovered " + this.file_name + ": salvaged " + this.salvaged_records + " records (" + committed +
+			"), cut off a torn tail of " + this.dropped_bytes + " bytes" + (this.compressed ? " (decompressed)" : "");
+	}
+
+
+}
@@ -0,0 +1,210 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+
+class SegmentManifest {
+	// the suffix added to the stem of the xml file name for the name of the manifest
+	static final String MANIFEST_SUFFIX = ".manifest";
+	// a file that is open for writing, and a file that was closed cleanly (the only state readers read)
+	static final String WRITING = "writing";
+	static final String COMPLETE = "complete";
+	// written for the record count and checksum of files that were already there when the manifest was made
+	static final long UNKNOWN_RECORDS = -1;
+	static final String UNKNOWN_CHECKSUM = "-";
+	private static final String HEADER = "# file\tstate\tsize\trecords\tcrc32";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private Path manifest_path;
+
+
+	/**
+	 * Entry - what the manifest records about one file of the stream
+	 */
+	static class Entry {
+		String state;
+		long size;
+		long records;
+		String checksum;
+
+		Entry(String state, long size, long records, String checksum) {
+			this.state = state;
+			this.size = size;
+			this.records = records;
+			this.checksum = checksum;
+		}
+	}
+
+
+	/**
+	 * SegmentManifest - the list of the files (dated runs and segments) of one logical xml stream, kept in a
+	 * tab separated file next to them (for example nofrills_product_info.manifest) with the state, size,
+	 * record count and CRC32 of each one, so readers do not have to scan the directory and can tell complete
+	 * files from files that are still being written
+	 * - every change rewrites the manifest into a temporary file that is synced and renamed over it, under a
+	 *   lock on a .lock file next to it, so readers see either the old list or the new one and writers in
+	 *   other processes do not lose each other's changes
+	 * @param manifest_path - the path of the manifest
+	 */
+	SegmentManifest(Path manifest_path) {
+		this.manifest_path = manifest_path;
+	}
+
+
+	boolean exists() {
+		return Files.exists(this.manifest_path);
+	}
+
+
+	/**
+	 * read - returns every entry of the manifest, keyed by file name in name order (the order the files
+	 * were written in, as with the glob)
+	 * @return - a TreeMap<String, Entry> instance, empty if the manifest does not exist
+	 * @throws IOException - if the manifest could not be read
+	 */
+	TreeMap<String, Entry> read() throws IOException {
+		TreeMap<String, Entry> entries = new TreeMap<>();
+		if (!this.exists()) {
+			return entries;
+		}
+		for (String line: Files.readAllLines(this.manifest_path, StandardCharsets.UTF_8)) {
+			if (line.startsWith("#") || line.isBlank()) {
+				continue;
+			}
+			String[] columns = line.split("\t");
+			if (columns.length != 5) {
+				throw new IOException("Malformed line in " + this.manifest_path + ": " + line);
+			}
+			entries.put(columns[0], new Entry(
+				columns[1], Long.parseLong(columns[2]), Long.parseLong(columns[3]), columns[4]
+			));
+		}
+		return entries;
+	}
+
+
+	/**
+	 * update - sets the entry of one file
+	 * @param file_name - the name of the file (without its directory)
+	 * @param entry - the new entry
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the manifest could not be written
+	 */
+	void update(String file_name, Entry entry) throws IOException {
+		this.change(entries -> entries.put(file_name, entry));
+	}
+
+
+	/**
+	 * remove - removes the entries of files that were deleted or moved out of the stream
+	 * @param file_names - the names of the files (without their directory)
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the manifest could not be written
+	 */
+	void remove(Collection<String> file_names) throws IOException {
+		this.change(entries -> entries.keySet().removeAll(file_names));
+	}
+
+
+	/**
+	 * create - starts the manifest of a stream whose files used to be found by globbing, with an entry for
+	 * every file already there (as complete, with their record count and checksum unknown); does nothing if
+	 * the manifest exists
+	 * @param existing_files - the paths of the files matched by the glob
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the manifest could not be written
+	 */
+	void create(List<String> existing_files) throws IOException {
+		this.change(entries -> {
+			if (this.exists()) {
+				return;
+			}
+			for (String existing_file: existing_files) {
+				Path existing_path = Paths.get(existing_file);
+				long size = existing_path.toFile().length();
+				entries.put(
+					existing_path.getFileName().toString(),
+					new Entry(COMPLETE, size, UNKNOWN_RECORDS, UNKNOWN_CHECKSUM)
+				);
+			}
+		});
+	}
+
+
+	/**
+	 * change - a private helper method that reads the manifest, applies a change to its entries and writes it
+	 * back atomically, holding the manifest lock (a file lock for other processes, and a lock on the class for
+	 * other parsers in this one, since a JVM cannot hold two file locks on the same file)
+	 * @param change - the change to apply
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the manifest could not be read or written
+	 */
+	private void change(java.util.function.Consumer<TreeMap<String, Entry>> change) throws IOException {
+		synchronized (SegmentManifest.class) {
+			Path lock_path = Paths.get(this.manifest_path.toString() + ".lock");
+			try (
+				FileChannel lock_channel = FileChannel.open(lock_path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = lock_channel.lock()
+			) {
+				TreeMap<String, Entry> entries = this.read();
+				change.accept(entries);
+				Path temporary_path = Paths.get(this.manifest_path.toString() + ".tmp");
+				try (FileOutputStream manifest_stream = new FileOutputStream(temporary_path.toFile())) {
+					Writer manifest_writer = new BufferedWriter(
+						new OutputStreamWriter(manifest_stream, StandardCharsets.UTF_8), BUFFER_SIZE
+					);
+					manifest_writer.write(HEADER + "\n");
+					for (Map.Entry<String, Entry> entry: entries.entrySet()) {
+						Entry file_entry = entry.getValue();
+						manifest_writer.write(
+							entry.getKey() + "\t" + file_entry.state + "\t" + file_entry.size + "\t" +
+							file_entry.records + "\t" + file_entry.checksum + "\n"
+						);
+					}
+					manifest_writer.flush();
+					manifest_stream.getFD().sync();
+				}
+				Files.move(
+					temporary_path, this.manifest_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+				);
+			}
+		}
+	}
+
+
+	/**
+	 * crc - a static helper method that computes the CRC32 of the bytes of a file (the checksum the manifest
+	 * records, see formatChecksum())
+	 * @param file_path - the path of the file
+	 * @return - a CRC32 instance holding the checksum of the whole file, which more bytes can be added to
+	 * @throws IOException - if the file could not be read
+	 */
+	static CRC32 crc(Path file_path) throws IOException {
+		CRC32 crc = new CRC32();
+		try (InputStream file_stream = Files.newInputStream(file_path)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read = file_stream.read(buffer);
+			while (read >= 0) {
+				crc.update(buffer, 0, read);
+				read = file_stream.read(buffer);
+			}
+		}
+		return crc;
+	}
+
+
+	static String formatChecksum(long crc) {
+		return String.format("%08x", crc);
+	}
+
+
+}
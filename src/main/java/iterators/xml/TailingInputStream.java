@@ -0,0 +1,116 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+
+class TailingInputStream extends InputStream {
+	// the size of the file is checked again this often even if no change was reported (a watch service may
+	// coalesce events or poll on its own schedule)
+	static final long RECHECK_MILLIS = 250;
+	private FileInputStream file_input;
+	private WatchService watcher;
+	private long idle_timeout_millis;
+	private boolean timed_out;
+
+
+	/**
+	 * TailingInputStream - reads a file that is still being written: at the end of the file a read waits for
+	 * more bytes to be written instead of returning -1, sleeping on a WatchService registered on the directory
+	 * of the file (so the thread is woken up when the file changes rather than polling it in a loop)
+	 * - the end of the input is only reported once no bytes have been written for idle_timeout_millis
+	 * @param file_path - the path of the file
+	 * @param watcher - a WatchService that reports changes to the directory of the file (not closed by this
+	 * stream)
+	 * @param idle_timeout_millis - how long to wait for more bytes before reporting the end of the input (0 to
+	 * wait for ever)
+	 * @throws IOException - if the file could not be opened
+	 */
+	TailingInputStream(Path file_path, WatchService watcher, long idle_timeout_millis) throws IOException {
+		this.file_input = new FileInputStream(file_path.toFile());
+		this.watcher = watcher;
+		this.idle_timeout_millis = idle_timeout_millis;
+		this.timed_out = false;
+	}
+
+
+	/**
+	 * timedOut - returns true if the end of the input was reported because the file stopped growing
+	 */
+	boolean timedOut() {
+		return this.timed_out;
+	}
+
+
+	@Override
+	public int read() throws IOException {
+		byte[] single_byte = new byte[1];
+		return (this.read(single_byte, 0, 1) < 0) ? -1 : (single_byte[0] & 0xff);
+	}
+
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		long idle_since = System.nanoTime();
+		while (true) {
+			int bytes_read = this.file_input.read(b, off, len);
+			if (bytes_read > 0) {
+				return bytes_read;
+			}
+			long idle_millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idle_since);
+			if ((this.idle_timeout_millis > 0) && (idle_millis >= this.idle_timeout_millis)) {
+				this.timed_out = true;
+				return -1;
+			}
+			long wait_millis = RECHECK_MILLIS;
+			if (this.idle_timeout_millis > 0) {
+				wait_millis = Math.min(wait_millis, this.idle_timeout_millis - idle_millis);
+			}
+			awaitChange(this.watcher, wait_millis);
+		}
+	}
+
+
+	// never blocks: the bytes written so far that have not been read
+	@Override
+	public int available() throws IOException {
+		return this.file_input.available();
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		this.file_input.close();
+	}
+
+
+	/**
+	 * awaitChange - a static helper method that waits until a watch service reports a change, or for at most
+	 * wait_millis
+	 * @param watcher - the WatchService
+	 * @param wait_millis - the longest time to wait
+	 * @return - returns nothing (void)
+	 * @throws InterruptedIOException - if the thread was interrupted while waiting
+	 */
+	static void awaitChange(WatchService watcher, long wait_millis) throws InterruptedIOException {
+		try {
+			WatchKey key = watcher.poll(wait_millis, TimeUnit.MILLISECONDS);
+			if (key != null) {
+				key.pollEvents();
+				key.reset();
+			}
+		} catch (InterruptedException err) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for more data");
+		}
+	}
+
+
+}
@@ -0,0 +1,235 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+
+class TornFileRecovery {
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private Path xml_path;
+	private String root_tag;
+	private String mapping_tag;
+
+
+	/**
+	 * TornFileRecovery - repairs a product xml file whose writer died before closing it, so that it ends in
+	 * the middle of a record (or between records) without its closing root tag
+	 * - the last complete record ends at the last closing mapping tag in the file (the writers escape every
+	 *   '<' in text, so the tag cannot appear inside a value); everything after it is cut off and an
+	 *   end_of_run marker (noting the recovery) and the closing root tag are written in its place
+	 * - a plain file is truncated in place, a gzip file (which cannot be appended to after a torn deflate
+	 *   block) is decompressed as far as it goes and written again
+	 * - must only be run on files no writer has open
+	 * @param xml_path - the path of the file
+	 * @param root_tag - the root tag of the file
+	 * @param mapping_tag - the mapping tag of the records
+	 */
+	TornFileRecovery(Path xml_path, String root_tag, String mapping_tag) {
+		this.xml_path = xml_path;
+		this.root_tag = root_tag;
+		this.mapping_tag = mapping_tag;
+	}
+
+
+	/**
+	 * recover - repairs the file if it is torn
+	 * @return - a RecoveryReport instance, or null if the file ends with its closing root tag
+	 * @throws IOException - if the file could not be read or repaired
+	 * @throws XMLStreamException - if the repaired file does not parse
+	 */
+	RecoveryReport recover() throws IOException, XMLStreamException {
+		boolean compressed;
+		try (InputStream file_input = XMLParser.openDecompressedInput(this.xml_path.toFile())) {
+			compressed = file_input instanceof GZIPInputStream;
+		}
+		long dropped_bytes = compressed ? this.recoverCompressed() : this.repairPlain(this.xml_path);
+		if (dropped_bytes < 0) {
+			return null;
+		}
+		return new RecoveryReport(
+			this.xml_path.getFileName().toString(), this.countRecords(), this.committedRecords(), dropped_bytes, compressed
+		);
+	}
+
+
+	/**
+	 * repairPlain - a private helper method that truncates a torn plain xml file after its last complete
+	 * record and closes it (and drops the record index entries past the cut)
+	 * @param plain_path - the path of the file
+	 * @return - the number of bytes cut off, or -1 if the file was not torn
+	 * @throws IOException - if the file could not be read or written
+	 */
+	private long repairPlain(Path plain_path) throws IOException {
+		byte[] root_end = ("</" + this.root_tag + ">").getBytes(StandardCharsets.UTF_8);
+		try (FileChannel channel = FileChannel.open(plain_path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = channel.size();
+			if (this.endsWith(channel, root_end)) {
+				return -1;
+			}
+			long boundary = this.lastRecordEnd(channel);
+			String closing = "\t<?end_of_run recovered " + LocalDateTime.now() + "?>\n</" + this.root_tag + ">\n";
+			if (boundary < 0) {
+				// not a single complete record, so only the document header is kept (written again, since it
+				// may be torn as well)
+				boundary = 0;
+				closing = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<" + this.root_tag + ">\n" + closing;
+			}
+			channel.truncate(boundary);
+			channel.position(boundary);
+			ByteBuffer closing_bytes = ByteBuffer.wrap(closing.getBytes(StandardCharsets.UTF_8));
+			while (closing_bytes.hasRemaining()) {
+				channel.write(closing_bytes);
+			}
+			channel.force(true);
+			if (Files.exists(RecordIndex.indexPath(plain_path))) {
+				RecordIndex.truncateIndex(plain_path, boundary);
+			}
+			return size - boundary;
+		}
+	}
+
+
+	/**
+	 * endsWith - a private helper method that checks if the last bytes of a file other than whitespace are
+	 * the given bytes
+	 */
+	private boolean endsWith(FileChannel channel, byte[] suffix) throws IOException {
+		long size = channel.size();
+		ByteBuffer tail = ByteBuffer.allocate((int) Math.min(size, suffix.length + 256));
+		channel.read(tail, size - tail.capacity());
+		byte[] tail_bytes = tail.array();
+		int end = tail_bytes.length;
+		while ((end > 0) && Character.isWhitespace(tail_bytes[end - 1])) {
+			end -= 1;
+		}
+		return (end >= suffix.length) &&
+			Arrays.equals(Arrays.copyOfRange(tail_bytes, end - suffix.length, end), suffix);
+	}
+
+
+	/**
+	 * lastRecordEnd - a private helper method that searches a file backwards, a chunk at a time, for the last
+	 * closing mapping tag
+	 * @return - the offset just past the tag (and the line break after it, if there is one), or -1 if the
+	 * file has no complete record
+	 */
+	private long lastRecordEnd(FileChannel channel) throws IOException {
+		byte[] record_end = ("</" + this.mapping_tag + ">").getBytes(StandardCharsets.UTF_8);
+		long size = channel.size();
+		long chunk_end = size;
+		while (chunk_end > 0) {
+			// the chunks overlap by the length of the tag, so a tag split between two of them is found
+			long chunk_start = Math.max(0, chunk_end - CHUNK_SIZE);
+			int chunk_length = (int) (Math.min(size, chunk_end + record_end.length - 1) - chunk_start);
+			ByteBuffer chunk = ByteBuffer.allocate(chunk_length);
+			while (chunk.hasRemaining() && (channel.read(chunk, chunk_start + chunk.position()) > 0)) {
+			}
+			byte[] chunk_bytes = chunk.array();
+			for (int i = chunk_length - record_end.length; i >= 0; --i) {
+				if (Arrays.equals(chunk_bytes, i, i + record_end.length, record_end, 0, record_end.length)) {
+					long tag_end = chunk_start + i + record_end.length;
+					boolean line_break = (i + record_end.length < chunk_length) && (chunk_bytes[i + record_end.length] == '\n');
+					return line_break ? tag_end + 1 : tag_end;
+				}
+			}
+			chunk_end = chunk_start;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * recoverCompressed - a private helper method that decompresses a gzip file as far as it goes into a
+	 * temporary plain file, repairs that, and compresses it back over the original
+	 * @return - the number of (decompressed) bytes cut off, or -1 if the file was not torn
+	 * @throws IOException - if the file could not be read or written
+	 */
+	private long recoverCompressed() throws IOException {
+		Path plain_path = Paths.get(this.xml_path.toString() + ".recover");
+		Path compressed_path = Paths.get(this.xml_path.toString() + ".recover.gz");
+		try {
+			try (
+				InputStream compressed_input = XMLParser.openDecompressedInput(this.xml_path.toFile());
+				OutputStream plain_output = new BufferedOutputStream(Files.newOutputStream(plain_path), CHUNK_SIZE)
+			) {
+				byte[] buffer = new byte[CHUNK_SIZE];
+				try {
+					int bytes_read = compressed_input.read(buffer);
+					while (bytes_read >= 0) {
+						plain_output.write(buffer, 0, bytes_read);
+						bytes_read = compressed_input.read(buffer);
+					}
+				} catch (EOFException | java.util.zip.ZipException err) {
+					// the end of what the writer got into the file (a missing trailer or a torn deflate block)
+				}
+			}
+			long dropped_bytes = this.repairPlain(plain_path);
+			if (dropped_bytes < 0) {
+				return -1;
+			}
+			try (FileOutputStream compressed_stream = new FileOutputStream(compressed_path.toFile())) {
+				GZIPOutputStream compressed_output = new GZIPOutputStream(compressed_stream, CHUNK_SIZE);
+				Files.copy(plain_path, compressed_output);
+				compressed_output.finish();
+				compressed_stream.getFD().sync();
+			}
+			Files.move(compressed_path, this.xml_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return dropped_bytes;
+		} finally {
+			Files.deleteIfExists(plain_path);
+			Files.deleteIfExists(compressed_path);
+		}
+	}
+
+
+	/**
+	 * countRecords - a private helper method that parses the repaired file from start to end
+	 * @return - the number of records in it
+	 * @throws IOException - if the file could not be read
+	 * @throws XMLStreamException - if it does not parse
+	 */
+	private long countRecords() throws IOException, XMLStreamException {
+		long records = 0;
+		try (InputStream file_input = XMLParser.openDecompressedInput(this.xml_path.toFile())) {
+			XMLStreamReader reader = XMLParser.XML_INPUT_FACTORY.createXMLStreamReader(file_input);
+			while (XMLParser.advanceToMapping(reader, this.mapping_tag)) {
+				if (XMLParser.readMapping(reader, this.root_tag, this.mapping_tag, (name, value) -> {})) {
+					records += 1;
+				}
+			}
+			reader.close();
+		}
+		return records;
+	}
+
+
+	private long committedRecords() {
+		Path checkpoint_path = Paths.get(this.xml_path.toString() + ".ckpt");
+		if (!Files.exists(checkpoint_path)) {
+			return -1;
+		}
+		Properties checkpoint = new Properties();
+		try (InputStream checkpoint_stream = Files.newInputStream(checkpoint_path)) {
+			checkpoint.load(checkpoint_stream);
+			return Long.parseLong(checkpoint.getProperty("committed_records", "-1"));
+		} catch (IOException | NumberFormatException err) {
+			err.printStackTrace();
+			return -1;
+		}
+	}
+
+
+}
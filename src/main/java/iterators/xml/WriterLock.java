@@ -0,0 +1,121 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+class WriterLock {
+	static final String LOCK_SUFFIX = ".lock";
+	// the files locked by this JVM: a file lock is held by the whole process (a second lock from the same
+	// process throws), and closing any channel of the locked file may release it, so the lock file is only
+	// touched once a path has been claimed here
+	private static final Set<Path> HELD_PATHS = ConcurrentHashMap.newKeySet();
+	private Path xml_path;
+	private FileChannel channel;
+	private FileLock lock;
+
+
+	/**
+	 * WriterLock - an exclusive lock on a sidecar file next to an output file (the xml file name followed by
+	 * .lock), held by its writer for as long as the file is open, so that TornFileRecovery can tell a file whose
+	 * writer was killed (the operating system releases the lock of a dead process) from a file that is still
+	 * being written, by this or any other process
+	 * - the lock file is never deleted: a process that opened it just before a delete could lock the deleted
+	 *   file once it was released, while a new writer locks a new file at the same path, and take a live file
+	 *   for an abandoned one; as long as the path keeps its file, every process locks the same one
+	 */
+	private WriterLock(Path xml_path, FileChannel channel, FileLock lock) {
+		this.xml_path = xml_path;
+		this.channel = channel;
+		this.lock = lock;
+	}
+
+
+	static Path lockPath(Path xml_path) {
+		return Paths.get(xml_path.toString() + LOCK_SUFFIX);
+	}
+
+
+	/**
+	 * forWriter - a static helper method that locks an output file for writing, waiting for a recovery of the
+	 * file in another process to finish
+	 * @param xml_path - the path of the output file
+	 * @return - a WriterLock instance
+	 * @throws IOException - if the file is already being written in this JVM, or could not be locked
+	 */
+	static WriterLock forWriter(Path xml_path) throws IOException {
+		Path key = xml_path.toAbsolutePath().normalize();
+		if (!HELD_PATHS.add(key)) {
+			throw new IOException(xml_path + " is already being written or recovered");
+		}
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(lockPath(xml_path), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			return new WriterLock(xml_path, channel, channel.lock());
+		} catch (IOException | RuntimeException err) {
+			if (channel != null) {
+				channel.close();
+			}
+			HELD_PATHS.remove(key);
+			throw err;
+		}
+	}
+
+
+	/**
+	 * ifAbandoned - a static helper method that locks a file for recovery, if no writer holds it
+	 * @param xml_path - the path of the file
+	 * @return - a WriterLock instance, or null if the file is being written (or recovered) by this or another
+	 * process
+	 * @throws IOException - if the lock file could not be opened
+	 */
+	static WriterLock ifAbandoned(Path xml_path) throws IOException {
+		Path key = xml_path.toAbsolutePath().normalize();
+		if (!HELD_PATHS.add(key)) {
+			return null;
+		}
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(lockPath(xml_path), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			FileLock lock = channel.tryLock();
+			if (lock != null) {
+				return new WriterLock(xml_path, channel, lock);
+			}
+		} catch (OverlappingFileLockException err) {
+			// locked through a channel this class did not open, so not abandoned either
+		} catch (IOException | RuntimeException err) {
+			if (channel != null) {
+				channel.close();
+			}
+			HELD_PATHS.remove(key);
+			throw err;
+		}
+		channel.close();
+		HELD_PATHS.remove(key);
+		return null;
+	}
+
+
+	/**
+	 * release - releases the lock and closes the lock file (which is left in place, see the constructor)
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the lock could not be released
+	 */
+	void release() throws IOException {
+		try {
+			this.lock.release();
+		} finally {
+			this.channel.close();
+			HELD_PATHS.remove(this.xml_path.toAbsolutePath().normalize());
+		}
+	}
+
+
+}
@@ -2,37 +2,129 @@ package iterators.xml;
 import java.lang.*;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.Files;
 import java.nio.file.DirectoryStream;
 import java.nio.file.DirectoryIteratorException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import javax.xml.stream.*;
 import javax.xml.stream.events.*;
+import iterators.util.ProductRecord;
 
 
 public class XMLParser {
-	private boolean event_reader_opened;
+	// indentation written in front of the mapping tag (one tab) and the tags inside it (two tabs)
+	private static final String MAPPING_INDENT = "\t";
+	private static final String FIELD_INDENT = "\t\t";
+	private static final String ENDLINE = "\n";
+	private static final int FAST_WRITER_BUFFER_SIZE = 64 * 1024;
+	private static final String SEGMENT_FOOTER_TAG = "segment_footer";
+	// the processing instruction written before the closing root tag when a run is closed (and not when a
+	// segment is rolled over), which tells a reader in tail mode that no more records are coming
+	private static final String END_OF_RUN_TARGET = "end_of_run";
+	private static final int SEGMENT_FOOTER_MAX_BYTES = 64 * 1024;
+	private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+	private static final int RESUME_BUFFER_SIZE = 64 * 1024;
+	// the suffix added to the names of gzip compressed output files
+	private static final String GZIP_SUFFIX = ".gz";
+	private static final ProductRecord.Field[] RECORD_FIELDS = ProductRecord.Field.values();
+	// looking up a StAX factory scans the classpath for an implementation, so every parser shares the same
+	// three; the StAX spec does not promise that a factory is thread safe, so they are never changed after
+	// they are created here (no setProperty(), and no setLocation() on the event factory), which leaves the
+	// JDK implementations without any state that parsers on different threads could race on
+	static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+	static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+	static final XMLEventFactory XML_EVENT_FACTORY = XMLEventFactory.newInstance();
+	private boolean stream_reader_opened;
 	private FileOutputStream xml_ostream;
-	private FileInputStream xml_istream;
+	private OutputStream xml_buffered_ostream;
+	private XMLStreamWriter xml_stream_writer;
+	private boolean fast_writer;
+	private DurabilityPolicy durability_policy;
+	private Path checkpoint_path;
+	private long records_since_commit;
+	private long committed_records;
+	private long last_commit_nanos;
+	private ScheduledFuture<?> commit_timer;
+	private CountingOutputStream xml_counting_ostream;
+	// the sidecar record index of the output file (null unless setRecordIndex(true) was called and the output
+	// is uncompressed), and the stream between the xml writer and the output buffer that counts the offsets
+	private boolean record_index;
+	private RecordIndex.Appender record_index_appender;
+	private CountingOutputStream xml_offset_ostream;
+	private boolean segment_manifest;
+	private SegmentManifest output_manifest;
+	private String output_manifest_name;
+	private CRC32 output_checksum;
+	private long output_file_records;
+	private String compression;
+	private String output_file_stem;
+	private String output_extension;
+	private long segment_max_records;
+	private long segment_max_bytes;
+	private int segment_number;
+	private long segment_records;
+	private String segment_first_record_at;
+	private String segment_last_record_at;
+	private TreeSet<String> segment_store_chains;
+	private TreeSet<String> segment_townships;
+	private InputStream xml_istream;
 	private XMLEventWriter xml_event_writer;
-	private XMLEventReader xml_event_reader;
-	private XMLEventFactory xml_event_factory;
+	private XMLStreamReader xml_stream_reader;
 	private XMLEvent xml_endline;
 	private boolean xml_ostream_accessed;
+	// set by closeProductXmlOutputStream(), after which the parser no longer writes
+	private boolean output_closed;
 	private boolean add_name_suffix;
 	private boolean file_does_not_exist;
 	private String xml_filename;
+	// the directory the files are read from and written to (null for the working directory of the JVM)
+	private Path working_directory;
 	private String root_tag;
 	private String mapping_tag;
 	private String current_output_xml_filename;
+	private WriterLock output_lock;
 	private String current_input_xml_filename;
 	private ArrayList<String> matched_xml_filenames;
+	// the files read by a parser made with readerForFiles() (null to read the files matching the glob)
+	private List<String> source_files;
+	// the committed read positions of this parser's consumer (null unless enableReadOffsets() was called), the
+	// position reached in the current input file, and the files read to the end since the last commit
+	private ReadOffsets read_offsets;
+	private String archive_directory;
+	private long input_records;
+	private long input_char_offset;
+	private long input_char_base;
+	private ArrayList<String> finished_input_files;
+	private boolean tail_mode;
+	private long tail_idle_timeout_millis;
+	private WatchService tail_watcher;
+	private TailingInputStream tail_input;
+	private boolean end_of_run_seen;
+	private boolean tail_timed_out;
 	private String date_pattern;
 	private String glob_pattern;
 	private String glob_pattern_without_suffix;
@@ -70,6 +162,11 @@ public class XMLParser {
 	private void setProperties(String xml_filename, String root_tag, String mapping_tag, boolean name_suffix) {
                 this.xml_ostream_accessed = false;
                 this.add_name_suffix = name_suffix;
+		this.output_closed = false;
+		this.working_directory = null;
+		this.fast_writer = false;
+		this.durability_policy = null;
+		this.commit_timer = null;
 		this.xml_filename = xml_filename;
 		this.root_tag = root_tag;
 		this.mapping_tag = mapping_tag;
@@ -78,26 +175,191 @@ public class XMLParser {
 		this.date_pattern = "-MMM-dd-yyyy-HH-mm";
 		String[] prefix_and_suffix = xml_filename.split("\\.");
 		// the globbing pattern for which all xml files with product entries will be matched by
+		// (including the numbered segments written in segmented mode, such as name-seg0001.xml)
 		this.glob_pattern = prefix_and_suffix[0] +
 		"-[A-Za-z][A-Za-z][A-Za-z]-[0-9][0-9]-[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]" +
-		"." + prefix_and_suffix[1];
-		this.glob_pattern_without_suffix = prefix_and_suffix[0] + "." + prefix_and_suffix[1];
+		"{,-seg[0-9][0-9][0-9][0-9]}." + prefix_and_suffix[1] + "{," + GZIP_SUFFIX + "}";
+		this.glob_pattern_without_suffix = prefix_and_suffix[0] + "{,-seg[0-9][0-9][0-9][0-9]}." + prefix_and_suffix[1] +
+			"{," + GZIP_SUFFIX + "}";
+		this.segment_max_records = 0;
+		this.segment_max_bytes = 0;
+		this.segment_number = 1;
+		this.compression = "none";
 		this.matched_xml_filenames = new ArrayList<String>();
-		this.event_reader_opened = false;
+		this.stream_reader_opened = false;
 		this.file_does_not_exist = false;
 		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(this.date_pattern);
 		LocalDateTime current_time = LocalDateTime.now();
 		String formatted_date = current_time.format(formatter);
 		String[] prefix_and_extension = this.xml_filename.split("\\.");
 		String xml_fname = prefix_and_extension[0] + formatted_date + "." + prefix_and_extension[1];
+		this.output_extension = prefix_and_extension[1];
 		if (this.add_name_suffix) {
 			this.current_output_xml_filename = xml_fname;
+			this.output_file_stem = prefix_and_extension[0] + formatted_date;
 		} else {
 			this.current_output_xml_filename = this.xml_filename;
+			this.output_file_stem = prefix_and_extension[0];
 		}
 	}
 
 
+	/**
+	 * setSegmentLimits - a public method that turns on segmented output: records are written to numbered
+	 * segment files (for example nofrills_product_info-Oct-17-2026-10-30-seg0001.xml), and a new segment is
+	 * started once the current one holds max_records records or roughly max_bytes bytes
+	 * - every segment ends with a segment_footer element (see readSegmentFooter) holding its record count,
+	 *   the time range its records were written in, and the store chains and townships it contains
+	 * - must be called before the first record is written
+	 * @param max_records - the largest number of records per segment (0 for no limit)
+	 * @param max_bytes - the size in bytes after which the segment is closed (0 for no limit)
+	 * @return - returns nothing (void)
+	 */
+	public void setSegmentLimits(long max_records, long max_bytes) {
+		assert (!this.xml_ostream_accessed);
+		assert ((max_records >= 0) && (max_bytes >= 0));
+		this.segment_max_records = max_records;
+		this.segment_max_bytes = max_bytes;
+		if (this.isSegmented()) {
+			this.current_output_xml_filename = this.segmentFilename(this.segment_number);
+		}
+	}
+
+
+	private boolean isSegmented() {
+		return (this.segment_max_records > 0) || (this.segment_max_bytes > 0);
+	}
+
+
+	private String segmentFilename(int segment_number) {
+		return this.output_file_stem + String.format("-seg%04d", segment_number) + "." + this.output_extension +
+			this.compressionSuffix();
+	}
+
+
+	private String compressionSuffix() {
+		return this.compression.equals("none") ? "" : GZIP_SUFFIX;
+	}
+
+
+	/**
+	 * setCompression - a public method that chooses whether the output files are compressed
+	 * - none writes plain xml, gzip writes a gzip stream at the default compression level, and gzip-fast
+	 *   writes a gzip stream with the JDK deflater at BEST_SPEED, which trades some of the size reduction for
+	 *   a several times faster compressor (both are read by any gzip tool and by GZIPInputStream)
+	 * - compressed output files get .gz added to their name, and the readers (hasNext() and next()) tell
+	 *   compressed files apart from plain ones by their first bytes, so either kind can be read back
+	 * - must be called before the first record is written
+	 * @param compression - none, gzip or gzip-fast
+	 * @return - returns nothing (void)
+	 * @throws IllegalArgumentException - if compression is not one of the above
+	 */
+	public void setCompression(String compression) {
+		assert (!this.xml_ostream_accessed);
+		compression = compression.strip().toLowerCase();
+		if (!(compression.equals("none") || compression.equals("gzip") || compression.equals("gzip-fast"))) {
+			throw new IllegalArgumentException("Unknown xml compression: " + compression);
+		}
+		String previous_suffix = this.compressionSuffix();
+		this.compression = compression;
+		this.current_output_xml_filename = this.current_output_xml_filename.substring(
+			0, this.current_output_xml_filename.length() - previous_suffix.length()
+		) + this.compressionSuffix();
+	}
+
+
+	/**
+	 * setWorkingDirectory - a public method that makes the parser read and write its files (and their
+	 * indexes, manifests, checkpoints and read offsets) in a directory other than the working directory of
+	 * the JVM
+	 * - must be called before the first record is read or written
+	 * @param directory - the directory of the files
+	 * @return - returns nothing (void)
+	 */
+	public void setWorkingDirectory(Path directory) {
+		assert (!this.xml_ostream_accessed && !this.stream_reader_opened);
+		this.working_directory = directory.toAbsolutePath();
+	}
+
+
+	/**
+	 * workingDirectory - a package-private helper method that returns the directory of the parser's files (see
+	 * setWorkingDirectory())
+	 */
+	Path workingDirectory() {
+		if (this.working_directory != null) {
+			return this.working_directory;
+		}
+		return Paths.get(System.getProperty("user.dir"));
+	}
+
+
+	/**
+	 * FastGZIPOutputStream - a GZIPOutputStream whose deflater runs at BEST_SPEED
+	 */
+	private static class FastGZIPOutputStream extends GZIPOutputStream {
+		FastGZIPOutputStream(OutputStream out, int size) throws IOException {
+			super(out, size, true);
+			this.def.setLevel(Deflater.BEST_SPEED);
+		}
+	}
+
+
+	/**
+	 * compressedOutput - a private helper method that adds the compressor chosen with setCompression() on top
+	 * of an output stream (the gzip streams sync flush, so every group commit leaves a readable file)
+	 * @param out - the OutputStream to write the compressed bytes to
+	 * @return - the OutputStream to write xml to
+	 * @throws IOException - if the gzip header could not be written
+	 */
+	private OutputStream compressedOutput(OutputStream out) throws IOException {
+		// the xml writers hand over a few bytes at a time, which would mean a deflate call per tag without a buffer
+		switch (this.compression) {
+			case "gzip":
+				return new BufferedOutputStream(
+					new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE, true), COMPRESSION_BUFFER_SIZE
+				);
+			case "gzip-fast":
+				return new BufferedOutputStream(
+					new FastGZIPOutputStream(out, COMPRESSION_BUFFER_SIZE), COMPRESSION_BUFFER_SIZE
+				);
+			default:
+				return out;
+		}
+	}
+
+
+	/**
+	 * openDecompressedInput - a static helper method that opens a product xml file for reading, and
+	 * decompresses it on the fly if it starts with the gzip magic bytes (0x1f 0x8b)
+	 * @param xml_file - the File to read
+	 * @return - an InputStream of the xml text
+	 * @throws IOException - if the file could not be opened
+	 */
+	static InputStream openDecompressedInput(File xml_file) throws IOException {
+		return decompressedInput(new FileInputStream(xml_file));
+	}
+
+
+	/**
+	 * decompressedInput - the same as openDecompressedInput(), for any stream of the bytes of a file
+	 * @param raw_input - the InputStream of the file
+	 * @return - an InputStream of the xml text
+	 * @throws IOException - if the first bytes could not be read
+	 */
+	static InputStream decompressedInput(InputStream raw_input) throws IOException {
+		BufferedInputStream file_input = new BufferedInputStream(raw_input, COMPRESSION_BUFFER_SIZE);
+		file_input.mark(2);
+		int first_byte = file_input.read();
+		int second_byte = file_input.read();
+		file_input.reset();
+		if ((first_byte == 0x1f) && (second_byte == 0x8b)) {
+			return new GZIPInputStream(file_input, COMPRESSION_BUFFER_SIZE);
+		}
+		return file_input;
+	}
+
+
 	/**
 	 * openProductXmlOutputStream: a public helper method that gets the xml filename with product data from
 	 * the configuration properties file and then creates an output stream to this file using the STAX API
@@ -105,9 +367,14 @@ public class XMLParser {
 	 * @return - returns nothing (void)
 	 * */
 	private void openProductXmlOutputStream() {
+		if (this.output_closed) {
+			throw new IllegalStateException(
+				"the output of " + this.xml_filename + " was closed by closeProductXmlOutputStream(), its run is over"
+			);
+		}
 		if (!this.xml_ostream_accessed) {
 			boolean file_already_exists;
-			String currentPath = System.getProperty("user.dir");
+			String currentPath = this.workingDirectory().toString();
 			Path pwd = Paths.get(currentPath);
 			String[] prefix_and_extension = this.xml_filename.split("\\.");
 			DateTimeFormatter formatter = DateTimeFormatter.ofPattern(this.date_pattern);
@@ -115,115 +382,1220 @@ public class XMLParser {
 			String formatted_date = current_time.format(formatter);
 			String xml_fname = prefix_and_extension[0] + formatted_date + "." + prefix_and_extension[1];
 			Path xml_path = pwd.resolve(this.current_output_xml_filename);
-			XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+			XMLOutputFactory xmlOutputFactory = XML_OUTPUT_FACTORY;
 			try {
 				File xml_file = new File(xml_path.toString());
+				// taken before the file is created, so recoverTornFiles() never sees it without its lock
+				this.output_lock = WriterLock.forWriter(xml_path);
 				file_already_exists = !(xml_file.createNewFile());
 				this.xml_ostream = new FileOutputStream(xml_file, true);
-				this.xml_event_writer = xmlOutputFactory.createXMLEventWriter(
-					this.xml_ostream, "UTF-8"
-				);
-				this.xml_event_factory = XMLEventFactory.newInstance();
-				this.xml_endline = this.xml_event_factory.createDTD("\n");
-				StartDocument start_document = this.xml_event_factory.createStartDocument();
+				// xml writer -> buffer and compressor (if any) -> byte counter -> checksum (if the stream has a
+				// manifest) -> buffer (if any) -> file
+				OutputStream file_output = this.xml_ostream;
+				int buffer_size = this.fast_writer ? FAST_WRITER_BUFFER_SIZE : 0;
+				if (this.durability_policy != null) {
+					buffer_size = this.durability_policy.getBufferSize();
+				}
+				if (buffer_size > 0) {
+					file_output = new BufferedOutputStream(this.xml_ostream, buffer_size);
+				}
+				file_output = this.openManifestEntry(xml_path, file_already_exists, file_output);
+				this.xml_counting_ostream = new CountingOutputStream(file_output, this.xml_ostream.getChannel().size());
+				this.xml_buffered_ostream = this.compressedOutput(this.xml_counting_ostream);
+				OutputStream writer_output = this.openRecordIndex(xml_path, file_already_exists);
+				this.startGroupCommits(xml_path, file_already_exists);
+				this.startSegment();
+				if (this.fast_writer) {
+					this.openFastWriter(xmlOutputFactory, writer_output, file_already_exists);
+					this.xml_ostream_accessed = true;
+					return;
+				}
+				this.xml_event_writer = xmlOutputFactory.createXMLEventWriter(writer_output, "UTF-8");
+				this.xml_endline = XML_EVENT_FACTORY.createDTD("\n");
+				StartDocument start_document = XML_EVENT_FACTORY.createStartDocument();
 				if (!file_already_exists) {
 					this.xml_event_writer.add(start_document);
 					this.xml_event_writer.add(this.xml_endline);
 				}
 				if (this.root_tag != "") {
-					StartElement root_element = this.xml_event_factory.createStartElement(
+					StartElement root_element = XML_EVENT_FACTORY.createStartElement(
 						"", "", this.root_tag
 					);
 					this.xml_event_writer.add(root_element);
 					this.xml_event_writer.add(this.xml_endline);
 				}
-				this.xml_ostream_accessed = true;
-			} catch (Throwable t) {
-				t.printStackTrace();
+				this.xml_ostream_accessed = true;
+			} catch (Throwable t) {
+				t.printStackTrace();
+				this.closeFailedOutput();
+			}
+		}
+	}
+
+
+	/**
+	 * closeFailedOutput - a private helper method that closes what openProductXmlOutputStream() opened before
+	 * it failed (the file, its record index and the group commit timer) and releases the writer lock, since
+	 * the file was not opened and no writer holds it
+	 * - the file is closed below the xml writer and the compressor, so nothing buffered above it is written
+	 * @return - returns nothing (void)
+	 */
+	private void closeFailedOutput() {
+		if (this.commit_timer != null) {
+			this.commit_timer.cancel(false);
+			this.commit_timer = null;
+		}
+		try {
+			if (this.record_index_appender != null) {
+				this.record_index_appender.close();
+				this.record_index_appender = null;
+			}
+		} catch (IOException err) {
+			err.printStackTrace();
+		}
+		try {
+			if (this.xml_ostream != null) {
+				this.xml_ostream.close();
+				this.xml_ostream = null;
+			}
+		} catch (IOException err) {
+			err.printStackTrace();
+		}
+		if (this.output_lock != null) {
+			try {
+				this.output_lock.release();
+			} catch (IOException err) {
+				err.printStackTrace();
+			}
+			this.output_lock = null;
+		}
+	}
+
+
+	/**
+	 * setFastWriter - a public method that chooses how product records are written: through an XMLEventWriter
+	 * (the default), or through an XMLStreamWriter over a buffered stream, which writes exactly the same file
+	 * without allocating a set of event objects for every field of every record
+	 * - must be called before the first record is written
+	 * @param fast_writer - true to use the XMLStreamWriter fast path
+	 * @return - returns nothing (void)
+	 */
+	public void setFastWriter(boolean fast_writer) {
+		assert (!this.xml_ostream_accessed);
+		this.fast_writer = fast_writer;
+	}
+
+
+	/**
+	 * setRecordIndex - a public method that turns on the sidecar record index: next to every output file (and
+	 * every segment) an index file (the xml file name followed by .idx, see RecordIndex) is written as records
+	 * are appended, holding the byte offset of each record and its township and category, which readRecords()
+	 * and townshipRecords() use to read records without parsing the file from the start
+	 * - only uncompressed output is indexed, since a gzip stream cannot be read from the middle
+	 * - records appended to a file that was written without an index are not indexed
+	 * - must be called before the first record is written
+	 * @param record_index - true to write the index
+	 * @return - returns nothing (void)
+	 */
+	public void setRecordIndex(boolean record_index) {
+		assert (!this.xml_ostream_accessed);
+		this.record_index = record_index;
+	}
+
+
+	/**
+	 * setSegmentManifest - a public method that turns on the segment manifest of the stream: a file next to the
+	 * output files (the xml file name without its extension, followed by .manifest, see SegmentManifest) that
+	 * lists every file of the stream with its state (writing, or complete once it was closed), size, record
+	 * count and CRC32, and that the readers use instead of globbing the working directory
+	 * - once the manifest exists it is kept up to date and used by every parser of the stream, whether this
+	 *   is set or not; when it is first created, the files already matching the glob are added to it
+	 * - files being written (or left unfinished by a writer that died) are not read, and files should only be
+	 *   removed through clear() or by archiving them with commitReadOffsets(), which update the manifest
+	 * - must be called before the first record is written
+	 * @param segment_manifest - true to keep a manifest
+	 * @return - returns nothing (void)
+	 */
+	public void setSegmentManifest(boolean segment_manifest) {
+		assert (!this.xml_ostream_accessed);
+		this.segment_manifest = segment_manifest;
+	}
+
+
+	/**
+	 * segmentManifest - a package-private helper method that returns the manifest of the stream in a directory
+	 * @param directory - the directory of the xml files
+	 * @return - a SegmentManifest instance (which may not exist yet)
+	 */
+	SegmentManifest segmentManifest(Path directory) {
+		String[] prefix_and_extension = this.xml_filename.split("\\.");
+		return new SegmentManifest(directory.resolve(prefix_and_extension[0] + SegmentManifest.MANIFEST_SUFFIX));
+	}
+
+
+	/**
+	 * openManifestEntry - a private helper method that enters a newly opened output file in the manifest as
+	 * being written, if the stream has a manifest (or is to get one)
+	 * - the CRC32 of a file that records are appended to starts from its existing bytes, which are read again
+	 *   since a CRC32 cannot be continued from the value recorded for them
+	 * @param xml_path - the path of the output file
+	 * @param file_already_exists - true if records are being appended to an existing file
+	 * @param output - the stream that writes to the file
+	 * @return - a stream that sums the bytes written to output, or output itself if there is no manifest
+	 * @throws IOException - if the manifest could not be written or the existing file could not be read
+	 */
+	private OutputStream openManifestEntry(Path xml_path, boolean file_already_exists, OutputStream output)
+		throws IOException {
+		this.output_manifest = null;
+		SegmentManifest manifest = this.segmentManifest(xml_path.getParent());
+		if (!manifest.exists()) {
+			if (!this.segment_manifest) {
+				return output;
+			}
+			manifest.create(this.listSourceFiles(xml_path.getParent(), true));
+		}
+		String file_name = xml_path.getFileName().toString();
+		this.output_checksum = new CRC32();
+		this.output_file_records = 0;
+		if (file_already_exists) {
+			SegmentManifest.Entry previous = manifest.read().get(file_name);
+			this.output_checksum = SegmentManifest.crc(xml_path);
+			this.output_file_records = (previous == null) ? SegmentManifest.UNKNOWN_RECORDS : previous.records;
+		}
+		manifest.update(file_name, new SegmentManifest.Entry(
+			SegmentManifest.WRITING, Files.size(xml_path), this.output_file_records, SegmentManifest.UNKNOWN_CHECKSUM
+		));
+		this.output_manifest = manifest;
+		this.output_manifest_name = file_name;
+		return new CheckedOutputStream(output, this.output_checksum);
+	}
+
+
+	/**
+	 * verifySegmentManifest - a public method that checks the complete files in the manifest of the stream
+	 * against their recorded size and CRC32 (the whole of every file is read)
+	 * @return - an ArrayList<String> with the path of every file that is missing or does not match (files
+	 * whose checksum is not known are only checked for their size), empty if there is no manifest
+	 * @throws IOException - if the manifest could not be read
+	 */
+	public ArrayList<String> verifySegmentManifest() throws IOException {
+		Path pwd = this.workingDirectory();
+		ArrayList<String> mismatched_files = new ArrayList<>();
+		for (Map.Entry<String, SegmentManifest.Entry> entry: this.segmentManifest(pwd).read().entrySet()) {
+			SegmentManifest.Entry file_entry = entry.getValue();
+			Path xml_path = pwd.resolve(entry.getKey());
+			if (!file_entry.state.equals(SegmentManifest.COMPLETE)) {
+				continue;
+			}
+			if (!Files.exists(xml_path) || (Files.size(xml_path) != file_entry.size) ||
+			    (!file_entry.checksum.equals(SegmentManifest.UNKNOWN_CHECKSUM) &&
+			     !file_entry.checksum.equals(SegmentManifest.formatChecksum(SegmentManifest.crc(xml_path).getValue())))) {
+				mismatched_files.add(xml_path.toString());
+			}
+		}
+		return mismatched_files;
+	}
+
+
+	/**
+	 * recoverTornFiles - a public method that repairs the files of the stream that a killed writer left
+	 * without their closing root tag: every complete record up to the last record boundary is kept, the torn
+	 * tail after it is cut off and the file is closed (see TornFileRecovery), so a killed run only loses the
+	 * records it had not finished writing
+	 * - with a segment manifest only the files still marked as being written are checked (and marked complete
+	 *   afterwards), otherwise every file of the stream is (a gzip file is decompressed to its end for it)
+	 * - a file is only repaired if its writer is dead: every writer holds a lock on the file (see WriterLock)
+	 *   until it closes it, so the files being written by this or any other process are skipped
+	 * @return - an ArrayList<RecoveryReport> with what was salvaged from each torn file, empty if none was torn
+	 * @throws IOException - if a file could not be read or repaired
+	 * @throws XMLStreamException - if a repaired file does not parse
+	 */
+	public ArrayList<RecoveryReport> recoverTornFiles() throws IOException, XMLStreamException {
+		Path pwd = this.workingDirectory();
+		SegmentManifest manifest = this.segmentManifest(pwd);
+		TreeMap<String, SegmentManifest.Entry> entries = manifest.exists() ? manifest.read() : null;
+		ArrayList<RecoveryReport> reports = new ArrayList<>();
+		for (String source_file: this.listSourceFiles(pwd, true)) {
+			Path xml_path = Paths.get(source_file);
+			String file_name = xml_path.getFileName().toString();
+			SegmentManifest.Entry entry = (entries == null) ? null : entries.get(file_name);
+			if ((entry != null) && entry.state.equals(SegmentManifest.COMPLETE)) {
+				continue;
+			}
+			WriterLock recovery_lock = WriterLock.ifAbandoned(xml_path);
+			if (recovery_lock == null) {
+				continue;
+			}
+			try {
+				if (!Files.exists(xml_path)) {
+					continue;
+				}
+				RecoveryReport report = new TornFileRecovery(xml_path, this.root_tag, this.mapping_tag).recover();
+				if (report != null) {
+					reports.add(report);
+				}
+				if (entry != null) {
+					// a file that was not torn was closed by a writer killed before it could update the manifest
+					manifest.update(file_name, new SegmentManifest.Entry(
+						SegmentManifest.COMPLETE, Files.size(xml_path),
+						(report == null) ? entry.records : report.getSalvagedRecords(),
+						SegmentManifest.formatChecksum(SegmentManifest.crc(xml_path).getValue())
+					));
+				}
+			} finally {
+				recovery_lock.release();
+			}
+		}
+		return reports;
+	}
+
+
+	/**
+	 * openRecordIndex - a private helper method that opens the record index of a newly opened output file, if
+	 * it is to be indexed
+	 * @param xml_path - the path of the output file
+	 * @param file_already_exists - true if records are being appended to an existing file
+	 * @return - the stream for the xml writer to write to: an offset counter over this.xml_buffered_ostream if
+	 * the file is indexed, this.xml_buffered_ostream itself otherwise
+	 * @throws IOException - if the index could not be opened
+	 */
+	private OutputStream openRecordIndex(Path xml_path, boolean file_already_exists) throws IOException {
+		this.record_index_appender = null;
+		boolean indexed = this.record_index && this.compression.equals("none") &&
+			(!file_already_exists || Files.exists(RecordIndex.indexPath(xml_path)));
+		if (!indexed) {
+			return this.xml_buffered_ostream;
+		}
+		long file_size = this.xml_ostream.getChannel().size();
+		this.record_index_appender = new RecordIndex.Appender(xml_path, file_already_exists, file_size);
+		// the xml writer is flushed into this stream before every record so its count is the record's offset,
+		// which must not flush the buffers below it (that would write to the file once per record)
+		this.xml_offset_ostream = new CountingOutputStream(this.xml_buffered_ostream, file_size) {
+			@Override
+			public void flush() {
+			}
+		};
+		return this.xml_offset_ostream;
+	}
+
+
+	/**
+	 * indexRecord - a private helper method that adds the record about to be written to the record index, if
+	 * the output file is indexed
+	 * @param township - the township of the record, may be null
+	 * @param category - the category path of the record, may be null
+	 * @return - returns nothing (void)
+	 * @throws XMLStreamException - if the xml writer could not be flushed or the index could not be written
+	 */
+	private void indexRecord(String township, String category) throws XMLStreamException {
+		if (this.record_index_appender == null) {
+			return;
+		}
+		if (this.fast_writer) {
+			this.xml_stream_writer.flush();
+		} else {
+			this.xml_event_writer.flush();
+		}
+		try {
+			this.record_index_appender.add(this.xml_offset_ostream.getCount(), township, category);
+		} catch (IOException err) {
+			throw new XMLStreamException(err);
+		}
+	}
+
+
+	/**
+	 * openFastWriter - a private helper method that opens the XMLStreamWriter used by the fast path over
+	 * the output stream, and writes the same document header and root tag as the event writer does
+	 * @param xml_output_factory - the XMLOutputFactory to create the writer with
+	 * @param output - the stream to write to (this.xml_buffered_ostream, or the offset counter above it)
+	 * @param file_already_exists - true if records are being appended to an existing file
+	 * @return - returns nothing (void)
+	 * @throws XMLStreamException - if the header could not be written
+	 */
+	private void openFastWriter(XMLOutputFactory xml_output_factory, OutputStream output, boolean file_already_exists)
+		throws XMLStreamException {
+		this.xml_stream_writer = xml_output_factory.createXMLStreamWriter(output, "UTF-8");
+		if (!file_already_exists) {
+			this.xml_stream_writer.writeStartDocument("UTF-8", "1.0");
+			this.xml_stream_writer.writeCharacters(ENDLINE);
+		}
+		if (this.root_tag != "") {
+			this.xml_stream_writer.writeStartElement(this.root_tag);
+			this.xml_stream_writer.writeCharacters(ENDLINE);
+		}
+	}
+
+
+	/**
+	 * CommitTimer - the daemon thread shared by every XMLParser for time based group commits (only started
+	 * once a parser with a group_commit_millis policy opens its output file)
+	 */
+	private static class CommitTimer {
+		private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread timer_thread = new Thread(task, "xml-group-commit");
+			timer_thread.setDaemon(true);
+			return timer_thread;
+		});
+	}
+
+
+	/**
+	 * setDurabilityPolicy - a public method that sets how often the records written by hashmapToXML are
+	 * committed to the file (see DurabilityPolicy)
+	 * - every group commit writes the buffered records out (and waits for the disk if the policy says to
+	 *   fsync), then records a checkpoint marker in a file next to the xml file (the xml file name followed
+	 *   by .ckpt) with the number of records and bytes that are known to be in the file
+	 * - must be called before the first record is written
+	 * @param durability_policy - the DurabilityPolicy instance, or null to only write the buffer out when it
+	 * fills up or the parser is closed
+	 * @return - returns nothing (void)
+	 */
+	public void setDurabilityPolicy(DurabilityPolicy durability_policy) {
+		assert (!this.xml_ostream_accessed);
+		this.durability_policy = durability_policy;
+	}
+
+
+	/**
+	 * startGroupCommits - a private helper method that sets up the checkpoint marker of a newly opened output
+	 * file and starts the commit timer, if the durability policy has one
+	 * - when records are appended to an existing file, the record count carries on from its last checkpoint
+	 * @param xml_path - the Path of the output file
+	 * @param file_already_exists - true if records are being appended to an existing file
+	 * @return - returns nothing (void)
+	 */
+	private void startGroupCommits(Path xml_path, boolean file_already_exists) {
+		this.records_since_commit = 0;
+		this.committed_records = 0;
+		this.last_commit_nanos = System.nanoTime();
+		if (this.durability_policy == null) {
+			return;
+		}
+		this.checkpoint_path = Paths.get(xml_path.toString() + ".ckpt");
+		if (file_already_exists && Files.exists(this.checkpoint_path)) {
+			Properties checkpoint = new Properties();
+			try (InputStream checkpoint_stream = Files.newInputStream(this.checkpoint_path)) {
+				checkpoint.load(checkpoint_stream);
+				this.committed_records = Long.parseLong(checkpoint.getProperty("committed_records", "0"));
+			} catch (IOException | NumberFormatException err) {
+				err.printStackTrace();
+			}
+		}
+		long group_commit_millis = this.durability_policy.getGroupCommitMillis();
+		if (group_commit_millis > 0) {
+			this.commit_timer = CommitTimer.INSTANCE.scheduleWithFixedDelay(
+				this::commitIfDue, group_commit_millis, Math.max(1, group_commit_millis / 2), TimeUnit.MILLISECONDS
+			);
+		}
+	}
+
+
+	/**
+	 * recordWritten - a private helper method called after every record, which runs a group commit once
+	 * the policy's number of records have been written since the last one
+	 * @param store_chain - the store chain of the record, may be null
+	 * @param township - the township of the record, may be null
+	 * @return - returns nothing (void)
+	 * @throws XMLStreamException - if the group commit failed
+	 */
+	private void recordWritten(String store_chain, String township) throws XMLStreamException {
+		this.records_since_commit += 1;
+		if ((this.output_manifest != null) && (this.output_file_records >= 0)) {
+			this.output_file_records += 1;
+		}
+		if (this.isSegmented()) {
+			this.addToSegment(store_chain, township);
+		}
+		if (this.durability_policy != null) {
+			int group_commit_records = this.durability_policy.getGroupCommitRecords();
+			if ((group_commit_records > 0) && (this.records_since_commit >= group_commit_records)) {
+				try {
+					this.commit();
+				} catch (IOException err) {
+					throw new XMLStreamException(err);
+				}
+			}
+		}
+		if (this.isSegmented() && this.segmentIsFull()) {
+			// the next record opens the next segment, so a run never ends with an empty segment
+			this.closeOutput(false);
+			this.segment_number += 1;
+			this.current_output_xml_filename = this.segmentFilename(this.segment_number);
+		}
+	}
+
+
+	/**
+	 * startSegment - a private helper method that resets the footer information when an output file (or
+	 * segment) is opened
+	 * @return - returns nothing (void)
+	 */
+	private void startSegment() {
+		this.segment_records = 0;
+		this.segment_first_record_at = null;
+		this.segment_last_record_at = null;
+		this.segment_store_chains = new TreeSet<>();
+		this.segment_townships = new TreeSet<>();
+	}
+
+
+	/**
+	 * addToSegment - a private helper method that adds a record that was just written to the footer
+	 * information of the current segment
+	 * @param store_chain - the store chain of the record, may be null
+	 * @param township - the township of the record, may be null
+	 * @return - returns nothing (void)
+	 */
+	private void addToSegment(String store_chain, String township) {
+		String written_at = LocalDateTime.now().toString();
+		if (this.segment_first_record_at == null) {
+			this.segment_first_record_at = written_at;
+		}
+		this.segment_last_record_at = written_at;
+		this.segment_records += 1;
+		if (store_chain != null) {
+			this.segment_store_chains.add(store_chain.strip());
+		}
+		if (township != null) {
+			this.segment_townships.add(township.strip());
+		}
+	}
+
+
+	private boolean segmentIsFull() {
+		boolean records_reached = (this.segment_max_records > 0) && (this.segment_records >= this.segment_max_records);
+		boolean bytes_reached = (this.segment_max_bytes > 0) &&
+			(this.xml_counting_ostream.getCount() >= this.segment_max_bytes);
+		return records_reached || bytes_reached;
+	}
+
+
+	/**
+	 * writeSegmentFooter - a private helper method that writes the footer of the current segment, just
+	 * before the closing root tag
+	 * - the chains and townships are separated by semicolons, and the time range is when the first and last
+	 *   records of the segment were written (ISO-8601 local date and time)
+	 * @return - returns nothing (void)
+	 * @throws XMLStreamException - if the footer could not be written
+	 */
+	private void writeSegmentFooter() throws XMLStreamException {
+		LinkedHashMap<String, String> footer = new LinkedHashMap<>();
+		footer.put("segment_number", Integer.toString(this.segment_number));
+		footer.put("record_count", Long.toString(this.segment_records));
+		footer.put("first_record_at", (this.segment_first_record_at == null) ? "" : this.segment_first_record_at);
+		footer.put("last_record_at", (this.segment_last_record_at == null) ? "" : this.segment_last_record_at);
+		footer.put("store_chain_names", String.join(";", this.segment_store_chains));
+		footer.put("township_locations", String.join(";", this.segment_townships));
+		if (this.fast_writer) {
+			this.xml_stream_writer.writeCharacters(MAPPING_INDENT);
+			this.xml_stream_writer.writeStartElement(SEGMENT_FOOTER_TAG);
+			this.xml_stream_writer.writeCharacters(ENDLINE);
+			for (Map.Entry<String, String> entry: footer.entrySet()) {
+				this.writeNode(entry.getKey(), entry.getValue(), FIELD_INDENT);
+			}
+			this.xml_stream_writer.writeCharacters(MAPPING_INDENT);
+			this.xml_stream_writer.writeEndElement();
+			this.xml_stream_writer.writeCharacters(ENDLINE);
+			return;
+		}
+		this.add_tabs(this.xml_event_writer, 1);
+		this.xml_event_writer.add(XML_EVENT_FACTORY.createStartElement("", "", SEGMENT_FOOTER_TAG));
+		this.xml_event_writer.add(this.xml_endline);
+		for (Map.Entry<String, String> entry: footer.entrySet()) {
+			this.createXMLNode(entry.getKey(), entry.getValue(), 2);
+		}
+		this.add_tabs(this.xml_event_writer, 1);
+		this.xml_event_writer.add(XML_EVENT_FACTORY.createEndElement("", "", SEGMENT_FOOTER_TAG));
+		this.xml_event_writer.add(this.xml_endline);
+	}
+
+
+	/**
+	 * readSegmentFooter - a public static method that reads the footer of a segment file without parsing the
+	 * records before it (only the end of a plain file is read, a compressed one has to be decompressed but is
+	 * still not parsed), so readers can decide to skip a segment
+	 * @param segment_path - the Path of the segment file
+	 * @return - a HashMap with the footer fields (segment_number, record_count, first_record_at,
+	 * last_record_at, store_chain_names and township_locations), or null if the file has no footer (it is
+	 * not a segment, or it is still being written)
+	 * @throws IOException - if the file could not be read
+	 */
+	public static HashMap<String, String> readSegmentFooter(Path segment_path) throws IOException {
+		String tail;
+		try (InputStream segment_input = openDecompressedInput(segment_path.toFile())) {
+			if (segment_input instanceof GZIPInputStream) {
+				// a compressed segment cannot be read from the end, so decompress it keeping only the last bytes
+				byte[] window = new byte[2 * SEGMENT_FOOTER_MAX_BYTES];
+				int window_length = 0;
+				int bytes_read = segment_input.read(window, window_length, window.length - window_length);
+				while (bytes_read >= 0) {
+					window_length += bytes_read;
+					if (window_length == window.length) {
+						System.arraycopy(window, SEGMENT_FOOTER_MAX_BYTES, window, 0, SEGMENT_FOOTER_MAX_BYTES);
+						window_length = SEGMENT_FOOTER_MAX_BYTES;
+					}
+					bytes_read = segment_input.read(window, window_length, window.length - window_length);
+				}
+				tail = new String(window, 0, window_length, java.nio.charset.StandardCharsets.UTF_8);
+			} else {
+				try (RandomAccessFile segment_file = new RandomAccessFile(segment_path.toFile(), "r")) {
+					long tail_start = Math.max(0, segment_file.length() - SEGMENT_FOOTER_MAX_BYTES);
+					byte[] tail_bytes = new byte[(int) (segment_file.length() - tail_start)];
+					segment_file.seek(tail_start);
+					segment_file.readFully(tail_bytes);
+					tail = new String(tail_bytes, java.nio.charset.StandardCharsets.UTF_8);
+				}
+			}
+		}
+		int footer_start = tail.lastIndexOf("<" + SEGMENT_FOOTER_TAG + ">");
+		int footer_end = tail.indexOf("</" + SEGMENT_FOOTER_TAG + ">", Math.max(footer_start, 0));
+		if ((footer_start < 0) || (footer_end < 0)) {
+			return null;
+		}
+		String footer_xml = tail.substring(footer_start, footer_end + SEGMENT_FOOTER_TAG.length() + 3);
+		HashMap<String, String> footer = new HashMap<>();
+		try {
+			XMLStreamReader footer_reader = XML_INPUT_FACTORY.createXMLStreamReader(
+				new StringReader(footer_xml)
+			);
+			while (footer_reader.hasNext()) {
+				if ((footer_reader.next() == XMLStreamConstants.START_ELEMENT) &&
+				    !(footer_reader.getLocalName().equals(SEGMENT_FOOTER_TAG))) {
+					String name = footer_reader.getLocalName();
+					footer.put(name, footer_reader.getElementText().strip());
+				}
+			}
+			footer_reader.close();
+		} catch (XMLStreamException err) {
+			throw new IOException("Could not parse the segment footer of " + segment_path, err);
+		}
+		return footer;
+	}
+
+
+	/**
+	 * commitIfDue - the task run by the commit timer, which runs a group commit if records have been waiting
+	 * in the buffer for at least the policy's group_commit_millis
+	 * @return - returns nothing (void)
+	 */
+	private synchronized void commitIfDue() {
+		if (!this.xml_ostream_accessed || (this.records_since_commit == 0)) {
+			return;
+		}
+		long waited_millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.last_commit_nanos);
+		if (waited_millis < this.durability_policy.getGroupCommitMillis()) {
+			return;
+		}
+		try {
+			this.commit();
+		} catch (IOException | XMLStreamException err) {
+			err.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * commit - a private helper method that runs a group commit: the xml writer and the output buffer are
+	 * flushed to the file, the file is synced to the disk if the policy says to, and the checkpoint marker is
+	 * replaced with one for the new end of the file
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the file or the checkpoint marker could not be written
+	 * @throws XMLStreamException - if the xml writer could not be flushed
+	 */
+	private void commit() throws IOException, XMLStreamException {
+		if (this.fast_writer) {
+			this.xml_stream_writer.flush();
+		} else {
+			this.xml_event_writer.flush();
+		}
+		this.xml_buffered_ostream.flush();
+		if (this.record_index_appender != null) {
+			this.record_index_appender.flush();
+		}
+		boolean fsync = this.durability_policy.getFsync();
+		if (fsync) {
+			this.xml_ostream.getFD().sync();
+		}
+		this.committed_records += this.records_since_commit;
+		this.records_since_commit = 0;
+		this.last_commit_nanos = System.nanoTime();
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty("committed_records", Long.toString(this.committed_records));
+		checkpoint.setProperty("committed_bytes", Long.toString(this.xml_ostream.getChannel().size()));
+		checkpoint.setProperty("committed_at", LocalDateTime.now().toString());
+		Path temporary_path = Paths.get(this.checkpoint_path.toString() + ".tmp");
+		try (FileOutputStream checkpoint_stream = new FileOutputStream(temporary_path.toFile())) {
+			checkpoint.store(checkpoint_stream, "last group commit of " + this.checkpoint_path.getFileName());
+			if (fsync) {
+				checkpoint_stream.getFD().sync();
+			}
+		}
+		Files.move(temporary_path, this.checkpoint_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	/**
+	 * closeProductXmlOutputStream: the public helper method that adds the closing root element, and
+	 * closes the xml document (code taken from the following link:
+	 * https://www.geeksforgeeks.org/xml-eventwriter-in-java-stax/)
+	 * - the end of the run is marked with an end_of_run processing instruction (holding the time it was
+	 *   closed) before the closing root tag, which readers in tail mode stop at (see setTailMode())
+	 * - the parser does not write after this (recordToXML() and createXMLNode() throw an
+	 *   IllegalStateException rather than add a second document to the file), a new run needs a new parser
+	 * @return - returns nothing (void)
+	 * */
+	public synchronized void closeProductXmlOutputStream() throws XMLStreamException {
+		try {
+			this.closeOutput(true);
+		} finally {
+			this.output_closed = true;
+		}
+	}
+
+
+	/**
+	 * closeOutput - a private helper method that closes the output file at the end of a run, or when a
+	 * segment is full (the run goes on in the next segment, so no end_of_run marker is written)
+	 * @param end_of_run - true at the end of the run
+	 * @return - returns nothing (void)
+	 */
+	private synchronized void closeOutput(boolean end_of_run) throws XMLStreamException {
+		if (!this.xml_ostream_accessed) {
+			return;
+		}
+		if (this.commit_timer != null) {
+			this.commit_timer.cancel(false);
+			this.commit_timer = null;
+		}
+		if (this.isSegmented()) {
+			this.writeSegmentFooter();
+		}
+		String closed_at = LocalDateTime.now().toString();
+		if (this.fast_writer) {
+			if (end_of_run) {
+				this.xml_stream_writer.writeCharacters(MAPPING_INDENT);
+				this.xml_stream_writer.writeProcessingInstruction(END_OF_RUN_TARGET, closed_at);
+				this.xml_stream_writer.writeCharacters(ENDLINE);
+			}
+			if (this.root_tag != "") {
+				this.xml_stream_writer.writeEndElement();
+				this.xml_stream_writer.writeCharacters(ENDLINE);
+			}
+			this.xml_stream_writer.writeEndDocument();
+		} else {
+			if (end_of_run) {
+				this.add_tabs(this.xml_event_writer, 1);
+				this.xml_event_writer.add(XML_EVENT_FACTORY.createProcessingInstruction(END_OF_RUN_TARGET, closed_at));
+				this.xml_event_writer.add(this.xml_endline);
+			}
+			if (this.root_tag != "") {
+				this.xml_event_writer.add(
+					XML_EVENT_FACTORY.createEndElement("", "", this.root_tag)
+				);
+				this.xml_event_writer.add(this.xml_endline);
+			}
+			this.xml_event_writer.add(XML_EVENT_FACTORY.createEndDocument());
+		}
+		try {
+			if (this.durability_policy != null) {
+				this.commit();
+			}
+			if (this.fast_writer) {
+				this.xml_stream_writer.close();
+			} else {
+				this.xml_event_writer.close();
+			}
+			// the xml writers leave the underlying stream open, and the buffer still has to be written out
+			this.xml_buffered_ostream.close();
+			if (this.record_index_appender != null) {
+				this.record_index_appender.close();
+				this.record_index_appender = null;
+			}
+			if (this.output_manifest != null) {
+				Path xml_path = this.workingDirectory().resolve(this.current_output_xml_filename);
+				this.output_manifest.update(this.output_manifest_name, new SegmentManifest.Entry(
+					SegmentManifest.COMPLETE, Files.size(xml_path), this.output_file_records,
+					SegmentManifest.formatChecksum(this.output_checksum.getValue())
+				));
+				this.output_manifest = null;
+			}
+			if (this.output_lock != null) {
+				this.output_lock.release();
+				this.output_lock = null;
+			}
+		} catch (IOException err) {
+			throw new XMLStreamException(err);
+		}
+		this.xml_ostream_accessed = false;
+	}
+
+
+	/**
+	 * listSourceFiles - a private helper method that lists all files in a directory that match the
+	 * globbing pattern of this.glob_pattern, code was taken and slightly modified from
+	 * DirectoryStream documentation:
+	 * https://docs.oracle.com/javase%2F8%2Fdocs%2Fapi%2F%2F/java/nio/file/DirectoryStream.html
+	 * - if the stream has a segment manifest, the files are taken from it instead of the directory
+	 * @param directory - the directory of the xml files
+	 * @param include_writing - true to include the files the manifest lists as still being written
+	 * @return - a ArrayList<String> instance of all files that match this.glob_pattern
+	 * @throws IOException
+	 */
+	private ArrayList<String> listSourceFiles(Path directory, boolean include_writing) throws IOException {
+		ArrayList<String> result = new ArrayList<>();
+		String pattern_for_globbing = this.glob_pattern_without_suffix;
+		if (this.add_name_suffix) {
+			pattern_for_globbing = this.glob_pattern;
+		}
+		SegmentManifest manifest = this.segmentManifest(directory);
+		if (manifest.exists()) {
+			// the same pattern, matched against the names in the manifest (which are kept in name order)
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern_for_globbing);
+			for (Map.Entry<String, SegmentManifest.Entry> entry: manifest.read().entrySet()) {
+				boolean readable = include_writing || entry.getValue().state.equals(SegmentManifest.COMPLETE);
+				if (readable && matcher.matches(Paths.get(entry.getKey()))) {
+					result.add(directory.resolve(entry.getKey()).toString());
+				}
+			}
+			this.sortByRunDate(result);
+			return result;
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, pattern_for_globbing)) {
+		   for (Path entry: stream) {
+		       result.add(entry.toString());
+		   }
+		} catch (DirectoryIteratorException ex) {
+		   // I/O error encounted during the iteration, the cause is an IOException
+		   throw ex.getCause();
+		}
+		// directory order is arbitrary, sorting keeps the runs (and the segments of a run) in the order they
+		// were written
+		this.sortByRunDate(result);
+		return result;
+	}
+
+
+	/**
+	 * sortByRunDate - a private helper method that sorts the files of the stream in run order (see runOrder())
+	 * @param files - the paths of the files
+	 * @return - returns nothing (void)
+	 */
+	private void sortByRunDate(List<String> files) {
+		files.sort(this.runOrder());
+	}
+
+
+	/**
+	 * runOrder - a private helper method that returns the order of the files of the stream (see the static
+	 * runOrder())
+	 * @return - a Comparator<String> of file paths
+	 */
+	private Comparator<String> runOrder() {
+		return runOrder(this.xml_filename, this.date_pattern);
+	}
+
+
+	/**
+	 * runOrder - a static helper method that returns the order of the files of a stream: by the date and time
+	 * their run was started (parsed from the name, since the month is written as a name, "Nov" sorts before
+	 * "Oct"), and the files of a run (its segments) by name
+	 * - files whose name does not hold a date (such as the file of a stream without a name suffix) come first
+	 * - also used for the runs of a BinaryRecordFile, which are named the same way
+	 * @param stream_filename - the name of the stream (for example nofrills_product_info.xml)
+	 * @param date_pattern - the pattern of the date and time added to the name of each run
+	 * @return - a Comparator<String> of file paths
+	 */
+	static Comparator<String> runOrder(String stream_filename, String date_pattern) {
+		String stem = Paths.get(stream_filename.split("\\.")[0]).getFileName().toString();
+		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(date_pattern);
+		int date_length = LocalDateTime.now().format(formatter).length();
+		return Comparator.comparing(
+			(String file) -> runDate(file, stem, formatter, date_length),
+			Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder())
+		).thenComparing(Comparator.naturalOrder());
+	}
+
+
+	/**
+	 * runDate - a private helper method that parses the date and time a run was started from the name of one
+	 * of its files (the stem of the stream followed by the date)
+	 * @param file - the path of the file
+	 * @param stem - the name of the stream without its extension
+	 * @param formatter - the DateTimeFormatter of the date
+	 * @param date_length - the length of a formatted date
+	 * @return - a LocalDateTime instance, or null if the name does not hold a date
+	 */
+	private static LocalDateTime runDate(String file, String stem, DateTimeFormatter formatter, int date_length) {
+		String file_name = Paths.get(file).getFileName().toString();
+		if (!file_name.startsWith(stem) || (file_name.length() < stem.length() + date_length)) {
+			return null;
+		}
+		try {
+			return LocalDateTime.parse(file_name.substring(stem.length(), stem.length() + date_length), formatter);
+		} catch (java.time.format.DateTimeParseException err) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * openProductXmlInputStream - a private helper method that uses the STAX API (via XMLStreamReader) and
+	 * opens an input stream from the xml file specified by the name passed to the constructor
+	 * (this.xml_filename)
+	 * - this method must be run before reading in xml tags from the xml file
+	 * @return - returns nothing (void)
+	 */
+	private void openProductXmlInputStream() {
+		if (!this.stream_reader_opened) {
+			this.stream_reader_opened = true;
+			String currentPath = this.workingDirectory().toString();
+			Path pwd = Paths.get(currentPath);
+			try {
+				ArrayList<String> files_in_pwd = (this.source_files != null) ?
+					new ArrayList<String>(this.source_files) : this.listSourceFiles(pwd, this.tail_mode);
+				if (this.read_offsets != null) {
+					files_in_pwd.removeIf(file -> this.read_offsets.isDone(Paths.get(file)));
+				}
+				if (this.tail_mode) {
+					this.tail_watcher = pwd.getFileSystem().newWatchService();
+					pwd.register(this.tail_watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+					// the first file is opened by hasNext(), which waits for one if there is none yet
+					this.matched_xml_filenames = files_in_pwd;
+					return;
+				}
+				if (files_in_pwd.isEmpty()) {
+					this.file_does_not_exist = true;
+					return;
+				}
+				this.matched_xml_filenames = files_in_pwd;
+				this.current_input_xml_filename = this.matched_xml_filenames.get(0);
+				this.matched_xml_filenames.remove(0);
+				Path xml_path = pwd.resolve(this.current_input_xml_filename);
+				this.openStreamReader(new File(xml_path.toString()));
+			} catch (Throwable t) {
+				t.printStackTrace();
+			}
+		}
+	}
+
+
+	/**
+	 * openStreamReader - a private helper method that opens a (decompressed) input stream on an xml file and
+	 * an XMLStreamReader over it, closing the ones opened on the previous file
+	 * - with read offsets enabled, reading resumes after the last committed record of the file: the consumed
+	 *   characters are skipped without being parsed and the root tag is reopened in front of the rest (or, if
+	 *   the character offset is not known, the consumed records are parsed and dropped)
+	 * @param xml_file - the xml file to read
+	 * @return - returns nothing (void)
+	 */
+	private void openStreamReader(File xml_file) throws IOException, XMLStreamException {
+		if (this.xml_stream_reader != null) {
+			this.xml_stream_reader.close();
+		}
+		if (this.xml_istream != null) {
+			this.xml_istream.close();
+		}
+		this.input_records = 0;
+		this.input_char_offset = 0;
+		this.input_char_base = 0;
+		if (this.tail_mode) {
+			this.end_of_run_seen = false;
+			this.tail_input = new TailingInputStream(xml_file.toPath(), this.tail_watcher, this.tail_idle_timeout_millis);
+			this.xml_istream = decompressedInput(this.tail_input);
+		} else {
+			this.xml_istream = openDecompressedInput(xml_file);
+		}
+		long[] position = (this.read_offsets == null) ? null : this.read_offsets.getPosition(xml_file.toPath());
+		if (position == null) {
+			this.xml_stream_reader = XML_INPUT_FACTORY.createXMLStreamReader(this.xml_istream);
+			return;
+		}
+		if ((position[1] >= 0) && !(this.root_tag.equals(""))) {
+			Reader file_reader = new BufferedReader(
+				new InputStreamReader(this.xml_istream, StandardCharsets.UTF_8), RESUME_BUFFER_SIZE
+			);
+			long skipped = 0;
+			while (skipped < position[1]) {
+				long skipped_now = file_reader.skip(position[1] - skipped);
+				if (skipped_now <= 0) {
+					throw new IOException(xml_file + " is shorter than its committed read offset");
+				}
+				skipped += skipped_now;
+			}
+			this.xml_stream_reader = XML_INPUT_FACTORY.createXMLStreamReader(reopenRoot(file_reader, this.root_tag));
+			this.input_records = position[0];
+			this.input_char_offset = position[1];
+			this.input_char_base = position[1] - (this.root_tag.length() + 2);
+			return;
+		}
+		this.xml_stream_reader = XML_INPUT_FACTORY.createXMLStreamReader(this.xml_istream);
+		while ((this.input_records < position[0]) && this.advanceToMapping()) {
+			this.readMapping((name, value) -> {});
+		}
+	}
+
+
+	/**
+	 * inputFileFinished - a private helper method that notes that the current input file has been read to
+	 * the end, so the next commitReadOffsets() marks it as done (or archives it)
+	 * @return - returns nothing (void)
+	 */
+	private void inputFileFinished() {
+		if ((this.read_offsets != null) && !(this.finished_input_files.contains(this.current_input_xml_filename))) {
+			this.finished_input_files.add(this.current_input_xml_filename);
+		}
+	}
+
+
+	/**
+	 * setTailMode - a public method that makes the readers (hasNext(), next(), nextRecord() and nextBatch())
+	 * follow files that are still being written, so records can be consumed while a scrape is running
+	 * - files the segment manifest lists as being written are read as well, and at the end of the bytes
+	 *   written so far a reader waits (on a WatchService, see TailingInputStream) for more instead of ending,
+	 *   so only complete product records are returned
+	 * - at the closing root tag of a file the reader goes on to the next file of the stream (the next segment
+	 *   of the run, or a later run), waiting for it to appear; it stops once it reaches the end_of_run marker
+	 *   written by closeProductXmlOutputStream() and there is no later file
+	 * - if nothing is written for idle_timeout_millis (the writer died, or has not started yet) hasNext()
+	 *   returns false (and tailTimedOut() true), and a record that was cut off by it makes next() throw an
+	 *   XMLStreamException
+	 * - compressed files are followed as well, but their records only reach the file when the compressor is
+	 *   flushed, so a durability policy with group commits keeps the delay down
+	 * - must be called before the first record is read, and the files must have a root tag
+	 * @param tail_mode - true to follow files as they are written
+	 * @param idle_timeout_millis - how long to wait for new data before giving up (0 to wait for ever)
+	 * @return - returns nothing (void)
+	 */
+	public void setTailMode(boolean tail_mode, long idle_timeout_millis) {
+		assert (!this.stream_reader_opened);
+		assert (!tail_mode || !this.root_tag.equals(""));
+		this.tail_mode = tail_mode;
+		this.tail_idle_timeout_millis = idle_timeout_millis;
+		this.tail_timed_out = false;
+	}
+
+
+	/**
+	 * tailTimedOut - a public method that tells why hasNext() returned false in tail mode
+	 * @return - returns true if the reader stopped because nothing was written for the idle timeout (the run
+	 * may be unfinished), false if it reached the end_of_run marker of the last file (or is not in tail mode)
+	 */
+	public boolean tailTimedOut() {
+		return this.tail_timed_out;
+	}
+
+
+	/**
+	 * enableReadOffsets - a public method that makes reading resumable: the position reached in every file is
+	 * kept for a named consumer in a file next to the xml files (for example
+	 * nofrills_product_info.loader.offsets), and a parser opened later with the same consumer name starts
+	 * where the last commitReadOffsets() left off instead of at the first record of every file
+	 * - a position is only used for the file it was committed for: once a file of the same name is written
+	 *   again (or a done file is appended to), it is read from its first record (see ReadOffsets)
+	 * - records returned after the last commit are returned again by the next parser, so the consumer has to
+	 *   store them idempotently (ParallelLoader only loads a resumable parser into a table with a natural key)
+	 * - must be called before the first record is read
+	 * @param consumer_name - the name of the consumer, so separate consumers keep separate positions
+	 * @param archive_directory - files read to the end are moved into this directory (relative to the
+	 * working directory) when they are committed, or null to leave them in place and just skip them
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the existing offsets could not be read
+	 */
+	public void enableReadOffsets(String consumer_name, String archive_directory) throws IOException {
+		assert (!this.stream_reader_opened);
+		Path pwd = this.workingDirectory();
+		String[] prefix_and_extension = this.xml_filename.split("\\.");
+		this.read_offsets = new ReadOffsets(pwd.resolve(prefix_and_extension[0] + "." + consumer_name + ".offsets"));
+		this.archive_directory = archive_directory;
+		this.finished_input_files = new ArrayList<String>();
+	}
+
+
+	/**
+	 * isResumable - a public method that returns true if read offsets are enabled (see enableReadOffsets())
+	 */
+	public boolean isResumable() {
+		return this.read_offsets != null;
+	}
+
+
+	/**
+	 * commitReadOffsets - a public method that records every record returned so far as consumed, to be called
+	 * once the consumer has safely stored them (for example after each database batch is committed)
+	 * - files read to the end are marked as done, or moved to the archive directory
+	 * - a crash between two commits means the records returned since the last one are read again
+	 * @return - returns nothing (void)
+	 * @throws IOException - if the offsets could not be written or a file could not be archived
+	 */
+	public synchronized void commitReadOffsets() throws IOException {
+		if (this.read_offsets == null) {
+			return;
+		}
+		Path pwd = this.workingDirectory();
+		boolean current_file_finished = this.finished_input_files.contains(this.current_input_xml_filename);
+		ArrayList<String> archived_files = new ArrayList<>();
+		for (String finished_file: this.finished_input_files) {
+			Path finished_path = pwd.resolve(finished_file);
+			String file_name = finished_path.getFileName().toString();
+			if ((this.archive_directory == null) || this.archive_directory.equals("")) {
+				this.read_offsets.setDone(finished_path);
+				continue;
+			}
+			if (finished_file.equals(this.current_input_xml_filename)) {
+				this.closeCurrentInput();
+			}
+			Path archive_path = pwd.resolve(this.archive_directory);
+			Files.createDirectories(archive_path);
+			Files.move(finished_path, archive_path.resolve(file_name), StandardCopyOption.REPLACE_EXISTING);
+			for (String sidecar_suffix: new String[] {".ckpt", RecordIndex.INDEX_SUFFIX}) {
+				Path sidecar = Paths.get(finished_path.toString() + sidecar_suffix);
+				if (Files.exists(sidecar)) {
+					Files.move(sidecar, archive_path.resolve(sidecar.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+				}
 			}
+			this.read_offsets.remove(finished_path);
+			archived_files.add(file_name);
+		}
+		SegmentManifest manifest = this.segmentManifest(pwd);
+		if (!archived_files.isEmpty() && manifest.exists()) {
+			manifest.remove(archived_files);
 		}
+		this.finished_input_files.clear();
+		if ((this.xml_stream_reader != null) && !current_file_finished && (this.input_records > 0)) {
+			this.read_offsets.setPosition(
+				pwd.resolve(this.current_input_xml_filename), this.input_records, this.input_char_offset
+			);
+		}
+		this.read_offsets.save();
 	}
 
 
 	/**
-	 * closeProductXmlOutputStream: the public helper method that adds the closing root element, and
-	 * closes the xml document (code taken from the following link:
-	 * https://www.geeksforgeeks.org/xml-eventwriter-in-java-stax/)
-	 * @return - returns nothing (void)
-	 * */
-	public void closeProductXmlOutputStream() throws XMLStreamException {
-		if (this.xml_ostream_accessed) {
-			if (this.root_tag != "") {
-				this.xml_event_writer.add(
-					this.xml_event_factory.createEndElement("", "", this.root_tag)
-				);
-				this.xml_event_writer.add(this.xml_endline);
-			}
-			this.xml_event_writer.add(this.xml_event_factory.createEndDocument());
-			this.xml_event_writer.close();
+	 * advanceToMapping - a private helper method that moves the cursor of the stream reader forward to the next
+	 * opening tag named this.mapping_tag in the current file (staying put if it is already on one, so calling
+	 * hasNext() twice does not skip a record)
+	 * @return - returns true if a mapping tag was reached, false if the end of the file was
+	 */
+	private boolean advanceToMapping() throws XMLStreamException {
+		if (this.tail_mode) {
+			return this.advanceToMappingInTail();
 		}
+		return advanceToMapping(this.xml_stream_reader, this.mapping_tag);
 	}
 
 
 	/**
-	 * listSourceFiles - a private helper method that lists all files in a directory that match the
-	 * globbing pattern of this.glob_pattern, code was taken and slightly modified from
-	 * DirectoryStream documentation:
-	 * https://docs.oracle.com/javase%2F8%2Fdocs%2Fapi%2F%2F/java/nio/file/DirectoryStream.html
-	 * @return - a ArrayList<String> instance of all files that match this.glob_pattern
-	 * @throws IOException
+	 * advanceToMappingInTail - a private helper method that does what advanceToMapping() does for a file that
+	 * may still be growing: it stops on the closing root tag (reading past it would wait for the end of the
+	 * file, which a growing file does not have) and notes the end_of_run marker on the way
+	 * @return - returns true if a mapping tag was reached, false if the closing root tag was
 	 */
-	private ArrayList<String> listSourceFiles(Path directory) throws IOException {
-		ArrayList<String> result = new ArrayList<>();
-		String pattern_for_globbing = this.glob_pattern_without_suffix;
-		if (this.add_name_suffix) {
-			pattern_for_globbing = this.glob_pattern;
+	private boolean advanceToMappingInTail() throws XMLStreamException {
+		XMLStreamReader reader = this.xml_stream_reader;
+		if (reader.isStartElement() && reader.getLocalName().equals(this.mapping_tag)) {
+			return true;
 		}
-		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, pattern_for_globbing)) {
-		   for (Path entry: stream) {
-		       result.add(entry.toString());
-		   }
-		} catch (DirectoryIteratorException ex) {
-		   // I/O error encounted during the iteration, the cause is an IOException
-		   throw ex.getCause();
+		if (reader.isEndElement() && reader.getLocalName().equals(this.root_tag)) {
+			return false;
 		}
-		return result;
+		while (reader.hasNext()) {
+			int event_type = reader.next();
+			if ((event_type == XMLStreamConstants.START_ELEMENT) && reader.getLocalName().equals(this.mapping_tag)) {
+				return true;
+			}
+			if ((event_type == XMLStreamConstants.PROCESSING_INSTRUCTION) && reader.getPITarget().equals(END_OF_RUN_TARGET)) {
+				this.end_of_run_seen = true;
+			}
+			if ((event_type == XMLStreamConstants.END_ELEMENT) && reader.getLocalName().equals(this.root_tag)) {
+				return false;
+			}
+		}
+		return false;
 	}
 
 
 	/**
-	 * openProductXmlInputStream - a private helper method that uses the STAX API (via XMLEventReader) and
-	 * opens an input stream from the xml file specified by the name passed to the constructor
-	 * (this.xml_filename)
-	 * - this method must be run before reading in xml tags from the xml file
-	 * @return - returns nothing (void)
+	 * followNextFile - a private helper method that waits in tail mode for the file after the current one to
+	 * appear, once the current one has been read to its closing root tag
+	 * @return - true once there are new files to read (they are added to this.matched_xml_filenames), false
+	 * if the current file ended the run and no later file exists, or nothing was written for the idle timeout
+	 * @throws XMLStreamException - if the directory could not be listed
 	 */
-	private void openProductXmlInputStream() {
-		boolean file_already_exists;
-		if (!this.event_reader_opened) {
-			String currentPath = System.getProperty("user.dir");
-			Path pwd = Paths.get(currentPath);
-			try {
-				ArrayList<String> files_in_pwd = this.listSourceFiles(pwd);
-				if (files_in_pwd.isEmpty()) {
-					this.file_does_not_exist = true;
-					return;
+	private boolean followNextFile() throws XMLStreamException {
+		if (this.tail_watcher == null) {
+			return false;
+		}
+		Path pwd = this.workingDirectory();
+		long idle_since = System.nanoTime();
+		Comparator<String> run_order = this.runOrder();
+		try {
+			while (true) {
+				ArrayList<String> new_files = this.listSourceFiles(pwd, true);
+				new_files.removeIf(file ->
+					((this.current_input_xml_filename != null) && (run_order.compare(file, this.current_input_xml_filename) <= 0)) ||
+					((this.read_offsets != null) && this.read_offsets.isDone(Paths.get(file)))
+				);
+				if (!new_files.isEmpty()) {
+					this.matched_xml_filenames.addAll(new_files);
+					return true;
 				}
-				this.matched_xml_filenames = files_in_pwd;
-				this.current_input_xml_filename = this.matched_xml_filenames.get(0);
-				this.matched_xml_filenames.remove(0);
-				Path xml_path = pwd.resolve(this.current_input_xml_filename);
-				XMLInputFactory xml_input_factory = XMLInputFactory.newInstance();
-				File xml_file = new File(xml_path.toString());
-				file_already_exists = xml_file.exists();
-				this.xml_istream = new FileInputStream(xml_file);
-				this.xml_event_reader = xml_input_factory.createXMLEventReader(this.xml_istream);
-				this.xml_event_factory = XMLEventFactory.newInstance();
-			} catch (Throwable t) {
-				t.printStackTrace();
+				if (this.end_of_run_seen) {
+					return false;
+				}
+				long idle_millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idle_since);
+				if ((this.tail_idle_timeout_millis > 0) && (idle_millis >= this.tail_idle_timeout_millis)) {
+					this.tail_timed_out = true;
+					return false;
+				}
+				long wait_millis = TailingInputStream.RECHECK_MILLIS;
+				if (this.tail_idle_timeout_millis > 0) {
+					wait_millis = Math.min(wait_millis, this.tail_idle_timeout_millis - idle_millis);
+				}
+				TailingInputStream.awaitChange(this.tail_watcher, wait_millis);
+			}
+		} catch (IOException err) {
+			throw new XMLStreamException(err);
+		}
+	}
+
+
+	/**
+	 * advanceToMapping - the same as advanceToMapping(), for any stream reader
+	 * @param reader - the XMLStreamReader to move
+	 * @param mapping_tag - the name of the mapping tag
+	 * @return - returns true if a mapping tag was reached, false if the end of the input was
+	 */
+	static boolean advanceToMapping(XMLStreamReader reader, String mapping_tag) throws XMLStreamException {
+		if (reader.isStartElement() && reader.getLocalName().equals(mapping_tag)) {
+			return true;
+		}
+		while (reader.hasNext()) {
+			if ((reader.next() == XMLStreamConstants.START_ELEMENT) && reader.getLocalName().equals(mapping_tag)) {
+				return true;
 			}
-			this.event_reader_opened = true;
 		}
+		return false;
+	}
+
+
+	/**
+	 * reopenRoot - a package-private static helper method that puts the opening root tag back in front of the
+	 * rest of a file that is read from the middle, so the records after that point parse as a document (the
+	 * closing root tag at the end of the file closes it)
+	 * @param rest - a Reader positioned between two records
+	 * @param root_tag - the root tag of the file (if it is empty, rest is returned as is)
+	 * @return - a Reader instance
+	 * @throws IOException - if the root tag could not be put back
+	 */
+	static Reader reopenRoot(Reader rest, String root_tag) throws IOException {
+		if (root_tag.equals("")) {
+			return rest;
+		}
+		String root_start = "<" + root_tag + ">";
+		PushbackReader resumed_reader = new PushbackReader(rest, root_start.length());
+		resumed_reader.unread(root_start.toCharArray());
+		return resumed_reader;
 	}
 
 
@@ -237,7 +1609,7 @@ public class XMLParser {
 	 * */
 	private void add_tabs(XMLEventWriter xml_event_writer, int tabs) throws XMLStreamException {
 		assert(tabs >= 0);
-		XMLEvent tab_element = this.xml_event_factory.createDTD("\t");
+		XMLEvent tab_element = XML_EVENT_FACTORY.createDTD("\t");
 		for (int i = 0; i < tabs; ++i) {
 			xml_event_writer.add(tab_element);
 		}
@@ -252,17 +1624,21 @@ public class XMLParser {
 	 * @param node_value - a String representing the node value
 	 * @return - returns nothing (void)
 	 */
-	public void createXMLNode(String node_name, String node_value)
+	public synchronized void createXMLNode(String node_name, String node_value)
 		throws XMLStreamException {
 		assert ((node_name.trim().length()) > 0);
 		this.openProductXmlOutputStream();
-		XMLEvent tab_element = this.xml_event_factory.createDTD("\t");
-		StartElement start_tag = this.xml_event_factory.createStartElement("", "", node_name);
+		if (this.fast_writer) {
+			this.writeNode(node_name, node_value, MAPPING_INDENT);
+			return;
+		}
+		XMLEvent tab_element = XML_EVENT_FACTORY.createDTD("\t");
+		StartElement start_tag = XML_EVENT_FACTORY.createStartElement("", "", node_name);
 		this.add_tabs(this.xml_event_writer, 1);
 		this.xml_event_writer.add(start_tag);
-		Characters content = this.xml_event_factory.createCharacters(node_value);
+		Characters content = XML_EVENT_FACTORY.createCharacters(node_value);
 		this.xml_event_writer.add(content);
-		EndElement end_tag = this.xml_event_factory.createEndElement("", "", node_name);
+		EndElement end_tag = XML_EVENT_FACTORY.createEndElement("", "", node_name);
 		this.xml_event_writer.add(end_tag);
 		this.xml_event_writer.add(this.xml_endline);
 	}
@@ -277,22 +1653,73 @@ public class XMLParser {
 	 * @param tabs - an integer represnting the number of tabs to indent the tag (must be larger than 0)
 	 * @return - returns nothing (void)
 	 */
-	public void createXMLNode(String node_name, String node_value, int tabs)
+	public synchronized void createXMLNode(String node_name, String node_value, int tabs)
 		throws XMLStreamException {
 		assert ((node_name.trim().length()) > 0);
 		assert (tabs >= 0);
 		this.openProductXmlOutputStream();
-		StartElement start_tag = this.xml_event_factory.createStartElement("", "", node_name);
+		if (this.fast_writer) {
+			this.writeNode(node_name, node_value, "\t".repeat(tabs));
+			return;
+		}
+		StartElement start_tag = XML_EVENT_FACTORY.createStartElement("", "", node_name);
 		this.add_tabs(xml_event_writer, tabs);
 		this.xml_event_writer.add(start_tag);
-		Characters content = this.xml_event_factory.createCharacters(node_value);
+		Characters content = XML_EVENT_FACTORY.createCharacters(node_value);
 		this.xml_event_writer.add(content);
-		EndElement end_tag = this.xml_event_factory.createEndElement("", "", node_name);
+		EndElement end_tag = XML_EVENT_FACTORY.createEndElement("", "", node_name);
 		this.xml_event_writer.add(end_tag);
 		this.xml_event_writer.add(this.xml_endline);
 	}
 
 
+	/**
+	 * writeNode - a private helper method that writes one indented xml node on its own line through the
+	 * XMLStreamWriter fast path (the output stream must already be open)
+	 * @param node_name - a String representing the node name
+	 * @param node_value - a String representing the node value
+	 * @param indent - the tabs to write in front of the node
+	 * @return - returns nothing (void)
+	 */
+	private void writeNode(String node_name, String node_value, String indent) throws XMLStreamException {
+		writeNode(this.xml_stream_writer, node_name, node_value, indent);
+	}
+
+
+	private static void writeNode(XMLStreamWriter writer, String node_name, String node_value, String indent)
+		throws XMLStreamException {
+		writer.writeCharacters(indent);
+		writer.writeStartElement(node_name);
+		writer.writeCharacters(node_value);
+		writer.writeEndElement();
+		writer.writeCharacters(ENDLINE);
+	}
+
+
+	/**
+	 * writeRecord - a static helper method that writes a ProductRecord through any XMLStreamWriter exactly as
+	 * the fast path of recordToXML() does
+	 * @param writer - the XMLStreamWriter to write to
+	 * @param mapping_tag - the name of the mapping tag
+	 * @param record - the ProductRecord instance
+	 * @return - returns nothing (void)
+	 */
+	static void writeRecord(XMLStreamWriter writer, String mapping_tag, ProductRecord record) throws XMLStreamException {
+		writer.writeCharacters(MAPPING_INDENT);
+		writer.writeStartElement(mapping_tag);
+		writer.writeCharacters(ENDLINE);
+		for (ProductRecord.Field field: RECORD_FIELDS) {
+			String value = record.get(field);
+			if (value != null) {
+				writeNode(writer, field.getKey(), value, FIELD_INDENT);
+			}
+		}
+		writer.writeCharacters(MAPPING_INDENT);
+		writer.writeEndElement();
+		writer.writeCharacters(ENDLINE);
+	}
+
+
 	/**
 	 * hashmapToXML: a public helper method to translate a HashMap to a set of XML tags representing
 	 * the mapping (code taken from the following link:
@@ -310,11 +1737,25 @@ public class XMLParser {
 	 * @param xml_event_writer - an XMLEventWriter instance
 	 * @return - returns nothing (void)
 	 * */
-	public void hashmapToXML(HashMap<String, String> mapping) throws XMLStreamException {
+	public synchronized void hashmapToXML(HashMap<String, String> mapping) throws XMLStreamException {
 		this.openProductXmlOutputStream();
+		this.indexRecord(mapping.get("township_location"), mapping.get("category_path"));
+		if (this.fast_writer) {
+			this.xml_stream_writer.writeCharacters(MAPPING_INDENT);
+			this.xml_stream_writer.writeStartElement(this.mapping_tag);
+			this.xml_stream_writer.writeCharacters(ENDLINE);
+			for (Map.Entry<String, String> entry: mapping.entrySet()) {
+				this.writeNode(entry.getKey(), entry.getValue(), FIELD_INDENT);
+			}
+			this.xml_stream_writer.writeCharacters(MAPPING_INDENT);
+			this.xml_stream_writer.writeEndElement();
+			this.xml_stream_writer.writeCharacters(ENDLINE);
+			this.recordWritten(mapping.get("store_chain_name"), mapping.get("township_location"));
+			return;
+		}
 		Set<String> keys = mapping.keySet();
-		StartElement start_tag = this.xml_event_factory.createStartElement("", "", this.mapping_tag);
-		EndElement end_tag = this.xml_event_factory.createEndElement("", "", this.mapping_tag);
+		StartElement start_tag = XML_EVENT_FACTORY.createStartElement("", "", this.mapping_tag);
+		EndElement end_tag = XML_EVENT_FACTORY.createEndElement("", "", this.mapping_tag);
 		this.add_tabs(this.xml_event_writer, 1);
 		this.xml_event_writer.add(start_tag);
 		this.xml_event_writer.add(this.xml_endline);
@@ -324,6 +1765,36 @@ public class XMLParser {
 		this.add_tabs(this.xml_event_writer, 1);
 		this.xml_event_writer.add(end_tag);
 		this.xml_event_writer.add(this.xml_endline);
+		this.recordWritten(mapping.get("store_chain_name"), mapping.get("township_location"));
+	}
+
+
+	/**
+	 * recordToXML - a public method that writes a ProductRecord the same way hashmapToXML writes a HashMap,
+	 * with one tag per field that is set (named by ProductRecord.Field.getKey(), in schema order)
+	 * @param record - the ProductRecord instance
+	 * @return - returns nothing (void)
+	 */
+	public synchronized void recordToXML(ProductRecord record) throws XMLStreamException {
+		this.openProductXmlOutputStream();
+		this.indexRecord(record.getTownshipLocation(), record.getCategoryPath());
+		if (this.fast_writer) {
+			writeRecord(this.xml_stream_writer, this.mapping_tag, record);
+		} else {
+			this.add_tabs(this.xml_event_writer, 1);
+			this.xml_event_writer.add(XML_EVENT_FACTORY.createStartElement("", "", this.mapping_tag));
+			this.xml_event_writer.add(this.xml_endline);
+			for (ProductRecord.Field field: RECORD_FIELDS) {
+				String value = record.get(field);
+				if (value != null) {
+					this.createXMLNode(field.getKey(), value, 2);
+				}
+			}
+			this.add_tabs(this.xml_event_writer, 1);
+			this.xml_event_writer.add(XML_EVENT_FACTORY.createEndElement("", "", this.mapping_tag));
+			this.xml_event_writer.add(this.xml_endline);
+		}
+		this.recordWritten(record.getStoreChainName(), record.getTownshipLocation());
 	}
 
 
@@ -335,47 +1806,58 @@ public class XMLParser {
 	 * returns false otherwise
 	 */
 	public boolean hasNext() throws XMLStreamException {
-		String name;
-		if (!this.event_reader_opened) {
+		if (!this.stream_reader_opened) {
 			this.openProductXmlInputStream();
 			if (this.file_does_not_exist) {
 				return false;
 			}
 		}
-		while (this.xml_event_reader.hasNext()) {
-			XMLEvent next_event = this.xml_event_reader.nextEvent();
-			if (next_event.isStartElement()) {
-				StartElement start_element = next_event.asStartElement();
-				name = start_element.getName().getLocalPart();
-				if (name.equals(this.mapping_tag)) {
+		try {
+			// in tail mode, once the files read so far are done, wait for the next one and go on with it
+			do {
+				if (this.nextInFiles()) {
 					return true;
 				}
+			} while (this.tail_mode && this.followNextFile());
+		} catch (XMLStreamException err) {
+			if ((this.tail_input == null) || !this.tail_input.timedOut()) {
+				throw err;
+			}
+			this.tail_timed_out = true;
+		}
+		if (this.tail_mode) {
+			// the tail has ended, which releases its watch service
+			this.closeProductXmlInputStream();
+		}
+		return false;
+	}
+
+
+	/**
+	 * nextInFiles - a private helper method that moves to the next mapping tag in the current file, or in the
+	 * next of the matched files that has one
+	 * @return - returns true if a mapping tag was reached, false once the matched files are all read
+	 */
+	private boolean nextInFiles() throws XMLStreamException {
+		if (this.xml_stream_reader != null) {
+			if (this.advanceToMapping()) {
+				return true;
 			}
+			this.inputFileFinished();
 		}
-		String currentPath = System.getProperty("user.dir");
+		String currentPath = this.workingDirectory().toString();
 		Path pwd = Paths.get(currentPath);
 		while (!(this.matched_xml_filenames.isEmpty())) {
 			try {
 				this.current_input_xml_filename = this.matched_xml_filenames.get(0);
 				this.matched_xml_filenames.remove(0);
 				Path xml_path = pwd.resolve(this.current_input_xml_filename);
-				XMLInputFactory xml_input_factory = XMLInputFactory.newInstance();
-				File xml_file = new File(xml_path.toString());
-				//file_already_exists = !(xml_file.createNewFile());
-				this.xml_istream = new FileInputStream(xml_file);
-				this.xml_event_reader = xml_input_factory.createXMLEventReader(this.xml_istream);
-				this.xml_event_factory = XMLEventFactory.newInstance();
-				while (this.xml_event_reader.hasNext()) {
-					XMLEvent next_event = this.xml_event_reader.nextEvent();
-					if (next_event.isStartElement()) {
-						StartElement start_element = next_event.asStartElement();
-						name = start_element.getName().getLocalPart();
-						if (name.equals(this.mapping_tag)) {
-							return true;
-						}
-					}
+				this.openStreamReader(new File(xml_path.toString()));
+				if (this.advanceToMapping()) {
+					return true;
 				}
-			} catch (FileNotFoundException err) {
+				this.inputFileFinished();
+			} catch (IOException err) {
 				err.printStackTrace();
 				return false;
 			}
@@ -384,6 +1866,7 @@ public class XMLParser {
 	}
 
 
+
 	/**
 	 * next - a public method that parses the contents of the next xml tag with the name being this.mapping_tag
 	 * and returns the contents in a HashMap
@@ -398,49 +1881,304 @@ public class XMLParser {
 	 * @return - returns a HashMap with the information stored inside the XML Tag
 	 */
 	public HashMap<String, String> next() throws XMLStreamException {
-		boolean whitespace_data;
-		String name;
-		Characters value;
 		HashMap<String, String> product_details = new HashMap<>();
-		if (!this.event_reader_opened) {
+		this.readMapping(product_details::put);
+		return product_details;
+	}
+
+
+	/**
+	 * nextRecord - a public method that parses the contents of the next xml tag with the name being
+	 * this.mapping_tag into a ProductRecord, the same way next() parses it into a HashMap (tags that are not
+	 * part of the ProductRecord schema are skipped)
+	 * @return - returns a ProductRecord instance with the information stored inside the XML Tag
+	 */
+	public ProductRecord nextRecord() throws XMLStreamException {
+		ProductRecord.Builder record = new ProductRecord.Builder();
+		this.readMapping(record::set);
+		return record.build();
+	}
+
+
+	/**
+	 * nextBatch - a public method that parses up to max records, moving on to the next matched file as
+	 * needed (one builder is reused for every record of the batch)
+	 * @param max - the largest number of records to return (must be larger than 0)
+	 * @return - an ArrayList<ProductRecord>, with fewer than max records only once the files run out
+	 */
+	public ArrayList<ProductRecord> nextBatch(int max) throws XMLStreamException {
+		return this.nextBatch(max, false);
+	}
+
+
+	/**
+	 * nextSchemaBatch - the same as nextBatch(), but a tag that is not part of the ProductRecord schema is an
+	 * error instead of being skipped (for readers that replace the files they read, see ArchiveCompactor)
+	 * @param max - the largest number of records to return (must be larger than 0)
+	 * @return - an ArrayList<ProductRecord>, with fewer than max records only once the files run out
+	 * @throws XMLStreamException - if a record could not be parsed or has a tag outside the schema
+	 */
+	ArrayList<ProductRecord> nextSchemaBatch(int max) throws XMLStreamException {
+		return this.nextBatch(max, true);
+	}
+
+
+	private ArrayList<ProductRecord> nextBatch(int max, boolean schema_only) throws XMLStreamException {
+		assert (max > 0);
+		ArrayList<ProductRecord> batch = new ArrayList<>(Math.min(max, 4096));
+		ProductRecord.Builder record = new ProductRecord.Builder();
+		String[] unknown_tag = {null};
+		BiConsumer<String, String> field_consumer = schema_only ? (key, value) -> {
+			if (!record.set(key, value) && (unknown_tag[0] == null)) {
+				unknown_tag[0] = key;
+			}
+		} : record::set;
+		while ((batch.size() < max) && this.hasNext()) {
+			this.readMapping(field_consumer);
+			if (unknown_tag[0] != null) {
+				throw new XMLStreamException(
+					"<" + unknown_tag[0] + "> in " + this.current_input_xml_filename + " is not part of the ProductRecord schema"
+				);
+			}
+			batch.add(record.build());
+			record.clear();
+		}
+		return batch;
+	}
+
+
+	/**
+	 * readRecords - a public method that reads records from the middle of an output file through its record
+	 * index (see setRecordIndex()), seeking straight to the first one instead of parsing from the start
+	 * @param xml_file - the name of the xml file (relative to the working directory)
+	 * @param first_record - the number of the first record to read, counting from 0
+	 * @param max - the largest number of records to read
+	 * @return - an ArrayList<ProductRecord>, empty if first_record is past the last indexed record
+	 * @throws IOException - if the file or its index could not be read
+	 * @throws XMLStreamException - if the records could not be parsed
+	 */
+	public ArrayList<ProductRecord> readRecords(String xml_file, int first_record, int max)
+		throws IOException, XMLStreamException {
+		ArrayList<ProductRecord> records = new ArrayList<>();
+		Path xml_path = this.workingDirectory().resolve(xml_file);
+		try (IndexedRecordReader reader = new IndexedRecordReader(xml_path, this.root_tag, this.mapping_tag)) {
+			int end_record = (int) Math.min((long) first_record + max, reader.getIndex().size());
+			for (int n = first_record; n < end_record; ++n) {
+				records.add(reader.read(n));
+			}
+		}
+		return records;
+	}
+
+
+	/**
+	 * townshipRecords - a public method that reads only the records of one township from an output file,
+	 * finding them through its record index (see setRecordIndex()) and seeking to each one
+	 * - close the stream (try-with-resources) to close the file
+	 * @param xml_file - the name of the xml file (relative to the working directory)
+	 * @param township - the township_location of the records
+	 * @return - a Stream<ProductRecord> of the township's records, in file order
+	 * @throws IOException - if the file or its index could not be opened
+	 */
+	public Stream<ProductRecord> townshipRecords(String xml_file, String township) throws IOException {
+		Path xml_path = this.workingDirectory().resolve(xml_file);
+		IndexedRecordReader reader = new IndexedRecordReader(xml_path, this.root_tag, this.mapping_tag);
+		return Arrays.stream(reader.getIndex().recordsInTownship(township)).mapToObj(n -> {
+			try {
+				return reader.read(n);
+			} catch (IOException | XMLStreamException err) {
+				throw new IllegalStateException("Could not read record " + n + " of " + xml_path, err);
+			}
+		}).onClose(reader::close);
+	}
+
+
+	/**
+	 * stream - a public method that returns the product records of every file matched by the glob (every dated
+	 * file, and every segment of a segmented run) as a Stream, read from the start of the first file
+	 * independently of hasNext()/next()
+	 * - sequentially (parallel = false) the records come in the order hasNext()/next() returns them
+	 * - in parallel, the stream is split between threads by file, so files (and segments) are parsed side by
+	 *   side while the records of each file stay in order
+	 * @param parallel - true for a parallel stream
+	 * @return - a Stream<ProductRecord> instance
+	 */
+	public Stream<ProductRecord> stream(boolean parallel) {
+		XMLRecordSpliterator records = new XMLRecordSpliterator(this, this.sourceFilesForStream());
+		return StreamSupport.stream(records, parallel).onClose(records::close);
+	}
+
+
+	/**
+	 * stream - a public method that returns the product records of every file matched by the glob as a
+	 * sequential Stream for a single consumer, with up to threads files parsed ahead of it on background
+	 * threads
+	 * - at most prefetch_batches batches of parsed records wait for the consumer at a time, so a slow consumer
+	 *   holds the readers back instead of the records piling up in memory
+	 * - with one thread, the records come in the order hasNext()/next() returns them; with more, the records of
+	 *   each file stay in order but the files are interleaved
+	 * - close the stream (try-with-resources) when stopping early, so the reader threads are stopped
+	 * @param threads - the number of files parsed at the same time (must be larger than 0)
+	 * @param prefetch_batches - the number of parsed batches buffered ahead of the consumer (must be larger than 0)
+	 * @return - a Stream<ProductRecord> instance
+	 */
+	public Stream<ProductRecord> stream(int threads, int prefetch_batches) {
+		assert ((threads > 0) && (prefetch_batches > 0));
+		PrefetchingRecordIterator records = new PrefetchingRecordIterator(
+			this, this.sourceFilesForStream(), threads, prefetch_batches
+		);
+		return StreamSupport.stream(
+			Spliterators.spliteratorUnknownSize(records, Spliterator.NONNULL), false
+		).onClose(records::close);
+	}
+
+
+	/**
+	 * readerForFiles - a package-private method that returns a new parser, with the same tags as this one, that
+	 * reads exactly the given files (in order) instead of the files matching the glob
+	 * @param files - the paths of the files to read
+	 * @return - an XMLParser instance
+	 */
+	XMLParser readerForFiles(List<String> files) {
+		XMLParser reader = new XMLParser(this.xml_filename, this.root_tag, this.mapping_tag, this.add_name_suffix);
+		reader.source_files = files;
+		reader.working_directory = this.working_directory;
+		return reader;
+	}
+
+
+	/**
+	 * sourceFilesForStream - a package-private helper method that lists the files a stream reads (this parser's own
+	 * file list if it was made with readerForFiles(), the files matching the glob otherwise)
+	 * @return - an ArrayList<String> with the path of every file, in reading order
+	 */
+	ArrayList<String> sourceFilesForStream() {
+		if (this.source_files != null) {
+			return new ArrayList<String>(this.source_files);
+		}
+		try {
+			return this.listSourceFiles(this.workingDirectory(), false);
+		} catch (IOException err) {
+			err.printStackTrace();
+			return new ArrayList<String>();
+		}
+	}
+
+
+	/**
+	 * closeProductXmlInputStream - a public method that closes the file the parser is reading, if any (the
+	 * remaining files are not read)
+	 * @return - returns nothing (void)
+	 */
+	public void closeProductXmlInputStream() {
+		this.closeCurrentInput();
+		this.matched_xml_filenames.clear();
+		if (this.tail_watcher != null) {
+			try {
+				this.tail_watcher.close();
+			} catch (IOException err) {
+				err.printStackTrace();
+			}
+			this.tail_watcher = null;
+		}
+	}
+
+
+	private void closeCurrentInput() {
+		try {
+			if (this.xml_stream_reader != null) {
+				this.xml_stream_reader.close();
+			}
+			if (this.xml_istream != null) {
+				this.xml_istream.close();
+			}
+		} catch (IOException | XMLStreamException err) {
+			err.printStackTrace();
+		}
+		this.xml_stream_reader = null;
+		this.xml_istream = null;
+	}
+
+
+
+	/**
+	 * readMapping - a private helper method that parses the contents of the next xml tag with the name being
+	 * this.mapping_tag, passing the name and (stripped) text of every tag inside it to field_consumer
+	 * - the stream reader is a cursor over the file, so no event object is created for the tags and text it
+	 *   passes over
+	 * @param field_consumer - called once per tag inside the mapping tag
+	 * @return - returns nothing (void)
+	 */
+	private void readMapping(BiConsumer<String, String> field_consumer) throws XMLStreamException {
+		if (!this.stream_reader_opened) {
 			this.openProductXmlInputStream();
 		}
-		do {
-			XMLEvent next_event = this.xml_event_reader.nextEvent();
-			if (next_event.isStartElement()) {
-				StartElement start_element = next_event.asStartElement();
-				name = start_element.getName().getLocalPart();
-				if (name.equals(this.mapping_tag)) {
-					continue;
-				} else if (name.equals(this.root_tag)) {
+		if (readMapping(this.xml_stream_reader, this.root_tag, this.mapping_tag, field_consumer)) {
+			this.input_records += 1;
+			if (this.read_offsets != null) {
+				this.trackInputOffset();
+			}
+		}
+	}
+
+
+	/**
+	 * readMapping - the same as readMapping(), for any stream reader
+	 * @param reader - the XMLStreamReader to read from
+	 * @param root_tag - the name of the root tag
+	 * @param mapping_tag - the name of the mapping tag
+	 * @param field_consumer - called once per tag inside the mapping tag
+	 * @return - returns true once the closing mapping tag was read, false if the input ended before it
+	 */
+	static boolean readMapping(
+		XMLStreamReader reader, String root_tag, String mapping_tag, BiConsumer<String, String> field_consumer
+	) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event_type = reader.next();
+			if (event_type == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if (name.equals(mapping_tag) || name.equals(root_tag)) {
 					continue;
-				} else {
-					String content = this.xml_event_reader.getElementText().strip();
-					product_details.put(name, content);
-				}
-			} else if (next_event.isEndElement()) {
-				EndElement end_element = next_event.asEndElement();
-				name = end_element.getName().getLocalPart();
-				if (name.equals(this.mapping_tag)) {
-					return product_details;
 				}
+				field_consumer.accept(name, reader.getElementText().strip());
+			} else if ((event_type == XMLStreamConstants.END_ELEMENT) && reader.getLocalName().equals(mapping_tag)) {
+				return true;
 			}
-		} while (this.xml_event_reader.hasNext());
-		return product_details;
+		}
+		return false;
+	}
+
+
+	/**
+	 * trackInputOffset - a private helper method that records the character offset in the current file just
+	 * past the record that was read, for commitReadOffsets()
+	 * - the JDK reader reports the offset one character past the closing tag, so the offset of the character
+	 *   before it is kept (either the first character after the tag, or its '>', which the root tag around the
+	 *   resumed records reads as text); it is -1 from then on if the reader reports no offsets or they overflow
+	 * @return - returns nothing (void)
+	 */
+	private void trackInputOffset() {
+		int reader_offset = this.xml_stream_reader.getLocation().getCharacterOffset();
+		long char_offset = this.input_char_base + reader_offset - 1;
+		if ((reader_offset < 0) || (this.input_char_offset < 0) || (char_offset < this.input_char_offset)) {
+			this.input_char_offset = -1;
+		} else {
+			this.input_char_offset = char_offset;
+		}
 	}
 
 
 	/**
-	 * clear - a public method that deletes all XML files that match the globbing pattern, allowing for us to clear old
-	 * parsing results if we want to
+	 * clear - a public method that deletes all XML files that match the globbing pattern (or are listed in the
+	 * segment manifest), allowing for us to clear old parsing results if we want to
 	 * @return - returns nothing (void)
 	 */
 	public void clear() {
-		String currentPath = System.getProperty("user.dir");
+		String currentPath = this.workingDirectory().toString();
 		Path pwd = Paths.get(currentPath);
 		ArrayList<String> files_in_pwd = new ArrayList<>();
 		try {
-			files_in_pwd = this.listSourceFiles(pwd);
+			files_in_pwd = this.listSourceFiles(pwd, true);
 		} catch (Throwable err) {
 			System.out.println(
 				"Could not remove current XML files that match the globbing pattern due to the following error:"
@@ -454,10 +2192,26 @@ public class XMLParser {
 			current_xml_file = new File(xml_path.toString());
 			try {
 				current_xml_file.delete();
+				// along with the checkpoint marker of the file, if it was written with a durability policy, and
+				// its record index
+				new File(xml_path.toString() + ".ckpt").delete();
+				RecordIndex.indexPath(xml_path).toFile().delete();
 			} catch (Throwable err) {
 				err.printStackTrace();
 			}
 		}
+		SegmentManifest manifest = this.segmentManifest(pwd);
+		if (manifest.exists()) {
+			ArrayList<String> file_names = new ArrayList<>();
+			for (String xml_file: files_in_pwd) {
+				file_names.add(Paths.get(xml_file).getFileName().toString());
+			}
+			try {
+				manifest.remove(file_names);
+			} catch (IOException err) {
+				err.printStackTrace();
+			}
+		}
 	}
 
 
@@ -467,7 +2221,7 @@ public class XMLParser {
 	 * @return - returns true if the file exists yet, returns false if not
 	 */
 	public boolean xmlFileExists() {
-		String currentPath = System.getProperty("user.dir");
+		String currentPath = this.workingDirectory().toString();
 		Path pwd = Paths.get(currentPath);
 		Path xml_path = pwd.resolve(this.current_output_xml_filename);
 		File xml_file = new File(xml_path.toString());
@@ -0,0 +1,118 @@
+package iterators.xml;
+import java.lang.*;
+import java.util.*;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLStreamException;
+import iterators.util.ProductRecord;
+
+
+class XMLRecordSpliterator implements Spliterator<ProductRecord> {
+	// the number of records parsed from the current file at a time
+	private static final int BATCH_SIZE = 256;
+	private XMLParser template;
+	private List<String> files;
+	// the files from next_file (inclusive) to end_file (exclusive) have not been opened yet
+	private int next_file;
+	private int end_file;
+	private XMLParser reader;
+	private ArrayList<ProductRecord> batch;
+	private int batch_index;
+
+
+	/**
+	 * XMLRecordSpliterator - reads the product records of a list of xml files in order, one file at a time,
+	 * and splits by file: trySplit() hands the first half of the files that have not been opened yet to a new
+	 * spliterator, so a parallel stream parses separate files (or segments) on separate threads
+	 * @param template - the XMLParser whose tags are used to read every file (see XMLParser.readerForFiles())
+	 * @param files - the paths of the files to read
+	 */
+	XMLRecordSpliterator(XMLParser template, List<String> files) {
+		this(template, files, 0, files.size());
+	}
+
+
+	private XMLRecordSpliterator(XMLParser template, List<String> files, int next_file, int end_file) {
+		this.template = template;
+		this.files = files;
+		this.next_file = next_file;
+		this.end_file = end_file;
+		this.reader = null;
+		this.batch = new ArrayList<>();
+		this.batch_index = 0;
+	}
+
+
+	@Override
+	public boolean tryAdvance(Consumer<? super ProductRecord> action) {
+		while (this.batch_index >= this.batch.size()) {
+			if (this.reader == null) {
+				if (this.next_file >= this.end_file) {
+					return false;
+				}
+				this.reader = this.template.readerForFiles(List.of(this.files.get(this.next_file)));
+				this.next_file += 1;
+			}
+			try {
+				this.batch = this.reader.nextBatch(BATCH_SIZE);
+			} catch (XMLStreamException err) {
+				throw new IllegalStateException("Could not read " + this.files.get(this.next_file - 1), err);
+			}
+			this.batch_index = 0;
+			if (this.batch.isEmpty()) {
+				this.reader.closeProductXmlInputStream();
+				this.reader = null;
+			}
+		}
+		action.accept(this.batch.get(this.batch_index));
+		this.batch_index += 1;
+		return true;
+	}
+
+
+	/**
+	 * trySplit - hands the first half of the remaining files to a new spliterator, keeping the second half (an
+	 * ordered spliterator must return the prefix of its records, so once a file has been opened it is not split)
+	 */
+	@Override
+	public Spliterator<ProductRecord> trySplit() {
+		int unopened_files = this.end_file - this.next_file;
+		if ((this.reader != null) || (this.batch_index < this.batch.size()) || (unopened_files < 2)) {
+			return null;
+		}
+		int middle_file = this.next_file + (unopened_files / 2);
+		XMLRecordSpliterator first_half = new XMLRecordSpliterator(this.template, this.files, this.next_file, middle_file);
+		this.next_file = middle_file;
+		return first_half;
+	}
+
+
+	/**
+	 * estimateSize - the record count is not known without parsing the files, so this returns Long.MAX_VALUE
+	 * (which lets a parallel stream keep splitting until every file has its own spliterator)
+	 */
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+
+	@Override
+	public int characteristics() {
+		return Spliterator.ORDERED | Spliterator.NONNULL;
+	}
+
+
+	/**
+	 * close - closes the file being read, if any (run when the stream is closed)
+	 * @return - returns nothing (void)
+	 */
+	void close() {
+		if (this.reader != null) {
+			this.reader.closeProductXmlInputStream();
+			this.reader = null;
+		}
+		this.next_file = this.end_file;
+	}
+
+
+}
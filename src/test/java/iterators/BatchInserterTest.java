@@ -0,0 +1,219 @@
+package iterators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import iterators.util.ProductRecord;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit tests for BatchInserter, against a stand-in JDBC driver that keeps one table in memory and enforces
+ * natural_key_idx the way MySQL does.
+ */
+public class BatchInserterTest
+{
+	private static final String URL_PREFIX = "jdbc:natural-key-table:";
+	private static final KeyedTableDriver DRIVER = new KeyedTableDriver();
+
+
+	@BeforeClass
+	public static void registerDriver() throws SQLException
+	{
+		DriverManager.registerDriver(DRIVER);
+	}
+
+
+	@AfterClass
+	public static void deregisterDriver() throws SQLException
+	{
+		DriverManager.deregisterDriver(DRIVER);
+	}
+
+
+	@Test
+	public void loadingTheSameRecordTwiceKeepsOneRow() throws Exception
+	{
+		for (boolean upsert: new boolean[] {false, true}) {
+			DRIVER.table.clear();
+			ConnectionPool connection_pool = new ConnectionPool(URL_PREFIX + upsert, "user", "pass", 2, 60000, 1000, 1);
+			// the same product twice in one batch, then the whole batch again (a load resumed after a crash)
+			for (int load = 0; load < 2; ++load) {
+				BatchInserter inserter = new BatchInserter(connection_pool, "pantry", 10, 10, upsert);
+				inserter.add(record("$3.49"));
+				inserter.add(record("$2.99"));
+				inserter.close();
+			}
+			assertEquals(1, DRIVER.table.size());
+			Object[] row = DRIVER.table.values().iterator().next();
+			// upserting keeps the last price loaded, inserting keeps the first
+			assertEquals(upsert ? "$2.99" : "$3.49", row[Arrays.asList(BatchInserter.COLUMNS).indexOf("price")]);
+		}
+	}
+
+
+	private static ProductRecord record(String price)
+	{
+		return new ProductRecord.Builder()
+			.set(ProductRecord.Field.DATE, "Oct-02-2026-10-30")
+			.set(ProductRecord.Field.PRICE, price)
+			.set(ProductRecord.Field.SIZE, "500 g")
+			.set(ProductRecord.Field.PRODUCT_TITLE, "Rice")
+			.set(ProductRecord.Field.STORE_CHAIN_NAME, "No Frills")
+			.set(ProductRecord.Field.TOWNSHIP_LOCATION, "Toronto")
+			.build();
+	}
+
+
+	/**
+	 * A driver whose connections all insert into one table, rejecting a row that repeats a natural key unless
+	 * the statement has an ON DUPLICATE KEY UPDATE clause, which then sets the columns it assigns VALUES() to.
+	 */
+	private static class KeyedTableDriver implements Driver
+	{
+		private final LinkedHashMap<List<Object>, Object[]> table = new LinkedHashMap<>();
+
+
+		@Override
+		public Connection connect(String url, Properties info)
+		{
+			if (!this.acceptsURL(url)) {
+				return null;
+			}
+			boolean[] auto_commit = {true};
+			return (Connection) Proxy.newProxyInstance(
+				Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "prepareStatement":
+							return this.prepare((String) args[0]);
+						case "setAutoCommit":
+							auto_commit[0] = (Boolean) args[0];
+							return null;
+						case "getAutoCommit":
+							return auto_commit[0];
+						case "isValid":
+							return true;
+						case "isClosed":
+							return false;
+						default:
+							return null;
+					}
+				}
+			);
+		}
+
+
+		private PreparedStatement prepare(String sql_text)
+		{
+			List<String> columns = Arrays.asList(BatchInserter.COLUMNS);
+			int update_start = sql_text.indexOf(" ON DUPLICATE KEY UPDATE ");
+			ArrayList<Integer> updated_columns = new ArrayList<>();
+			if (update_start >= 0) {
+				for (String assignment: sql_text.substring(update_start + 25).split(", ")) {
+					String[] sides = assignment.split(" = ");
+					if (sides[1].equals("VALUES(" + sides[0] + ")")) {
+						updated_columns.add(columns.indexOf(sides[0]));
+					}
+				}
+			}
+			Object[] parameters = new Object[columns.size()];
+			ArrayList<Object[]> batch = new ArrayList<>();
+			return (PreparedStatement) Proxy.newProxyInstance(
+				PreparedStatement.class.getClassLoader(), new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "setObject":
+							parameters[(Integer) args[0] - 1] = args[1];
+							return null;
+						case "setNull":
+							parameters[(Integer) args[0] - 1] = null;
+							return null;
+						case "addBatch":
+							batch.add(parameters.clone());
+							return null;
+						case "executeBatch":
+							int[] update_counts = new int[batch.size()];
+							for (int i = 0; i < batch.size(); ++i) {
+								Object[] row = batch.get(i);
+								ArrayList<Object> key = new ArrayList<>();
+								for (String key_column: BatchInserter.NATURAL_KEY_COLUMNS) {
+									key.add(row[columns.indexOf(key_column)]);
+								}
+								Object[] stored = this.table.get(key);
+								if (stored == null) {
+									this.table.put(key, row);
+								} else if (update_start < 0) {
+									batch.clear();
+									throw new BatchUpdateException("Duplicate entry for key 'natural_key_idx'", "23000", 1062, update_counts);
+								} else {
+									for (int column: updated_columns) {
+										stored[column] = row[column];
+									}
+								}
+								update_counts[i] = 1;
+							}
+							batch.clear();
+							return update_counts;
+						default:
+							return null;
+					}
+				}
+			);
+		}
+
+
+		@Override
+		public boolean acceptsURL(String url)
+		{
+			return url.startsWith(URL_PREFIX);
+		}
+
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
+		{
+			return new DriverPropertyInfo[0];
+		}
+
+
+		@Override
+		public int getMajorVersion()
+		{
+			return 1;
+		}
+
+
+		@Override
+		public int getMinorVersion()
+		{
+			return 0;
+		}
+
+
+		@Override
+		public boolean jdbcCompliant()
+		{
+			return false;
+		}
+
+
+		@Override
+		public Logger getParentLogger()
+		{
+			return Logger.getGlobal();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package iterators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+import org.junit.Test;
+
+/**
+ * Unit tests for DatabaseClient (the connection pool only connects when a connection is borrowed, so these
+ * need no database).
+ */
+public class DatabaseClientTest
+{
+	private static final String BASE_ADDRESS = "jdbc:mysql://localhost:3306/grocery";
+
+
+	@Test
+	public void theJdbcUrlLeavesOutEmptyOptions()
+	{
+		Properties tuning_config = new Properties();
+		tuning_config.setProperty("jdbc_url_options", " ");
+		assertEquals(BASE_ADDRESS, address(tuning_config));
+		tuning_config.setProperty("load_mode", "bulk");
+		tuning_config.setProperty("bulk_spool_dir", "/var/spool/grocery");
+		assertEquals(BASE_ADDRESS + "?allowLoadLocalInfileInPath=%2Fvar%2Fspool%2Fgrocery", address(tuning_config));
+		tuning_config.setProperty("jdbc_url_options", "&useSSL=false&&cachePrepStmts=true&");
+		assertEquals(
+			BASE_ADDRESS + "?useSSL=false&cachePrepStmts=true&allowLoadLocalInfileInPath=%2Fvar%2Fspool%2Fgrocery",
+			address(tuning_config)
+		);
+		tuning_config.remove("load_mode");
+		assertEquals(BASE_ADDRESS + "?useSSL=false&cachePrepStmts=true", address(tuning_config));
+	}
+
+
+	private static String address(Properties tuning_config)
+	{
+		return new DatabaseClient("mysql", "localhost", "3306", "grocery", "user", "pass", tuning_config)
+			.getDatabaseAddress();
+	}
+}
@@ -0,0 +1,61 @@
+package iterators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import iterators.util.ProductRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for EmbeddedFileBackend.
+ */
+public class EmbeddedFileBackendTest
+{
+	@Rule
+	public TemporaryFolder data_folder = new TemporaryFolder();
+
+
+	@Test
+	public void readsBackLatestPricesAndHistory() throws Exception
+	{
+		EmbeddedFileBackend backend = new EmbeddedFileBackend(
+			data_folder.getRoot().toPath(), Arrays.asList("pantry", "meat"), 2, 2
+		);
+		backend.insertBatch("pantry", Arrays.asList(
+			record("Oct-01-2026-10-30", "$3.49", "500 g"),
+			record("Oct-02-2026-10-30", "$3.29", "500 g"),
+			record("Oct-02-2026-10-30", "$5.99", "1 kg")
+		));
+		HashMap<String, String> latest = backend.latestPrice("pantry", "No Frills", "Toronto", "Rice\tWhite", "500 g");
+		assertEquals("$3.29", latest.get("price"));
+		assertEquals("329", latest.get("price_cents"));
+		assertEquals("2026-10-02", latest.get("date_collected"));
+		assertNull(backend.latestPrice("pantry", "No Frills", "Ottawa", "Rice\tWhite", "500 g"));
+		// a reload of the same day replaces the earlier row, both in the index and in the history (which is
+		// ordered by collection date, then package size)
+		backend.insertBatch("pantry", Arrays.asList(record("Oct-02-2026-11-30", "$2.99", "500 g")));
+		assertEquals("$2.99", backend.latestPrice("pantry", "No Frills", "Toronto", "Rice\tWhite", "500 g").get("price"));
+		ArrayList<String> prices = new ArrayList<>();
+		backend.scanHistory("pantry", "No Frills", "Toronto", "Rice\tWhite", row -> prices.add(row.get("price")));
+		assertEquals(Arrays.asList("$3.49", "$5.99", "$2.99"), prices);
+		backend.close();
+	}
+
+
+	private static ProductRecord record(String date, String price, String size)
+	{
+		return new ProductRecord.Builder()
+			.set(ProductRecord.Field.DATE, date)
+			.set(ProductRecord.Field.PRICE, price)
+			.set(ProductRecord.Field.SIZE, size)
+			.set(ProductRecord.Field.PRODUCT_TITLE, "Rice\tWhite")
+			.set(ProductRecord.Field.STORE_CHAIN_NAME, "No Frills")
+			.set(ProductRecord.Field.TOWNSHIP_LOCATION, "Toronto")
+			.build();
+	}
+}
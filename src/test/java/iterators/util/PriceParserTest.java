@@ -0,0 +1,77 @@
+package iterators.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import org.junit.Test;
+
+/**
+ * Unit tests for PriceParser.
+ */
+public class PriceParserTest
+{
+	@Test
+	public void parsesShelfPrices()
+	{
+		assertEquals(Long.valueOf(349), PriceParser.parseCents("$3.49"));
+		assertEquals(Long.valueOf(129900), PriceParser.parseCents("$1,299.00"));
+		assertEquals(Long.valueOf(350), PriceParser.parseCents("$3.5"));
+		assertEquals(Long.valueOf(99), PriceParser.parseCents("99¢"));
+		assertEquals(Long.valueOf(349), PriceParser.parseCents("3.49"));
+		assertEquals(Long.valueOf(250), PriceParser.parseCents("2 for $5.00"));
+		assertNull(PriceParser.parseCents("Out of stock"));
+		assertNull(PriceParser.parseCents(null));
+	}
+
+
+	@Test
+	public void normalizesPackageSizes()
+	{
+		assertQuantity("1890", "g", PriceParser.parseQuantity("1.89 kg"));
+		assertQuantity("100", "g", PriceParser.parseQuantity("100g"));
+		assertQuantity("4260", "ml", PriceParser.parseQuantity("12 x 355 mL"));
+		assertQuantity("2000", "ml", PriceParser.parseQuantity("2 L"));
+		assertQuantity("453.592", "g", PriceParser.parseQuantity("1 lb"));
+		assertQuantity("6", "ea", PriceParser.parseQuantity("6 pk"));
+		assertQuantity("1", "ea", PriceParser.parseQuantity("bunch"));
+		assertNull(PriceParser.parseQuantity("Sun-Ripened"));
+		assertNull(PriceParser.parseQuantity(null));
+	}
+
+
+	@Test
+	public void parsesComparisonPrices()
+	{
+		PriceParser.UnitPrice unit_price = PriceParser.parseUnitPrice("$0.38/100g");
+		assertEquals(38, unit_price.getCents());
+		assertQuantity("100", "g", unit_price.getQuantity());
+		unit_price = PriceParser.parseUnitPrice("$8.80/1kg");
+		assertEquals(880, unit_price.getCents());
+		assertQuantity("1000", "g", unit_price.getQuantity());
+		assertNull(PriceParser.parseUnitPrice("$3.49"));
+	}
+
+
+	@Test
+	public void worksOutComparablePrices()
+	{
+		PriceParser.Comparison comparison = PriceParser.comparisonPrice(
+			Long.valueOf(349), PriceParser.parseQuantity("500 g"), null
+		);
+		assertEquals(new BigDecimal("69.8000"), comparison.getCents());
+		assertEquals("100g", comparison.getUnit());
+		comparison = PriceParser.comparisonPrice(
+			Long.valueOf(349), PriceParser.parseQuantity("500 g"), PriceParser.parseUnitPrice("$8.80/1kg")
+		);
+		assertEquals(new BigDecimal("88.0000"), comparison.getCents());
+		assertNull(PriceParser.comparisonPrice(Long.valueOf(349), null, null));
+	}
+
+
+	private static void assertQuantity(String amount, String unit, PriceParser.Quantity quantity)
+	{
+		assertEquals(0, new BigDecimal(amount).compareTo(quantity.getAmount()));
+		assertEquals(unit, quantity.getUnit());
+	}
+}
@@ -0,0 +1,50 @@
+package iterators.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import org.junit.Test;
+
+/**
+ * Unit tests for ProductRecord.
+ */
+public class ProductRecordTest
+{
+	@Test
+	public void readsOlderKeysIntoTheSharedSchema()
+	{
+		HashMap<String, String> metro_info = new HashMap<>();
+		metro_info.put("product_title", "Whole Milk");
+		metro_info.put("product_brand_name", "Natrel");
+		metro_info.put("product_price", "$6.49");
+		metro_info.put("volume", "4 L");
+		metro_info.put("category", "Dairy & Eggs");
+		metro_info.put("scraped_by", "metro");
+		ProductRecord record = ProductRecord.fromMap(metro_info);
+		assertEquals("Natrel", record.getBrand());
+		assertEquals("$6.49", record.getPrice());
+		assertEquals("4 L", record.getSize());
+		assertEquals("Dairy & Eggs", record.getCategoryPath());
+		assertEquals(Long.valueOf(649), record.getPriceCents());
+		assertEquals(5, record.toMap().size());
+		assertEquals(record, ProductRecord.fromMap(record.toMap()));
+	}
+
+
+	@Test
+	public void copiesAreIndependent()
+	{
+		ProductRecord record = new ProductRecord.Builder()
+			.set(ProductRecord.Field.DATE, "-Oct-17-2026-10-30")
+			.set(ProductRecord.Field.CATEGORY_PATH, "Home>Pantry")
+			.build();
+		ProductRecord without_category = record.with(ProductRecord.Field.CATEGORY_PATH, null);
+		assertEquals("Home>Pantry", record.getCategoryPath());
+		assertNull(without_category.getCategoryPath());
+		assertEquals(LocalDateTime.of(2026, 10, 17, 10, 30), without_category.getCollectedAt());
+		assertTrue(new ProductRecord.Builder().build().isEmpty());
+	}
+}
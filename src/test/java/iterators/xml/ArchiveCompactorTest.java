@@ -0,0 +1,128 @@
+package iterators.xml;
+
+import static iterators.xml.ProductFixtures.records;
+import static iterators.xml.ProductFixtures.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import javax.xml.stream.XMLStreamException;
+import iterators.util.ProductRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for ArchiveCompactor.
+ */
+public class ArchiveCompactorTest
+{
+	private static final String[] TOWNSHIPS = {"Toronto", "Ottawa", "Trois-Rivi\u00e8res"};
+	@Rule
+	public TemporaryFolder data_folder = new TemporaryFolder();
+
+
+	private XMLParser products(String xml_file, boolean name_suffix)
+	{
+		return ProductFixtures.parser(data_folder.getRoot().toPath(), xml_file, name_suffix);
+	}
+
+
+	private ArchiveCompactor compactor()
+	{
+		ArchiveCompactor compactor = new ArchiveCompactor("products.xml", ProductFixtures.ROOT_TAG, ProductFixtures.MAPPING_TAG);
+		compactor.setWorkingDirectory(data_folder.getRoot().toPath());
+		return compactor;
+	}
+
+
+	private List<ProductRecord> writeRun(String run_date, int first, int last) throws Exception
+	{
+		return write(products("products" + run_date + ".xml", false), records("Rice", first, last, TOWNSHIPS));
+	}
+
+
+	@Test
+	public void compactionMergesAMonthIntoOneSortedArchiveWithoutDuplicates() throws Exception
+	{
+		TreeSet<ProductRecord> september = new TreeSet<>(ArchiveCompactor.ARCHIVE_ORDER);
+		september.addAll(writeRun("-Sep-03-2026-10-30", 0, 60));
+		// the second run overlaps the first, the overlapping records are kept once
+		september.addAll(writeRun("-Sep-04-2026-10-30", 40, 100));
+		List<ProductRecord> october = writeRun("-Oct-01-2026-10-30", 0, 10);
+		List<ProductRecord> outside_window = writeRun("-Nov-01-2026-10-30", 0, 5);
+		ArchiveCompactor compactor = compactor();
+		assertEquals(2, compactor.compact(LocalDate.of(2026, 9, 1), LocalDate.of(2026, 11, 1)).size());
+		XMLParser archive_reader = products("products-archive-2026-09.xml", false);
+		assertEquals(new ArrayList<>(september), archive_reader.nextBatch(1000));
+		for (String township: TOWNSHIPS) {
+			assertEquals(
+				september.stream().filter(record -> record.getTownshipLocation().equals(township))
+					.collect(Collectors.toList()),
+				compactor.townshipRecords(YearMonth.of(2026, 9), township)
+			);
+		}
+		// only the run outside the window is left, and compacting again merges into the existing archive
+		XMLParser stream = products("products.xml", true);
+		assertEquals(outside_window, stream.nextBatch(1000));
+		assertFalse(new File(data_folder.getRoot(), "products-Sep-03-2026-10-30.xml").exists());
+		writeRun("-Sep-05-2026-10-30", 90, 110);
+		september.addAll(writeRun("-Sep-05-2026-11-30", 90, 110));
+		Path block_index = data_folder.getRoot().toPath().resolve("products-archive-2026-09.xml.gz.blocks.idx");
+		byte[] previous_block_index = Files.readAllBytes(block_index);
+		compactor.compact(LocalDate.of(2026, 9, 1), LocalDate.of(2026, 10, 1));
+		archive_reader = products("products-archive-2026-09.xml", false);
+		assertEquals(new ArrayList<>(september), archive_reader.nextBatch(1000));
+		// a compaction that died between moving the archive and its index left the old index, which is rebuilt
+		Files.write(block_index, previous_block_index);
+		assertEquals(
+			september.stream().filter(record -> record.getTownshipLocation().equals("Ottawa")).collect(Collectors.toList()),
+			compactor.townshipRecords(YearMonth.of(2026, 9), "Ottawa")
+		);
+		assertFalse(Arrays.equals(previous_block_index, Files.readAllBytes(block_index)));
+		assertEquals(october.size(), compactor.townshipRecords(YearMonth.of(2026, 10), "Toronto").size() +
+			compactor.townshipRecords(YearMonth.of(2026, 10), "Ottawa").size() +
+			compactor.townshipRecords(YearMonth.of(2026, 10), TOWNSHIPS[2]).size());
+		assertTrue(new File(data_folder.getRoot(), "products-archive-2026-09.xml.gz.blocks.idx").exists());
+	}
+
+
+	@Test
+	public void filesWithTagsOutsideTheSchemaAreNotCompacted() throws Exception
+	{
+		writeRun("-Sep-03-2026-10-30", 0, 10);
+		// two records that differ only in a tag the archive could not hold
+		Path extended_run = data_folder.getRoot().toPath().resolve("products-Sep-04-2026-10-30.xml");
+		Files.write(extended_run, (
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<product_records>\n" +
+			"<product_record><product_title>Rice</product_title><aisle>4</aisle></product_record>\n" +
+			"<product_record><product_title>Rice</product_title><aisle>7</aisle></product_record>\n" +
+			"</product_records>\n"
+		).getBytes(StandardCharsets.UTF_8));
+		ArchiveCompactor compactor = compactor();
+		try {
+			compactor.compact(LocalDate.of(2026, 9, 1), LocalDate.of(2026, 10, 1));
+			fail("a file with a tag outside the schema was compacted");
+		} catch (XMLStreamException err) {
+			assertTrue(err.getMessage().contains("<aisle>"));
+		}
+		assertTrue(Files.exists(extended_run));
+		assertTrue(new File(data_folder.getRoot(), "products-Sep-03-2026-10-30.xml").exists());
+		assertFalse(Files.exists(compactor.archivePath(YearMonth.of(2026, 9))));
+		for (String file_name: data_folder.getRoot().list()) {
+			assertFalse(file_name, file_name.endsWith(".tmp") || file_name.startsWith("compaction-"));
+		}
+	}
+}
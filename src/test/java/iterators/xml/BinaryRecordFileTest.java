@@ -0,0 +1,94 @@
+package iterators.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.HashMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for BinaryRecordFile.
+ */
+public class BinaryRecordFileTest
+{
+	@Rule
+	public TemporaryFolder data_folder = new TemporaryFolder();
+
+
+	@Test
+	public void readsBackAppendedRecordsAndStopsAtATornTail() throws Exception
+	{
+		Path directory = data_folder.getRoot().toPath();
+		BinaryRecordFile writer = new BinaryRecordFile(directory, "records.bin", false);
+		HashMap<String, String> first = record("Toronto", "$3.49", " Rice ");
+		HashMap<String, String> second = record("Ottawa", "$3.49", "x".repeat(500));
+		writer.write(first);
+		writer.write(second);
+		writer.close();
+		// a second writer appends to the same file with a dictionary of its own
+		BinaryRecordFile appender = new BinaryRecordFile(directory, "records.bin", false);
+		appender.write(record("Toronto", "$2.99", "Rice"));
+		appender.close();
+		BinaryRecordFile reader = new BinaryRecordFile(directory, "records.bin", false);
+		assertTrue(reader.hasNext());
+		first.put("product_title", "Rice");
+		assertEquals(first, reader.next());
+		assertEquals(second, reader.next());
+		assertEquals(record("Toronto", "$2.99", "Rice"), reader.next());
+		assertFalse(reader.hasNext());
+		// cut the last record in half, as if the writer died while writing it
+		try (RandomAccessFile file = new RandomAccessFile(directory.resolve("records.bin").toFile(), "rw")) {
+			file.setLength(file.length() - 5);
+		}
+		BinaryRecordFile torn_reader = new BinaryRecordFile(directory, "records.bin", false);
+		assertEquals(first, torn_reader.next());
+		assertEquals(second, torn_reader.next());
+		assertFalse(torn_reader.hasNext());
+		assertEquals(1, torn_reader.getIncompleteFramesSkipped());
+		// appending after the crash drops the torn frame first, so the new records are read
+		BinaryRecordFile restarted = new BinaryRecordFile(directory, "records.bin", false);
+		restarted.write(record("Ottawa", "$2.49", "Rice"));
+		restarted.close();
+		BinaryRecordFile restarted_reader = new BinaryRecordFile(directory, "records.bin", false);
+		assertEquals(first, restarted_reader.next());
+		assertEquals(second, restarted_reader.next());
+		assertEquals(record("Ottawa", "$2.49", "Rice"), restarted_reader.next());
+		assertFalse(restarted_reader.hasNext());
+		assertEquals(0, restarted_reader.getIncompleteFramesSkipped());
+	}
+
+
+	@Test
+	public void runsAreReadInTheOrderTheyStarted() throws Exception
+	{
+		Path directory = data_folder.getRoot().toPath();
+		// by name, November would come before October
+		String[] run_dates = {"-Oct-31-2026-23-30", "-Nov-01-2026-00-30"};
+		for (String run_date: run_dates) {
+			BinaryRecordFile writer = new BinaryRecordFile(directory, "records" + run_date + ".bin", false);
+			writer.write(record("Toronto", "$3.49", "Rice" + run_date));
+			writer.close();
+		}
+		BinaryRecordFile reader = new BinaryRecordFile(directory, "records.bin", true);
+		for (String run_date: run_dates) {
+			assertEquals(record("Toronto", "$3.49", "Rice" + run_date), reader.next());
+		}
+		assertFalse(reader.hasNext());
+	}
+
+
+	private static HashMap<String, String> record(String township, String price, String title)
+	{
+		HashMap<String, String> product_info = new HashMap<>();
+		product_info.put("store_chain_name", "No Frills");
+		product_info.put("township_location", township);
+		product_info.put("price", price);
+		product_info.put("product_title", title);
+		return product_info;
+	}
+}
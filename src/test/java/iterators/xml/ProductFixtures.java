@@ -0,0 +1,62 @@
+package iterators.xml;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import iterators.util.ProductRecord;
+
+/**
+ * Records and product xml files shared by the XMLParser and ArchiveCompactor tests.
+ */
+final class ProductFixtures
+{
+	static final String ROOT_TAG = "product_records";
+	static final String MAPPING_TAG = "product_record";
+
+
+	private ProductFixtures()
+	{
+	}
+
+
+	/**
+	 * The records title #first up to (not including) title #last, with record i in townships[i % townships.length]
+	 * (or no township if none are given).
+	 */
+	static List<ProductRecord> records(String title, int first, int last, String... townships)
+	{
+		ArrayList<ProductRecord> records = new ArrayList<>();
+		for (int i = first; i < last; ++i) {
+			ProductRecord.Builder record = new ProductRecord.Builder().set(ProductRecord.Field.PRODUCT_TITLE, title + " #" + i);
+			if (townships.length > 0) {
+				record.set(ProductRecord.Field.TOWNSHIP_LOCATION, townships[i % townships.length]);
+			}
+			records.add(record.build());
+		}
+		return records;
+	}
+
+
+	/**
+	 * A parser of product_record tags that reads and writes its files in directory.
+	 */
+	static XMLParser parser(Path directory, String xml_file, boolean name_suffix)
+	{
+		XMLParser parser = new XMLParser(xml_file, ROOT_TAG, MAPPING_TAG, name_suffix);
+		parser.setWorkingDirectory(directory);
+		return parser;
+	}
+
+
+	/**
+	 * Writes the records with writer and closes its output, returning the records.
+	 */
+	static List<ProductRecord> write(XMLParser writer, List<ProductRecord> records) throws Exception
+	{
+		for (ProductRecord record: records) {
+			writer.recordToXML(record);
+		}
+		writer.closeProductXmlOutputStream();
+		return records;
+	}
+}
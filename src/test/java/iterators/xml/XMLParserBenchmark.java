@@ -0,0 +1,128 @@
+package iterators.xml;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+/**
+ * Records/sec of XMLParser.hashmapToXML with the XMLEventWriter path and the XMLStreamWriter fast path, and
+ * the records/sec and file size of each compression setting on the fast path, then the records/sec of reading
+ * the plain file back with XMLParser.next() against reading the same records from a BinaryRecordFile.
+ * Not a unit test (surefire only runs *Test classes), run it with
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=iterators.xml.XMLParserBenchmark
+ * (optionally with -Dexec.args=RECORDS)
+ */
+public class XMLParserBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		int records = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+		HashMap<String, String> product_info = new HashMap<>();
+		product_info.put("brand", "PC Blue Menu");
+		product_info.put("date", "Oct-17-2026-10-30");
+		product_info.put("price", "$3.49");
+		product_info.put("product_title", "Whole Grain Rice & Quinoa <Family Size>");
+		product_info.put("size", "1.5 kg");
+		product_info.put("store_chain_name", "No Frills");
+		product_info.put("township_location", "Toronto");
+		product_info.put("unit_price", "$0.23/100g");
+		// one untimed round first so both paths are measured with a warmed-up JIT
+		writeRecords(false, "none", product_info, records / 10);
+		writeRecords(true, "none", product_info, records / 10);
+		double event_rate = writeRecords(false, "none", product_info, records);
+		double stream_rate = writeRecords(true, "none", product_info, records);
+		System.out.println(String.format("XMLEventWriter:  %12.0f records/s", event_rate));
+		System.out.println(String.format("XMLStreamWriter: %12.0f records/s  (%.2fx)", stream_rate, stream_rate / event_rate));
+		byte[] event_file = Files.readAllBytes(outputPath(false, "none"));
+		byte[] stream_file = Files.readAllBytes(outputPath(true, "none"));
+		// the end_of_run marker holds the time each file was closed, which is the only expected difference
+		System.out.println(
+			"identical files: " + withoutCloseTime(event_file).equals(withoutCloseTime(stream_file))
+		);
+		long plain_size = stream_file.length;
+		for (String compression: new String[] {"gzip", "gzip-fast"}) {
+			writeRecords(true, compression, product_info, records / 10);
+			double rate = writeRecords(true, compression, product_info, records);
+			long size = Files.size(outputPath(true, compression));
+			System.out.println(String.format(
+				"%-16s %12.0f records/s  %10d bytes  (%.1fx smaller)", compression + ":", rate, size,
+				(double) plain_size / size
+			));
+		}
+		Path binary_path = Paths.get(System.getProperty("user.dir"), "target", "bench-records.bin");
+		Files.deleteIfExists(binary_path);
+		BinaryRecordFile binary_file = new BinaryRecordFile(binary_path.getParent(), "bench-records.bin", false);
+		for (int i = 0; i < records; ++i) {
+			binary_file.write(product_info);
+		}
+		binary_file.close();
+		readRecords(false);
+		readRecords(true);
+		double xml_read_rate = readRecords(false);
+		double binary_read_rate = readRecords(true);
+		System.out.println(String.format("XMLParser.next():        %12.0f records/s", xml_read_rate));
+		System.out.println(String.format(
+			"BinaryRecordFile.next(): %12.0f records/s  (%.2fx, %d bytes)", binary_read_rate,
+			binary_read_rate / xml_read_rate, Files.size(binary_path)
+		));
+	}
+
+
+	private static String withoutCloseTime(byte[] xml_file)
+	{
+		return new String(xml_file, StandardCharsets.UTF_8).replaceAll("<\\?end_of_run [^?]*\\?>", "<?end_of_run?>");
+	}
+
+
+	private static double readRecords(boolean binary) throws Exception
+	{
+		long records = 0;
+		long start_nanos = System.nanoTime();
+		if (binary) {
+			Path binary_path = Paths.get(System.getProperty("user.dir"), "target", "bench-records.bin");
+			BinaryRecordFile binary_file = new BinaryRecordFile(binary_path.getParent(), "bench-records.bin", false);
+			while (binary_file.hasNext()) {
+				binary_file.next();
+				records += 1;
+			}
+		} else {
+			XMLParser parser = new XMLParser("bench-stream-none.xml", "product_records", "product_record");
+			parser.setWorkingDirectory(Paths.get(System.getProperty("user.dir"), "target"));
+			while (parser.hasNext()) {
+				parser.next();
+				records += 1;
+			}
+		}
+		return records / ((System.nanoTime() - start_nanos) / 1e9);
+	}
+
+
+	private static Path outputPath(boolean fast_writer, String compression)
+	{
+		String file_name = (fast_writer ? "bench-stream-" : "bench-event-") + compression + ".xml" +
+			(compression.equals("none") ? "" : ".gz");
+		return Paths.get(System.getProperty("user.dir"), "target", file_name);
+	}
+
+
+	private static double writeRecords(
+		boolean fast_writer, String compression, HashMap<String, String> product_info, int records
+	) throws Exception
+	{
+		Path output_path = outputPath(fast_writer, compression);
+		Files.createDirectories(output_path.getParent());
+		Files.deleteIfExists(output_path);
+		String xml_filename = output_path.toString().replaceAll("\\.gz$", "");
+		XMLParser parser = new XMLParser(xml_filename, "product_records", "product_record");
+		parser.setFastWriter(fast_writer);
+		parser.setCompression(compression);
+		long start_nanos = System.nanoTime();
+		for (int i = 0; i < records; ++i) {
+			parser.hashmapToXML(product_info);
+		}
+		parser.closeProductXmlOutputStream();
+		return records / ((System.nanoTime() - start_nanos) / 1e9);
+	}
+}
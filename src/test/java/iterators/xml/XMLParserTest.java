@@ -0,0 +1,489 @@
+package iterators.xml;
+
+import static iterators.xml.ProductFixtures.records;
+import static iterators.xml.ProductFixtures.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import iterators.util.ProductRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for XMLParser.
+ */
+public class XMLParserTest
+{
+	@Rule
+	public TemporaryFolder data_folder = new TemporaryFolder();
+
+
+	/**
+	 * A parser of product_record tags whose files are in the data folder.
+	 */
+	private XMLParser products(String xml_file, boolean name_suffix)
+	{
+		return ProductFixtures.parser(data_folder.getRoot().toPath(), xml_file, name_suffix);
+	}
+
+
+	@Test
+	public void everyStreamModeReadsTheRecordsOfEverySegment() throws Exception
+	{
+		XMLParser writer = products("products.xml", true);
+		writer.setFastWriter(true);
+		writer.setSegmentLimits(7, 0);
+		List<ProductRecord> written = write(writer, records("Rice", 0, 40, "Toronto", "Ottawa"));
+		XMLParser reader = products("products.xml", true);
+		ArrayList<ProductRecord> sequential = new ArrayList<>();
+		while (reader.hasNext()) {
+			sequential.add(reader.nextRecord());
+		}
+		assertEquals(written, sequential);
+		try (Stream<ProductRecord> records = reader.stream(false)) {
+			assertEquals(written, records.collect(Collectors.toList()));
+		}
+		// split by segment, but collected back in order
+		try (Stream<ProductRecord> records = reader.stream(true)) {
+			assertEquals(written, records.collect(Collectors.toList()));
+		}
+		try (Stream<ProductRecord> records = reader.stream(1, 1)) {
+			assertEquals(written, records.collect(Collectors.toList()));
+		}
+		// segments interleaved, each one in order
+		try (Stream<ProductRecord> records = reader.stream(3, 2)) {
+			List<ProductRecord> prefetched = records.collect(Collectors.toList());
+			assertEquals(written.size(), prefetched.size());
+			assertEquals(new HashSet<>(written), new HashSet<>(prefetched));
+		}
+	}
+
+
+	@Test
+	public void aRestartedReaderResumesAfterTheLastCommittedRecord() throws Exception
+	{
+		XMLParser writer = products("products.xml", true);
+		writer.setSegmentLimits(7, 0);
+		List<ProductRecord> written = write(writer, records("Cr\u00e8me fra\u00eeche", 0, 20));
+		XMLParser first_run = products("products.xml", true);
+		first_run.enableReadOffsets("test", "archive");
+		assertEquals(written.subList(0, 10), first_run.nextBatch(10));
+		first_run.commitReadOffsets();
+		// read but never committed, as if the loader died before storing them
+		first_run.nextBatch(5);
+		XMLParser second_run = products("products.xml", true);
+		second_run.enableReadOffsets("test", "archive");
+		assertEquals(written.subList(10, 20), second_run.nextBatch(100));
+		second_run.commitReadOffsets();
+		assertEquals(3, new File(data_folder.getRoot(), "archive").list().length);
+		XMLParser third_run = products("products.xml", true);
+		third_run.enableReadOffsets("test", "archive");
+		assertFalse(third_run.hasNext());
+		assertTrue(new File(data_folder.getRoot(), "products.test.offsets").exists());
+	}
+
+
+	@Test
+	public void readOffsetsAreDroppedWhenAFileNameIsReused() throws Exception
+	{
+		// written under the same name every run, and not archived
+		List<ProductRecord> first_file = writeProducts("Rice", 3);
+		XMLParser first_run = products("products.xml", false);
+		first_run.enableReadOffsets("test", null);
+		assertEquals(first_file, first_run.nextBatch(100));
+		first_run.commitReadOffsets();
+		XMLParser second_run = products("products.xml", false);
+		second_run.enableReadOffsets("test", null);
+		assertFalse(second_run.hasNext());
+		// a new file of the same name is read from its first record, whether the old one was done or not
+		products("products.xml", false).clear();
+		List<ProductRecord> second_file = writeProducts("Beans", 5);
+		XMLParser third_run = products("products.xml", false);
+		third_run.enableReadOffsets("test", null);
+		assertEquals(second_file.subList(0, 2), third_run.nextBatch(2));
+		third_run.commitReadOffsets();
+		products("products.xml", false).clear();
+		List<ProductRecord> third_file = writeProducts("Oats", 4);
+		XMLParser fourth_run = products("products.xml", false);
+		fourth_run.enableReadOffsets("test", null);
+		assertEquals(third_file, fourth_run.nextBatch(100));
+	}
+
+
+	private List<ProductRecord> writeProducts(String title, int count) throws Exception
+	{
+		return write(products("products.xml", false), records(title, 0, count));
+	}
+
+
+	@Test
+	public void theRecordIndexSeeksToRecordsAndTownships() throws Exception
+	{
+		String[] townships = {"Toronto", "Ottawa", "Trois-Rivi\u00e8res"};
+		for (boolean fast_writer: new boolean[] {false, true}) {
+			String xml_file = fast_writer ? "fast.xml" : "event.xml";
+			XMLParser writer = products(xml_file, false);
+			writer.setFastWriter(fast_writer);
+			writer.setRecordIndex(true);
+			List<ProductRecord> written = write(writer, records("Cr\u00e8me br\u00fbl\u00e9e & co", 0, 30, townships));
+			assertEquals(written.subList(17, 22), writer.readRecords(xml_file, 17, 5));
+			assertEquals(written.subList(28, 30), writer.readRecords(xml_file, 28, 5));
+			try (Stream<ProductRecord> records = writer.townshipRecords(xml_file, townships[2])) {
+				assertEquals(
+					written.stream().filter(record -> record.getTownshipLocation().equals(townships[2]))
+						.collect(Collectors.toList()),
+					records.collect(Collectors.toList())
+				);
+			}
+		}
+	}
+
+
+	@Test
+	public void readersTakeTheCompleteFilesFromTheSegmentManifest() throws Exception
+	{
+		XMLParser writer = products("products.xml", true);
+		writer.setSegmentManifest(true);
+		writer.setSegmentLimits(4, 0);
+		List<ProductRecord> written = records("Rice", 0, 10);
+		for (ProductRecord record: written) {
+			writer.recordToXML(record);
+		}
+		// the third segment is still being written, so readers do not see its records yet
+		XMLParser reader = products("products.xml", true);
+		assertEquals(written.subList(0, 8), reader.nextBatch(100));
+		writer.closeProductXmlOutputStream();
+		// a file that matches the glob but is not in the manifest is not read
+		new File(data_folder.getRoot(), "products-Jan-01-2000-00-00.xml").createNewFile();
+		reader = products("products.xml", true);
+		assertEquals(written, reader.nextBatch(100));
+		assertTrue(reader.verifySegmentManifest().isEmpty());
+		File manifest = new File(data_folder.getRoot(), "products.manifest");
+		assertTrue(manifest.exists());
+		reader.clear();
+		assertFalse(products("products.xml", true).hasNext());
+		// clear() only deletes the files in the manifest
+		assertEquals(1, data_folder.getRoot().list((directory, name) -> name.endsWith(".xml")).length);
+	}
+
+
+	@Test
+	public void aTailingReaderFollowsARunUntilItIsClosed() throws Exception
+	{
+		for (String compression: new String[] {"none", "gzip-fast"}) {
+			String xml_file = compression.equals("none") ? "products.xml" : "compressed.xml";
+			List<ProductRecord> written = records("Rice", 0, 20);
+			XMLParser writer = products(xml_file, true);
+			writer.setFastWriter(true);
+			writer.setCompression(compression);
+			writer.setSegmentManifest(compression.equals("none"));
+			writer.setSegmentLimits(7, 0);
+			// every record is committed as it is written, so the reader can be handed them one at a time
+			writer.setDurabilityPolicy(new DurabilityPolicy(8192, 1, 0, false));
+			// the reader is started before the first file exists, and waits for as long as the run is open
+			XMLParser reader = products(xml_file, true);
+			reader.setTailMode(true, 0);
+			LinkedBlockingQueue<ProductRecord> read = new LinkedBlockingQueue<>();
+			Thread reader_thread = new Thread(() -> {
+				try {
+					while (reader.hasNext()) {
+						read.add(reader.nextRecord());
+					}
+				} catch (Exception err) {
+					err.printStackTrace();
+				}
+			});
+			reader_thread.setDaemon(true);
+			reader_thread.start();
+			// a record is only written once the reader has the one before it, so every record is one the reader
+			// was waiting for (the poll only bounds how long a broken reader can hang the test)
+			for (ProductRecord record: written) {
+				writer.recordToXML(record);
+				assertEquals(record, read.poll(1, TimeUnit.MINUTES));
+			}
+			writer.closeProductXmlOutputStream();
+			reader_thread.join(TimeUnit.MINUTES.toMillis(1));
+			assertFalse(reader_thread.isAlive());
+			assertTrue(read.isEmpty());
+			assertFalse(reader.tailTimedOut());
+		}
+		// a run that is never closed is followed until nothing is written for the idle timeout (nothing more
+		// is written here, so the timeout can be as short as it likes)
+		XMLParser unfinished = products("unfinished.xml", true);
+		unfinished.setDurabilityPolicy(new DurabilityPolicy(8192, 1, 0, false));
+		unfinished.recordToXML(records("Rice", 0, 1).get(0));
+		XMLParser reader = products("unfinished.xml", true);
+		reader.setTailMode(true, 1);
+		assertEquals(1, reader.nextBatch(100).size());
+		assertFalse(reader.hasNext());
+		assertTrue(reader.tailTimedOut());
+		// a run started in a later month is followed, though its name sorts first; the November run is written
+		// before the reader reaches the end of the October one, and its end_of_run marker stops the reader
+		List<ProductRecord> october_records = write(products("runs-Oct-31-2026-23-00.xml", false), records("Rice (October)", 0, 1));
+		reader = products("runs.xml", true);
+		reader.setTailMode(true, 0);
+		assertEquals(october_records, reader.nextBatch(1));
+		List<ProductRecord> november_records = write(products("runs-Nov-01-2026-09-00.xml", false), records("Rice (November)", 0, 1));
+		assertEquals(november_records, reader.nextBatch(100));
+		assertFalse(reader.tailTimedOut());
+	}
+
+
+	@Test
+	public void recoveryKeepsTheCompleteRecordsOfAKilledRun() throws Exception
+	{
+		for (String compression: new String[] {"none", "gzip-fast"}) {
+			String stem = compression.equals("none") ? "products" : "compressed";
+			XMLParser writer = products("live_" + stem + ".xml", true);
+			writer.setCompression(compression);
+			writer.setRecordIndex(true);
+			writer.setSegmentManifest(true);
+			writer.setDurabilityPolicy(new DurabilityPolicy(8192, 2, 0, false));
+			List<ProductRecord> written = records("Rice", 0, 11);
+			for (ProductRecord record: written) {
+				writer.recordToXML(record);
+			}
+			// the writer is still running and holds its file, so it is not touched
+			assertTrue(
+				products("live_" + stem + ".xml", true).recoverTornFiles().isEmpty()
+			);
+			// a killed writer: its file (never closed, with the last record not committed, and a plain file cut
+			// off in the middle of a record) and sidecars are copied into another stream, where nothing holds them
+			File[] live_files = data_folder.getRoot().listFiles(
+				(directory, name) -> name.startsWith("live_" + stem) && (name.endsWith(".xml") || name.endsWith(".xml.gz"))
+			);
+			assertEquals(1, live_files.length);
+			File killed_file = new File(data_folder.getRoot(), live_files[0].getName().substring("live_".length()));
+			for (String suffix: new String[] {"", ".ckpt", RecordIndex.INDEX_SUFFIX}) {
+				File sidecar = new File(live_files[0].getPath() + suffix);
+				if (sidecar.exists()) {
+					Files.copy(sidecar.toPath(), new File(killed_file.getPath() + suffix).toPath());
+				}
+			}
+			if (compression.equals("none")) {
+				Files.write(
+					killed_file.toPath(), "\t<product_record>\n\t\t<product_title>Ri".getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.APPEND
+				);
+			}
+			XMLParser reader = products(stem + ".xml", true);
+			reader.segmentManifest(data_folder.getRoot().toPath()).update(killed_file.getName(), new SegmentManifest.Entry(
+				SegmentManifest.WRITING, killed_file.length(), SegmentManifest.UNKNOWN_RECORDS,
+				SegmentManifest.UNKNOWN_CHECKSUM
+			));
+			List<RecoveryReport> reports = reader.recoverTornFiles();
+			assertEquals(1, reports.size());
+			assertEquals(10, reports.get(0).getSalvagedRecords());
+			assertEquals(10, reports.get(0).getCommittedRecords());
+			// the gzip file was cut at a flush, so only its trailer is missing and no xml is dropped
+			assertEquals(compression.equals("none"), reports.get(0).getDroppedBytes() > 0);
+			assertTrue(reader.verifySegmentManifest().isEmpty());
+			assertEquals(written.subList(0, 10), reader.nextBatch(100));
+			if (compression.equals("none")) {
+				assertEquals(10, RecordIndex.load(killed_file.toPath()).size());
+			}
+			// the repaired files are complete, so recovering again finds nothing to do
+			assertTrue(products(stem + ".xml", true).recoverTornFiles().isEmpty());
+		}
+	}
+
+
+	@Test
+	public void runsAreReadInTheOrderTheyWereWritten() throws Exception
+	{
+		// by name, November would come before October
+		String[] run_dates = {"-Nov-02-2026-09-00", "-Oct-30-2026-09-00", "-Oct-30-2026-21-00"};
+		ArrayList<ProductRecord> written = new ArrayList<>();
+		for (String run_date: new String[] {run_dates[1], run_dates[2], run_dates[0]}) {
+			written.addAll(write(products("products" + run_date + ".xml", false), records("Rice" + run_date, 0, 1)));
+		}
+		XMLParser reader = products("products.xml", true);
+		assertEquals(written, reader.nextBatch(100));
+	}
+
+
+	@Test
+	public void parsersOnSeveralThreadsShareTheStaxFactories() throws Exception
+	{
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			ArrayList<Future<Boolean>> round_trips = new ArrayList<>();
+			for (int n = 0; n < 8; ++n) {
+				String xml_file = "thread" + n + ".xml";
+				round_trips.add(threads.submit(() -> {
+					// the event writer and the cursor reader, each made from the shared factories
+					List<ProductRecord> written = write(products(xml_file, false), records(xml_file, 0, 200));
+					XMLParser reader = products(xml_file, false);
+					ArrayList<ProductRecord> read = new ArrayList<>();
+					// hasNext() stays on the mapping tag it reached, so asking twice does not skip a record
+					while (reader.hasNext() && reader.hasNext()) {
+						read.add(reader.nextRecord());
+					}
+					return written.equals(read);
+				}));
+			}
+			for (Future<Boolean> round_trip: round_trips) {
+				assertTrue(round_trip.get());
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+
+	@Test
+	public void aClosedParserRefusesToWriteAgain() throws Exception
+	{
+		List<ProductRecord> written = writeProducts("Rice", 3);
+		XMLParser writer = products("products.xml", false);
+		writer.recordToXML(written.get(0));
+		writer.closeProductXmlOutputStream();
+		try {
+			writer.recordToXML(written.get(1));
+			fail("a closed parser wrote another record");
+		} catch (IllegalStateException err) {
+			// expected: the run is over
+		}
+		String xml_text = new String(
+			Files.readAllBytes(data_folder.getRoot().toPath().resolve("products.xml")), StandardCharsets.UTF_8
+		);
+		assertEquals(xml_text.indexOf("<?xml"), xml_text.lastIndexOf("<?xml"));
+	}
+
+
+	@Test
+	public void segmentsRollOverAndEndWithAFooter() throws Exception
+	{
+		String[] townships = {"Toronto", "Ottawa", "Trois-Rivi\u00e8res"};
+		for (boolean fast_writer: new boolean[] {false, true}) {
+			String stem = fast_writer ? "fast" : "event";
+			XMLParser writer = products(stem + ".xml", true);
+			writer.setFastWriter(fast_writer);
+			writer.setSegmentLimits(5, 0);
+			ArrayList<ProductRecord> written = new ArrayList<>();
+			for (ProductRecord record: records("Rice", 0, 12, townships)) {
+				written.add(record.with(ProductRecord.Field.STORE_CHAIN_NAME, (written.size() < 10) ? "No Frills" : "Metro"));
+			}
+			write(writer, written);
+			List<File> segments = segmentFiles(stem);
+			assertEquals(3, segments.size());
+			String[] record_counts = {"5", "5", "2"};
+			for (int n = 0; n < segments.size(); ++n) {
+				HashMap<String, String> footer = XMLParser.readSegmentFooter(segments.get(n).toPath());
+				assertEquals(Integer.toString(n + 1), footer.get("segment_number"));
+				assertEquals(record_counts[n], footer.get("record_count"));
+				assertTrue(footer.get("first_record_at").compareTo(footer.get("last_record_at")) <= 0);
+				assertEquals(
+					new HashSet<>(Arrays.asList((n == 2) ? "Metro" : "No Frills")),
+					new HashSet<>(Arrays.asList(footer.get("store_chain_names").split(";")))
+				);
+				assertEquals(
+					new HashSet<>(Arrays.asList((n == 2) ? Arrays.copyOfRange(townships, 1, 3) : townships)),
+					new HashSet<>(Arrays.asList(footer.get("township_locations").split(";")))
+				);
+			}
+			assertEquals(written, products(stem + ".xml", true).nextBatch(100));
+		}
+		// a size limit closes a segment once it reaches the limit, with whole records only
+		XMLParser writer = products("sized.xml", true);
+		writer.setSegmentLimits(0, 1024);
+		List<ProductRecord> written = write(writer, records("Basmati rice, 2 kg bag", 0, 60, townships));
+		List<File> segments = segmentFiles("sized");
+		assertTrue(segments.size() > 1);
+		int record_count = 0;
+		for (File segment: segments.subList(0, segments.size() - 1)) {
+			HashMap<String, String> footer = XMLParser.readSegmentFooter(segment.toPath());
+			record_count += Integer.parseInt(footer.get("record_count"));
+			// the footer and closing tags come on top of the records, which only just passed the limit
+			assertTrue(segment.length() >= 1024);
+			assertTrue(segment.length() < 1024 + 1024);
+		}
+		assertTrue(record_count < written.size());
+		assertEquals(written, products("sized.xml", true).nextBatch(100));
+	}
+
+
+	private List<File> segmentFiles(String stem)
+	{
+		File[] segments = data_folder.getRoot().listFiles(
+			(directory, name) -> name.startsWith(stem + "-") && name.matches(".*-seg[0-9]{4}\\.xml(\\.gz)?")
+		);
+		Arrays.sort(segments);
+		return Arrays.asList(segments);
+	}
+
+
+	@Test
+	public void compressedOutputIsReadBackTransparently() throws Exception
+	{
+		List<ProductRecord> written = records("Cr\u00e8me fra\u00eeche", 0, 200, "Toronto", "Ottawa");
+		write(products("plain.xml", false), written);
+		long plain_size = new File(data_folder.getRoot(), "plain.xml").length();
+		for (String compression: new String[] {"gzip", "gzip-fast"}) {
+			String xml_file = compression + ".xml";
+			XMLParser writer = products(xml_file, false);
+			writer.setCompression(compression);
+			write(writer, written);
+			// compressed files get .gz added to their name, and start with the gzip magic bytes
+			File compressed_file = new File(data_folder.getRoot(), xml_file + ".gz");
+			assertTrue(compressed_file.exists());
+			byte[] compressed_bytes = Files.readAllBytes(compressed_file.toPath());
+			assertEquals((byte) 0x1f, compressed_bytes[0]);
+			assertEquals((byte) 0x8b, compressed_bytes[1]);
+			assertTrue(compressed_bytes.length < plain_size / 2);
+			XMLParser reader = products(xml_file, false);
+			ArrayList<ProductRecord> read = new ArrayList<>();
+			while (reader.hasNext()) {
+				read.add(reader.nextRecord());
+			}
+			assertEquals(written, read);
+		}
+		try {
+			products("lz4.xml", false).setCompression("lz4");
+			fail("an unknown compression was accepted");
+		} catch (IllegalArgumentException err) {
+			// expected
+		}
+	}
+
+
+	@Test
+	public void batchesMoveOnToTheNextFile() throws Exception
+	{
+		List<ProductRecord> first_run = write(products("products-Oct-01-2026-10-30.xml", false), records("Rice", 0, 3));
+		List<ProductRecord> second_run = write(products("products-Oct-02-2026-10-30.xml", false), records("Beans", 0, 4));
+		ArrayList<ProductRecord> written = new ArrayList<>(first_run);
+		written.addAll(second_run);
+		XMLParser reader = products("products.xml", true);
+		// the first batch ends in the middle of the second file
+		assertEquals(written.subList(0, 5), reader.nextBatch(5));
+		assertEquals(written.subList(5, 7), reader.nextBatch(5));
+		assertTrue(reader.nextBatch(5).isEmpty());
+		// the records are the same as the ones read one at a time
+		reader = products("products.xml", true);
+		ArrayList<ProductRecord> read = new ArrayList<>();
+		while (reader.hasNext()) {
+			read.add(reader.nextRecord());
+		}
+		assertEquals(written, read);
+	}
+}
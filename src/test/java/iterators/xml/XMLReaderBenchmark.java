@@ -0,0 +1,173 @@
+package iterators.xml;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.BiConsumer;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.events.XMLEvent;
+import iterators.util.ProductRecord;
+
+/**
+ * Records/sec and MB/sec of reading a large product file (1,000,000 records by default, about 410 MB) with
+ * the XMLEventReader loop XMLParser used to run (a new XMLInputFactory per file and an event object per
+ * token), against XMLParser.nextRecord() and XMLParser.nextBatch() on the cursor based XMLStreamReader.
+ * An untimed first pass reads the file with both readers side by side and checks they return identical
+ * records.
+ * Not a unit test (surefire only runs *Test classes), run it with
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=iterators.xml.XMLReaderBenchmark
+ * (optionally with -Dexec.args=RECORDS)
+ */
+public class XMLReaderBenchmark
+{
+	private static final String FILE_NAME = "bench-read.xml";
+	private static final String[] TOWNSHIPS = {"Toronto", "Ottawa", "Hamilton", "London", "Kingston & Area"};
+
+
+	public static void main(String[] args) throws Exception
+	{
+		int records = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		Path target = Paths.get(System.getProperty("user.dir"), "target");
+		Path xml_path = target.resolve(FILE_NAME);
+		Files.createDirectories(target);
+		Files.deleteIfExists(xml_path);
+		XMLParser writer = new XMLParser(xml_path.toString(), "product_records", "product_record");
+		writer.setFastWriter(true);
+		ProductRecord.Builder record = new ProductRecord.Builder();
+		for (int i = 0; i < records; ++i) {
+			writer.recordToXML(record
+				.set(ProductRecord.Field.BRAND, "PC Blue Menu")
+				.set(ProductRecord.Field.DATE, "Oct-17-2026-10-30")
+				.set(ProductRecord.Field.PRICE, "$" + (i % 50) + ".49")
+				.set(ProductRecord.Field.PRODUCT_TITLE, "Whole Grain Rice & Quinoa <Family Size> #" + i)
+				.set(ProductRecord.Field.SIZE, "1.5 kg")
+				.set(ProductRecord.Field.STORE_CHAIN_NAME, "No Frills")
+				.set(ProductRecord.Field.TOWNSHIP_LOCATION, TOWNSHIPS[i % TOWNSHIPS.length])
+				.set(ProductRecord.Field.UNIT_PRICE, "$0.23/100g")
+				.set(ProductRecord.Field.CATEGORY_PATH, "Home>Pantry>Rice")
+				.build());
+		}
+		writer.closeProductXmlOutputStream();
+		double megabytes = Files.size(xml_path) / (1024.0 * 1024.0);
+		System.out.println(String.format("%d records, %.1f MB", records, megabytes));
+		System.out.println("identical records: " + compareReaders(xml_path.toFile()));
+		double event_seconds = readWithEventReader(xml_path.toFile(), records);
+		double record_seconds = readWithParser(false, records);
+		double batch_seconds = readWithParser(true, records);
+		report("XMLEventReader:         ", records, megabytes, event_seconds, event_seconds);
+		report("XMLParser.nextRecord(): ", records, megabytes, record_seconds, event_seconds);
+		report("XMLParser.nextBatch():  ", records, megabytes, batch_seconds, event_seconds);
+	}
+
+
+	private static void report(String label, int records, double megabytes, double seconds, double baseline_seconds)
+	{
+		System.out.println(String.format(
+			"%s %12.0f records/s  %8.1f MB/s  (%.2fx)", label, records / seconds, megabytes / seconds,
+			baseline_seconds / seconds
+		));
+	}
+
+
+	private static boolean compareReaders(File xml_file) throws Exception
+	{
+		XMLParser parser = new XMLParser(FILE_NAME, "product_records", "product_record");
+		parser.setWorkingDirectory(xml_file.toPath().getParent());
+		try (InputStream xml_istream = XMLParser.openDecompressedInput(xml_file)) {
+			XMLEventReader event_reader = XMLInputFactory.newInstance().createXMLEventReader(xml_istream);
+			while (true) {
+				HashMap<String, String> product_info = new HashMap<>();
+				boolean event_has_next = readEventMapping(event_reader, product_info::put);
+				boolean parser_has_next = parser.hasNext();
+				if (event_has_next != parser_has_next) {
+					return false;
+				}
+				if (!event_has_next) {
+					return true;
+				}
+				if (!ProductRecord.fromMap(product_info).equals(parser.nextRecord())) {
+					return false;
+				}
+			}
+		}
+	}
+
+
+	private static double readWithEventReader(File xml_file, int records) throws Exception
+	{
+		long start_nanos = System.nanoTime();
+		int read = 0;
+		try (InputStream xml_istream = XMLParser.openDecompressedInput(xml_file)) {
+			XMLEventReader event_reader = XMLInputFactory.newInstance().createXMLEventReader(xml_istream);
+			ProductRecord.Builder record = new ProductRecord.Builder();
+			while (readEventMapping(event_reader, record::set)) {
+				record.build();
+				record.clear();
+				read += 1;
+			}
+		}
+		if (read != records) {
+			throw new IllegalStateException("read " + read + " of " + records + " records");
+		}
+		return (System.nanoTime() - start_nanos) / 1e9;
+	}
+
+
+	private static double readWithParser(boolean batches, int records) throws Exception
+	{
+		long start_nanos = System.nanoTime();
+		long read = 0;
+		XMLParser parser = new XMLParser(FILE_NAME, "product_records", "product_record");
+		parser.setWorkingDirectory(Paths.get(System.getProperty("user.dir"), "target"));
+		if (batches) {
+			ArrayList<ProductRecord> batch;
+			while (!(batch = parser.nextBatch(1000)).isEmpty()) {
+				read += batch.size();
+			}
+		} else {
+			while (parser.hasNext()) {
+				parser.nextRecord();
+				read += 1;
+			}
+		}
+		if (read != records) {
+			throw new IllegalStateException("read " + read + " of " + records + " records");
+		}
+		return (System.nanoTime() - start_nanos) / 1e9;
+	}
+
+
+	/**
+	 * the hasNext()/next() loop XMLParser ran on an XMLEventReader: skips to the next mapping tag, then passes
+	 * every tag inside it to field_consumer, returning false once the file runs out
+	 */
+	private static boolean readEventMapping(XMLEventReader event_reader, BiConsumer<String, String> field_consumer)
+		throws Exception
+	{
+		boolean found = false;
+		while (!found && event_reader.hasNext()) {
+			XMLEvent next_event = event_reader.nextEvent();
+			found = next_event.isStartElement() &&
+				next_event.asStartElement().getName().getLocalPart().equals("product_record");
+		}
+		if (!found) {
+			return false;
+		}
+		while (event_reader.hasNext()) {
+			XMLEvent next_event = event_reader.nextEvent();
+			if (next_event.isStartElement()) {
+				String name = next_event.asStartElement().getName().getLocalPart();
+				field_consumer.accept(name, event_reader.getElementText().strip());
+			} else if (next_event.isEndElement() &&
+			           next_event.asEndElement().getName().getLocalPart().equals("product_record")) {
+				break;
+			}
+		}
+		return true;
+	}
+}
@@ -25,4 +25,6 @@ TRUNCATE TABLE deli;
 
 TRUNCATE TABLE fish_and_seafood;
 
+TRUNCATE TABLE last_seen_prices;
+
 COMMIT;